@@ -0,0 +1,179 @@
+package org.oka.effectivejava.cache.benchmark;
+
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.policy.Caches;
+import org.oka.effectivejava.cache.policy.Policy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of get, put and mixed workloads on every {@link Policy}.
+ * <p>
+ * The cache holds a quarter of the key space and starts full, so the benchmarks measure a steady state with hits,
+ * misses and evictions. Keys are drawn ahead of the measurement, one array per thread, so the benchmarks only measure
+ * the cache. The number of threads comes from {@link CacheBenchmarkRunner} or the -t option of JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+    /**
+     * Number of keys drawn for every thread. A power of two, so the position wraps with a mask.
+     */
+    private static final int SAMPLES = 1 << 16;
+    /**
+     * Ratio between the key space and the size of the cache.
+     */
+    private static final int KEY_SPACE_FACTOR = 4;
+    /**
+     * Seed of the first thread. Every thread gets its own.
+     */
+    private static final AtomicLong SEEDS = new AtomicLong(1);
+
+    /**
+     * Eviction policy of the cache.
+     */
+    @Param({"LFU", "LRU", "CLOCK", "S3_FIFO", "ARC", "TINY_LFU"})
+    private Policy policy;
+    /**
+     * Distribution of the requested keys.
+     */
+    @Param({"ZIPF", "UNIFORM"})
+    private KeyDistribution distribution;
+    /**
+     * Max number of entries of the cache.
+     */
+    @Param({"65536"})
+    private int maximumSize;
+    /**
+     * Cache under test.
+     */
+    private Cache<Long, Long> cache;
+
+    /**
+     * Builds the cache and fills it up.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = Caches.<Long, Long>builder()
+                .policy(policy)
+                .maximumSize((long) maximumSize)
+                .build();
+        for (long key = 0; key < maximumSize; key++) {
+            cache.put(key, key);
+        }
+    }
+
+    /**
+     * Releases the cache, if it holds any thread or resource.
+     *
+     * @throws Exception if the cache fails to close.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (cache instanceof AutoCloseable) {
+            ((AutoCloseable) cache).close();
+        }
+    }
+
+    /**
+     * Keys of a thread and its position among them.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        /**
+         * Keys drawn for the thread.
+         */
+        private long[] keys;
+        /**
+         * Number of requests of the thread.
+         */
+        private int position;
+
+        /**
+         * Draws the keys of the thread.
+         *
+         * @param benchmark shared state, with the distribution and the size of the cache.
+         */
+        @Setup(Level.Trial)
+        public void setUp(final CacheBenchmark benchmark) {
+            keys = benchmark.distribution.sample(benchmark.maximumSize * KEY_SPACE_FACTOR, SAMPLES,
+                    SEEDS.getAndIncrement());
+        }
+
+        private long next() {
+            return keys[position++ & (SAMPLES - 1)];
+        }
+    }
+
+    /**
+     * Only reads.
+     *
+     * @param keys keys of the thread.
+     * @return cached value, or null.
+     */
+    @Benchmark
+    public Long get(final Keys keys) {
+        return cache.get(keys.next());
+    }
+
+    /**
+     * Only writes.
+     *
+     * @param keys keys of the thread.
+     */
+    @Benchmark
+    public void put(final Keys keys) {
+        long key = keys.next();
+        cache.put(key, key);
+    }
+
+    /**
+     * 95% reads and 5% writes: a read-mostly cache.
+     *
+     * @param keys keys of the thread.
+     * @return cached value, or null for writes and misses.
+     */
+    @Benchmark
+    public Long readMostly(final Keys keys) {
+        return mixed(keys, 20);
+    }
+
+    /**
+     * 50% reads and 50% writes: a write-heavy cache.
+     *
+     * @param keys keys of the thread.
+     * @return cached value, or null for writes and misses.
+     */
+    @Benchmark
+    public Long readWrite(final Keys keys) {
+        return mixed(keys, 2);
+    }
+
+    private Long mixed(final Keys keys, final int requestsPerWrite) {
+        boolean write = keys.position % requestsPerWrite == 0;
+        long key = keys.next();
+        if (write) {
+            cache.put(key, key);
+            return null;
+        }
+        return cache.get(key);
+    }
+}
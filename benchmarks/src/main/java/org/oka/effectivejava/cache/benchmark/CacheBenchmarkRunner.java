@@ -0,0 +1,52 @@
+package org.oka.effectivejava.cache.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link CacheBenchmark} at 1, 4, 16 and 64 threads with the GC profiler, so every result comes with its
+ * allocation rate (gc.alloc.rate.norm, in bytes per operation). Results go to target/jmh-{threads}-threads.json.
+ * <p>
+ * Any JMH option is accepted and applies to every run, e.g. {@code CacheBenchmark.get -p policy=LFU} to narrow down
+ * the benchmarks and parameters or {@code -f 3} for more forks.
+ */
+public final class CacheBenchmarkRunner {
+    /**
+     * Numbers of threads to run the benchmarks with.
+     */
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    private CacheBenchmarkRunner() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH options.
+     * @throws CommandLineOptionException if an option is not valid.
+     * @throws RunnerException            if a benchmark fails.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : THREADS) {
+            OptionsBuilder builder = new OptionsBuilder();
+            if (commandLine.getIncludes().isEmpty()) {
+                builder.include(CacheBenchmark.class.getSimpleName());
+            }
+            Options options = builder
+                    .parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-" + threads + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
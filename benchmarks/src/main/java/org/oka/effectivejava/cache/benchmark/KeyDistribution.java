@@ -0,0 +1,61 @@
+package org.oka.effectivejava.cache.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distribution of the keys requested by a benchmark.
+ */
+public enum KeyDistribution {
+    /**
+     * Every key is equally likely, so the hit ratio is close to the share of the key space that fits in the cache.
+     */
+    UNIFORM {
+        @Override
+        long[] sample(final int keySpace, final int count, final long seed) {
+            Random random = new Random(seed);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(keySpace);
+            }
+            return keys;
+        }
+    },
+    /**
+     * Key k (from 0) is requested with a probability proportional to 1 / (k + 1) ^ 0.99, the skew of YCSB, so a few
+     * hot keys take most of the requests and contend on the same entries.
+     */
+    ZIPF {
+        @Override
+        long[] sample(final int keySpace, final int count, final long seed) {
+            double[] cumulative = new double[keySpace];
+            double sum = 0;
+            for (int k = 0; k < keySpace; k++) {
+                sum += 1d / Math.pow(k + 1, SKEW);
+                cumulative[k] = sum;
+            }
+            Random random = new Random(seed);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                int k = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                keys[i] = k >= 0 ? k : Math.min(-k - 1, keySpace - 1);
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * Exponent of the Zipf distribution.
+     */
+    private static final double SKEW = 0.99d;
+
+    /**
+     * Draws keys from the distribution, ahead of the measurement.
+     *
+     * @param keySpace number of distinct keys, from 0 to keySpace - 1.
+     * @param count    number of keys to draw.
+     * @param seed     seed of the random generator.
+     * @return drawn keys.
+     */
+    abstract long[] sample(int keySpace, int count, long seed);
+}
@@ -0,0 +1,128 @@
+package org.oka.effectivejava.cache.benchmark;
+
+import org.oka.effectivejava.cache.java.LFUCacheService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of concurrent gets on a {@link LFUCacheService} with and without the near cache of hot keys, with the
+ * metrics recorded as always, so every hit also records its latency.
+ * <p>
+ * Keys follow a Zipf distribution over a key space as big as the cache, which starts full, so nearly every get is a hit
+ * and most of them go to a few keys. Run it at growing numbers of threads to check that the near cache still scales
+ * with the metrics on:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar NearCacheBenchmark -t 1
+ * java -jar benchmarks/target/benchmarks.jar NearCacheBenchmark -t 16
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearCacheBenchmark {
+    /**
+     * Number of keys drawn for every thread. A power of two, so the position wraps with a mask.
+     */
+    private static final int SAMPLES = 1 << 16;
+    /**
+     * Seed of the first thread. Every thread gets its own.
+     */
+    private static final AtomicLong SEEDS = new AtomicLong(1);
+
+    /**
+     * Max number of hot keys served from the near cache. Zero disables it.
+     */
+    @Param({"0", "64"})
+    private int hotKeys;
+    /**
+     * Max number of entries of the cache.
+     */
+    @Param({"65536"})
+    private int maximumSize;
+    /**
+     * Cache under test.
+     */
+    private LFUCacheService<Long, Long> cache;
+
+    /**
+     * Builds the cache and fills it up.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        LFUCacheService.LFUCacheServiceBuilder<Long, Long> builder = LFUCacheService.<Long, Long>builder()
+                .maximumSize((long) maximumSize);
+        if (hotKeys > 0) {
+            builder.hotKeys(hotKeys).hotKeyRefreshInterval(Duration.ofMillis(100));
+        }
+        cache = builder.build();
+        for (long key = 0; key < maximumSize; key++) {
+            cache.put(key, key);
+        }
+    }
+
+    /**
+     * Releases the cache.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+    }
+
+    /**
+     * Keys of a thread and its position among them.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        /**
+         * Keys drawn for the thread.
+         */
+        private long[] keys;
+        /**
+         * Number of requests of the thread.
+         */
+        private int position;
+
+        /**
+         * Draws the keys of the thread.
+         *
+         * @param benchmark shared state, with the size of the cache.
+         */
+        @Setup(Level.Trial)
+        public void setUp(final NearCacheBenchmark benchmark) {
+            keys = KeyDistribution.ZIPF.sample(benchmark.maximumSize, SAMPLES, SEEDS.getAndIncrement());
+        }
+
+        private long next() {
+            return keys[position++ & (SAMPLES - 1)];
+        }
+    }
+
+    /**
+     * Only reads.
+     *
+     * @param keys keys of the thread.
+     * @return cached value, or null.
+     */
+    @Benchmark
+    public Long get(final Keys keys) {
+        return cache.get(keys.next());
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * JMH benchmarks of the caches. Built apart from the main project, against its installed artifact:
+ * <pre>
+ * mvn install -DskipTests -DskipPitest
+ * mvn -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar
+ * </pre>
+ */
+package org.oka.effectivejava.cache.benchmark;
@@ -0,0 +1,135 @@
+package org.oka.effectivejava.sort.benchmark;
+
+import org.oka.effectivejava.sort.MergeSort;
+import org.oka.effectivejava.sort.ParallelMergeSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to sort a large random int array with {@link MergeSort} and with {@link ParallelMergeSort} on 1 to 32 threads,
+ * to show how the parallel sort scales with the cores.
+ * <p>
+ * Every invocation sorts a fresh copy of the same random array into a preallocated workspace, so the benchmarks
+ * neither allocate nor sort an already sorted array. The copy is not measured. Threads here are the parallelism of the
+ * pool of the sorter, not JMH threads: run it through the JMH launcher rather than the cache benchmark runner.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SortBenchmark {
+
+    /**
+     * Array to sort, restored before every invocation.
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        /**
+         * Number of elements to sort.
+         */
+        @Param({"10000000"})
+        private int size;
+        /**
+         * Random elements, never sorted.
+         */
+        private int[] source;
+        /**
+         * Copy of the source sorted by every invocation.
+         */
+        private int[] array;
+        /**
+         * Scratch buffer of the sorts.
+         */
+        private int[] workspace;
+
+        /**
+         * Draws the random elements.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            source = new Random(1).ints(size).toArray();
+            array = new int[size];
+            workspace = new int[size];
+        }
+
+        /**
+         * Restores the unsorted array.
+         */
+        @Setup(Level.Invocation)
+        public void restore() {
+            System.arraycopy(source, 0, array, 0, size);
+        }
+    }
+
+    /**
+     * Parallel sorter with its own pool.
+     */
+    @State(Scope.Benchmark)
+    public static class Parallel {
+        /**
+         * Parallelism of the pool of the sorter.
+         */
+        @Param({"1", "2", "4", "8", "16", "32"})
+        private int threads;
+        /**
+         * Sorter under test.
+         */
+        private ParallelMergeSort sorter;
+
+        /**
+         * Creates the sorter and its pool.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            sorter = ParallelMergeSort.builder().parallelism(threads).build();
+        }
+
+        /**
+         * Shuts down the pool of the sorter.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            sorter.close();
+        }
+    }
+
+    /**
+     * Sequential baseline.
+     *
+     * @param input array to sort.
+     * @return sorted array.
+     */
+    @Benchmark
+    public int[] mergeSort(final Input input) {
+        new MergeSort().sort(input.array, input.size, input.workspace);
+        return input.array;
+    }
+
+    /**
+     * Parallel sort on the given number of threads.
+     *
+     * @param input    array to sort.
+     * @param parallel sorter.
+     * @return sorted array.
+     */
+    @Benchmark
+    public int[] parallelMergeSort(final Input input, final Parallel parallel) {
+        parallel.sorter.sort(input.array, input.size, input.workspace);
+        return input.array;
+    }
+}
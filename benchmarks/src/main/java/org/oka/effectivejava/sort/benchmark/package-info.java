@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks of the sorts. Built as the cache benchmarks, and run through the JMH launcher:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.openjdk.jmh.Main SortBenchmark
+ * </pre>
+ */
+package org.oka.effectivejava.sort.benchmark;
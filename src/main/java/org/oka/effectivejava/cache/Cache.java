@@ -0,0 +1,59 @@
+package org.oka.effectivejava.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Bounded cache of key (K) / value (V), whatever its eviction policy, so callers do not depend on a particular
+ * implementation and policies can be swapped (or compared on the same traffic) through configuration.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public interface Cache<K, V> extends CacheMetrics {
+    /**
+     * Returns the cached value for the key.
+     *
+     * @param k Key to use in the lookup.
+     * @return V cached value. Null if it not exists.
+     */
+    V get(K k);
+
+    /**
+     * Add a new key/value to the cache, evicting according to the policy of the cache when it is full.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    void put(K k, V v);
+
+    /**
+     * Returns the cached values of the keys.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values. Missing keys are absent.
+     */
+    Map<K, V> getAll(Collection<? extends K> keys);
+
+    /**
+     * Adds all the key/value pairs to the cache.
+     *
+     * @param entries key/value pairs to add.
+     */
+    void putAll(Map<? extends K, ? extends V> entries);
+
+    /**
+     * Removes the key from the cache.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached.
+     */
+    V remove(K k);
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return size
+     */
+    int size();
+}
@@ -0,0 +1,23 @@
+package org.oka.effectivejava.cache;
+
+/**
+ * Operational metrics of a cache: hit, miss, eviction and expiration counts plus get, put and eviction latency
+ * histograms.
+ * <p>
+ * Every cache gives the same meaning to them:
+ * <ul>
+ * <li>An eviction is an entry removed by the cache to stay within its size or weight bound, the removals notified with
+ * {@link RemovalCause#SIZE}. Expired entries are counted apart as expirations; explicit removals and replacements are
+ * neither.</li>
+ * <li>The eviction latency is the time spent selecting a victim and removing it, bookkeeping included. Caches whose
+ * eviction runs inside a library that does not expose it (guava) count their evictions without a latency.</li>
+ * </ul>
+ */
+public interface CacheMetrics {
+    /**
+     * Returns a point-in-time copy of the metrics. Taking it does not block the cache, so it can be scraped often.
+     *
+     * @return metrics snapshot
+     */
+    MetricsSnapshot getMetrics();
+}
@@ -0,0 +1,237 @@
+package org.oka.effectivejava.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe, constant memory histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: every power of two is split into 32 linear sub-buckets, so any recorded latency is reported
+ * with a relative error below 1/32 (~3%), from 1 ns up to ~18 minutes (longer latencies are clamped). Recording is a
+ * couple of atomic increments, and a {@link Snapshot} is a plain copy of the counters, so the histogram can be scraped
+ * often without pausing the recording threads.
+ * <p>
+ * As {@link LongAdder}, the counters are striped: every thread increments the buckets of the stripe its id maps to,
+ * allocated on first use, and snapshots sum the stripes. Threads recording similar latencies do not contend on the
+ * cache line of a shared bucket, so recording does not serialize the lock-free read paths of the caches.
+ */
+public final class LatencyHistogram {
+    /**
+     * Bits of the linear part of every bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Number of linear sub-buckets of every power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Exponent of the power of two above the highest trackable latency.
+     */
+    private static final int MAX_EXPONENT = 40;
+    /**
+     * Highest trackable latency (ns).
+     */
+    static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    /**
+     * Number of buckets.
+     */
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+    /**
+     * Max number of stripes of the counters. A power of two.
+     */
+    private static final int MAX_STRIPES = 64;
+    /**
+     * Number of stripes of the counters: the number of processors rounded up to a power of two, at most
+     * {@value #MAX_STRIPES}.
+     */
+    static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+    /**
+     * Number of latencies recorded in every bucket, per stripe. Stripes are allocated on first use.
+     */
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+    /**
+     * Sum of the recorded latencies (ns).
+     */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Records a latency. Negative latencies are recorded as zero.
+     *
+     * @param nanos latency (ns).
+     */
+    public void record(final long nanos) {
+        long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+        stripe().incrementAndGet(bucketIndex(value));
+        totalNanos.add(value);
+    }
+
+    /**
+     * Copies the current state of the histogram, without blocking the recording threads. Latencies recorded while
+     * the copy is made may or may not be included.
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0L;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray counts = stripes.get(s);
+            if (counts == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucketCount = counts.get(i);
+                copy[i] += bucketCount;
+                count += bucketCount;
+            }
+        }
+        return new Snapshot(copy, count, totalNanos.sum());
+    }
+
+    private AtomicLongArray stripe() {
+        int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray counts = stripes.get(index);
+        if (counts == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+            counts = stripes.get(index);
+        }
+        return counts;
+    }
+
+    static int stripeCount(final int processors) {
+        int count = 1;
+        while (count < Math.min(processors, MAX_STRIPES)) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowerBound = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a {@link LatencyHistogram}. Percentiles are reported as the upper bound of their bucket.
+     */
+    public static final class Snapshot {
+        /**
+         * Number of latencies of every bucket.
+         */
+        private final long[] counts;
+        /**
+         * Number of latencies.
+         */
+        private final long count;
+        /**
+         * Sum of the latencies (ns).
+         */
+        private final long totalNanos;
+
+        private Snapshot(final long[] counts, final long count, final long totalNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Returns the number of recorded latencies.
+         *
+         * @return count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of the recorded latencies.
+         *
+         * @return total (ns)
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Returns the average latency.
+         *
+         * @return mean (ns). Zero if there are no latencies.
+         */
+        public double getMean() {
+            return count == 0L ? 0d : (double) totalNanos / count;
+        }
+
+        /**
+         * Returns the latency below or at which the given ratio of latencies fall.
+         *
+         * @param ratio between 0 and 1, e.g. 0.99 for the 99th percentile.
+         * @return percentile (ns). Zero if there are no latencies.
+         */
+        public long getPercentile(final double ratio) {
+            if (ratio < 0d || ratio > 1d) {
+                throw new IllegalArgumentException("Percentile ratio must be between 0 and 1: " + ratio);
+            }
+            if (count == 0L) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(ratio * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return MAX_VALUE;
+        }
+
+        /**
+         * Returns the median latency.
+         *
+         * @return p50 (ns)
+         */
+        public long getP50() {
+            return getPercentile(0.5d);
+        }
+
+        /**
+         * Returns the 99th percentile latency.
+         *
+         * @return p99 (ns)
+         */
+        public long getP99() {
+            return getPercentile(0.99d);
+        }
+
+        /**
+         * Returns the 99.9th percentile latency.
+         *
+         * @return p999 (ns)
+         */
+        public long getP999() {
+            return getPercentile(0.999d);
+        }
+
+        /**
+         * Returns the highest latency.
+         *
+         * @return max (ns). Zero if there are no latencies.
+         */
+        public long getMax() {
+            return getPercentile(1d);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.oka.effectivejava.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe recorder of the {@link CacheMetrics} of a cache. Counters are {@link LongAdder}s and latencies go to
+ * {@link LatencyHistogram}s, so recording never contends on a lock.
+ */
+public final class MetricsRecorder {
+    /**
+     * Holds the number of hits.
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * Holds the number of misses.
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * Holds the number of evictions.
+     */
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * Holds the number of expirations.
+     */
+    private final LongAdder expirations = new LongAdder();
+    /**
+     * Latencies of the gets.
+     */
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    /**
+     * Latencies of the puts.
+     */
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    /**
+     * Time spent selecting and removing every victim.
+     */
+    private final LatencyHistogram evictionLatency = new LatencyHistogram();
+
+    /**
+     * Records a get.
+     *
+     * @param hit   whether a cached value was returned.
+     * @param nanos latency (ns).
+     */
+    public void recordGet(final boolean hit, final long nanos) {
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        getLatency.record(nanos);
+    }
+
+    /**
+     * Records a put.
+     *
+     * @param nanos latency (ns).
+     */
+    public void recordPut(final long nanos) {
+        putLatency.record(nanos);
+    }
+
+    /**
+     * Records an eviction.
+     *
+     * @param nanos time spent selecting and removing the victim (ns).
+     */
+    public void recordEviction(final long nanos) {
+        evictions.increment();
+        evictionLatency.record(nanos);
+    }
+
+    /**
+     * Records an eviction whose latency is unknown, because it ran inside a library.
+     */
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    /**
+     * Records an expiration.
+     */
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    /**
+     * Returns the number of hits.
+     *
+     * @return hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of misses.
+     *
+     * @return misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of evictions.
+     *
+     * @return evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of expirations.
+     *
+     * @return expirations
+     */
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * Copies the current metrics, without blocking the recording threads.
+     *
+     * @return metrics snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                getLatency.snapshot(), putLatency.snapshot(), evictionLatency.snapshot());
+    }
+}
@@ -0,0 +1,69 @@
+package org.oka.effectivejava.cache;
+
+import lombok.Getter;
+
+/**
+ * Immutable copy of the {@link CacheMetrics} of a cache. Latencies are in nanoseconds.
+ */
+@Getter
+public final class MetricsSnapshot {
+    /**
+     * Number of gets returning a cached value.
+     */
+    private final long hits;
+    /**
+     * Number of gets not finding a value.
+     */
+    private final long misses;
+    /**
+     * Number of entries evicted to stay within the size or weight bound.
+     */
+    private final long evictions;
+    /**
+     * Number of entries removed because they expired.
+     */
+    private final long expirations;
+    /**
+     * Latencies of the gets.
+     */
+    private final LatencyHistogram.Snapshot getLatency;
+    /**
+     * Latencies of the puts.
+     */
+    private final LatencyHistogram.Snapshot putLatency;
+    /**
+     * Time spent selecting and removing every victim.
+     */
+    private final LatencyHistogram.Snapshot evictionLatency;
+
+    MetricsSnapshot(final long hits, final long misses, final long evictions, final long expirations,
+                    final LatencyHistogram.Snapshot getLatency, final LatencyHistogram.Snapshot putLatency,
+                    final LatencyHistogram.Snapshot evictionLatency) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.getLatency = getLatency;
+        this.putLatency = putLatency;
+        this.evictionLatency = evictionLatency;
+    }
+
+    /**
+     * Returns the number of puts.
+     *
+     * @return puts
+     */
+    public long getPuts() {
+        return putLatency.getCount();
+    }
+
+    /**
+     * Returns the ratio of gets returning a cached value.
+     *
+     * @return hit ratio between 0 and 1. Zero if there are no gets.
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0L ? 0d : (double) hits / requests;
+    }
+}
@@ -0,0 +1,32 @@
+package org.oka.effectivejava.cache;
+
+/**
+ * Reason why an entry left a cache.
+ */
+public enum RemovalCause {
+    /**
+     * The entry was removed by the user.
+     */
+    EXPLICIT,
+    /**
+     * The value was replaced by a put of the same key.
+     */
+    REPLACED,
+    /**
+     * The time-to-live of the entry elapsed.
+     */
+    EXPIRED,
+    /**
+     * The entry was evicted to honour the maximum size or weight of the cache.
+     */
+    SIZE;
+
+    /**
+     * Returns whether the entry was removed by the cache itself rather than by the user.
+     *
+     * @return true for {@link #EXPIRED} and {@link #SIZE}.
+     */
+    public boolean wasEvicted() {
+        return this == EXPIRED || this == SIZE;
+    }
+}
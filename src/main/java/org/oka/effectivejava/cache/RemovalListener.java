@@ -0,0 +1,49 @@
+package org.oka.effectivejava.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Receives the entries leaving a cache. Notifications are delivered asynchronously by a {@link RemovalNotifier}, so a
+ * slow listener never runs on the thread (nor under the lock) of the cache operation removing the entry.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+    /**
+     * Called once for every removed entry, on the notification thread.
+     *
+     * @param key   K key.
+     * @param value V value removed.
+     * @param cause why the entry was removed.
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+    /**
+     * Returns a listener logging the evicted entries, as the caches used to do on every eviction.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     * @return logging listener.
+     */
+    static <K, V> RemovalListener<K, V> logging() {
+        return new Logging<>();
+    }
+
+    /**
+     * Listener logging the evicted entries.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    @Slf4j
+    final class Logging<K, V> implements RemovalListener<K, V> {
+        @Override
+        public void onRemoval(final K key, final V value, final RemovalCause cause) {
+            if (cause.wasEvicted()) {
+                log.info("Cached Item: " + key + " evicted!. Reason: " + cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.oka.effectivejava.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers the removal notifications of a cache to a {@link RemovalListener} on a dedicated daemon thread.
+ * <p>
+ * Cache operations only enqueue the notification in a bounded queue, written by every cache thread and drained by
+ * the notification thread alone, in batches. When the queue is full the {@link OverflowPolicy} decides whether the
+ * notification is dropped (and counted) or the cache operation waits for room.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@Slf4j
+public final class RemovalNotifier<K, V> implements AutoCloseable {
+    /**
+     * Default max number of pending notifications.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 8_192;
+    /**
+     * Max number of notifications delivered per batch.
+     */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * Notification asking the notification thread to stop.
+     */
+    private final Notification<K, V> poisonPill = new Notification<>(null, null, null);
+    /**
+     * Pending notifications.
+     */
+    private final BlockingQueue<Notification<K, V>> queue;
+    /**
+     * Receives the notifications.
+     */
+    private final RemovalListener<K, V> listener;
+    /**
+     * What to do when the queue is full.
+     */
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * Thread delivering the notifications.
+     */
+    private final Thread thread;
+    /**
+     * Holds the number of notifications dropped because the queue was full or the notifier closed.
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * Whether the notifier has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * What to do with a notification when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the notification, so the cache never waits for a slow listener.
+         */
+        DROP,
+        /**
+         * Wait until the notification thread makes room, so no notification is lost.
+         */
+        BLOCK
+    }
+
+    /**
+     * Creates a notifier and starts its thread.
+     *
+     * @param listener       receives the notifications.
+     * @param queueSize      max number of pending notifications.
+     * @param overflowPolicy what to do when the queue is full.
+     * @param threadName     name of the notification thread.
+     */
+    public RemovalNotifier(final RemovalListener<K, V> listener, final int queueSize,
+                           final OverflowPolicy overflowPolicy, final String threadName) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Notification queue size must be positive: " + queueSize);
+        }
+        this.listener = requireNonNull(listener, "Removal listener is required");
+        this.overflowPolicy = requireNonNull(overflowPolicy, "Overflow policy is required");
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.thread = new Thread(this::deliver, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Enqueues the notification of a removed entry.
+     *
+     * @param key   K key.
+     * @param value V value removed.
+     * @param cause why the entry was removed.
+     */
+    public void publish(final K key, final V value, final RemovalCause cause) {
+        Notification<K, V> notification = new Notification<>(key, value, cause);
+        if (closed || !queue.offer(notification) && !awaitRoom(notification)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Exposes the number of notifications dropped because the queue was full or the notifier closed.
+     *
+     * @return dropped notifications
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Delivers the pending notifications and stops the notification thread. Later notifications are dropped.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        boolean stopping = false;
+        while (thread.isAlive()) {
+            try {
+                if (!stopping) {
+                    queue.put(poisonPill);
+                    stopping = true;
+                }
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        dropped.add(queue.size());
+        queue.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean awaitRoom(final Notification<K, V> notification) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            return false;
+        }
+        try {
+            queue.put(notification);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deliver() {
+        List<Notification<K, V>> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            for (int i = 0; i < batch.size(); i++) {
+                Notification<K, V> notification = batch.get(i);
+                if (notification == poisonPill) {
+                    dropped.add(batch.size() - i - 1);
+                    return;
+                }
+                try {
+                    listener.onRemoval(notification.key, notification.value, notification.cause);
+                } catch (RuntimeException e) {
+                    log.warn("Removal listener failed for key " + notification.key, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Removed entry waiting to be delivered.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    private static final class Notification<K, V> {
+        private final K key;
+        private final V value;
+        private final RemovalCause cause;
+
+        private Notification(final K key, final V value, final RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.oka.effectivejava.cache;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Converts keys or values from/to bytes, so they can be stored outside the java heap or written to a file.
+ *
+ * @param <T> Type of the serialized objects
+ */
+public interface Serializer<T> {
+    /**
+     * Serializes the object.
+     *
+     * @param value object to serialize.
+     * @return bytes of the object.
+     */
+    byte[] serialize(T value);
+
+    /**
+     * Deserializes an object from the remaining bytes of the buffer.
+     *
+     * @param buffer buffer positioned at the first byte of the object and limited to its last byte.
+     * @return deserialized object.
+     */
+    T deserialize(ByteBuffer buffer);
+
+    /**
+     * Returns a serializer of strings encoded in UTF-8.
+     *
+     * @return UTF-8 string serializer.
+     */
+    static Serializer<String> utf8() {
+        return new Serializer<>() {
+            @Override
+            public byte[] serialize(final String value) {
+                return value.getBytes(UTF_8);
+            }
+
+            @Override
+            public String deserialize(final ByteBuffer buffer) {
+                return UTF_8.decode(buffer).toString();
+            }
+        };
+    }
+}
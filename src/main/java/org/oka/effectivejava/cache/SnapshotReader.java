@@ -0,0 +1,176 @@
+package org.oka.effectivejava.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streams the entries of a snapshot file written by {@link SnapshotWriter}.
+ * <p>
+ * The file is read through a {@link MappedByteBuffer} window moving along it, so only one window is mapped at a time
+ * and entries are handed over one by one, whatever the size of the snapshot. Deserializers get a buffer over the
+ * mapped window, so they must copy the bytes they keep.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class SnapshotReader<K, V> implements AutoCloseable {
+    /**
+     * Channel of the snapshot file.
+     */
+    private final FileChannel channel;
+    /**
+     * Converts the bytes to keys.
+     */
+    private final Serializer<K> keySerializer;
+    /**
+     * Converts the bytes to values.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Size of the mapped window.
+     */
+    private final int windowSize;
+    /**
+     * Size of the file.
+     */
+    private final long size;
+    /**
+     * Number of entries of the snapshot.
+     */
+    private final long count;
+    /**
+     * Mapped region of the file being read.
+     */
+    private MappedByteBuffer window;
+    /**
+     * Position in the file of the first byte of the window.
+     */
+    private long windowStart;
+
+    /**
+     * Receives the entries of a snapshot.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<K, V> {
+        /**
+         * Receives an entry.
+         *
+         * @param key       K key.
+         * @param value     V value.
+         * @param frequency frequency of the entry, or its rank for caches without frequencies.
+         */
+        void accept(K key, V value, int frequency);
+    }
+
+    /**
+     * Opens a snapshot file and checks its header.
+     *
+     * @param source          snapshot file.
+     * @param keySerializer   converts the bytes to keys.
+     * @param valueSerializer converts the bytes to values.
+     * @throws IOException if the file can not be read or it is not a snapshot.
+     */
+    public SnapshotReader(final Path source, final Serializer<K> keySerializer,
+                          final Serializer<V> valueSerializer) throws IOException {
+        this(source, keySerializer, valueSerializer, SnapshotWriter.WINDOW_SIZE);
+    }
+
+    SnapshotReader(final Path source, final Serializer<K> keySerializer, final Serializer<V> valueSerializer,
+                   final int windowSize) throws IOException {
+        this.keySerializer = requireNonNull(keySerializer, "Key serializer is required");
+        this.valueSerializer = requireNonNull(valueSerializer, "Value serializer is required");
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(source, READ);
+        try {
+            this.size = channel.size();
+            this.window = map(0L, SnapshotWriter.HEADER_SIZE);
+            if (window.getInt() != SnapshotWriter.MAGIC) {
+                throw new IOException("Not a cache snapshot: " + source);
+            }
+            int version = window.getInt();
+            if (version != SnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + source);
+            }
+            this.count = window.getLong();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of entries of the snapshot.
+     *
+     * @return entries
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Hands over every entry of the snapshot, in the order they were written.
+     *
+     * @param consumer receives the entries.
+     * @throws IOException if the file can not be read or it is truncated.
+     */
+    public void forEach(final EntryConsumer<? super K, ? super V> consumer) throws IOException {
+        for (long i = 0; i < count; i++) {
+            K key = keySerializer.deserialize(readBytes());
+            V value = valueSerializer.deserialize(readBytes());
+            ensureRemaining(Integer.BYTES);
+            consumer.accept(key, value, window.getInt());
+        }
+    }
+
+    /**
+     * Closes the snapshot file.
+     *
+     * @throws IOException if the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private ByteBuffer readBytes() throws IOException {
+        ensureRemaining(Integer.BYTES);
+        int length = window.getInt();
+        if (length < 0) {
+            throw new IOException("Corrupted snapshot: negative length " + length);
+        }
+        ensureRemaining(length);
+        ByteBuffer bytes = window.slice();
+        bytes.limit(length);
+        window.position(window.position() + length);
+        return bytes;
+    }
+
+    private void ensureRemaining(final int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long position = windowStart + window.position();
+        if (size - position < bytes) {
+            throw new IOException("Truncated snapshot at byte " + position);
+        }
+        window = map(position, (int) Math.min(Math.max(windowSize, bytes), size - position));
+    }
+
+    private MappedByteBuffer map(final long position, final int length) throws IOException {
+        if (size - position < length) {
+            throw new IOException("Truncated snapshot at byte " + position);
+        }
+        windowStart = position;
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+}
@@ -0,0 +1,183 @@
+package org.oka.effectivejava.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the entries of a cache into a snapshot file, to warm up a new cache with {@link SnapshotReader}.
+ * <p>
+ * The file starts with a header (magic number, version and number of entries) followed by one record per entry: the
+ * length and bytes of the key, the length and bytes of the value and the frequency (or rank) of the entry. Records are
+ * written through a {@link MappedByteBuffer} window moving along the file, so memory use does not depend on the size of
+ * the snapshot.
+ * <p>
+ * Entries go to a temporary file next to the target, which only replaces the target on {@link #commit()}. Closing
+ * without committing discards the temporary file, so a failed snapshot never overwrites a good one.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class SnapshotWriter<K, V> implements AutoCloseable {
+    /**
+     * Identifies snapshot files.
+     */
+    static final int MAGIC = 0x43534E50;
+    /**
+     * Version of the file format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the header: magic number, version and number of entries.
+     */
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    /**
+     * Default size of the mapped window.
+     */
+    static final int WINDOW_SIZE = 8 << 20;
+    /**
+     * Snapshot file replaced on commit.
+     */
+    private final Path target;
+    /**
+     * File written until the commit.
+     */
+    private final Path temporary;
+    /**
+     * Channel of the temporary file.
+     */
+    private final FileChannel channel;
+    /**
+     * Converts the keys to bytes.
+     */
+    private final Serializer<K> keySerializer;
+    /**
+     * Converts the values to bytes.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Size of the mapped window.
+     */
+    private final int windowSize;
+    /**
+     * Mapped region of the file being written.
+     */
+    private MappedByteBuffer window;
+    /**
+     * Position in the file of the first byte of the window.
+     */
+    private long windowStart;
+    /**
+     * Number of written entries.
+     */
+    private long count;
+    /**
+     * Whether the snapshot has been committed or discarded.
+     */
+    private boolean closed;
+
+    /**
+     * Creates the temporary file of a snapshot.
+     *
+     * @param target          snapshot file, replaced on commit.
+     * @param keySerializer   converts the keys to bytes.
+     * @param valueSerializer converts the values to bytes.
+     * @throws IOException if the temporary file can not be created.
+     */
+    public SnapshotWriter(final Path target, final Serializer<K> keySerializer,
+                          final Serializer<V> valueSerializer) throws IOException {
+        this(target, keySerializer, valueSerializer, WINDOW_SIZE);
+    }
+
+    SnapshotWriter(final Path target, final Serializer<K> keySerializer, final Serializer<V> valueSerializer,
+                   final int windowSize) throws IOException {
+        this.target = target.toAbsolutePath();
+        this.keySerializer = requireNonNull(keySerializer, "Key serializer is required");
+        this.valueSerializer = requireNonNull(valueSerializer, "Value serializer is required");
+        this.windowSize = windowSize;
+        this.temporary = this.target.resolveSibling(this.target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        this.windowStart = HEADER_SIZE;
+        this.window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+    }
+
+    /**
+     * Appends an entry to the snapshot.
+     *
+     * @param key       K key.
+     * @param value     V value.
+     * @param frequency frequency of the entry, or its rank for caches without frequencies.
+     * @throws IOException if the file can not be extended.
+     */
+    public void write(final K key, final V value, final int frequency) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Snapshot already closed: " + target);
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        ensureRemaining(Integer.BYTES + keyBytes.length + Integer.BYTES + valueBytes.length + Integer.BYTES);
+        window.putInt(keyBytes.length).put(keyBytes)
+                .putInt(valueBytes.length).put(valueBytes)
+                .putInt(frequency);
+        count++;
+    }
+
+    /**
+     * Writes the header, flushes the file and atomically replaces the target with it.
+     *
+     * @throws IOException if the file can not be written or moved.
+     */
+    public void commit() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Snapshot already closed: " + target);
+        }
+        long size = windowStart + window.position();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(count);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        window.force();
+        window = null;
+        channel.truncate(size);
+        channel.force(true);
+        channel.close();
+        closed = true;
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the snapshot unless it has been committed.
+     *
+     * @throws IOException if the temporary file can not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        window = null;
+        channel.close();
+        Files.deleteIfExists(temporary);
+    }
+
+    private void ensureRemaining(final int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        windowStart += window.position();
+        window.force();
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(windowSize, bytes));
+    }
+}
@@ -0,0 +1,31 @@
+package org.oka.effectivejava.cache;
+
+/**
+ * Calculates the weight of a cache entry, used to bound the cache by a total weight (e.g. a memory budget) instead
+ * of a number of entries.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+    /**
+     * Returns the weight of the entry. The weight of an entry is calculated once, when it is stored.
+     *
+     * @param key   K key.
+     * @param value V value.
+     * @return non-negative weight of the entry.
+     */
+    int weigh(K key, V value);
+
+    /**
+     * Returns a weigher where every entry weighs one, which bounds the cache by number of entries.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     * @return singleton weigher.
+     */
+    static <K, V> Weigher<K, V> singletonWeigher() {
+        return (k, v) -> 1;
+    }
+}
@@ -0,0 +1,327 @@
+package org.oka.effectivejava.cache.async;
+
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.policy.Caches;
+import org.oka.effectivejava.cache.policy.Policy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Asynchronous facade of key (K) / value (V) over any {@link Cache}, which stores the {@link CompletableFuture} of
+ * every value instead of the value itself:
+ * <pre>
+ * AsyncCache&lt;String, String&gt; cache = AsyncCache.&lt;String, String&gt;builder()
+ *         .policy(Policy.LFU)
+ *         .virtualThreads(true)
+ *         .build();
+ * cache.get("key", this::fetch).thenAccept(this::render);
+ * </pre>
+ * A miss stores a new future right away and runs the loader on the executor, so callers never block: the rest of
+ * callers missing the same key get the same future, and the loader runs once. Futures failing, cancelled or completed
+ * with null are removed from the cache when they complete, so the next lookup loads the value again.
+ * <p>
+ * Writes of the same key are serialized by a striped {@link ReentrantLock} and lookups do not lock, so a virtual
+ * thread waiting here never pins its carrier thread. Loaders run on a virtual thread per task when asked to and the
+ * runtime supports it (Java 21 onwards), and on the common {@link ForkJoinPool} otherwise.
+ * <p>
+ * The underlying cache must only be written through the facade.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class AsyncCache<K, V> implements CacheMetrics, AutoCloseable {
+    /**
+     * Number of locks serializing the writes of the keys. A power of two.
+     */
+    private static final int STRIPES = 64;
+    /**
+     * Futures of the cached values.
+     */
+    private final Cache<K, CompletableFuture<V>> cache;
+    /**
+     * Whether the underlying cache was created by the facade, so it is closed on close.
+     */
+    private final boolean ownedCache;
+    /**
+     * Runs the loaders.
+     */
+    private final Executor executor;
+    /**
+     * Executor created by the facade, shut down on close. Null if the executor belongs to the caller.
+     */
+    private final ExecutorService ownedExecutor;
+    /**
+     * Last future written for every key, until it completes. Tells whether a completing future is still the cached
+     * one without looking it up in the cache.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> pending = new ConcurrentHashMap<>();
+    /**
+     * Serialize the writes of the keys hashed to each of them.
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    /**
+     * Number of writes of every stripe, so a miss only looks the key up again under the lock when the stripe was
+     * written since the first lookup.
+     */
+    private final AtomicIntegerArray versions = new AtomicIntegerArray(STRIPES);
+    /**
+     * Holds the number of futures removed because they failed, were cancelled or completed with null.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Creates an asynchronous cache.
+     *
+     * @param policy         eviction policy of the underlying cache. Defaults to {@link Policy#LFU}.
+     * @param maximumSize    max number of entries of the underlying cache. Defaults to 100.000.
+     * @param cache          custom underlying cache. Excludes the policy and the max size.
+     * @param executor       runs the loaders. Defaults to the common {@link ForkJoinPool}.
+     * @param virtualThreads whether the loaders run on a new virtual thread each, when the runtime supports it.
+     *                       Excludes the executor.
+     */
+    @Builder
+    private AsyncCache(final Policy policy, final Long maximumSize, final Cache<K, CompletableFuture<V>> cache,
+                       final Executor executor, final Boolean virtualThreads) {
+        if (cache != null && (policy != null || maximumSize != null)) {
+            throw new IllegalStateException("A custom cache excludes the policy and the maximum size");
+        }
+        if (executor != null && virtualThreads != null) {
+            throw new IllegalStateException("A custom executor excludes virtual threads");
+        }
+        this.ownedCache = cache == null;
+        this.cache = cache != null ? cache : Caches.<K, CompletableFuture<V>>builder()
+                .policy(policy)
+                .maximumSize(maximumSize)
+                .build();
+        this.ownedExecutor = Boolean.TRUE.equals(virtualThreads)
+                ? newVirtualThreadPerTaskExecutor().orElse(null)
+                : null;
+        if (executor != null) {
+            this.executor = executor;
+        } else {
+            this.executor = ownedExecutor != null ? ownedExecutor : ForkJoinPool.commonPool();
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread per task, when the runtime supports them. Looked up by
+     * reflection, as this code targets Java 11.
+     *
+     * @return the executor. Empty before Java 21.
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) factory.invoke(null));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return Optional.empty();
+        } catch (InvocationTargetException e) {
+            // Java 19 and 20 throw UnsupportedOperationException unless preview features are enabled.
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the future of the cached value for the key, without loading it.
+     *
+     * @param k Key to use in the lookup.
+     * @return CompletableFuture of the value, maybe still running. Null if it not exists or it failed.
+     */
+    public CompletableFuture<V> getIfPresent(final K k) {
+        CompletableFuture<V> future = cache.get(k);
+        return future == null || hasFailed(future) ? null : future;
+    }
+
+    /**
+     * Returns the future of the cached value for the key, loading it on the executor on a miss. Callers missing the
+     * same key while it loads get the same future. Cancelling the future, or the loader throwing or returning null,
+     * removes it from the cache.
+     *
+     * @param k      Key to use in the lookup.
+     * @param loader computes the value of the key on a miss.
+     * @return CompletableFuture of the cached or loaded value.
+     */
+    public CompletableFuture<V> get(final K k, final Function<? super K, ? extends V> loader) {
+        requireNonNull(loader, "Loader is required");
+        final int index = index(k);
+        final int version = versions.get(index);
+        CompletableFuture<V> future = getIfPresent(k);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<V> load = new CompletableFuture<>();
+        stripes[index].lock();
+        try {
+            future = pending.get(k);
+            if (future == null && versions.get(index) != version) {
+                future = getIfPresent(k);
+            }
+            if (future != null && !hasFailed(future)) {
+                return future;
+            }
+            writeLocked(index, k, load);
+        } finally {
+            stripes[index].unlock();
+        }
+        load.whenComplete((value, error) -> onCompletion(k, load, value, error));
+        try {
+            executor.execute(() -> run(k, loader, load));
+        } catch (RejectedExecutionException e) {
+            load.completeExceptionally(e);
+        }
+        return load;
+    }
+
+    /**
+     * Adds the future of a value to the cache, replacing the previous one. The future is removed when it fails, is
+     * cancelled or completes with null.
+     *
+     * @param k      K key.
+     * @param future CompletableFuture of the value.
+     */
+    public void put(final K k, final CompletableFuture<V> future) {
+        requireNonNull(future, "Future is required");
+        final int index = index(k);
+        stripes[index].lock();
+        try {
+            writeLocked(index, k, future);
+        } finally {
+            stripes[index].unlock();
+        }
+        future.whenComplete((value, error) -> onCompletion(k, future, value, error));
+    }
+
+    /**
+     * Removes the key from the cache. A load of the key still running is not cancelled, but its result is not cached.
+     *
+     * @param k K key.
+     * @return CompletableFuture of the removed value. Null if it was not cached.
+     */
+    public CompletableFuture<V> remove(final K k) {
+        final int index = index(k);
+        stripes[index].lock();
+        try {
+            versions.incrementAndGet(index);
+            pending.remove(k);
+            return cache.remove(k);
+        } finally {
+            stripes[index].unlock();
+        }
+    }
+
+    /**
+     * Returns the number of cached futures, completed or not.
+     *
+     * @return size
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of futures removed because they failed, were cancelled or completed with null.
+     *
+     * @return failures
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return cache.getMetrics();
+    }
+
+    /**
+     * Shuts down the virtual thread executor created by the cache, if any, and closes the underlying cache when the
+     * facade created it. Loads already running complete.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        if (ownedCache && cache instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) cache).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Can not close the underlying cache", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the executor running the loaders.
+     *
+     * @return executor
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    private void writeLocked(final int index, final K k, final CompletableFuture<V> future) {
+        pending.put(k, future);
+        cache.put(k, future);
+        versions.incrementAndGet(index);
+    }
+
+    private void onCompletion(final K k, final CompletableFuture<V> future, final V value, final Throwable error) {
+        if (error == null && value != null) {
+            pending.remove(k, future);
+            return;
+        }
+        final int index = index(k);
+        stripes[index].lock();
+        try {
+            if (pending.remove(k, future)) {
+                versions.incrementAndGet(index);
+                cache.remove(k);
+                failures.increment();
+            }
+        } finally {
+            stripes[index].unlock();
+        }
+    }
+
+    private static <K, V> void run(final K k, final Function<? super K, ? extends V> loader,
+                                   final CompletableFuture<V> load) {
+        if (load.isDone()) {
+            return;
+        }
+        try {
+            load.complete(loader.apply(k));
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+        }
+    }
+
+    private static boolean hasFailed(final CompletableFuture<?> future) {
+        return future.isCompletedExceptionally() || future.isDone() && future.join() == null;
+    }
+
+    private static int index(final Object k) {
+        int hash = k.hashCode();
+        return (hash ^ hash >>> 16) & (STRIPES - 1);
+    }
+}
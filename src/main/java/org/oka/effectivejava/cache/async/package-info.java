@@ -0,0 +1,4 @@
+/**
+ * Set of classes to use the caches from asynchronous code, with values computed off the calling thread.
+ */
+package org.oka.effectivejava.cache.async;
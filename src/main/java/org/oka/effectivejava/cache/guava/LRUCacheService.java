@@ -2,57 +2,301 @@ package org.oka.effectivejava.cache.guava;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import lombok.Builder;
-import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalCause;
+import org.oka.effectivejava.cache.RemovalListener;
+import org.oka.effectivejava.cache.RemovalNotifier;
+import org.oka.effectivejava.cache.Serializer;
+import org.oka.effectivejava.cache.SnapshotReader;
+import org.oka.effectivejava.cache.SnapshotWriter;
+import org.oka.effectivejava.cache.Weigher;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
 
+/**
+ * Manages a generic LRU cache service of key (K) / value (V) on top of a guava cache.
+ * <p>
+ * The cache is bounded either by a maximum number of entries (100.000 by default) or, when built with a
+ * {@link Weigher}, by a maximum total weight such as a memory budget in bytes.
+ * <p>
+ * When built with a refresh interval and a loader, the cache refreshes ahead: the first read of an entry older than
+ * the interval returns the stale value right away and reloads it asynchronously on a bounded executor. A failed
+ * reload keeps the old value, and so does a reload rejected by a saturated executor: it is skipped and counted, and
+ * the entry is refreshed again after another interval. The default executor is shut down on {@link #close()}.
+ * <p>
+ * Batches of keys go through {@link #getAll(Collection)} and {@link #putAll(Map)}, which guava applies segment by
+ * segment. {@link #getAll(Collection, Function)} loads all the missing keys with a single call to a bulk loader.
+ * <p>
+ * Hits, misses, evictions, expirations and the get and put latencies are exposed through
+ * {@link org.oka.effectivejava.cache.CacheMetrics}. Guava selects and removes the victims internally, so the
+ * evictions are counted without an eviction latency.
+ * <p>
+ * Removed entries can be observed with a {@link RemovalListener}. Guava calls back on the thread of the cache
+ * operation, so the notification is only enqueued there and delivered in batches on a dedicated thread, released on
+ * {@link #close()}.
+ * <p>
+ * When built with key and value {@link Serializer}s, the entries can be saved with {@link #snapshot(Path)} and loaded
+ * into a new cache with {@link #restore(Path)}, so it starts warm. Guava does not expose the access order, so the
+ * restored cache only keeps the entries, not their recency.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
 @Builder
-@Slf4j
-public class LRUCacheService<K, V> {
+public class LRUCacheService<K, V> implements org.oka.effectivejava.cache.Cache<K, V>, AutoCloseable {
     /**
      * Max size of the cache storage.
      */
     private static final int MAX_SIZE = 100_000;
+    /**
+     * Number of threads of the default refresh executor.
+     */
+    private static final int REFRESH_THREADS = 2;
+    /**
+     * Max number of pending reloads of the default refresh executor. Further reloads are skipped instead of piling up.
+     */
+    private static final int REFRESH_QUEUE_SIZE = 1_000;
     /**
      * Cache object.
      */
     private Cache<K, V> cache;
     /**
-     * Expiration after Duration.
+     * Expiration after Duration since the last access. Entries do not expire when null.
      */
     private final Duration expireAfter;
     /**
-     * Holds the total time used to insert elements.
+     * Max number of entries. Defaults to 100.000 when no weight is configured.
+     */
+    private final Long maximumSize;
+    /**
+     * Max total weight of the entries. Requires a weigher.
+     */
+    private final Long maximumWeight;
+    /**
+     * Calculates the weight of every entry. Requires a max weight.
+     */
+    private final Weigher<K, V> weigher;
+    /**
+     * Age of an entry after which the next read triggers an asynchronous reload. Requires a loader.
+     */
+    private final Duration refreshAfter;
+    /**
+     * Computes the fresh value of a key on a reload. Requires a refresh interval.
+     */
+    private final Function<K, V> loader;
+    /**
+     * Runs the reloads. Defaults to a bounded pool of daemon threads.
+     */
+    private final Executor refreshExecutor;
+    /**
+     * Receives the removed entries asynchronously. No notifications by default.
+     */
+    private final RemovalListener<K, V> removalListener;
+    /**
+     * Max number of pending removal notifications. Defaults to {@link RemovalNotifier#DEFAULT_QUEUE_SIZE}.
+     */
+    private final Integer removalQueueSize;
+    /**
+     * What to do with a removal notification when the queue is full. Defaults to dropping it.
+     */
+    private final RemovalNotifier.OverflowPolicy overflowPolicy;
+    /**
+     * Converts the keys from/to bytes in the snapshots. Requires a value serializer.
+     */
+    private final Serializer<K> keySerializer;
+    /**
+     * Converts the values from/to bytes in the snapshots. Requires a key serializer.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Delivers the removal notifications of the built cache, if there is a removal listener.
+     */
+    private final AtomicReference<RemovalNotifier<K, V>> notifier = new AtomicReference<>();
+    /**
+     * Default refresh executor of the built cache, created when refreshing without a custom executor.
+     */
+    private final AtomicReference<ExecutorService> ownedRefreshExecutor = new AtomicReference<>();
+    /**
+     * Holds the number of successful reloads.
+     */
+    private final LongAdder reloads = new LongAdder();
+    /**
+     * Holds the number of failed reloads.
+     */
+    private final LongAdder reloadFailures = new LongAdder();
+    /**
+     * Holds the total time (ns) spent reloading.
+     */
+    private final LongAdder reloadTime = new LongAdder();
+    /**
+     * Holds the number of reloads skipped because the refresh executor rejected them.
      */
-    @Getter
-    private long insertionTime = 0L;
+    private final LongAdder skippedReloads = new LongAdder();
     /**
-     * Holds the number of attempted insertions.
+     * Records the hits, misses, evictions and the latencies of the cache.
      */
-    @Getter
-    private long insertions = 0L;
+    private final MetricsRecorder metrics = new MetricsRecorder();
 
     /**
      * Builds and returns the cache object based the configurations.
      */
     public void buildCache() {
-        cache = CacheBuilder
-                .newBuilder()
-                .recordStats()
-                .maximumSize(MAX_SIZE)
-                .expireAfterAccess(expireAfter)
-                .removalListener((RemovalListener<K, V>) notification -> {
-                    if (notification.wasEvicted()) {
-                        log.info("Cached Item: " + notification.getKey() + " evicted!. Reason: " + notification.getCause());
-                    }
-                })
-                .build();
+        if (removalListener == null && (removalQueueSize != null || overflowPolicy != null)) {
+            throw new IllegalStateException("Removal queue size and overflow policy require a removal listener");
+        }
+        if ((keySerializer == null) != (valueSerializer == null)) {
+            throw new IllegalStateException("Key and value serializers must be configured together");
+        }
+        CacheBuilder<Object, Object> base = CacheBuilder.newBuilder();
+        if (expireAfter != null) {
+            base.expireAfterAccess(expireAfter);
+        }
+        CacheBuilder<K, V> builder = base.<K, V>removalListener(this::onRemoval);
+        if (removalListener != null) {
+            RemovalNotifier<K, V> previous = notifier.getAndSet(new RemovalNotifier<>(removalListener,
+                    removalQueueSize == null ? RemovalNotifier.DEFAULT_QUEUE_SIZE : removalQueueSize,
+                    overflowPolicy == null ? RemovalNotifier.OverflowPolicy.DROP : overflowPolicy,
+                    "lru-cache-removal"));
+            if (previous != null) {
+                previous.close();
+            }
+        }
+        if (refreshAfter == null && loader == null) {
+            cache = bounded(builder).build();
+            return;
+        }
+        if (refreshAfter == null || loader == null) {
+            throw new IllegalStateException("Refresh interval and loader must be configured together");
+        }
+        Executor executor = refreshExecutor;
+        if (executor == null) {
+            ExecutorService owned = defaultRefreshExecutor();
+            ExecutorService previous = ownedRefreshExecutor.getAndSet(owned);
+            if (previous != null) {
+                previous.shutdown();
+            }
+            executor = owned;
+        }
+        cache = bounded(builder)
+                .refreshAfterWrite(refreshAfter)
+                .build(timedLoader(executor));
+    }
+
+    private void onRemoval(final RemovalNotification<K, V> notification) {
+        RemovalCause cause = causeOf(notification.getCause());
+        RemovalNotifier<K, V> removalNotifier = notifier.get();
+        if (removalNotifier != null) {
+            removalNotifier.publish(notification.getKey(), notification.getValue(), cause);
+        }
+        if (cause == RemovalCause.SIZE) {
+            metrics.recordEviction();
+        } else if (cause == RemovalCause.EXPIRED) {
+            metrics.recordExpiration();
+        }
+    }
+
+    private static RemovalCause causeOf(final com.google.common.cache.RemovalCause cause) {
+        switch (cause) {
+            case EXPLICIT:
+                return RemovalCause.EXPLICIT;
+            case REPLACED:
+                return RemovalCause.REPLACED;
+            case EXPIRED:
+                return RemovalCause.EXPIRED;
+            default:
+                return RemovalCause.SIZE;
+        }
+    }
+
+    private CacheLoader<K, V> timedLoader(final Executor executor) {
+        return new CacheLoader<>() {
+            @Override
+            public V load(final K key) {
+                return loader.apply(key);
+            }
+
+            @Override
+            public ListenableFuture<V> reload(final K key, final V oldValue) {
+                ListenableFutureTask<V> task = ListenableFutureTask.create(() -> reloadNow(key));
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    skippedReloads.increment();
+                    return Futures.immediateFuture(oldValue);
+                }
+                return task;
+            }
+        };
+    }
+
+    private V reloadNow(final K key) {
+        final long timeBefore = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            if (value == null) {
+                reloadFailures.increment();
+            } else {
+                reloads.increment();
+            }
+            return value;
+        } catch (RuntimeException e) {
+            reloadFailures.increment();
+            throw e;
+        } finally {
+            reloadTime.add(System.nanoTime() - timeBefore);
+        }
+    }
+
+    private static ExecutorService defaultRefreshExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "lru-cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private CacheBuilder<K, V> bounded(final CacheBuilder<K, V> builder) {
+        if (maximumSize != null && maximumWeight != null) {
+            throw new IllegalStateException("Maximum size and maximum weight can not be combined");
+        }
+        if ((maximumWeight == null) != (weigher == null)) {
+            throw new IllegalStateException("Maximum weight and weigher must be configured together");
+        }
+        if (maximumWeight != null) {
+            return builder
+                    .maximumWeight(maximumWeight)
+                    .weigher(weigher::weigh);
+        }
+        return builder.maximumSize(maximumSize == null ? MAX_SIZE : maximumSize);
     }
 
     /**
@@ -62,7 +306,10 @@ public class LRUCacheService<K, V> {
      * @return S cached value. Null if it not exists.
      */
     public V get(final K k) {
-        return this.cache.getIfPresent(k);
+        final long timeBefore = System.nanoTime();
+        V value = this.cache.getIfPresent(k);
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
     }
 
     /**
@@ -72,11 +319,149 @@ public class LRUCacheService<K, V> {
      * @param v V Value.
      */
     public void put(final K k, final V v) {
-        final long timeBefore = System.currentTimeMillis();
+        final long timeBefore = System.nanoTime();
         this.cache.put(k, v);
-        final long timeAfter = System.currentTimeMillis();
-        this.insertionTime = this.insertionTime + (timeAfter - timeBefore);
-        this.insertions++;
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Returns the cached values of the keys, looking them up segment by segment in guava.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values. Missing keys are absent.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        final long timeBefore = System.nanoTime();
+        Map<K, V> found = this.cache.getAllPresent(keys);
+        recordGets(keys, found, System.nanoTime() - timeBefore);
+        return found;
+    }
+
+    /**
+     * Returns the cached values of the keys, loading the missing ones with a single call to the bulk loader.
+     * <p>
+     * Loaded entries are cached with one {@link #putAll(Map)}, including those the loader returns for keys that were
+     * not requested, but only the requested keys are returned.
+     *
+     * @param keys       Keys to use in the lookup.
+     * @param bulkLoader computes the values of the missing keys. Keys it does not return stay missing.
+     * @return Map<K, V> cached or loaded values, in the order of the keys.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys,
+                            final Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        Map<K, V> found = getAll(keys);
+        Set<K> missing = new LinkedHashSet<>();
+        for (K k : keys) {
+            if (!found.containsKey(k)) {
+                missing.add(k);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        Map<K, V> loaded = new LinkedHashMap<>();
+        Map<? extends K, ? extends V> values = bulkLoader.apply(unmodifiableSet(missing));
+        if (values != null) {
+            values.forEach((k, v) -> {
+                if (k != null && v != null) {
+                    loaded.put(k, v);
+                }
+            });
+        }
+        putAll(loaded);
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K k : keys) {
+            V value = found.containsKey(k) ? found.get(k) : loaded.get(k);
+            if (value != null) {
+                result.put(k, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds all the key/value pairs to the cache service, locking every guava segment once per batch.
+     *
+     * @param entries key/value pairs to add.
+     */
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final long timeBefore = System.nanoTime();
+        this.cache.putAll(entries);
+        final long perEntry = (System.nanoTime() - timeBefore) / entries.size();
+        for (int i = 0; i < entries.size(); i++) {
+            metrics.recordPut(perEntry);
+        }
+    }
+
+    /**
+     * Removes the key from the cache service, notifying the removal listener with {@link RemovalCause#EXPLICIT}.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached.
+     */
+    @Override
+    public V remove(final K k) {
+        return this.cache.asMap().remove(k);
+    }
+
+    private void recordGets(final Collection<? extends K> keys, final Map<K, V> found, final long nanos) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        final long perKey = nanos / keys.size();
+        for (K k : keys) {
+            metrics.recordGet(found.containsKey(k), perKey);
+        }
+    }
+
+    /**
+     * Saves the entries into a snapshot file, replacing it atomically. The entries are read through the weakly
+     * consistent view of guava, so neither reads nor writes wait for the snapshot.
+     *
+     * @param path snapshot file.
+     * @throws IOException if the file can not be written.
+     */
+    public void snapshot(final Path path) throws IOException {
+        requireSerializers();
+        try (SnapshotWriter<K, V> writer = new SnapshotWriter<>(path, keySerializer, valueSerializer)) {
+            int rank = 0;
+            for (Map.Entry<K, V> entry : this.cache.asMap().entrySet()) {
+                writer.write(entry.getKey(), entry.getValue(), rank++);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Loads the entries of a snapshot file, streaming it.
+     *
+     * @param path snapshot file.
+     * @throws IOException if the file can not be read or it is not a snapshot.
+     */
+    public void restore(final Path path) throws IOException {
+        requireSerializers();
+        try (SnapshotReader<K, V> reader = new SnapshotReader<>(path, keySerializer, valueSerializer)) {
+            reader.forEach((k, v, rank) -> put(k, v));
+        }
+    }
+
+    private void requireSerializers() {
+        if (keySerializer == null) {
+            throw new IllegalStateException("Snapshots require key and value serializers");
+        }
+    }
+
+    /**
+     * Returns the number of cached entries, as estimated by guava.
+     *
+     * @return size
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, this.cache.size());
     }
 
     /**
@@ -95,7 +480,7 @@ public class LRUCacheService<K, V> {
      * @return hits
      */
     public long getHits() {
-        return cache.stats().hitCount();
+        return metrics.hits();
     }
 
     /**
@@ -104,7 +489,61 @@ public class LRUCacheService<K, V> {
      * @return hits
      */
     public long getMisses() {
-        return cache.stats().missCount();
+        return metrics.misses();
+    }
+
+    /**
+     * Exposes the number of evictions. Expirations are counted apart.
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return metrics.evictions();
+    }
+
+    /**
+     * Exposes the number of expired entries.
+     *
+     * @return expirations
+     */
+    public long getExpirations() {
+        return metrics.expirations();
+    }
+
+    /**
+     * Exposes the number of successful reloads.
+     *
+     * @return reloads
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * Exposes the number of failed reloads (exception or null value). The old value is kept on a failure.
+     *
+     * @return reload failures
+     */
+    public long getReloadFailures() {
+        return reloadFailures.sum();
+    }
+
+    /**
+     * Exposes the number of reloads skipped because the refresh executor was saturated. The stale value is kept.
+     *
+     * @return skipped reloads
+     */
+    public long getSkippedReloads() {
+        return skippedReloads.sum();
+    }
+
+    /**
+     * Returns the average time spent reloading.
+     *
+     * @return avg reload time (ms)
+     */
+    public double getAvgReloadTime() {
+        return reloadTime.sum() / 1_000_000d / (reloads.sum() + reloadFailures.sum());
     }
 
     /**
@@ -113,6 +552,55 @@ public class LRUCacheService<K, V> {
      * @return avg insertion time (ms)
      */
     public double getAvgInsertionTime() {
-        return (double) this.insertionTime / this.insertions;
+        return metrics.snapshot().getPutLatency().getMean() / 1_000_000d;
+    }
+
+    /**
+     * Exposes the total time used to insert elements.
+     *
+     * @return insertion time (ms)
+     */
+    public long getInsertionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.snapshot().getPutLatency().getTotalNanos());
+    }
+
+    /**
+     * Exposes the number of attempted insertions.
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return metrics.snapshot().getPuts();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Exposes the number of removal notifications dropped because the listener fell behind.
+     *
+     * @return dropped notifications
+     */
+    public long getDroppedNotifications() {
+        RemovalNotifier<K, V> removalNotifier = notifier.get();
+        return removalNotifier == null ? 0L : removalNotifier.getDropped();
+    }
+
+    /**
+     * Delivers the pending removal notifications and stops the notification thread, if any, and shuts down the default
+     * refresh executor. Reloads already running complete.
+     */
+    @Override
+    public void close() {
+        RemovalNotifier<K, V> removalNotifier = notifier.getAndSet(null);
+        if (removalNotifier != null) {
+            removalNotifier.close();
+        }
+        ExecutorService executor = ownedRefreshExecutor.getAndSet(null);
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 }
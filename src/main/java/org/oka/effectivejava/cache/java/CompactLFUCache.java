@@ -0,0 +1,310 @@
+package org.oka.effectivejava.cache.java;
+
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * LFU cache of key (K) / value (V) with the eviction order of {@link LFUCacheService} (bounded by number of entries),
+ * laid out in parallel arrays instead of one object per entry, to cut the memory overhead of big caches.
+ * <p>
+ * Keys, values and key hashes live in arrays at the index of the entry given by a {@link PrimitiveLFUPolicy}, which
+ * keeps the frequencies and links in parallel {@code int[]} arrays. Keys are found through an open-addressing hash
+ * table of entry indexes with linear probing (at most half full) and backward shift deletion, as in
+ * {@link IntKeyLFUCache}. An entry costs about 40 bytes on top of its key and value, against about 100 for the
+ * map entry and the node of {@link LFUCacheService}, and nothing is allocated on hits nor on updates.
+ * <p>
+ * Every array is allocated for the max size up front. Reads and writes take a single lock, so this layout suits
+ * caches whose size matters more than the throughput of concurrent reads; there is no expiration nor weighing either.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class CompactLFUCache<K, V> implements Cache<K, V> {
+    /**
+     * Max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Empty slot of the hash table.
+     */
+    private static final int EMPTY = 0;
+    /**
+     * Key of every entry.
+     */
+    private final Object[] keys;
+    /**
+     * Value of every entry.
+     */
+    private final Object[] values;
+    /**
+     * Spread hash of the key of every entry, so probes and deletions do not call {@link Object#hashCode()}.
+     */
+    private final int[] hashes;
+    /**
+     * Hash table of entry indexes plus one, so zero means empty.
+     */
+    private final int[] table;
+    /**
+     * Mask used to map a hash to a slot of the table.
+     */
+    private final int mask;
+    /**
+     * Frequencies and eviction order of the entries.
+     */
+    private final PrimitiveLFUPolicy policy;
+    /**
+     * Guards the arrays, the table and the policy.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+
+    /**
+     * Creates a cache with the default capacity.
+     */
+    public CompactLFUCache() {
+        this(MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache holding up to the given number of entries.
+     *
+     * @param maximumSize max number of entries.
+     */
+    public CompactLFUCache(final int maximumSize) {
+        this.policy = new PrimitiveLFUPolicy(maximumSize);
+        this.keys = new Object[maximumSize];
+        this.values = new Object[maximumSize];
+        this.hashes = new int[maximumSize];
+        this.table = new int[tableSize(maximumSize)];
+        this.mask = table.length - 1;
+    }
+
+    @Override
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        V value;
+        lock.lock();
+        try {
+            value = getLocked(k);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Add a new key/value to the cache. A replacement counts as one more use of the key.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    @Override
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        lock.lock();
+        try {
+            putLocked(k, v);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        Map<K, V> found = new LinkedHashMap<>();
+        long[] latencies = new long[keys.size()];
+        boolean[] hits = new boolean[keys.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (K k : keys) {
+                final long timeBefore = System.nanoTime();
+                V value = getLocked(k);
+                if (value != null) {
+                    found.put(k, value);
+                }
+                hits[i] = value != null;
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordGet(hits[j], latencies[j]);
+        }
+        return found;
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        long[] latencies = new long[entries.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                final long timeBefore = System.nanoTime();
+                putLocked(entry.getKey(), entry.getValue());
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordPut(latencies[j]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(final K k) {
+        lock.lock();
+        try {
+            int entry = find(k, hash(k));
+            if (entry == PrimitiveLFUPolicy.NIL) {
+                return null;
+            }
+            V value = (V) values[entry];
+            release(entry);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the frequency of the key, without touching it.
+     *
+     * @param k Key to use in the lookup.
+     * @return frequency. Zero if it not exists.
+     */
+    public int getFrequency(final K k) {
+        lock.lock();
+        try {
+            int entry = find(k, hash(k));
+            return entry == PrimitiveLFUPolicy.NIL ? 0 : policy.frequency(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return policy.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    @SuppressWarnings("unchecked")
+    private V getLocked(final K k) {
+        int entry = find(k, hash(k));
+        if (entry == PrimitiveLFUPolicy.NIL) {
+            return null;
+        }
+        policy.touch(entry);
+        return (V) values[entry];
+    }
+
+    private void putLocked(final K k, final V v) {
+        requireNonNull(v, "Null values are not supported");
+        final int hash = hash(k);
+        int entry = find(k, hash);
+        if (entry != PrimitiveLFUPolicy.NIL) {
+            values[entry] = v;
+            policy.touch(entry);
+            return;
+        }
+        if (policy.isFull()) {
+            final long evictionStart = System.nanoTime();
+            int victim = policy.evict();
+            delete(victim);
+            keys[victim] = null;
+            values[victim] = null;
+            metrics.recordEviction(System.nanoTime() - evictionStart);
+        }
+        entry = policy.add();
+        keys[entry] = k;
+        values[entry] = v;
+        hashes[entry] = hash;
+        insert(hash, entry);
+    }
+
+    private void release(final int entry) {
+        delete(entry);
+        policy.remove(entry);
+        keys[entry] = null;
+        values[entry] = null;
+    }
+
+    private int find(final Object k, final int hash) {
+        int slot = hash & mask;
+        int entryPlusOne = table[slot];
+        while (entryPlusOne != EMPTY) {
+            int entry = entryPlusOne - 1;
+            if (hashes[entry] == hash && k.equals(keys[entry])) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+            entryPlusOne = table[slot];
+        }
+        return PrimitiveLFUPolicy.NIL;
+    }
+
+    private void insert(final int hash, final int entry) {
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void delete(final int entry) {
+        int hole = hashes[entry] & mask;
+        while (table[hole] != entry + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int slot = (hole + 1) & mask;
+        while (table[slot] != EMPTY) {
+            int ideal = hashes[table[slot] - 1] & mask;
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[hole] = EMPTY;
+    }
+
+    private static int hash(final Object k) {
+        int h = requireNonNull(k, "Null keys are not supported").hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(final int maximumSize) {
+        int size = 2;
+        while (size < 2L * maximumSize) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
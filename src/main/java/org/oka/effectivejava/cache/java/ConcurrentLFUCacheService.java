@@ -0,0 +1,380 @@
+package org.oka.effectivejava.cache.java;
+
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalCause;
+import org.oka.effectivejava.cache.RemovalListener;
+import org.oka.effectivejava.cache.RemovalNotifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lock-striped variant of {@link LFUCacheService}. The key space is split into independently locked segments, each
+ * one with its own LFU engine and an equal share of the capacity, so threads working on different segments do not
+ * contend with each other.
+ * <p>
+ * The eviction is local to each segment: the evicted entry is the least frequently used of its segment, which is an
+ * approximation of the global LFU order.
+ * <p>
+ * The capacity is given through the builder (100.000 entries by default) and rounded up to a multiple of the number of
+ * segments. Hits, misses, evictions and the get, put and eviction latencies are exposed through {@link CacheMetrics};
+ * they are recorded, and the removal notifications published, after the segment lock is released.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class ConcurrentLFUCacheService<K, V> implements Cache<K, V>, AutoCloseable {
+    /**
+     * Default max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Default number of segments.
+     */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    /**
+     * Independently locked LFU engines.
+     */
+    private final LFUEngine<K, V>[] segments;
+    /**
+     * Max number of entries of each segment.
+     */
+    private final int segmentSize;
+    /**
+     * Mask used to map a hash to its segment.
+     */
+    private final int segmentMask;
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Delivers the removal notifications. Null when there is no removal listener.
+     */
+    private final RemovalNotifier<K, V> notifier;
+
+    /**
+     * Creates a cache service with the default capacity and number of segments.
+     */
+    public ConcurrentLFUCacheService() {
+        this(null, null, null, null, null);
+    }
+
+    /**
+     * Creates a cache service split in (at least) the given number of segments, rounded up to a power of two and
+     * capped by the capacity.
+     *
+     * @param maximumSize      max number of entries. Defaults to 100.000.
+     * @param concurrencyLevel expected number of concurrently updating threads. Defaults to 16.
+     * @param removalListener  receives the removed entries asynchronously. No notifications by default.
+     * @param removalQueueSize max number of pending notifications. Defaults to
+     *                         {@link RemovalNotifier#DEFAULT_QUEUE_SIZE}.
+     * @param overflowPolicy   what to do with a notification when the queue is full. Defaults to dropping it; blocking
+     *                         makes the writers wait for a listener falling behind.
+     */
+    @Builder
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ConcurrentLFUCacheService(final Long maximumSize, final Integer concurrencyLevel,
+                                      final RemovalListener<K, V> removalListener, final Integer removalQueueSize,
+                                      final RemovalNotifier.OverflowPolicy overflowPolicy) {
+        if (removalListener == null && (removalQueueSize != null || overflowPolicy != null)) {
+            throw new IllegalStateException("Removal queue size and overflow policy require a removal listener");
+        }
+        if (maximumSize != null && (maximumSize < 1 || maximumSize > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Maximum size must be between 1 and " + Integer.MAX_VALUE + ": "
+                    + maximumSize);
+        }
+        if (concurrencyLevel != null && concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+        }
+        int size = maximumSize == null ? MAX_SIZE : maximumSize.intValue();
+        int level = Math.min(concurrencyLevel == null ? DEFAULT_CONCURRENCY_LEVEL : concurrencyLevel, size);
+        int segmentCount = 1;
+        while (segmentCount < level) {
+            segmentCount <<= 1;
+        }
+        if (segmentCount > size) {
+            segmentCount >>= 1;
+        }
+        this.segmentSize = (int) (((long) size + segmentCount - 1) / segmentCount);
+        this.segments = new LFUEngine[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new LFUEngine<>(segmentSize);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.notifier = removalListener == null ? null : new RemovalNotifier<>(removalListener,
+                removalQueueSize == null ? RemovalNotifier.DEFAULT_QUEUE_SIZE : removalQueueSize,
+                overflowPolicy == null ? RemovalNotifier.OverflowPolicy.DROP : overflowPolicy,
+                "concurrent-lfu-cache-removal");
+    }
+
+    /**
+     * Returns the cached S value for the key K.
+     *
+     * @param k Key to use in the lookup.
+     * @return S cached value. Null if it not exists.
+     */
+    @Override
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        LFUEngine<K, V> segment = segmentFor(k);
+        V value = null;
+        synchronized (segment) {
+            LFUEngine.Node<K, V> node = segment.getNode(k);
+            if (node != null) {
+                segment.touch(node);
+                value = node.getValue();
+            }
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Add a new key/value to the cache service. When the segment of the key is full, its least frequently used entry
+     * is evicted first.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    @Override
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        LFUEngine<K, V> segment = segmentFor(k);
+        LFUEngine.Node<K, V> evicted = null;
+        long evictionNanos = 0L;
+        V oldValue = null;
+        synchronized (segment) {
+            LFUEngine.Node<K, V> existing = segment.getNode(k);
+            if (existing != null) {
+                oldValue = existing.getValue();
+            } else if (segment.size() >= segmentSize) {
+                final long evictionStart = System.nanoTime();
+                evicted = segment.evict();
+                evictionNanos = System.nanoTime() - evictionStart;
+            }
+            segment.put(k, v);
+        }
+        if (evicted != null) {
+            metrics.recordEviction(evictionNanos);
+            notifyRemoval(evicted.getKey(), evicted.getValue(), RemovalCause.SIZE);
+        }
+        if (oldValue != null) {
+            notifyRemoval(k, oldValue, RemovalCause.REPLACED);
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Returns the cached values of the keys, taking the lock of each segment once per key.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values, in the order of the keys. Missing keys are absent.
+     */
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        Map<K, V> found = new LinkedHashMap<>();
+        for (K k : keys) {
+            V value = get(k);
+            if (value != null) {
+                found.put(k, value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds all the key/value pairs to the cache service, taking the lock of each segment once per entry.
+     *
+     * @param entries key/value pairs to add.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        entries.forEach(this::put);
+    }
+
+    /**
+     * Removes the key from the cache, notifying the removal listener with {@link RemovalCause#EXPLICIT}.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached.
+     */
+    @Override
+    public V remove(final K k) {
+        LFUEngine<K, V> segment = segmentFor(k);
+        LFUEngine.Node<K, V> removed;
+        synchronized (segment) {
+            LFUEngine.Node<K, V> node = segment.getNode(k);
+            removed = node == null ? null : segment.remove(node);
+        }
+        if (removed == null) {
+            return null;
+        }
+        notifyRemoval(k, removed.getValue(), RemovalCause.EXPLICIT);
+        return removed.getValue();
+    }
+
+    /**
+     * Returns the number of cached entries, adding up the segments one at a time.
+     *
+     * @return size
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (LFUEngine<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Exposes current Cached Items storage. Each segment is copied under its own lock.
+     *
+     * @return Map<K, V>
+     */
+    public Map<K, V> getCachedItemStorage() {
+        Map<K, V> mapToReturn = new HashMap<>();
+        for (LFUEngine<K, V> segment : segments) {
+            synchronized (segment) {
+                mapToReturn.putAll(segment.storage());
+            }
+        }
+        return unmodifiableMap(mapToReturn);
+    }
+
+    /**
+     * Exposes current Cached Items usage statistics. Each segment is copied under its own lock.
+     *
+     * @return Map<K, Integer>
+     */
+    public Map<K, Integer> getCachedItemStats() {
+        Map<K, Integer> mapToReturn = new HashMap<>();
+        for (LFUEngine<K, V> segment : segments) {
+            synchronized (segment) {
+                mapToReturn.putAll(segment.stats());
+            }
+        }
+        return unmodifiableMap(mapToReturn);
+    }
+
+    /**
+     * Exposes the frequencies of the cached items, merging the frequencies of every segment.
+     *
+     * @return Map<Integer, List < K>>
+     */
+    public Map<Integer, List<K>> getCachedItemFreq() {
+        Map<Integer, List<K>> mapToReturn = new TreeMap<>();
+        for (LFUEngine<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.frequencies().forEach((frequency, keys) ->
+                        mapToReturn.computeIfAbsent(frequency, f -> new ArrayList<>()).addAll(keys));
+            }
+        }
+        return unmodifiableMap(mapToReturn);
+    }
+
+    /**
+     * Exposes the number of misses.
+     *
+     * @return misses
+     */
+    public Integer getMisses() {
+        return (int) metrics.misses();
+    }
+
+    /**
+     * Exposes the number of hits.
+     *
+     * @return hits
+     */
+    public Integer getHits() {
+        return (int) metrics.hits();
+    }
+
+    /**
+     * Exposes the number of evictions.
+     *
+     * @return evictions
+     */
+    public Integer getEvictions() {
+        return (int) metrics.evictions();
+    }
+
+    /**
+     * Exposes the total time used to insert elements.
+     *
+     * @return insertion time (ms)
+     */
+    public long getInsertionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.snapshot().getPutLatency().getTotalNanos());
+    }
+
+    /**
+     * Exposes the number of attempted insertions.
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return metrics.snapshot().getPuts();
+    }
+
+    /**
+     * Returns the average time for insertions.
+     *
+     * @return avg insertion time (ms)
+     */
+    public double getAvgInsertionTime() {
+        return metrics.snapshot().getPutLatency().getMean() / 1_000_000d;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Exposes the number of removal notifications dropped because the listener fell behind.
+     *
+     * @return dropped notifications
+     */
+    public long getDroppedNotifications() {
+        return notifier == null ? 0L : notifier.getDropped();
+    }
+
+    /**
+     * Delivers the pending removal notifications and stops the notification thread, if any.
+     */
+    @Override
+    public void close() {
+        if (notifier != null) {
+            notifier.close();
+        }
+    }
+
+    private void notifyRemoval(final K k, final V v, final RemovalCause cause) {
+        if (notifier != null) {
+            notifier.publish(k, v, cause);
+        }
+    }
+
+    private LFUEngine<K, V> segmentFor(final K k) {
+        int h = requireNonNull(k, "Null keys are not supported").hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+}
@@ -0,0 +1,132 @@
+package org.oka.effectivejava.cache.java;
+
+/**
+ * Probabilistic estimator of the popularity of a key within a time window.
+ * <p>
+ * It is a count-min sketch with four rows of 4-bit counters packed in a {@code long[]} (sixteen counters per slot).
+ * The counters saturate at 15 and, once the number of recorded increments reaches the sample size, all of them are
+ * halved so the sketch keeps favouring the recent history.
+ */
+final class FrequencySketch {
+    /**
+     * Seeds of the four hash functions (one per row).
+     */
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    /**
+     * Mask used to clear the high bit of every counter after shifting them to the right.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+    /**
+     * Mask with the low bit of every counter set.
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+    /**
+     * Max value of a 4-bit counter.
+     */
+    private static final int MAX_COUNT = 15;
+    /**
+     * Packed 4-bit counters.
+     */
+    private final long[] table;
+    /**
+     * Mask used to map a hash to a slot of the table.
+     */
+    private final int tableMask;
+    /**
+     * Number of increments that triggers the halving of every counter.
+     */
+    private final int sampleSize;
+    /**
+     * Number of increments since the last halving.
+     */
+    private int size;
+
+    /**
+     * Creates a sketch sized for the given number of entries.
+     *
+     * @param maximumSize expected number of entries in the cache.
+     */
+    FrequencySketch(final int maximumSize) {
+        int maximum = Math.max(1, Math.min(maximumSize, 1 << 30));
+        int tableSize = Integer.highestOneBit(maximum - 1) << 1;
+        this.table = new long[Math.max(1, tableSize)];
+        this.tableMask = table.length - 1;
+        this.sampleSize = 10 * maximum;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the element, up to 15.
+     *
+     * @param e element to look up.
+     * @return estimated frequency.
+     */
+    int frequency(final Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records one more occurrence of the element, halving all the counters when the sample size is reached.
+     *
+     * @param e element to record.
+     */
+    void increment(final Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the number of increments since the last halving.
+     *
+     * @return sample count.
+     */
+    int sampleCount() {
+        return size;
+    }
+
+    private boolean incrementAt(final int i, final int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (count >>> 2)) >>> 1;
+    }
+
+    private int indexOf(final int item, final int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(final int x) {
+        int h = ((x >>> 16) ^ x) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
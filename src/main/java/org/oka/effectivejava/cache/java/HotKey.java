@@ -0,0 +1,50 @@
+package org.oka.effectivejava.cache.java;
+
+import lombok.Getter;
+
+/**
+ * Key detected as one of the most requested ones of a cache, with its estimated number of requests in the recent
+ * traffic.
+ *
+ * @param <K> Key
+ */
+@Getter
+public final class HotKey<K> {
+    /**
+     * Hot key.
+     */
+    private final K key;
+    /**
+     * Estimated number of recent requests. Never below the real number.
+     */
+    private final long count;
+    /**
+     * Max overestimation of the count.
+     */
+    private final long error;
+    /**
+     * Whether the key is served from the near cache.
+     */
+    private final boolean nearCached;
+
+    HotKey(final K key, final long count, final long error, final boolean nearCached) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+        this.nearCached = nearCached;
+    }
+
+    /**
+     * Returns the number of recent requests the key is guaranteed to have had.
+     *
+     * @return count minus error
+     */
+    public long getGuaranteedCount() {
+        return count - error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + count + (error == 0L ? "" : " +/- " + error) + (nearCached ? " near-cached" : "");
+    }
+}
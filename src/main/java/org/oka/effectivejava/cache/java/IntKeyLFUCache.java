@@ -0,0 +1,222 @@
+package org.oka.effectivejava.cache.java;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * LFU cache of int keys / value (V) with the semantics of {@link LFUCacheService} (bounded by number of entries), but
+ * without boxing the keys nor allocating on {@link #get(int)} and on updates.
+ * <p>
+ * Keys live in an {@code int[]} and values in an {@code Object[]}, at the index of the entry given by a
+ * {@link PrimitiveLFUPolicy}, which keeps the frequencies and links in parallel {@code int[]} arrays. Keys are found
+ * through an open-addressing hash table of entry indexes with linear probing (at most half full) and backward shift
+ * deletion, so there are no tombstones.
+ *
+ * @param <V> Value
+ */
+public final class IntKeyLFUCache<V> {
+    /**
+     * Max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Empty slot of the hash table.
+     */
+    private static final int EMPTY = 0;
+    /**
+     * Key of every entry.
+     */
+    private final int[] keys;
+    /**
+     * Value of every entry.
+     */
+    private final Object[] values;
+    /**
+     * Hash table of entry indexes plus one, so zero means empty.
+     */
+    private final int[] table;
+    /**
+     * Mask used to map a hash to a slot of the table.
+     */
+    private final int mask;
+    /**
+     * Frequencies and eviction order of the entries.
+     */
+    private final PrimitiveLFUPolicy policy;
+    /**
+     * Holds the number of misses when using the cache.
+     */
+    @Getter
+    private long misses = 0L;
+    /**
+     * Holds the number of hits.
+     */
+    @Getter
+    private long hits = 0L;
+    /**
+     * Holds the number of evictions.
+     */
+    @Getter
+    private long evictions = 0L;
+
+    /**
+     * Creates a cache with the default capacity.
+     */
+    public IntKeyLFUCache() {
+        this(MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache holding up to the given number of entries.
+     *
+     * @param maximumSize max number of entries.
+     */
+    public IntKeyLFUCache(final int maximumSize) {
+        this.policy = new PrimitiveLFUPolicy(maximumSize);
+        this.keys = new int[maximumSize];
+        this.values = new Object[maximumSize];
+        this.table = new int[tableSize(maximumSize)];
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * Returns the cached value for the key.
+     *
+     * @param key Key to use in the lookup.
+     * @return V cached value. Null if it not exists.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(final int key) {
+        int entry = find(key);
+        if (entry == PrimitiveLFUPolicy.NIL) {
+            misses++;
+            return null;
+        }
+        hits++;
+        policy.touch(entry);
+        return (V) values[entry];
+    }
+
+    /**
+     * Add a new key/value to the cache. A replacement counts as one more use of the key.
+     *
+     * @param key   key.
+     * @param value V Value.
+     */
+    public synchronized void put(final int key, final V value) {
+        int entry = find(key);
+        if (entry != PrimitiveLFUPolicy.NIL) {
+            values[entry] = value;
+            policy.touch(entry);
+            return;
+        }
+        if (policy.isFull()) {
+            int victim = policy.evict();
+            delete(keys[victim]);
+            values[victim] = null;
+            evictions++;
+        }
+        entry = policy.add();
+        keys[entry] = key;
+        values[entry] = value;
+        insert(key, entry);
+    }
+
+    /**
+     * Returns the frequency of the key, without touching it.
+     *
+     * @param key Key to use in the lookup.
+     * @return frequency. Zero if it not exists.
+     */
+    public synchronized int getFrequency(final int key) {
+        int entry = find(key);
+        return entry == PrimitiveLFUPolicy.NIL ? 0 : policy.frequency(entry);
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return policy.size();
+    }
+
+    /**
+     * Exposes current Cached Items storage. Meant for diagnostics: it boxes every key.
+     *
+     * @return Map<Integer, V>
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Map<Integer, V> getCachedItemStorage() {
+        Map<Integer, V> mapToReturn = new HashMap<>(policy.size());
+        policy.forEach(entry -> mapToReturn.put(keys[entry], (V) values[entry]));
+        return unmodifiableMap(mapToReturn);
+    }
+
+    /**
+     * Exposes current Cached Items usage statistics. Meant for diagnostics: it boxes every key and frequency.
+     *
+     * @return Map<Integer, Integer>
+     */
+    public synchronized Map<Integer, Integer> getCachedItemStats() {
+        Map<Integer, Integer> mapToReturn = new HashMap<>(policy.size());
+        policy.forEach(entry -> mapToReturn.put(keys[entry], policy.frequency(entry)));
+        return unmodifiableMap(mapToReturn);
+    }
+
+    private int find(final int key) {
+        int slot = hash(key) & mask;
+        int entryPlusOne = table[slot];
+        while (entryPlusOne != EMPTY) {
+            if (keys[entryPlusOne - 1] == key) {
+                return entryPlusOne - 1;
+            }
+            slot = (slot + 1) & mask;
+            entryPlusOne = table[slot];
+        }
+        return PrimitiveLFUPolicy.NIL;
+    }
+
+    private void insert(final int key, final int entry) {
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void delete(final int key) {
+        int hole = hash(key) & mask;
+        while (keys[table[hole] - 1] != key) {
+            hole = (hole + 1) & mask;
+        }
+        int slot = (hole + 1) & mask;
+        while (table[slot] != EMPTY) {
+            int ideal = hash(keys[table[slot] - 1]) & mask;
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[hole] = EMPTY;
+    }
+
+    private static int hash(final int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(final int maximumSize) {
+        int size = 2;
+        while (size < 2L * maximumSize) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
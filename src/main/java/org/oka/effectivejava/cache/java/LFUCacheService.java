@@ -1,87 +1,419 @@
 package org.oka.effectivejava.cache.java;
 
-import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
+import com.google.common.base.Ticker;
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalCause;
+import org.oka.effectivejava.cache.RemovalListener;
+import org.oka.effectivejava.cache.RemovalNotifier;
+import org.oka.effectivejava.cache.Serializer;
+import org.oka.effectivejava.cache.SnapshotReader;
+import org.oka.effectivejava.cache.SnapshotWriter;
+import org.oka.effectivejava.cache.Weigher;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.unmodifiableMap;
-import static java.util.stream.Collectors.toMap;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
 
 /**
  * Manages a generic a cache service of key (K) / value (V).
+ * <p>
+ * Reads never take the lock: the lookup is a plain concurrent map read and the access is recorded in a lossy, striped
+ * {@link ReadBuffer}. The recorded accesses are applied to the frequencies in batches, by whichever thread gets the
+ * lock when a stripe fills up, and before every write or query of the statistics. Under heavy contention some accesses
+ * may be dropped, so the frequencies are approximate, but a read never waits for a writer.
+ * <p>
+ * The cache is bounded either by a maximum number of entries (100.000 by default) or, when built with a
+ * {@link Weigher}, by a maximum total weight such as a memory budget in bytes.
+ * <p>
+ * Misses can be filled through {@link #get(Object, Function)}: concurrent misses on the same key share a single
+ * in-flight load, and the loader runs outside the cache lock.
+ * <p>
+ * Batches of keys go through {@link #getAll(Collection)} and {@link #putAll(Map)}, taking the cache lock once per
+ * batch. {@link #getAll(Collection, Function)} loads all the missing keys with a single call to a bulk loader.
+ * <p>
+ * Entries may have a time-to-live, given on {@link #put(Object, Object, Duration)} or by default for the whole cache.
+ * Expired entries are never returned and they are removed in amortized O(1) by a {@link TimerWheel}, advanced on every
+ * cache operation and, optionally, by a maintenance thread (released on {@link #close()}).
+ * <p>
+ * Frequencies only grow, so an entry which was hot long ago would never be evicted. Optionally they age: every given
+ * number of operations, or every given time, they are all halved. Aging relabels the frequency buckets of the
+ * {@link LFUEngine} instead of visiting the entries, so it costs O(number of distinct frequencies) under the lock.
+ * <p>
+ * Optionally, the most requested keys are detected online by a Space-Saving sketch fed with the drained reads, and
+ * served from a near cache: an immutable map of the hot keys to their entries, replaced on every refresh. A near cache
+ * hit skips the read buffer and only bumps a striped counter of the entry, added to its frequency on the next refresh,
+ * so hot keys do not contend on the buffer nor on the lock. Values are never stale, since the near cache points to the
+ * live entries and drops the ones leaving the cache; only their frequencies lag, by up to one refresh interval.
+ * {@link #getHotKeys()} exposes the detected keys.
+ * <p>
+ * Entries are indexed by a {@link java.util.concurrent.ConcurrentHashMap}, so null keys are rejected with a
+ * {@link NullPointerException}.
+ * <p>
+ * Hits, misses, evictions and the get, put and eviction latencies are exposed through {@link CacheMetrics}.
+ * <p>
+ * Removed entries (evicted, expired or replaced) can be observed with a {@link RemovalListener}. Notifications are only
+ * enqueued by the cache operations and delivered in batches on a dedicated thread, released on {@link #close()}. An
+ * eviction listener, instead, gets the entries evicted for size on the evicting thread and under the lock, so they can
+ * be handed off to another tier in the same order as the writes of their keys.
+ * <p>
+ * The contents can be observed without copies through the read-only live view of {@link #asMap()},
+ * {@link #forEach(BiConsumer)} and {@link #forEachFrequency(ObjIntConsumer)}, which never take the lock. The
+ * getCachedItem methods return consistent point-in-time copies instead.
+ * <p>
+ * When built with key and value {@link Serializer}s, the entries and their frequencies can be saved with
+ * {@link #snapshot(Path)} and loaded into a new cache with {@link #restore(Path)}, so it starts warm.
  *
  * @param <K> Key
  * @param <V> Value
  */
-@Slf4j
-public final class LFUCacheService<K, V> {
+public final class LFUCacheService<K, V> implements Cache<K, V>, AutoCloseable {
     /**
      * Max size of the cache storage.
      */
     private static final int MAX_SIZE = 100_000;
     /**
-     * Stores the key/value.
+     * Max number of nodes moved per maintenance to merge the buckets left with the same frequency by an aging.
      */
-    private final HashMap<K, V> cachedItemStore = new HashMap<>(MAX_SIZE);
+    private static final int MERGE_BUDGET = 32;
     /**
-     * Store the number occurrences of each K key.
+     * Counters of the hot key sketch per near-cached key.
      */
-    private final HashMap<K, Integer> cachedItemStats = new HashMap<>(MAX_SIZE);
+    private static final int COUNTERS_PER_HOT_KEY = 8;
     /**
-     * Stores the frequency vs the K entities.
+     * Min share of the recent requests a key needs to be near-cached.
      */
-    private final TreeMap<Integer, LinkedList<K>> cachedItemFreq = new TreeMap<>();
+    private static final double HOT_KEY_SHARE = 0.01d;
     /**
-     * Holds the number of misses when using the cache service.
+     * Default period of the refresh of the hot keys.
      */
-    @Getter
-    private Integer misses = 0;
+    private static final Duration HOT_KEY_REFRESH_INTERVAL = Duration.ofSeconds(1);
     /**
-     * Holds the number of hits.
+     * One near cache hit out of this many (a power of two) tries to refresh the hot keys, in case no write does.
      */
-    @Getter
-    private Integer hits = 0;
+    private static final int REFRESH_PROBE = 1 << 10;
     /**
-     * Holds the number of evictions.
+     * O(1) LFU engine holding the key/value pairs and their frequencies.
      */
-    @Getter
-    private Integer evictions = 0;
+    private final LFUEngine<K, V> engine;
     /**
-     * Holds the total time used to insert elements.
+     * Schedules the expiration of the entries having a time-to-live.
      */
-    @Getter
-    private long insertionTime = 0L;
+    private final TimerWheel<K, V> timerWheel;
     /**
-     * Holds the number of attempted insertions.
+     * Source of time used by the expiration.
      */
-    @Getter
-    private long insertions = 0L;
+    private final Ticker ticker;
+    /**
+     * Default time-to-live of the entries. Null when entries do not expire by default.
+     */
+    private final Duration expireAfter;
+    /**
+     * Optional thread advancing the timer wheel while the cache is idle.
+     */
+    private final ScheduledExecutorService maintenance;
+    /**
+     * Delivers the removal notifications. Null when there is no removal listener.
+     */
+    private final RemovalNotifier<K, V> notifier;
+    /**
+     * Number of operations after which the frequencies are halved. Zero when they do not age by operations.
+     */
+    private final long ageAfterOperations;
+    /**
+     * Time after which the frequencies are halved, in ticker nanos. Zero when they do not age by time.
+     */
+    private final long ageAfterNanos;
+    /**
+     * Operations applied to the frequencies since the last aging.
+     */
+    private long operationsSinceAging;
+    /**
+     * Ticker time of the last aging.
+     */
+    private long lastAging;
+    /**
+     * Whether the engine still has buckets to merge after an aging.
+     */
+    private boolean merging;
+    /**
+     * Holds the number of agings.
+     */
+    private long agings;
+    /**
+     * Finds the most requested keys. Null when hot keys are not detected.
+     */
+    private final SpaceSavingSketch<K> hotKeySketch;
+    /**
+     * Max number of near-cached keys.
+     */
+    private final int maxHotKeys;
+    /**
+     * Period of the refresh of the hot keys, in ticker nanos.
+     */
+    private final long hotKeyRefreshNanos;
+    /**
+     * Ticker time of the last refresh of the hot keys.
+     */
+    private long lastHotKeyRefresh;
+    /**
+     * Near cache: immutable map of the hot keys to their nodes, replaced on every refresh.
+     */
+    private volatile Map<K, HotEntry<K, V>> nearCache = emptyMap();
+    /**
+     * Near cache hits already applied to the frequencies.
+     */
+    private long nearCacheHits;
+    /**
+     * Receives the entries evicted for size synchronously, under the lock. Null when there is none.
+     */
+    private final RemovalListener<K, V> evictionListener;
+    /**
+     * Converts the keys from/to bytes in the snapshots. Null when snapshots are not supported.
+     */
+    private final Serializer<K> keySerializer;
+    /**
+     * Converts the values from/to bytes in the snapshots. Null when snapshots are not supported.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Guards the LFU engine and the timer wheel. Readers only try to take it, to drain the read buffer.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    /**
+     * Accesses not yet applied to the frequencies.
+     */
+    private final ReadBuffer<LFUEngine.Node<K, V>> readBuffer = new ReadBuffer<>();
+    /**
+     * Whether any entry has been stored with a time-to-live, so the timer wheel has to be advanced.
+     */
+    private volatile boolean expiring;
+    /**
+     * Loads in progress, shared by the threads missing the same key.
+     */
+    private final ConcurrentHashMap<K, Load<V>> loadsInFlight = new ConcurrentHashMap<>();
+    /**
+     * Holds the number of loader executions.
+     */
+    private final LongAdder loads = new LongAdder();
+    /**
+     * Holds the number of loader executions ending with an exception.
+     */
+    private final LongAdder loadFailures = new LongAdder();
+    /**
+     * Holds the total time (ns) spent in the loader, apart from the cache time.
+     */
+    private final LongAdder loadTime = new LongAdder();
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Read-only live view of the cache.
+     */
+    private final Map<K, V> view = new LiveView();
 
     /**
-     * Returns the cached S value for the key K.
+     * Creates a cache service bounded by the default max number of entries.
+     */
+    public LFUCacheService() {
+        this(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Creates a cache service bounded by number of entries or by total weight.
+     *
+     * @param maximumSize     max number of entries. Defaults to 100.000 when no weight is configured.
+     * @param maximumWeight   max total weight of the entries. Requires a weigher.
+     * @param weigher         calculates the weight of every entry. Requires a max weight.
+     * @param expireAfter     default time-to-live of the entries. Entries do not expire by default.
+     * @param ticker          source of time of the expiration. Defaults to {@link Ticker#systemTicker()}.
+     * @param cleanupInterval period of the maintenance thread removing expired entries. No thread by default.
+     * @param ageAfterOperations number of reads and writes after which all the frequencies are halved. No aging by
+     *                        default.
+     * @param ageAfter        time after which all the frequencies are halved, measured with the ticker. Can be
+     *                        combined with ageAfterOperations: the first one reached ages the frequencies.
+     * @param hotKeys         max number of hot keys detected and served from the near cache. Disabled by default.
+     * @param hotKeyRefreshInterval period of the refresh of the hot keys, measured with the ticker. Defaults to one
+     *                        second. Requires hotKeys.
+     * @param removalListener receives the removed entries asynchronously. No notifications by default.
+     * @param removalQueueSize max number of pending notifications. Defaults to
+     *                        {@link RemovalNotifier#DEFAULT_QUEUE_SIZE}.
+     * @param overflowPolicy  what to do with a notification when the queue is full. Defaults to dropping it; blocking
+     *                        makes the writers wait (holding the cache lock) for a listener falling behind.
+     * @param evictionListener receives the entries evicted for size synchronously, under the cache lock, before the
+     *                        put evicting them returns. Meant for fast hand-offs, such as a lower cache tier.
+     * @param keySerializer   converts the keys from/to bytes in the snapshots. Requires a value serializer.
+     * @param valueSerializer converts the values from/to bytes in the snapshots. Requires a key serializer.
+     */
+    @Builder
+    private LFUCacheService(final Long maximumSize, final Long maximumWeight, final Weigher<K, V> weigher,
+                            final Duration expireAfter, final Ticker ticker, final Duration cleanupInterval,
+                            final Long ageAfterOperations, final Duration ageAfter, final Integer hotKeys,
+                            final Duration hotKeyRefreshInterval,
+                            final RemovalListener<K, V> removalListener, final Integer removalQueueSize,
+                            final RemovalNotifier.OverflowPolicy overflowPolicy,
+                            final RemovalListener<K, V> evictionListener, final Serializer<K> keySerializer,
+                            final Serializer<V> valueSerializer) {
+        if ((keySerializer == null) != (valueSerializer == null)) {
+            throw new IllegalStateException("Key and value serializers must be configured together");
+        }
+        if (removalListener == null && (removalQueueSize != null || overflowPolicy != null)) {
+            throw new IllegalStateException("Removal queue size and overflow policy require a removal listener");
+        }
+        if (hotKeys == null && hotKeyRefreshInterval != null) {
+            throw new IllegalStateException("Hot key refresh interval requires hot keys");
+        }
+        if (maximumSize != null && maximumWeight != null) {
+            throw new IllegalStateException("Maximum size and maximum weight can not be combined");
+        }
+        if ((maximumWeight == null) != (weigher == null)) {
+            throw new IllegalStateException("Maximum weight and weigher must be configured together");
+        }
+        if (maximumWeight != null) {
+            this.engine = new LFUEngine<>(requirePositive(maximumWeight), weigher);
+        } else {
+            long size = maximumSize == null ? MAX_SIZE : requirePositive(maximumSize);
+            this.engine = new LFUEngine<>(size, Weigher.singletonWeigher());
+        }
+        this.expireAfter = expireAfter == null ? null : requirePositive(expireAfter);
+        this.expiring = expireAfter != null;
+        this.ticker = ticker == null ? Ticker.systemTicker() : ticker;
+        this.timerWheel = new TimerWheel<>(this.ticker.read());
+        this.maintenance = cleanupInterval == null ? null : startMaintenance(requirePositive(cleanupInterval));
+        this.ageAfterOperations = ageAfterOperations == null ? 0L : requirePositive(ageAfterOperations);
+        this.ageAfterNanos = ageAfter == null ? 0L : requirePositive(ageAfter).toNanos();
+        this.lastAging = this.ticker.read();
+        if (hotKeys != null && hotKeys < 1) {
+            throw new IllegalArgumentException("Hot keys must be positive: " + hotKeys);
+        }
+        this.maxHotKeys = hotKeys == null ? 0 : hotKeys;
+        this.hotKeySketch = hotKeys == null ? null : new SpaceSavingSketch<>(hotKeys * COUNTERS_PER_HOT_KEY);
+        this.hotKeyRefreshNanos = requirePositive(hotKeyRefreshInterval == null ? HOT_KEY_REFRESH_INTERVAL
+                : hotKeyRefreshInterval).toNanos();
+        this.lastHotKeyRefresh = this.lastAging;
+        this.notifier = removalListener == null ? null : new RemovalNotifier<>(removalListener,
+                removalQueueSize == null ? RemovalNotifier.DEFAULT_QUEUE_SIZE : removalQueueSize,
+                overflowPolicy == null ? RemovalNotifier.OverflowPolicy.DROP : overflowPolicy,
+                "lfu-cache-removal");
+        this.evictionListener = evictionListener;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * Returns the cached S value for the key K, without blocking.
      *
      * @param t Key to use in the lookup.
      * @return S cached value. Null if it not exists.
      */
-    public synchronized V get(final K t) {
-        if (!cachedItemStore.containsKey(t)) {
-            misses = misses + 1;
-            return null;
+    public V get(final K t) {
+        requireNonNull(t, "Null keys are not supported");
+        final long timeBefore = System.nanoTime();
+        Map<K, HotEntry<K, V>> hot = nearCache;
+        if (!hot.isEmpty()) {
+            HotEntry<K, V> entry = hot.get(t);
+            if (entry != null && (!expiring || !hasExpired(entry.node, ticker.read()))) {
+                entry.hits.increment();
+                V value = entry.node.getValue();
+                metrics.recordGet(true, System.nanoTime() - timeBefore);
+                if ((ThreadLocalRandom.current().nextInt() & (REFRESH_PROBE - 1)) == 0 && evictionLock.tryLock()) {
+                    try {
+                        maintain();
+                    } finally {
+                        evictionLock.unlock();
+                    }
+                }
+                return value;
+            }
         }
-        hits = hits + 1;
-        Integer counter = cachedItemStats.get(t);
-        cachedItemFreq.get(counter).remove(t);
-        if (cachedItemFreq.get(counter).isEmpty()) {
-            cachedItemFreq.remove(counter);
+        LFUEngine.Node<K, V> node = engine.getNode(t);
+        V value = null;
+        if (node != null) {
+            value = node.getValue();
+            if (expiring && hasExpired(node, ticker.read())) {
+                tryExpire(node);
+                value = null;
+                node = null;
+            } else {
+                afterRead(node);
+            }
+        }
+        metrics.recordGet(node != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Returns the cached S value for the key K, loading it on a miss.
+     * <p>
+     * Only one thread runs the loader for a given key at a time: the rest of threads missing the same key wait for
+     * the in-flight load, without holding the cache lock, and get its result (or its exception). A null loaded
+     * value is returned but not cached.
+     *
+     * @param k      Key to use in the lookup.
+     * @param loader computes the value of the key on a miss.
+     * @return S cached or loaded value.
+     * @throws IllegalStateException if the loader of the key asks for the same key, which would wait for itself.
+     */
+    public V get(final K k, final Function<? super K, ? extends V> loader) {
+        V value = get(k);
+        if (value != null) {
+            return value;
+        }
+        Load<V> load = new Load<>(Thread.currentThread());
+        Load<V> inFlight = loadsInFlight.putIfAbsent(k, load);
+        if (inFlight != null) {
+            if (inFlight.owner == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of " + k);
+            }
+            return await(inFlight);
+        }
+        try {
+            value = getIfPresentQuietly(k);
+            if (value == null) {
+                value = load(k, loader);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadsInFlight.remove(k, load);
         }
-        cachedItemFreq.computeIfAbsent(counter + 1, f -> new LinkedList<>()).add(t);
-        cachedItemStats.put(t, counter + 1);
-        return cachedItemStore.get(t);
     }
 
     /**
@@ -90,75 +422,427 @@ public final class LFUCacheService<K, V> {
      * @param k K key.
      * @param v V Value.
      */
-    public synchronized void put(final K k, final V v) {
-        final long timeBefore = System.currentTimeMillis();
-        if (!cachedItemStore.containsKey(k)) {
-            if (cachedItemStore.size() >= MAX_SIZE) {
-                Integer lowestCount = cachedItemFreq.firstKey();
-                K removedKey = cachedItemFreq.get(lowestCount).remove(0);
-                if (cachedItemFreq.get(lowestCount).isEmpty()) {
-                    cachedItemFreq.remove(lowestCount);
+    public void put(final K k, final V v) {
+        put(k, v, expireAfter);
+    }
+
+    /**
+     * Add a new key/value to the cache service, expiring after the given time-to-live.
+     *
+     * @param k   K key.
+     * @param v   V Value.
+     * @param ttl time-to-live of the entry. Null if it does not expire.
+     */
+    public void put(final K k, final V v, final Duration ttl) {
+        final long timeBefore = System.nanoTime();
+        if (ttl != null) {
+            requirePositive(ttl);
+            expiring = true;
+        }
+        evictionLock.lock();
+        try {
+            putLocked(k, v, ttl);
+        } finally {
+            evictionLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Returns the cached values of the keys, taking the cache lock once for the whole batch: lookups do not lock and
+     * the frequencies of the hits are updated (and expired entries removed) together afterwards.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values, in the order of the keys. Missing keys are absent.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        final long timeBefore = System.nanoTime();
+        Map<K, V> found = new LinkedHashMap<>(mapCapacity(keys.size()));
+        List<LFUEngine.Node<K, V>> hits = new ArrayList<>(keys.size());
+        List<LFUEngine.Node<K, V>> expired = new ArrayList<>();
+        final long now = expiring ? ticker.read() : 0L;
+        int requested = 0;
+        int hitCount = 0;
+        for (K k : keys) {
+            requested++;
+            LFUEngine.Node<K, V> node = engine.getNode(requireNonNull(k, "Null keys are not supported"));
+            if (node == null) {
+                continue;
+            }
+            V value = node.getValue();
+            if (expiring && hasExpired(node, now)) {
+                expired.add(node);
+            } else {
+                found.put(k, value);
+                hits.add(node);
+                hitCount++;
+            }
+        }
+        if (!hits.isEmpty() || !expired.isEmpty()) {
+            evictionLock.lock();
+            try {
+                final long maintainedAt = maintain();
+                hits.forEach(this::touchIfPresent);
+                for (LFUEngine.Node<K, V> node : expired) {
+                    if (node.bucket != null && hasExpired(node, maintainedAt)) {
+                        expire(node);
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        recordGets(hitCount, requested - hitCount, System.nanoTime() - timeBefore);
+        return found;
+    }
+
+    /**
+     * Returns the cached values of the keys, loading the missing ones with a single call to the bulk loader.
+     * <p>
+     * Loaded entries are cached with one {@link #putAll(Map)}, including those the loader returns for keys that were
+     * not requested, but only the requested keys are returned. Bulk loads are not shared with concurrent misses of
+     * the same keys.
+     *
+     * @param keys       Keys to use in the lookup.
+     * @param bulkLoader computes the values of the missing keys. Keys it does not return stay missing.
+     * @return Map<K, V> cached or loaded values, in the order of the keys.
+     */
+    public Map<K, V> getAll(final Collection<? extends K> keys,
+                            final Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        Map<K, V> found = getAll(keys);
+        Set<K> missing = new LinkedHashSet<>();
+        for (K k : keys) {
+            if (!found.containsKey(k)) {
+                missing.add(k);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        Map<K, V> loaded = loadAll(missing, bulkLoader);
+        Map<K, V> result = new LinkedHashMap<>(mapCapacity(found.size() + missing.size()));
+        for (K k : keys) {
+            V value = found.containsKey(k) ? found.get(k) : loaded.get(k);
+            if (value != null) {
+                result.put(k, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds all the key/value pairs to the cache service, taking the cache lock once for the whole batch. Entries are
+     * inserted in the iteration order of the map, evicting as needed.
+     *
+     * @param entries key/value pairs to add.
+     */
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final long timeBefore = System.nanoTime();
+        if (expireAfter != null) {
+            expiring = true;
+        }
+        evictionLock.lock();
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                putLocked(entry.getKey(), entry.getValue(), expireAfter);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        final long perEntry = (System.nanoTime() - timeBefore) / entries.size();
+        for (int i = 0; i < entries.size(); i++) {
+            metrics.recordPut(perEntry);
+        }
+    }
+
+    /**
+     * Saves the live entries and their frequencies into a snapshot file, replacing it atomically.
+     * <p>
+     * Entries are copied under the cache lock, so the snapshot is consistent, and written after releasing it. Reads
+     * never wait for a snapshot and writes only wait for the copy of the references, not for the serialization nor
+     * the file.
+     *
+     * @param path snapshot file.
+     * @throws IOException if the file can not be written.
+     */
+    @SuppressWarnings("unchecked")
+    public void snapshot(final Path path) throws IOException {
+        requireSerializers();
+        Object[] keys;
+        Object[] values;
+        int[] frequencies;
+        int[] count = new int[1];
+        evictionLock.lock();
+        try {
+            final long now = maintain();
+            keys = new Object[engine.size()];
+            values = new Object[keys.length];
+            frequencies = new int[keys.length];
+            engine.forEachNode(node -> {
+                if (!hasExpired(node, now)) {
+                    keys[count[0]] = node.getKey();
+                    values[count[0]] = node.getValue();
+                    frequencies[count[0]++] = node.getFrequency();
                 }
-                cachedItemStats.remove(removedKey);
-                cachedItemStore.remove(removedKey);
-                evictions++;
-                log.info("Cached Item: " + removedKey + " evicted!");
-            }
-            cachedItemStore.put(k, v);
-            cachedItemStats.put(k, 1);
-            cachedItemFreq.computeIfAbsent(1, f -> new LinkedList<>()).add(k);
-        } else {
-            int count = cachedItemStats.get(k);
-            cachedItemFreq.get(count).remove(k);
-            if (cachedItemFreq.get(count).isEmpty()) {
-                cachedItemFreq.remove(count);
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+        try (SnapshotWriter<K, V> writer = new SnapshotWriter<>(path, keySerializer, valueSerializer)) {
+            for (int i = 0; i < count[0]; i++) {
+                writer.write((K) keys[i], (V) values[i], frequencies[i]);
             }
-            cachedItemStats.put(k, count + 1);
-            cachedItemStore.put(k, v);
-            cachedItemFreq.computeIfAbsent(count + 1, f -> new LinkedList<>()).add(k);
+            writer.commit();
         }
-        final long timeAfter = System.currentTimeMillis();
-        this.insertionTime = this.insertionTime + (timeAfter - timeBefore);
-        this.insertions++;
     }
 
     /**
-     * Exposes current Cached Items storage.
+     * Loads the entries of a snapshot file, streaming it. Entries keep their frequencies (when higher than the
+     * cached ones) and get the default time-to-live. If the snapshot does not fit, the least frequently used entries
+     * are evicted as usual.
+     *
+     * @param path snapshot file.
+     * @throws IOException if the file can not be read or it is not a snapshot.
+     */
+    public void restore(final Path path) throws IOException {
+        requireSerializers();
+        try (SnapshotReader<K, V> reader = new SnapshotReader<>(path, keySerializer, valueSerializer)) {
+            reader.forEach(this::restoreEntry);
+        }
+    }
+
+    /**
+     * Removes the key from the cache, notifying the removal listener with {@link RemovalCause#EXPLICIT}.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached or had expired.
+     */
+    @Override
+    public V remove(final K k) {
+        requireNonNull(k, "Null keys are not supported");
+        evictionLock.lock();
+        try {
+            final long now = maintain();
+            LFUEngine.Node<K, V> node = engine.getNode(k);
+            if (node == null) {
+                return null;
+            }
+            if (hasExpired(node, now)) {
+                expire(node);
+                return null;
+            }
+            retireHotKey(node);
+            timerWheel.deschedule(node);
+            engine.remove(node);
+            notifyRemoval(k, node.getValue(), RemovalCause.EXPLICIT);
+            return node.getValue();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only live view of the cache, copying nothing. Reads through the view do not count as uses of the
+     * keys, expired entries are hidden and its iterators are weakly consistent: they never throw
+     * {@link java.util.ConcurrentModificationException} and may or may not reflect concurrent writes.
+     *
+     * @return Map<K, V> live view.
+     */
+    public Map<K, V> asMap() {
+        return view;
+    }
+
+    /**
+     * Returns the number of cached entries, without taking the lock. Expired entries not yet removed are counted.
+     *
+     * @return size
+     */
+    public int size() {
+        return engine.size();
+    }
+
+    /**
+     * Runs the action on every live entry, without taking the lock nor copying the entries. Weakly consistent, as the
+     * {@link #asMap()} iterators.
+     *
+     * @param action action to run on every key/value pair.
+     */
+    public void forEach(final BiConsumer<? super K, ? super V> action) {
+        final long now = expiring ? ticker.read() : 0L;
+        for (LFUEngine.Node<K, V> node : engine.nodes()) {
+            V value = node.getValue();
+            if (!hasExpired(node, now)) {
+                action.accept(node.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * Runs the action on every live key and its frequency, without taking the lock nor copying the entries. Weakly
+     * consistent, and the frequencies are approximate: accesses still in the read buffer are not counted, and a
+     * frequency may be read while a writer is changing it.
+     *
+     * @param action action to run on every key and its frequency.
+     */
+    public void forEachFrequency(final ObjIntConsumer<? super K> action) {
+        final long now = expiring ? ticker.read() : 0L;
+        for (LFUEngine.Node<K, V> node : engine.nodes()) {
+            LFUEngine.Bucket<K, V> bucket = node.bucket;
+            if (bucket != null && !hasExpired(node, now)) {
+                action.accept(node.getKey(), bucket.frequency);
+            }
+        }
+    }
+
+    /**
+     * Exposes current Cached Items storage as a consistent point-in-time copy, taken under the cache lock. Prefer
+     * {@link #asMap()} or {@link #forEach(BiConsumer)} when a live view is enough.
      *
      * @return Map<K, CacheItem < V>>
      */
     public Map<K, V> getCachedItemStorage() {
-        Map<K, V> mapToReturn = this.cachedItemStore
-                .entrySet()
-                .stream()
-                .collect(toMap(Map.Entry::getKey, p -> p.getValue()));
-        return unmodifiableMap(mapToReturn);
+        evictionLock.lock();
+        try {
+            maintain();
+            return unmodifiableMap(engine.storage());
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
-     * Exposes current Cached Items usage statistics.
+     * Exposes current Cached Items usage statistics as a consistent point-in-time copy, taken under the cache lock.
+     * Prefer {@link #forEachFrequency(ObjIntConsumer)} when approximate frequencies are enough.
      *
      * @return Map<K, CacheItem < V>>
      */
     public Map<K, Integer> getCachedItemStats() {
-        Map<K, Integer> mapToReturn = this.cachedItemStats
-                .entrySet()
-                .stream()
-                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
-        return unmodifiableMap(mapToReturn);
+        evictionLock.lock();
+        try {
+            maintain();
+            return unmodifiableMap(engine.stats());
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
-     * Exposes the frequencies of the cached items.
+     * Exposes the frequencies of the cached items as a consistent point-in-time copy, taken under the cache lock.
      *
      * @return Map<Integer, LinkedList < K>>
      */
     public Map<Integer, List<K>> getCachedItemFreq() {
-        Map<Integer, List<K>> mapToReturn = this.cachedItemFreq
-                .entrySet()
-                .stream()
-                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
-        return unmodifiableMap(mapToReturn);
+        evictionLock.lock();
+        try {
+            maintain();
+            return unmodifiableMap(engine.frequencies());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the number of misses.
+     *
+     * @return misses
+     */
+    public Integer getMisses() {
+        return (int) metrics.misses();
+    }
+
+    /**
+     * Exposes the number of hits.
+     *
+     * @return hits
+     */
+    public Integer getHits() {
+        return (int) metrics.hits();
+    }
+
+    /**
+     * Exposes the number of evictions.
+     *
+     * @return evictions
+     */
+    public Integer getEvictions() {
+        return (int) metrics.evictions();
+    }
+
+    /**
+     * Exposes the number of expired entries.
+     *
+     * @return expirations
+     */
+    public Integer getExpirations() {
+        return (int) metrics.expirations();
+    }
+
+    /**
+     * Exposes the total time used to insert elements.
+     *
+     * @return insertion time (ms)
+     */
+    public long getInsertionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.snapshot().getPutLatency().getTotalNanos());
+    }
+
+    /**
+     * Exposes the number of attempted insertions.
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return metrics.snapshot().getPuts();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Exposes the number of loader executions.
+     *
+     * @return loads
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * Exposes the number of loader executions ending with an exception.
+     *
+     * @return load failures
+     */
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Returns the average time spent in the loader.
+     *
+     * @return avg load time (ms)
+     */
+    public double getAvgLoadTime() {
+        return loadTime.sum() / 1_000_000d / loads.sum();
+    }
+
+    /**
+     * Returns the total weight of the cached items (the number of items when bounded by size).
+     *
+     * @return weighted size
+     */
+    public long getWeightedSize() {
+        evictionLock.lock();
+        try {
+            maintain();
+            return engine.weightedSize();
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
@@ -167,6 +851,518 @@ public final class LFUCacheService<K, V> {
      * @return avg insertion time (ms)
      */
     public double getAvgInsertionTime() {
-        return (double) this.insertionTime / this.insertions;
+        return metrics.snapshot().getPutLatency().getMean() / 1_000_000d;
+    }
+
+    /**
+     * Removes the expired entries. Operations on the cache do it too, so calling it is only needed to release the
+     * memory of an idle cache.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintain();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the number of removal notifications dropped because the listener fell behind.
+     *
+     * @return dropped notifications
+     */
+    public long getDroppedNotifications() {
+        return notifier == null ? 0L : notifier.getDropped();
+    }
+
+    /**
+     * Returns the most requested keys of the recent traffic, most requested first, as detected by the hot key sketch.
+     * Hot keys with enough traffic are served from the near cache.
+     *
+     * @return hot keys. Empty when hot keys are not detected.
+     */
+    public List<HotKey<K>> getHotKeys() {
+        if (hotKeySketch == null) {
+            return emptyList();
+        }
+        evictionLock.lock();
+        try {
+            maintain();
+            Map<K, HotEntry<K, V>> hot = nearCache;
+            List<HotKey<K>> hotKeys = new ArrayList<>();
+            for (SpaceSavingSketch.Counter<K> counter : hotKeySketch.top(maxHotKeys)) {
+                hotKeys.add(new HotKey<>(counter.getKey(), counter.getCount(), counter.getError(),
+                        hot.containsKey(counter.getKey())));
+            }
+            return hotKeys;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of gets served from the near cache.
+     *
+     * @return near cache hits
+     */
+    public long getNearCacheHits() {
+        evictionLock.lock();
+        try {
+            long pending = 0L;
+            for (HotEntry<K, V> entry : nearCache.values()) {
+                pending += entry.hits.sum();
+            }
+            return nearCacheHits + pending;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times the frequencies have been halved.
+     *
+     * @return agings
+     */
+    public long getAgings() {
+        evictionLock.lock();
+        try {
+            return agings;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the maintenance thread, if any, and delivers the pending removal notifications.
+     */
+    @Override
+    public void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        if (notifier != null) {
+            notifier.close();
+        }
+    }
+
+    private void putLocked(final K k, final V v, final Duration ttl) {
+        requireNonNull(k, "Null keys are not supported");
+        final long now = maintain();
+        operationsSinceAging++;
+        LFUEngine.Node<K, V> existing = engine.getNode(k);
+        if (existing != null && hasExpired(existing, now)) {
+            expire(existing);
+            existing = null;
+        }
+        final V oldValue = existing == null ? null : existing.getValue();
+        List<LFUEngine.Node<K, V>> evictedNodes = engine.put(k, v);
+        final long selectionNanos = evictedNodes.isEmpty() ? 0L : engine.lastEvictionNanos() / evictedNodes.size();
+        for (LFUEngine.Node<K, V> evicted : evictedNodes) {
+            final long evictionStart = System.nanoTime() - selectionNanos;
+            retireHotKey(evicted);
+            timerWheel.deschedule(evicted);
+            if (evictionListener != null) {
+                evictionListener.onRemoval(evicted.getKey(), evicted.getValue(), RemovalCause.SIZE);
+            }
+            notifyRemoval(evicted.getKey(), evicted.getValue(), RemovalCause.SIZE);
+            metrics.recordEviction(System.nanoTime() - evictionStart);
+        }
+        if (existing != null && existing.bucket != null) {
+            notifyRemoval(k, oldValue, RemovalCause.REPLACED);
+        }
+        LFUEngine.Node<K, V> node = engine.getNode(k);
+        if (node != null) {
+            timerWheel.deschedule(node);
+            if (ttl != null) {
+                node.expiration = now + ttl.toNanos();
+                timerWheel.schedule(node);
+            } else {
+                node.expiration = LFUEngine.NO_EXPIRATION;
+            }
+        }
+    }
+
+    private void restoreEntry(final K k, final V v, final int frequency) {
+        if (expireAfter != null) {
+            expiring = true;
+        }
+        evictionLock.lock();
+        try {
+            putLocked(k, v, expireAfter);
+            LFUEngine.Node<K, V> node = engine.getNode(k);
+            if (node != null && frequency > node.getFrequency()) {
+                engine.setFrequency(node, frequency);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void requireSerializers() {
+        if (keySerializer == null) {
+            throw new IllegalStateException("Snapshots require key and value serializers");
+        }
+    }
+
+    private void notifyRemoval(final K k, final V v, final RemovalCause cause) {
+        if (notifier != null) {
+            notifier.publish(k, v, cause);
+        }
+    }
+
+    private void afterRead(final LFUEngine.Node<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.FULL && evictionLock.tryLock()) {
+            try {
+                maintain();
+                touchIfPresent(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void tryExpire(final LFUEngine.Node<K, V> node) {
+        if (evictionLock.tryLock()) {
+            try {
+                final long now = maintain();
+                if (node.bucket != null && hasExpired(node, now)) {
+                    expire(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private long maintain() {
+        readBuffer.drain(this::touchIfPresent);
+        refreshHotKeysIfDue();
+        ageIfDue();
+        return expireEntries();
+    }
+
+    private void touchIfPresent(final LFUEngine.Node<K, V> node) {
+        if (node.bucket != null) {
+            engine.touch(node);
+            operationsSinceAging++;
+            if (hotKeySketch != null) {
+                hotKeySketch.offer(node.key, 1L);
+            }
+        }
+    }
+
+    private void refreshHotKeysIfDue() {
+        if (hotKeySketch == null) {
+            return;
+        }
+        final long now = ticker.read();
+        if (now - lastHotKeyRefresh < hotKeyRefreshNanos) {
+            return;
+        }
+        lastHotKeyRefresh = now;
+        Map<K, HotEntry<K, V>> previous = nearCache;
+        for (HotEntry<K, V> entry : previous.values()) {
+            applyNearCacheHits(entry);
+        }
+        Map<K, HotEntry<K, V>> next = new HashMap<>();
+        long minimum = (long) Math.ceil(hotKeySketch.total() * HOT_KEY_SHARE);
+        for (SpaceSavingSketch.Counter<K> counter : hotKeySketch.top(maxHotKeys)) {
+            LFUEngine.Node<K, V> node = engine.getNode(counter.getKey());
+            if (node == null || counter.getCount() - counter.getError() < Math.max(1L, minimum)) {
+                continue;
+            }
+            HotEntry<K, V> entry = previous.get(node.key);
+            next.put(node.key, entry != null && entry.node == node ? entry : new HotEntry<>(node));
+        }
+        nearCache = next.isEmpty() ? emptyMap() : unmodifiableMap(next);
+        hotKeySketch.decay();
+    }
+
+    private void applyNearCacheHits(final HotEntry<K, V> entry) {
+        final long hits = entry.hits.sumThenReset();
+        if (hits == 0L) {
+            return;
+        }
+        nearCacheHits += hits;
+        hotKeySketch.offer(entry.node.key, hits);
+        if (entry.node.bucket != null) {
+            engine.setFrequency(entry.node, (int) Math.min(Integer.MAX_VALUE, entry.node.getFrequency() + hits));
+            operationsSinceAging += hits;
+        }
+    }
+
+    private void retireHotKey(final LFUEngine.Node<K, V> node) {
+        Map<K, HotEntry<K, V>> hot = nearCache;
+        HotEntry<K, V> entry = hot.get(node.key);
+        if (entry != null && entry.node == node) {
+            Map<K, HotEntry<K, V>> next = new HashMap<>(hot);
+            next.remove(node.key);
+            nearCache = next.isEmpty() ? emptyMap() : unmodifiableMap(next);
+        }
+    }
+
+    private void ageIfDue() {
+        boolean due = ageAfterOperations > 0L && operationsSinceAging >= ageAfterOperations;
+        if (!due && ageAfterNanos > 0L) {
+            due = ticker.read() - lastAging >= ageAfterNanos;
+        }
+        if (due) {
+            engine.age();
+            agings++;
+            operationsSinceAging = 0L;
+            lastAging = ticker.read();
+            merging = true;
+        }
+        if (merging) {
+            merging = engine.mergeBuckets(MERGE_BUDGET);
+        }
+    }
+
+    private long expireEntries() {
+        if (!expiring) {
+            return 0L;
+        }
+        final long now = ticker.read();
+        timerWheel.advance(now, this::expire);
+        return now;
+    }
+
+    private boolean hasExpired(final LFUEngine.Node<K, V> node, final long now) {
+        final long expiration = node.expiration;
+        return expiration != LFUEngine.NO_EXPIRATION && expiration - now <= 0;
+    }
+
+    private void expire(final LFUEngine.Node<K, V> node) {
+        retireHotKey(node);
+        timerWheel.deschedule(node);
+        engine.remove(node);
+        metrics.recordExpiration();
+        notifyRemoval(node.getKey(), node.getValue(), RemovalCause.EXPIRED);
+    }
+
+    private ScheduledExecutorService startMaintenance(final Duration cleanupInterval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lfu-cache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = cleanupInterval.toNanos();
+        executor.scheduleWithFixedDelay(this::cleanUp, period, period, TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    private V getIfPresentQuietly(final K k) {
+        LFUEngine.Node<K, V> node = engine.getNode(k);
+        if (node == null) {
+            return null;
+        }
+        V value = node.getValue();
+        return expiring && hasExpired(node, ticker.read()) ? null : value;
+    }
+
+    private V load(final K k, final Function<? super K, ? extends V> loader) {
+        final long timeBefore = System.nanoTime();
+        V value;
+        try {
+            value = loader.apply(k);
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadTime.add(System.nanoTime() - timeBefore);
+        }
+        if (value != null) {
+            put(k, value);
+        }
+        return value;
+    }
+
+    private Map<K, V> loadAll(final Set<K> keys,
+                              final Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        final long timeBefore = System.nanoTime();
+        Map<K, V> loaded = new LinkedHashMap<>();
+        try {
+            Map<? extends K, ? extends V> values = bulkLoader.apply(unmodifiableSet(keys));
+            if (values != null) {
+                values.forEach((k, v) -> {
+                    if (k != null && v != null) {
+                        loaded.put(k, v);
+                    }
+                });
+            }
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadTime.add(System.nanoTime() - timeBefore);
+        }
+        putAll(loaded);
+        return loaded;
+    }
+
+    private void recordGets(final int hitCount, final int missCount, final long nanos) {
+        final int requests = hitCount + missCount;
+        if (requests == 0) {
+            return;
+        }
+        final long perKey = nanos / requests;
+        for (int i = 0; i < requests; i++) {
+            metrics.recordGet(i < hitCount, perKey);
+        }
+    }
+
+    private static int mapCapacity(final int size) {
+        return (int) Math.min(Integer.MAX_VALUE, size * 4L / 3 + 1);
+    }
+
+    private static <V> V await(final CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Duration requirePositive(final Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration must be positive: " + duration);
+        }
+        return duration;
+    }
+
+    private static long requirePositive(final long bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Cache bound must be positive: " + bound);
+        }
+        return bound;
+    }
+
+    /**
+     * Read-only live view over the nodes of the engine, hiding the expired entries.
+     */
+    private final class LiveView extends AbstractMap<K, V> {
+        /**
+         * Live entries of the view.
+         */
+        private final Set<Map.Entry<K, V>> entries = new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new LiveIterator();
+            }
+
+            @Override
+            public int size() {
+                return engine.size();
+            }
+        };
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(final Object key) {
+            LFUEngine.Node<K, V> node = engine.getNode((K) key);
+            if (node == null) {
+                return null;
+            }
+            V value = node.getValue();
+            return expiring && hasExpired(node, ticker.read()) ? null : value;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return engine.size();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public void forEach(final BiConsumer<? super K, ? super V> action) {
+            LFUCacheService.this.forEach(action);
+        }
+    }
+
+    /**
+     * Weakly consistent iterator over the live entries, skipping the expired ones.
+     */
+    private final class LiveIterator implements Iterator<Map.Entry<K, V>> {
+        /**
+         * Iterator over the nodes of the engine.
+         */
+        private final Iterator<LFUEngine.Node<K, V>> nodes = engine.nodes().iterator();
+        /**
+         * Time used to hide the expired entries.
+         */
+        private final long now = expiring ? ticker.read() : 0L;
+        /**
+         * Next entry to return. Null when it has not been looked up yet.
+         */
+        private Map.Entry<K, V> next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nodes.hasNext()) {
+                LFUEngine.Node<K, V> node = nodes.next();
+                V value = node.getValue();
+                if (!hasExpired(node, now)) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(node.getKey(), value);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+    /**
+     * Near-cached node, with the hits it got since the last refresh of the hot keys.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    private static final class HotEntry<K, V> {
+        private final LFUEngine.Node<K, V> node;
+        private final LongAdder hits = new LongAdder();
+
+        private HotEntry(final LFUEngine.Node<K, V> node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * In-flight load of a key, with the thread running the loader.
+     *
+     * @param <V> Value
+     */
+    private static final class Load<V> extends CompletableFuture<V> {
+        private final Thread owner;
+
+        private Load(final Thread owner) {
+            this.owner = owner;
+        }
     }
 }
@@ -0,0 +1,559 @@
+package org.oka.effectivejava.cache.java;
+
+import org.oka.effectivejava.cache.Weigher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableCollection;
+
+/**
+ * Non thread-safe LFU engine where every operation (hit, insertion and eviction) runs in O(1).
+ * <p>
+ * Each cached entry is a single {@link Node} linked into the {@link Bucket} holding all the entries with the same
+ * frequency. Buckets are kept in a doubly linked list ordered by ascending frequency, so the eviction candidate is
+ * always the oldest node of the first bucket.
+ * <p>
+ * The engine is bounded by a total weight: every node keeps the weight given by the {@link Weigher} when it was
+ * stored, and the least frequently used nodes are evicted until the new total fits in the maximum weight. Bounding by
+ * number of entries is the particular case of a weigher returning one.
+ * <p>
+ * Frequencies can be aged with {@link #age()}, which halves them by relabelling the buckets, without touching the nodes.
+ * Buckets ending up with the same frequency stay apart, next to each other, and are merged a few nodes at a time by
+ * {@link #mergeBuckets(int)}, so aging never pauses the cache for a pass over the entries.
+ * <p>
+ * Lookups ({@link #getNode(Object)}), the {@link #nodes()} view and the value and expiration of a node are safe to read
+ * from any thread, so a cache can serve reads without its lock; every other operation must be externally synchronized.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+final class LFUEngine<K, V> {
+    /**
+     * Upper bound of the initial capacity of the map, so a big weight budget does not preallocate a huge table.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 17;
+    /**
+     * Expiration of a node without time-to-live.
+     */
+    static final long NO_EXPIRATION = Long.MIN_VALUE;
+    /**
+     * Max total weight held by the engine.
+     */
+    private final long maxWeight;
+    /**
+     * Calculates the weight of every entry.
+     */
+    private final Weigher<K, V> weigher;
+    /**
+     * Stores the key/node.
+     */
+    private final ConcurrentHashMap<K, Node<K, V>> nodes;
+    /**
+     * Bucket with the lowest frequency.
+     */
+    private Bucket<K, V> lowest;
+    /**
+     * Bucket with the highest frequency.
+     */
+    private Bucket<K, V> highest;
+    /**
+     * Total weight of the stored nodes.
+     */
+    private long weightedSize;
+    /**
+     * Buckets relabelled by an aging to the frequency of the bucket before them, to be merged into it.
+     */
+    private final ArrayDeque<Bucket<K, V>> pendingMerges = new ArrayDeque<>();
+    /**
+     * Time the last put spent selecting and removing victims.
+     */
+    private long evictionNanos;
+
+    /**
+     * Creates an engine bounded by number of entries.
+     *
+     * @param maxSize max number of entries.
+     */
+    LFUEngine(final int maxSize) {
+        this(maxSize, Weigher.singletonWeigher());
+    }
+
+    /**
+     * Creates an engine bounded by the total weight of its entries.
+     *
+     * @param maxWeight max total weight.
+     * @param weigher   calculates the weight of every entry.
+     */
+    LFUEngine(final long maxWeight, final Weigher<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.nodes = new ConcurrentHashMap<>((int) Math.min(maxWeight, MAX_INITIAL_CAPACITY));
+    }
+
+    /**
+     * Returns the node for the key K without touching its frequency. Safe to call without synchronization.
+     *
+     * @param k Key to use in the lookup.
+     * @return node. Null if it not exists.
+     */
+    Node<K, V> getNode(final K k) {
+        return nodes.get(k);
+    }
+
+    /**
+     * Adds or replaces the key/value. A replacement counts as one more use of the key.
+     * <p>
+     * An entry heavier than the max weight is never stored: it is returned as evicted, together with the previous
+     * entry of the same key if there was one.
+     *
+     * @param k K key.
+     * @param v V value.
+     * @return the nodes evicted to make room for the new entry. Empty if nothing was evicted.
+     */
+    List<Node<K, V>> put(final K k, final V v) {
+        evictionNanos = 0L;
+        int weight = weigher.weigh(k, v);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for key " + k + ": " + weight);
+        }
+        Node<K, V> node = nodes.get(k);
+        if (weight > maxWeight) {
+            List<Node<K, V>> rejected = new ArrayList<>(2);
+            if (node != null) {
+                rejected.add(remove(node));
+            }
+            Node<K, V> oversized = new Node<>(k, v);
+            oversized.weight = weight;
+            rejected.add(oversized);
+            return rejected;
+        }
+        if (node != null) {
+            weightedSize += weight - node.weight;
+            node.value = v;
+            node.weight = weight;
+            touch(node);
+            return evictUntilFits(node);
+        }
+        node = new Node<>(k, v);
+        node.weight = weight;
+        weightedSize += weight;
+        List<Node<K, V>> evicted = evictUntilFits(null);
+        nodes.put(k, node);
+        Bucket<K, V> first = lowest;
+        if (first == null || first.frequency != 1) {
+            first = insertBucketAfter(null, 1);
+        }
+        first.append(node);
+        return evicted;
+    }
+
+    /**
+     * Returns the time the last {@link #put(Object, Object)} spent selecting and removing victims.
+     *
+     * @return eviction time (ns). Zero if the last put evicted nothing.
+     */
+    long lastEvictionNanos() {
+        return evictionNanos;
+    }
+
+    /**
+     * Removes the node from the engine.
+     *
+     * @param node node to remove.
+     * @return the removed node.
+     */
+    Node<K, V> remove(final Node<K, V> node) {
+        unlink(node);
+        nodes.remove(node.key);
+        weightedSize -= node.weight;
+        return node;
+    }
+
+    /**
+     * Removes the least frequently used node. Ties are resolved by removing the oldest node in the bucket.
+     *
+     * @return the evicted node. Null if the engine is empty.
+     */
+    Node<K, V> evict() {
+        return evictExcept(null);
+    }
+
+    /**
+     * Removes the least frequently used node other than the given one.
+     *
+     * @param keep node that must not be evicted.
+     * @return the evicted node. Null if there is no other node.
+     */
+    Node<K, V> evictExcept(final Node<K, V> keep) {
+        if (lowest == null) {
+            return null;
+        }
+        Node<K, V> victim = lowest.head;
+        if (victim == keep) {
+            victim = victim.next != null ? victim.next : lowest.next == null ? null : lowest.next.head;
+        }
+        return victim == null ? null : remove(victim);
+    }
+
+    /**
+     * Visits every node, from the least to the most frequently used.
+     *
+     * @param action action to run on every node.
+     */
+    void forEachNode(final Consumer<Node<K, V>> action) {
+        for (Bucket<K, V> bucket = lowest; bucket != null; bucket = bucket.next) {
+            for (Node<K, V> node = bucket.head; node != null; node = node.next) {
+                action.accept(node);
+            }
+        }
+    }
+
+    /**
+     * Returns a weakly consistent, read-only view of the nodes, in no particular order. It is safe to iterate from any
+     * thread, and it never throws {@link java.util.ConcurrentModificationException}.
+     *
+     * @return live nodes
+     */
+    Collection<Node<K, V>> nodes() {
+        return unmodifiableCollection(nodes.values());
+    }
+
+    /**
+     * Returns the total weight of the stored nodes.
+     *
+     * @return weighted size
+     */
+    long weightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return size
+     */
+    int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Copies the current key/value pairs.
+     *
+     * @return Map<K, V>
+     */
+    Map<K, V> storage() {
+        Map<K, V> copy = new HashMap<>(nodes.size());
+        nodes.forEach((k, node) -> copy.put(k, node.value));
+        return copy;
+    }
+
+    /**
+     * Copies the current frequency of every key.
+     *
+     * @return Map<K, Integer>
+     */
+    Map<K, Integer> stats() {
+        Map<K, Integer> copy = new HashMap<>(nodes.size());
+        nodes.forEach((k, node) -> copy.put(k, node.bucket.frequency));
+        return copy;
+    }
+
+    /**
+     * Copies the keys grouped by frequency, in ascending frequency order and in insertion order within a frequency.
+     *
+     * @return Map<Integer, List < K>>
+     */
+    Map<Integer, List<K>> frequencies() {
+        Map<Integer, List<K>> copy = new LinkedHashMap<>();
+        for (Bucket<K, V> bucket = lowest; bucket != null; bucket = bucket.next) {
+            List<K> keys = new ArrayList<>();
+            for (Node<K, V> node = bucket.head; node != null; node = node.next) {
+                keys.add(node.key);
+            }
+            copy.computeIfAbsent(bucket.frequency, frequency -> new ArrayList<>()).addAll(keys);
+        }
+        return copy;
+    }
+
+    /**
+     * Records one more use of the node, moving it to the bucket of the next frequency.
+     *
+     * @param node node to promote.
+     */
+    void touch(final Node<K, V> node) {
+        Bucket<K, V> current = node.bucket;
+        int frequency = current.frequency + 1;
+        Bucket<K, V> previous = current;
+        Bucket<K, V> target = current.next;
+        while (target != null && target.frequency < frequency) {
+            previous = target;
+            target = target.next;
+        }
+        if (target == null || target.frequency != frequency) {
+            target = insertBucketAfter(previous, frequency);
+        }
+        unlink(node);
+        target.append(node);
+    }
+
+    /**
+     * Moves the node to the bucket of the given frequency, as the newest node of the bucket. The bucket is looked up
+     * from the highest frequency down, so restoring nodes in ascending frequency order takes O(1) per node.
+     *
+     * @param node      node to move.
+     * @param frequency new frequency. Must be positive.
+     */
+    void setFrequency(final Node<K, V> node, final int frequency) {
+        if (frequency < 1) {
+            throw new IllegalArgumentException("Frequency must be positive: " + frequency);
+        }
+        if (node.bucket.frequency == frequency) {
+            return;
+        }
+        unlink(node);
+        Bucket<K, V> target = highest;
+        while (target != null && target.frequency > frequency) {
+            target = target.prev;
+        }
+        if (target == null || target.frequency != frequency) {
+            target = insertBucketAfter(target, frequency);
+        }
+        target.append(node);
+    }
+
+    /**
+     * Halves the frequency of every node, keeping at least one, so formerly hot entries can be evicted once they are
+     * no longer used. Runs in O(number of distinct frequencies): buckets are relabelled in place and the ones sharing a
+     * frequency afterwards are queued to be merged by {@link #mergeBuckets(int)}.
+     */
+    void age() {
+        for (Bucket<K, V> bucket = lowest; bucket != null; bucket = bucket.next) {
+            bucket.frequency = Math.max(1, bucket.frequency >>> 1);
+            if (bucket.prev != null && bucket.prev.frequency == bucket.frequency) {
+                pendingMerges.addLast(bucket);
+            }
+        }
+    }
+
+    /**
+     * Moves up to the given number of nodes from the buckets left with the same frequency by {@link #age()} into the
+     * bucket before them, behind its nodes.
+     *
+     * @param budget max number of nodes to move.
+     * @return true if there are still buckets to merge.
+     */
+    boolean mergeBuckets(final int budget) {
+        int moved = 0;
+        while (!pendingMerges.isEmpty() && moved < budget) {
+            Bucket<K, V> bucket = pendingMerges.peekFirst();
+            Bucket<K, V> target = bucket.prev;
+            if (bucket.head == null || target == null || target.frequency != bucket.frequency) {
+                pendingMerges.pollFirst();
+                continue;
+            }
+            Node<K, V> node = bucket.head;
+            unlink(node);
+            target.append(node);
+            moved++;
+        }
+        return !pendingMerges.isEmpty();
+    }
+
+    private List<Node<K, V>> evictUntilFits(final Node<K, V> protectedNode) {
+        if (weightedSize <= maxWeight) {
+            return emptyList();
+        }
+        final long evictionStart = System.nanoTime();
+        List<Node<K, V>> evicted = new ArrayList<>(1);
+        Node<K, V> victim = lowest == null ? null : lowest.head;
+        while (weightedSize > maxWeight && victim != null) {
+            Node<K, V> next = victim.next;
+            if (next == null && victim.bucket.next != null) {
+                next = victim.bucket.next.head;
+            }
+            if (victim != protectedNode) {
+                evicted.add(remove(victim));
+            }
+            victim = next;
+        }
+        evictionNanos = System.nanoTime() - evictionStart;
+        return evicted;
+    }
+
+    private void unlink(final Node<K, V> node) {
+        Bucket<K, V> bucket = node.bucket;
+        bucket.unlink(node);
+        if (bucket.head == null) {
+            removeBucket(bucket);
+        }
+    }
+
+    private Bucket<K, V> insertBucketAfter(final Bucket<K, V> previous, final int frequency) {
+        Bucket<K, V> bucket = new Bucket<>(frequency);
+        Bucket<K, V> next = previous == null ? lowest : previous.next;
+        bucket.prev = previous;
+        bucket.next = next;
+        if (next == null) {
+            highest = bucket;
+        } else {
+            next.prev = bucket;
+        }
+        if (previous == null) {
+            lowest = bucket;
+        } else {
+            previous.next = bucket;
+        }
+        return bucket;
+    }
+
+    private void removeBucket(final Bucket<K, V> bucket) {
+        if (bucket.prev == null) {
+            lowest = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            highest = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+        bucket.prev = null;
+        bucket.next = null;
+    }
+
+    /**
+     * Cached entry, linked with the rest of entries sharing its frequency.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    static final class Node<K, V> {
+        /**
+         * Key of the entry.
+         */
+        final K key;
+        /**
+         * Value of the entry.
+         */
+        volatile V value;
+        /**
+         * Weight of the entry when it was stored.
+         */
+        int weight;
+        /**
+         * Bucket holding the node.
+         */
+        Bucket<K, V> bucket;
+        /**
+         * Previous node in the bucket.
+         */
+        Node<K, V> prev;
+        /**
+         * Next node in the bucket.
+         */
+        Node<K, V> next;
+        /**
+         * Expiration time (ns), or {@link #NO_EXPIRATION} when the node does not expire.
+         */
+        volatile long expiration = NO_EXPIRATION;
+        /**
+         * Previous node in the timer wheel bucket.
+         */
+        Node<K, V> prevInTimer;
+        /**
+         * Next node in the timer wheel bucket. Null when the node does not expire.
+         */
+        Node<K, V> nextInTimer;
+
+        Node(final K key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        int getFrequency() {
+            return bucket.frequency;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Doubly linked list of the nodes having the same frequency.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    static final class Bucket<K, V> {
+        /**
+         * Frequency shared by all the nodes in the bucket. Only changed by aging.
+         */
+        int frequency;
+        /**
+         * Oldest node of the bucket.
+         */
+        Node<K, V> head;
+        /**
+         * Newest node of the bucket.
+         */
+        Node<K, V> tail;
+        /**
+         * Bucket with the closest lower (or, after an aging, the same) frequency.
+         */
+        Bucket<K, V> prev;
+        /**
+         * Bucket with the closest higher (or, after an aging, the same) frequency.
+         */
+        Bucket<K, V> next;
+
+        Bucket(final int frequency) {
+            this.frequency = frequency;
+        }
+
+        void append(final Node<K, V> node) {
+            node.bucket = this;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void unlink(final Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.bucket = null;
+        }
+    }
+}
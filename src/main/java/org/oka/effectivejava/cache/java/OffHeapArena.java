@@ -0,0 +1,297 @@
+package org.oka.effectivejava.cache.java;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Non thread-safe slab allocator of byte chunks in direct (off-heap) memory.
+ * <p>
+ * The arena reserves direct {@link ByteBuffer} slabs of a fixed size on demand, up to a maximum number of slabs. Each
+ * payload is stored in a chunk made of a 4 bytes length header and the payload itself, rounded up to a size class
+ * (classes grow by 25%, starting at 16 bytes). Freed chunks are pushed to the free list of their class and reused by
+ * later allocations of the same class; new chunks are bump-allocated at the end of the last slab.
+ * <p>
+ * An address packs the slab index (high 32 bits) and the offset in the slab (low 32 bits). Compaction is driven by
+ * the owner of the addresses, which knows the live chunks: {@link #beginCompaction()}, then {@link #move(long)} every
+ * live chunk in ascending address order, then {@link #endCompaction()} to release the emptied slabs.
+ */
+final class OffHeapArena {
+    /**
+     * Address returned when there is no room for the chunk.
+     */
+    static final long NO_ROOM = -1L;
+    /**
+     * Size of the length header of every chunk.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES;
+    /**
+     * Smallest chunk size.
+     */
+    private static final int MIN_CHUNK_SIZE = 16;
+    /**
+     * Alignment of every chunk size.
+     */
+    private static final int ALIGNMENT = 8;
+    /**
+     * Size of every slab.
+     */
+    private final int slabSize;
+    /**
+     * Reserved slabs. Slabs beyond slabCount are null.
+     */
+    private final ByteBuffer[] slabs;
+    /**
+     * Chunk size of every size class, ascending.
+     */
+    private final int[] chunkSizes;
+    /**
+     * Free chunk addresses of every size class.
+     */
+    private final long[][] freeLists;
+    /**
+     * Number of free chunks of every size class.
+     */
+    private final int[] freeCounts;
+    /**
+     * Number of reserved slabs.
+     */
+    private int slabCount;
+    /**
+     * Index of the slab where chunks are bump-allocated.
+     */
+    private int currentSlab = -1;
+    /**
+     * Offset of the next bump allocation in the current slab.
+     */
+    private int currentOffset;
+    /**
+     * Total size of the live chunks.
+     */
+    private long usedBytes;
+    /**
+     * Total size of the live payloads (without headers nor rounding).
+     */
+    private long payloadBytes;
+
+    /**
+     * Creates an arena.
+     *
+     * @param slabSize size of every slab.
+     * @param maxSlabs max number of slabs.
+     */
+    OffHeapArena(final int slabSize, final int maxSlabs) {
+        if (slabSize < MIN_CHUNK_SIZE || maxSlabs < 1) {
+            throw new IllegalArgumentException("Invalid arena: " + maxSlabs + " slabs of " + slabSize + " bytes");
+        }
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[maxSlabs];
+        this.chunkSizes = sizeClasses(slabSize);
+        this.freeLists = new long[chunkSizes.length][];
+        this.freeCounts = new int[chunkSizes.length];
+        Arrays.fill(freeLists, new long[0]);
+    }
+
+    /**
+     * Returns whether a payload of the given length could ever be stored.
+     *
+     * @param length payload length.
+     * @return true if the chunk fits in a slab.
+     */
+    boolean fits(final int length) {
+        return length <= slabSize - HEADER_SIZE;
+    }
+
+    /**
+     * Stores the payload in a free chunk.
+     *
+     * @param payload bytes to store.
+     * @return address of the chunk, or {@link #NO_ROOM} when the arena is full.
+     */
+    long allocate(final byte[] payload) {
+        if (!fits(payload.length)) {
+            return NO_ROOM;
+        }
+        int sizeClass = sizeClass(HEADER_SIZE + payload.length);
+        long address;
+        if (freeCounts[sizeClass] > 0) {
+            address = freeLists[sizeClass][--freeCounts[sizeClass]];
+        } else {
+            address = bump(chunkSizes[sizeClass]);
+            if (address == NO_ROOM) {
+                return NO_ROOM;
+            }
+        }
+        ByteBuffer slab = slabs[slab(address)];
+        int offset = offset(address);
+        slab.putInt(offset, payload.length);
+        slab.duplicate().position(offset + HEADER_SIZE).put(payload);
+        usedBytes += chunkSizes[sizeClass];
+        payloadBytes += payload.length;
+        return address;
+    }
+
+    /**
+     * Returns a read-only view of the payload stored at the address.
+     *
+     * @param address chunk address.
+     * @return buffer positioned at the payload and limited to its length.
+     */
+    ByteBuffer read(final long address) {
+        ByteBuffer slab = slabs[slab(address)];
+        int offset = offset(address);
+        int length = slab.getInt(offset);
+        return slab.asReadOnlyBuffer()
+                .limit(offset + HEADER_SIZE + length)
+                .position(offset + HEADER_SIZE)
+                .slice();
+    }
+
+    /**
+     * Releases the chunk, making it available to later allocations of its size class.
+     *
+     * @param address chunk address.
+     */
+    void free(final long address) {
+        int length = slabs[slab(address)].getInt(offset(address));
+        int sizeClass = sizeClass(HEADER_SIZE + length);
+        if (freeCounts[sizeClass] == freeLists[sizeClass].length) {
+            freeLists[sizeClass] = Arrays.copyOf(freeLists[sizeClass], Math.max(16, freeCounts[sizeClass] * 2));
+        }
+        freeLists[sizeClass][freeCounts[sizeClass]++] = address;
+        usedBytes -= chunkSizes[sizeClass];
+        payloadBytes -= length;
+    }
+
+    /**
+     * Starts a compaction: forgets the free lists and restarts the bump allocation at the first slab.
+     */
+    void beginCompaction() {
+        Arrays.fill(freeCounts, 0);
+        currentSlab = slabCount == 0 ? -1 : 0;
+        currentOffset = 0;
+    }
+
+    /**
+     * Moves a live chunk to the bump allocation point. Chunks must be moved in ascending address order, so a chunk is
+     * never overwritten before being moved.
+     *
+     * @param address current address of the chunk.
+     * @return new address of the chunk.
+     */
+    long move(final long address) {
+        ByteBuffer source = slabs[slab(address)];
+        int offset = offset(address);
+        int length = source.getInt(offset);
+        int chunkSize = chunkSizes[sizeClass(HEADER_SIZE + length)];
+        long target = bump(chunkSize);
+        if (target != address) {
+            byte[] chunk = new byte[HEADER_SIZE + length];
+            source.duplicate().position(offset).get(chunk);
+            slabs[slab(target)].duplicate().position(offset(target)).put(chunk);
+        }
+        return target;
+    }
+
+    /**
+     * Ends a compaction, releasing the slabs left empty.
+     */
+    void endCompaction() {
+        int usedSlabs = currentSlab + 1;
+        for (int i = usedSlabs; i < slabCount; i++) {
+            slabs[i] = null;
+        }
+        slabCount = usedSlabs;
+    }
+
+    /**
+     * Releases every slab.
+     */
+    void clear() {
+        Arrays.fill(slabs, null);
+        Arrays.fill(freeCounts, 0);
+        slabCount = 0;
+        currentSlab = -1;
+        currentOffset = 0;
+        usedBytes = 0;
+        payloadBytes = 0;
+    }
+
+    /**
+     * Returns the total size of the live chunks.
+     *
+     * @return used bytes.
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the total size of the live payloads.
+     *
+     * @return payload bytes.
+     */
+    long payloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * Returns the direct memory reserved by the slabs.
+     *
+     * @return reserved bytes.
+     */
+    long reservedBytes() {
+        return (long) slabCount * slabSize;
+    }
+
+    /**
+     * Returns the ratio of the handed out memory (every slab but the unused tail of the current one) not holding live
+     * chunks: free chunks and slab tails skipped because the next chunk did not fit.
+     *
+     * @return fragmentation between 0 and 1.
+     */
+    double fragmentation() {
+        long handedOut = currentSlab < 0 ? 0 : (long) currentSlab * slabSize + currentOffset;
+        return handedOut == 0 ? 0d : (double) (handedOut - usedBytes) / handedOut;
+    }
+
+    private long bump(final int chunkSize) {
+        if (currentSlab < 0 || currentOffset + chunkSize > slabSize) {
+            if (currentSlab + 1 >= slabs.length) {
+                return NO_ROOM;
+            }
+            currentSlab++;
+            currentOffset = 0;
+            if (currentSlab == slabCount) {
+                slabs[slabCount++] = ByteBuffer.allocateDirect(slabSize);
+            }
+        }
+        long address = ((long) currentSlab << 32) | currentOffset;
+        currentOffset += chunkSize;
+        return address;
+    }
+
+    private int sizeClass(final int chunkLength) {
+        int index = Arrays.binarySearch(chunkSizes, chunkLength);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static int[] sizeClasses(final int slabSize) {
+        int[] sizes = new int[128];
+        int count = 0;
+        long size = MIN_CHUNK_SIZE;
+        while (size < slabSize) {
+            sizes[count++] = (int) size;
+            size = (size * 5 / 4 + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        }
+        sizes[count++] = slabSize;
+        return Arrays.copyOf(sizes, count);
+    }
+
+    private static int slab(final long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(final long address) {
+        return (int) address;
+    }
+}
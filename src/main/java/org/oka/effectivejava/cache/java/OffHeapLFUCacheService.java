@@ -0,0 +1,528 @@
+package org.oka.effectivejava.cache.java;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.Serializer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Manages a generic LFU cache service of key (K) / value (V) keeping the values outside the java heap.
+ * <p>
+ * Values are serialized with a pluggable {@link Serializer} into an {@link OffHeapArena} of direct memory slabs; the
+ * heap only holds the keys, their frequencies and the addresses of the chunks. When the arena is full, the cache
+ * compacts it if it is fragmented enough, or evicts the least frequently used entries otherwise.
+ * <p>
+ * The heap side is laid out as {@link CompactLFUCache}: keys, key hashes and chunk addresses live in parallel arrays
+ * at the index of the entry given by a {@link PrimitiveLFUPolicy}, found through an open-addressing hash table of
+ * entry indexes, so an address is a {@code long} and not a boxed {@link Long}. Values are serialized before taking
+ * the lock, and the metrics and logs are written after releasing it.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@Slf4j
+public final class OffHeapLFUCacheService<K, V> implements CacheMetrics, AutoCloseable {
+    /**
+     * Max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Largest max size, so the hash table of entry indexes fits in an array.
+     */
+    private static final int MAX_CAPACITY = 1 << 29;
+    /**
+     * Default size of every slab (1 MiB).
+     */
+    private static final int SLAB_SIZE = 1 << 20;
+    /**
+     * Default direct memory budget (64 MiB).
+     */
+    private static final long MAX_OFF_HEAP_BYTES = 64L << 20;
+    /**
+     * Fragmentation ratio above which a full arena is compacted instead of evicting entries.
+     */
+    private static final double COMPACTION_THRESHOLD = 0.25d;
+    /**
+     * Empty slot of the hash table.
+     */
+    private static final int EMPTY = 0;
+    /**
+     * Key of every entry.
+     */
+    private final Object[] keys;
+    /**
+     * Spread hash of the key of every entry, so probes and deletions do not call {@link Object#hashCode()}.
+     */
+    private final int[] hashes;
+    /**
+     * Address in the arena of the value of every entry.
+     */
+    private final long[] addresses;
+    /**
+     * Hash table of entry indexes plus one, so zero means empty.
+     */
+    private final int[] table;
+    /**
+     * Mask used to map a hash to a slot of the table.
+     */
+    private final int mask;
+    /**
+     * Frequencies and eviction order of the entries.
+     */
+    private final PrimitiveLFUPolicy policy;
+    /**
+     * Direct memory holding the serialized values.
+     */
+    private final OffHeapArena arena;
+    /**
+     * Converts the values from/to bytes.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Guards the arrays, the table, the policy and the arena.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Holds the number of arena compactions.
+     */
+    private int compactions;
+
+    /**
+     * Creates an off-heap cache service.
+     *
+     * @param valueSerializer    converts the values from/to bytes.
+     * @param maximumSize        max number of entries. Defaults to 100.000.
+     * @param maximumOffHeapSize max direct memory used by the values. Defaults to 64 MiB.
+     * @param slabSize           size of every slab of direct memory, which bounds the size of a value. Defaults to
+     *                           1 MiB.
+     */
+    @Builder
+    private OffHeapLFUCacheService(final Serializer<V> valueSerializer, final Long maximumSize,
+                                   final Long maximumOffHeapSize, final Integer slabSize) {
+        this.valueSerializer = requireNonNull(valueSerializer, "Value serializer is required");
+        long size = maximumSize == null ? MAX_SIZE : maximumSize;
+        long offHeapSize = maximumOffHeapSize == null ? MAX_OFF_HEAP_BYTES : maximumOffHeapSize;
+        int slab = slabSize == null ? (int) Math.min(SLAB_SIZE, offHeapSize) : slabSize;
+        if (size <= 0 || offHeapSize <= 0 || slab <= 0) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        if (size > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Maximum size must not exceed " + MAX_CAPACITY + ": " + size);
+        }
+        this.policy = new PrimitiveLFUPolicy((int) size);
+        this.keys = new Object[(int) size];
+        this.hashes = new int[(int) size];
+        this.addresses = new long[(int) size];
+        this.table = new int[tableSize((int) size)];
+        this.mask = table.length - 1;
+        this.arena = new OffHeapArena(slab, (int) Math.max(1, offHeapSize / slab));
+    }
+
+    /**
+     * Returns the cached S value for the key K, deserialized from the off-heap arena.
+     *
+     * @param k Key to use in the lookup.
+     * @return S cached value. Null if it not exists.
+     */
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        final int hash = hash(k);
+        V value = null;
+        lock.lock();
+        try {
+            int entry = find(k, hash);
+            if (entry != PrimitiveLFUPolicy.NIL) {
+                policy.touch(entry);
+                value = valueSerializer.deserialize(arena.read(addresses[entry]));
+            }
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Add a new key/value to the cache service. A value bigger than a slab is not stored.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        final int hash = hash(k);
+        byte[] payload = valueSerializer.serialize(v);
+        EvictionLatencies evictions = new EvictionLatencies();
+        boolean stored;
+        lock.lock();
+        try {
+            stored = putLocked(k, hash, payload, evictions);
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < evictions.count; i++) {
+            metrics.recordEviction(evictions.nanos[i]);
+        }
+        if (!stored) {
+            log.info("Cached Item: {} not stored, {} bytes do not fit in the arena", k, payload.length);
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Exposes current Cached Items storage, deserializing every value to the heap.
+     *
+     * @return Map<K, V>
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getCachedItemStorage() {
+        lock.lock();
+        try {
+            Map<K, V> mapToReturn = new HashMap<>(policy.size());
+            policy.forEach(entry -> mapToReturn.put((K) keys[entry],
+                    valueSerializer.deserialize(arena.read(addresses[entry]))));
+            return unmodifiableMap(mapToReturn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes current Cached Items usage statistics.
+     *
+     * @return Map<K, Integer>
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, Integer> getCachedItemStats() {
+        lock.lock();
+        try {
+            Map<K, Integer> mapToReturn = new HashMap<>(policy.size());
+            policy.forEach(entry -> mapToReturn.put((K) keys[entry], policy.frequency(entry)));
+            return unmodifiableMap(mapToReturn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves every live value to the beginning of the arena, releasing the slabs left empty.
+     */
+    public void compact() {
+        lock.lock();
+        try {
+            compactLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the direct memory used by the live values, including chunk headers and rounding.
+     *
+     * @return off-heap bytes used
+     */
+    public long getOffHeapBytesUsed() {
+        lock.lock();
+        try {
+            return arena.usedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the serialized live values.
+     *
+     * @return off-heap payload bytes
+     */
+    public long getOffHeapPayloadBytes() {
+        lock.lock();
+        try {
+            return arena.payloadBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the direct memory reserved by the arena.
+     *
+     * @return off-heap bytes reserved
+     */
+    public long getOffHeapBytesReserved() {
+        lock.lock();
+        try {
+            return arena.reservedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the ratio of the handed out direct memory not holding live values.
+     *
+     * @return fragmentation between 0 and 1
+     */
+    public double getFragmentation() {
+        lock.lock();
+        try {
+            return arena.fragmentation();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the number of misses.
+     *
+     * @return misses
+     */
+    public Integer getMisses() {
+        return (int) metrics.misses();
+    }
+
+    /**
+     * Exposes the number of hits.
+     *
+     * @return hits
+     */
+    public Integer getHits() {
+        return (int) metrics.hits();
+    }
+
+    /**
+     * Exposes the number of evictions.
+     *
+     * @return evictions
+     */
+    public Integer getEvictions() {
+        return (int) metrics.evictions();
+    }
+
+    /**
+     * Exposes the number of arena compactions.
+     *
+     * @return compactions
+     */
+    public Integer getCompactions() {
+        lock.lock();
+        try {
+            return compactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the total time used to insert elements.
+     *
+     * @return insertion time (ms)
+     */
+    public long getInsertionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.snapshot().getPutLatency().getTotalNanos());
+    }
+
+    /**
+     * Exposes the number of attempted insertions.
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return metrics.snapshot().getPuts();
+    }
+
+    /**
+     * Returns the average time for insertions.
+     *
+     * @return avg insertion time (ms)
+     */
+    public double getAvgInsertionTime() {
+        return metrics.snapshot().getPutLatency().getMean() / 1_000_000d;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Releases the direct memory. The cache is empty afterwards.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (int entry = policy.evict(); entry != PrimitiveLFUPolicy.NIL; entry = policy.evict()) {
+                keys[entry] = null;
+            }
+            Arrays.fill(table, EMPTY);
+            arena.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean putLocked(final K k, final int hash, final byte[] payload, final EvictionLatencies evictions) {
+        int existing = find(k, hash);
+        long address = allocate(payload, existing, evictions);
+        if (address == OffHeapArena.NO_ROOM && existing != PrimitiveLFUPolicy.NIL) {
+            final long evictionStart = System.nanoTime();
+            policy.remove(existing);
+            discard(existing);
+            evictions.add(System.nanoTime() - evictionStart);
+            existing = PrimitiveLFUPolicy.NIL;
+            address = allocate(payload, PrimitiveLFUPolicy.NIL, evictions);
+        }
+        if (address == OffHeapArena.NO_ROOM) {
+            return false;
+        }
+        if (existing != PrimitiveLFUPolicy.NIL) {
+            arena.free(addresses[existing]);
+            addresses[existing] = address;
+            policy.touch(existing);
+            return true;
+        }
+        if (policy.isFull()) {
+            final long evictionStart = System.nanoTime();
+            discard(policy.evict());
+            evictions.add(System.nanoTime() - evictionStart);
+        }
+        int entry = policy.add();
+        keys[entry] = k;
+        hashes[entry] = hash;
+        addresses[entry] = address;
+        insert(hash, entry);
+        return true;
+    }
+
+    private long allocate(final byte[] payload, final int existing, final EvictionLatencies evictions) {
+        if (!arena.fits(payload.length)) {
+            return OffHeapArena.NO_ROOM;
+        }
+        boolean compactable = true;
+        long address = arena.allocate(payload);
+        while (address == OffHeapArena.NO_ROOM) {
+            if (compactable && arena.fragmentation() >= COMPACTION_THRESHOLD) {
+                compactLocked();
+                compactable = false;
+            } else {
+                final long evictionStart = System.nanoTime();
+                int victim = policy.evictExcept(existing);
+                if (victim == PrimitiveLFUPolicy.NIL) {
+                    return OffHeapArena.NO_ROOM;
+                }
+                discard(victim);
+                evictions.add(System.nanoTime() - evictionStart);
+                compactable = true;
+            }
+            address = arena.allocate(payload);
+        }
+        return address;
+    }
+
+    private void compactLocked() {
+        int[] entries = new int[policy.size()];
+        int[] count = {0};
+        policy.forEach(entry -> entries[count[0]++] = entry);
+        int[] byAddress = Arrays.stream(entries)
+                .boxed()
+                .sorted(Comparator.comparingLong(entry -> addresses[entry]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        arena.beginCompaction();
+        for (int entry : byAddress) {
+            addresses[entry] = arena.move(addresses[entry]);
+        }
+        arena.endCompaction();
+        compactions++;
+    }
+
+    private void discard(final int entry) {
+        delete(entry);
+        arena.free(addresses[entry]);
+        keys[entry] = null;
+    }
+
+    private int find(final Object k, final int hash) {
+        int slot = hash & mask;
+        int entryPlusOne = table[slot];
+        while (entryPlusOne != EMPTY) {
+            int entry = entryPlusOne - 1;
+            if (hashes[entry] == hash && k.equals(keys[entry])) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+            entryPlusOne = table[slot];
+        }
+        return PrimitiveLFUPolicy.NIL;
+    }
+
+    private void insert(final int hash, final int entry) {
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void delete(final int entry) {
+        int hole = hashes[entry] & mask;
+        while (table[hole] != entry + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int slot = (hole + 1) & mask;
+        while (table[slot] != EMPTY) {
+            int ideal = hashes[table[slot] - 1] & mask;
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[hole] = EMPTY;
+    }
+
+    private static int hash(final Object k) {
+        int h = requireNonNull(k, "Null keys are not supported").hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(final int maximumSize) {
+        int size = 2;
+        while (size < 2L * maximumSize) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Latencies of the evictions of a put, recorded once the lock is released.
+     */
+    private static final class EvictionLatencies {
+        private long[] nanos = new long[2];
+        private int count;
+
+        private void add(final long latency) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latency;
+        }
+    }
+}
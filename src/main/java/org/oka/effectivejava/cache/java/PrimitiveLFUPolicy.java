@@ -0,0 +1,309 @@
+package org.oka.effectivejava.cache.java;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Non thread-safe O(1) LFU policy over the entry indexes (0 to capacity - 1) of a primitive-keyed cache.
+ * <p>
+ * It mirrors {@link LFUEngine} without objects: entries and frequency buckets are indexes into parallel {@code int[]}
+ * arrays holding their links, so promoting, adding and evicting an entry never allocates. The owner keeps the keys and
+ * values in its own arrays, at the index given by the policy. Bucket arrays start small and grow with the number of
+ * distinct frequencies, which is bounded by the capacity.
+ */
+final class PrimitiveLFUPolicy {
+    /**
+     * Null link.
+     */
+    static final int NIL = -1;
+    /**
+     * Initial number of buckets.
+     */
+    private static final int INITIAL_BUCKETS = 16;
+    /**
+     * Max number of entries.
+     */
+    private final int capacity;
+    /**
+     * Bucket of every entry.
+     */
+    private final int[] entryBucket;
+    /**
+     * Previous entry in the bucket of every entry.
+     */
+    private final int[] entryPrev;
+    /**
+     * Next entry in the bucket of every entry.
+     */
+    private final int[] entryNext;
+    /**
+     * Stack of the free entry indexes.
+     */
+    private final int[] freeEntries;
+    /**
+     * Number of free entry indexes.
+     */
+    private int freeEntryCount;
+    /**
+     * Frequency shared by the entries of every bucket.
+     */
+    private int[] bucketFrequency;
+    /**
+     * Oldest entry of every bucket.
+     */
+    private int[] bucketHead;
+    /**
+     * Newest entry of every bucket.
+     */
+    private int[] bucketTail;
+    /**
+     * Bucket with the closest lower frequency of every bucket.
+     */
+    private int[] bucketPrev;
+    /**
+     * Bucket with the closest higher frequency of every bucket.
+     */
+    private int[] bucketNext;
+    /**
+     * Stack of the released bucket indexes.
+     */
+    private int[] freeBuckets;
+    /**
+     * Number of released bucket indexes.
+     */
+    private int freeBucketCount;
+    /**
+     * Number of bucket indexes ever used.
+     */
+    private int bucketCount;
+    /**
+     * Bucket with the lowest frequency.
+     */
+    private int lowest = NIL;
+
+    /**
+     * Creates an empty policy.
+     *
+     * @param capacity max number of entries.
+     */
+    PrimitiveLFUPolicy(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entryBucket = new int[capacity];
+        this.entryPrev = new int[capacity];
+        this.entryNext = new int[capacity];
+        this.freeEntries = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeEntries[i] = capacity - 1 - i;
+        }
+        this.freeEntryCount = capacity;
+        int buckets = Math.min(capacity, INITIAL_BUCKETS);
+        this.bucketFrequency = new int[buckets];
+        this.bucketHead = new int[buckets];
+        this.bucketTail = new int[buckets];
+        this.bucketPrev = new int[buckets];
+        this.bucketNext = new int[buckets];
+        this.freeBuckets = new int[buckets];
+    }
+
+    /**
+     * Returns whether every entry index is in use.
+     *
+     * @return true if a new entry requires an eviction.
+     */
+    boolean isFull() {
+        return freeEntryCount == 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return size
+     */
+    int size() {
+        return capacity - freeEntryCount;
+    }
+
+    /**
+     * Adds an entry with frequency one. The policy must not be full.
+     *
+     * @return index of the new entry.
+     */
+    int add() {
+        int entry = freeEntries[--freeEntryCount];
+        int first = lowest;
+        if (first == NIL || bucketFrequency[first] != 1) {
+            first = insertBucketAfter(NIL, 1);
+        }
+        append(first, entry);
+        return entry;
+    }
+
+    /**
+     * Records one more use of the entry.
+     *
+     * @param entry entry index.
+     */
+    void touch(final int entry) {
+        int bucket = entryBucket[entry];
+        int frequency = bucketFrequency[bucket] + 1;
+        int target = bucketNext[bucket];
+        boolean nextFrequencyExists = target != NIL && bucketFrequency[target] == frequency;
+        if (!nextFrequencyExists && bucketHead[bucket] == entry && bucketTail[bucket] == entry) {
+            bucketFrequency[bucket] = frequency;
+            return;
+        }
+        if (!nextFrequencyExists) {
+            target = insertBucketAfter(bucket, frequency);
+        }
+        unlink(entry);
+        append(target, entry);
+    }
+
+    /**
+     * Removes the least frequently used entry. Ties are resolved by removing the oldest entry of the bucket. The
+     * index is released, so the owner must clear its key and value before adding a new entry.
+     *
+     * @return index of the evicted entry. {@link #NIL} if there are no entries.
+     */
+    int evict() {
+        return evictExcept(NIL);
+    }
+
+    /**
+     * Removes the least frequently used entry other than the given one, releasing its index.
+     *
+     * @param keep entry index that must not be evicted. {@link #NIL} to evict any entry.
+     * @return index of the evicted entry. {@link #NIL} if there is no other entry.
+     */
+    int evictExcept(final int keep) {
+        if (lowest == NIL) {
+            return NIL;
+        }
+        int victim = bucketHead[lowest];
+        if (victim == keep) {
+            int next = bucketNext[lowest];
+            victim = entryNext[victim] != NIL ? entryNext[victim] : next == NIL ? NIL : bucketHead[next];
+        }
+        if (victim != NIL) {
+            remove(victim);
+        }
+        return victim;
+    }
+
+    /**
+     * Removes the entry, releasing its index.
+     *
+     * @param entry entry index.
+     */
+    void remove(final int entry) {
+        unlink(entry);
+        freeEntries[freeEntryCount++] = entry;
+    }
+
+    /**
+     * Returns the frequency of the entry.
+     *
+     * @param entry entry index.
+     * @return frequency
+     */
+    int frequency(final int entry) {
+        return bucketFrequency[entryBucket[entry]];
+    }
+
+    /**
+     * Visits every entry, from the least to the most frequently used.
+     *
+     * @param action action to run on every entry index.
+     */
+    void forEach(final IntConsumer action) {
+        for (int bucket = lowest; bucket != NIL; bucket = bucketNext[bucket]) {
+            for (int entry = bucketHead[bucket]; entry != NIL; entry = entryNext[entry]) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    private void append(final int bucket, final int entry) {
+        int tail = bucketTail[bucket];
+        entryBucket[entry] = bucket;
+        entryPrev[entry] = tail;
+        entryNext[entry] = NIL;
+        if (tail == NIL) {
+            bucketHead[bucket] = entry;
+        } else {
+            entryNext[tail] = entry;
+        }
+        bucketTail[bucket] = entry;
+    }
+
+    private void unlink(final int entry) {
+        int bucket = entryBucket[entry];
+        int prev = entryPrev[entry];
+        int next = entryNext[entry];
+        if (prev == NIL) {
+            bucketHead[bucket] = next;
+        } else {
+            entryNext[prev] = next;
+        }
+        if (next == NIL) {
+            bucketTail[bucket] = prev;
+        } else {
+            entryPrev[next] = prev;
+        }
+        if (bucketHead[bucket] == NIL) {
+            removeBucket(bucket);
+        }
+    }
+
+    private int insertBucketAfter(final int previous, final int frequency) {
+        int bucket = allocateBucket();
+        int next = previous == NIL ? lowest : bucketNext[previous];
+        bucketFrequency[bucket] = frequency;
+        bucketHead[bucket] = NIL;
+        bucketTail[bucket] = NIL;
+        bucketPrev[bucket] = previous;
+        bucketNext[bucket] = next;
+        if (next != NIL) {
+            bucketPrev[next] = bucket;
+        }
+        if (previous == NIL) {
+            lowest = bucket;
+        } else {
+            bucketNext[previous] = bucket;
+        }
+        return bucket;
+    }
+
+    private void removeBucket(final int bucket) {
+        int prev = bucketPrev[bucket];
+        int next = bucketNext[bucket];
+        if (prev == NIL) {
+            lowest = next;
+        } else {
+            bucketNext[prev] = next;
+        }
+        if (next != NIL) {
+            bucketPrev[next] = prev;
+        }
+        freeBuckets[freeBucketCount++] = bucket;
+    }
+
+    private int allocateBucket() {
+        if (freeBucketCount > 0) {
+            return freeBuckets[--freeBucketCount];
+        }
+        if (bucketCount == bucketFrequency.length) {
+            int length = (int) Math.min((long) bucketCount * 2, capacity + 1L);
+            bucketFrequency = Arrays.copyOf(bucketFrequency, length);
+            bucketHead = Arrays.copyOf(bucketHead, length);
+            bucketTail = Arrays.copyOf(bucketTail, length);
+            bucketPrev = Arrays.copyOf(bucketPrev, length);
+            bucketNext = Arrays.copyOf(bucketNext, length);
+            freeBuckets = Arrays.copyOf(freeBuckets, length);
+        }
+        return bucketCount++;
+    }
+}
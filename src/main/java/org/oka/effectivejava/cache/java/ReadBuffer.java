@@ -0,0 +1,134 @@
+package org.oka.effectivejava.cache.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy, striped, multiple-producer / single-consumer buffer of read events.
+ * <p>
+ * Readers record an event in the ring buffer of the stripe picked by their thread id, with a single CAS and without
+ * blocking. When the stripe is full or the CAS is contended the event is dropped: losing some reads only makes the
+ * frequencies approximate, which is the price of never making readers wait. The events are drained in batches by the
+ * single thread holding the lock of the policy.
+ *
+ * @param <E> Event
+ */
+final class ReadBuffer<E> {
+    /**
+     * The event was recorded.
+     */
+    static final int SUCCESS = 0;
+    /**
+     * The event was dropped because another reader won the slot.
+     */
+    static final int FAILED = 1;
+    /**
+     * The event was dropped because the stripe is full, so it should be drained.
+     */
+    static final int FULL = 2;
+    /**
+     * Number of events held by every stripe (a power of two).
+     */
+    static final int STRIPE_SIZE = 16;
+    /**
+     * Max number of stripes.
+     */
+    private static final int MAX_STRIPES = 64;
+    /**
+     * Ring buffers. Readers spread over them by thread id.
+     */
+    private final Stripe<E>[] stripes;
+    /**
+     * Mask used to map a thread to its stripe.
+     */
+    private final int stripeMask;
+
+    /**
+     * Creates a buffer with one stripe per available processor, rounded up to a power of two.
+     */
+    ReadBuffer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a buffer with (at least) the given number of stripes, rounded up to a power of two.
+     *
+     * @param concurrencyLevel expected number of concurrently reading threads.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReadBuffer(final int concurrencyLevel) {
+        int stripeCount = 1;
+        while (stripeCount < Math.min(concurrencyLevel, MAX_STRIPES)) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Records the event in the stripe of the current thread.
+     *
+     * @param e event to record.
+     * @return {@link #SUCCESS}, {@link #FAILED} or {@link #FULL}.
+     */
+    int offer(final E e) {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (id >>> 32) & stripeMask].offer(e);
+    }
+
+    /**
+     * Hands every recorded event to the consumer. Only one thread at a time may drain the buffer.
+     *
+     * @param consumer receives the events, stripe by stripe and in recording order within a stripe.
+     */
+    void drain(final Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drain(consumer);
+        }
+    }
+
+    /**
+     * Ring buffer of one stripe. The write counter is only advanced by readers (with a CAS) and the read counter only
+     * by the draining thread.
+     *
+     * @param <E> Event
+     */
+    private static final class Stripe<E> {
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicLong readCounter = new AtomicLong();
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+
+        private int offer(final E e) {
+            long head = readCounter.get();
+            long tail = writeCounter.get();
+            if (tail - head >= STRIPE_SIZE) {
+                return FULL;
+            }
+            if (!writeCounter.compareAndSet(tail, tail + 1)) {
+                return FAILED;
+            }
+            buffer.lazySet((int) tail & (STRIPE_SIZE - 1), e);
+            return SUCCESS;
+        }
+
+        private void drain(final Consumer<E> consumer) {
+            long head = readCounter.get();
+            long tail = writeCounter.get();
+            while (head != tail) {
+                int index = (int) head & (STRIPE_SIZE - 1);
+                E e = buffer.get(index);
+                if (e == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounter.lazySet(head);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.oka.effectivejava.cache.java;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters sketch: finds the most frequent keys of a stream with a fixed number of counters.
+ * <p>
+ * A key already counted has its counter incremented. Otherwise, if every counter is taken, the key takes over the
+ * counter of the least counted key, inheriting its count as the error of the estimation. Estimated counts are never
+ * below the real ones and overestimate them by at most the error, so a key whose count minus error is above a share
+ * of the stream is guaranteed to be a heavy hitter. Counters sit in a min-heap, so an offer costs O(log counters).
+ * <p>
+ * {@link #decay()} halves every count, so the sketch follows the recent traffic. Not thread-safe.
+ *
+ * @param <K> Key
+ */
+final class SpaceSavingSketch<K> {
+    /**
+     * Counters by key.
+     */
+    private final Map<K, Counter<K>> counters;
+    /**
+     * Min-heap of the counters by count.
+     */
+    private final Counter<K>[] heap;
+    /**
+     * Number of used counters.
+     */
+    private int size;
+    /**
+     * Total count of the stream, halved along with the counters.
+     */
+    private long total;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param capacity number of counters.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    SpaceSavingSketch(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Counts occurrences of a key.
+     *
+     * @param key   K key.
+     * @param count number of occurrences. Must be positive.
+     */
+    void offer(final K key, final long count) {
+        total += count;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            siftDown(counter.index);
+            return;
+        }
+        if (size < heap.length) {
+            counter = new Counter<>(key, count, 0L);
+            counter.index = size;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.index);
+            return;
+        }
+        counter = heap[0];
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.error = counter.count;
+        counter.count += count;
+        counters.put(key, counter);
+        siftDown(0);
+    }
+
+    /**
+     * Returns the most counted keys, most counted first.
+     *
+     * @param limit max number of keys.
+     * @return keys with their estimated count and error.
+     */
+    List<Counter<K>> top(final int limit) {
+        List<Counter<K>> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Counter<K> counter = heap[i];
+            sorted.add(new Counter<>(counter.key, counter.count, counter.error));
+        }
+        sorted.sort(Comparator.comparingLong((Counter<K> counter) -> counter.count).reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Returns the total count of the stream since the sketch was created, halved by every decay.
+     *
+     * @return total
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Halves every count and error. The order of the counters does not change, so the heap stays valid.
+     */
+    void decay() {
+        for (int i = 0; i < size; i++) {
+            heap[i].count >>>= 1;
+            heap[i].error >>>= 1;
+        }
+        total >>>= 1;
+    }
+
+    private void siftUp(final int index) {
+        int i = index;
+        Counter<K> counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(counter, i);
+    }
+
+    private void siftDown(final int index) {
+        int i = index;
+        Counter<K> counter = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(counter, i);
+    }
+
+    private void place(final Counter<K> counter, final int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /**
+     * Estimated count of a key.
+     *
+     * @param <K> Key
+     */
+    static final class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int index;
+
+        private Counter(final K key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the estimated count, never below the real one.
+         *
+         * @return count
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the max overestimation of the count.
+         *
+         * @return error
+         */
+        long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.oka.effectivejava.cache.java;
+
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Non thread-safe hierarchical timing wheel used to expire the nodes of a {@link LFUEngine} in amortized O(1).
+ * <p>
+ * Each level is an array of buckets covering a power-of-two span of time (~1s, ~1m, ~1h, ~1d and ~6d per bucket).
+ * A node is linked into the bucket of the coarsest level that still tells apart its expiration time. When the wheel
+ * is advanced, only the buckets whose span has elapsed are visited: their nodes are either expired or cascaded to a
+ * finer level, so every node is moved a bounded number of times during its life.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+final class TimerWheel<K, V> {
+    /**
+     * Number of buckets of each level.
+     */
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    /**
+     * Time span (ns) of a bucket of each level, rounded up to a power of two.
+     */
+    static final long[] SPANS = {
+            ceilingPowerOfTwo(SECONDS.toNanos(1)),
+            ceilingPowerOfTwo(MINUTES.toNanos(1)),
+            ceilingPowerOfTwo(HOURS.toNanos(1)),
+            ceilingPowerOfTwo(DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(DAYS.toNanos(1))};
+    /**
+     * Shift converting a time (ns) into a tick of each level.
+     */
+    static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])};
+    /**
+     * Sentinels of the circular lists of every bucket of every level.
+     */
+    private final LFUEngine.Node<K, V>[][] wheel;
+    /**
+     * Time (ns) of the last advance.
+     */
+    private long nanos;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param nanos current time (ns).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(final long nanos) {
+        this.nanos = nanos;
+        this.wheel = new LFUEngine.Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new LFUEngine.Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                LFUEngine.Node<K, V> sentinel = new LFUEngine.Node<>(null, null);
+                sentinel.prevInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time, handing the expired nodes to the consumer.
+     *
+     * @param currentTimeNanos current time (ns).
+     * @param expired          receives every expired node, already unlinked from the wheel.
+     */
+    void advance(final long currentTimeNanos, final Consumer<LFUEngine.Node<K, V>> expired) {
+        long previousTimeNanos = nanos;
+        nanos = currentTimeNanos;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTimeNanos >>> SHIFT[i];
+            long currentTicks = currentTimeNanos >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, delta, expired);
+        }
+    }
+
+    /**
+     * Links the node into the bucket matching its expiration time.
+     *
+     * @param node node with an expiration time.
+     */
+    void schedule(final LFUEngine.Node<K, V> node) {
+        LFUEngine.Node<K, V> sentinel = findBucket(node.expiration);
+        node.prevInTimer = sentinel.prevInTimer;
+        node.nextInTimer = sentinel;
+        sentinel.prevInTimer.nextInTimer = node;
+        sentinel.prevInTimer = node;
+    }
+
+    /**
+     * Unlinks the node from the wheel, if it was scheduled.
+     *
+     * @param node node to unlink.
+     */
+    void deschedule(final LFUEngine.Node<K, V> node) {
+        if (node.nextInTimer == null) {
+            return;
+        }
+        node.nextInTimer.prevInTimer = node.prevInTimer;
+        node.prevInTimer.nextInTimer = node.nextInTimer;
+        node.nextInTimer = null;
+        node.prevInTimer = null;
+    }
+
+    private void expire(final int index, final long previousTicks, final long delta,
+                        final Consumer<LFUEngine.Node<K, V>> expired) {
+        LFUEngine.Node<K, V>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+        for (int i = start; i < end; i++) {
+            LFUEngine.Node<K, V> sentinel = timerWheel[i & mask];
+            LFUEngine.Node<K, V> node = sentinel.nextInTimer;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            while (node != sentinel) {
+                LFUEngine.Node<K, V> next = node.nextInTimer;
+                node.prevInTimer = null;
+                node.nextInTimer = null;
+                if (node.expiration - nanos <= 0) {
+                    expired.accept(node);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private LFUEngine.Node<K, V> findBucket(final long time) {
+        long duration = time - nanos;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    private static long ceilingPowerOfTwo(final long x) {
+        return 1L << -Long.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,556 @@
+package org.oka.effectivejava.cache.java;
+
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalCause;
+import org.oka.effectivejava.cache.RemovalListener;
+import org.oka.effectivejava.cache.RemovalNotifier;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Manages a generic cache service of key (K) / value (V) using the W-TinyLFU policy.
+ * <p>
+ * New entries land in a small LRU window (1% of the capacity). Entries leaving the window compete to enter the main
+ * region, a segmented LRU split into probation (20%) and protected (80%) queues: the candidate is only admitted if
+ * its estimated frequency, kept by a {@link FrequencySketch}, beats the one of the main region victim. The sketch
+ * remembers the popularity of evicted keys too, so a flood of one-hit-wonders can not push out the hot entries.
+ * <p>
+ * The capacity is given through the builder (100.000 entries by default). Reads and writes take a single lock;
+ * batches of keys take it once. Hits, misses, evictions and the get, put and eviction latencies are exposed through
+ * {@link CacheMetrics}, recorded outside of the lock except for the evictions. Removed entries (evicted, replaced or
+ * removed) can be observed with a {@link RemovalListener}, delivered asynchronously and released on {@link #close()}.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class TinyLFUCacheService<K, V> implements Cache<K, V>, AutoCloseable {
+    /**
+     * Default max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Percentage of the capacity used by the LRU window.
+     */
+    private static final int WINDOW_PERCENTAGE = 1;
+    /**
+     * Percentage of the main region used by the protected queue.
+     */
+    private static final int PROTECTED_PERCENTAGE = 80;
+    /**
+     * Stores the key/node.
+     */
+    private final HashMap<K, Node<K, V>> cachedItemStore;
+    /**
+     * Popularity estimator of both resident and non resident keys.
+     */
+    private final FrequencySketch sketch;
+    /**
+     * LRU window admitting every new entry.
+     */
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>(Queue.WINDOW);
+    /**
+     * Main region entries accessed once since they were admitted.
+     */
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>(Queue.PROBATION);
+    /**
+     * Main region entries accessed more than once.
+     */
+    private final AccessOrderDeque<K, V> protectedQueue = new AccessOrderDeque<>(Queue.PROTECTED);
+    /**
+     * Max number of entries of the cache.
+     */
+    private final int maximumSize;
+    /**
+     * Max number of entries of the LRU window.
+     */
+    private final int windowMaximumSize;
+    /**
+     * Max number of entries of the protected queue.
+     */
+    private final int protectedMaximumSize;
+    /**
+     * Guards the store, the sketch and the queues.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Holds the number of candidates rejected by the admission filter.
+     */
+    private final LongAdder rejections = new LongAdder();
+    /**
+     * Delivers the removal notifications. Null when there is no removal listener.
+     */
+    private final RemovalNotifier<K, V> notifier;
+
+    /**
+     * Creates a cache service with the default capacity.
+     */
+    public TinyLFUCacheService() {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Creates a cache service.
+     *
+     * @param maximumSize      max number of entries. Defaults to 100.000.
+     * @param removalListener  receives the removed entries asynchronously. No notifications by default.
+     * @param removalQueueSize max number of pending notifications. Defaults to
+     *                         {@link RemovalNotifier#DEFAULT_QUEUE_SIZE}.
+     * @param overflowPolicy   what to do with a notification when the queue is full. Defaults to dropping it; blocking
+     *                         makes the writers wait (holding the cache lock) for a listener falling behind.
+     */
+    @Builder
+    private TinyLFUCacheService(final Long maximumSize, final RemovalListener<K, V> removalListener,
+                                final Integer removalQueueSize, final RemovalNotifier.OverflowPolicy overflowPolicy) {
+        if (removalListener == null && (removalQueueSize != null || overflowPolicy != null)) {
+            throw new IllegalStateException("Removal queue size and overflow policy require a removal listener");
+        }
+        if (maximumSize != null && (maximumSize < 1 || maximumSize > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Maximum size must be between 1 and " + Integer.MAX_VALUE + ": "
+                    + maximumSize);
+        }
+        this.maximumSize = maximumSize == null ? MAX_SIZE : maximumSize.intValue();
+        this.windowMaximumSize = Math.max(1, this.maximumSize * WINDOW_PERCENTAGE / 100);
+        this.protectedMaximumSize = (this.maximumSize - windowMaximumSize) * PROTECTED_PERCENTAGE / 100;
+        this.cachedItemStore = new HashMap<>(this.maximumSize);
+        this.sketch = new FrequencySketch(this.maximumSize);
+        this.notifier = removalListener == null ? null : new RemovalNotifier<>(removalListener,
+                removalQueueSize == null ? RemovalNotifier.DEFAULT_QUEUE_SIZE : removalQueueSize,
+                overflowPolicy == null ? RemovalNotifier.OverflowPolicy.DROP : overflowPolicy,
+                "tiny-lfu-cache-removal");
+    }
+
+    /**
+     * Returns the cached S value for the key K.
+     *
+     * @param k Key to use in the lookup.
+     * @return S cached value. Null if it not exists.
+     */
+    @Override
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        V value;
+        lock.lock();
+        try {
+            value = getLocked(k);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Add a new key/value to the cache service.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    @Override
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        lock.lock();
+        try {
+            putLocked(k, v);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Returns the cached values of the keys, taking the lock once for the whole batch.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values, in the order of the keys. Missing keys are absent.
+     */
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        Map<K, V> found = new LinkedHashMap<>();
+        long[] latencies = new long[keys.size()];
+        boolean[] hits = new boolean[keys.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (K k : keys) {
+                final long timeBefore = System.nanoTime();
+                V value = getLocked(k);
+                if (value != null) {
+                    found.put(k, value);
+                }
+                hits[i] = value != null;
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordGet(hits[j], latencies[j]);
+        }
+        return found;
+    }
+
+    /**
+     * Adds all the key/value pairs to the cache service, taking the lock once for the whole batch.
+     *
+     * @param entries key/value pairs to add.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        long[] latencies = new long[entries.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                final long timeBefore = System.nanoTime();
+                putLocked(entry.getKey(), entry.getValue());
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordPut(latencies[j]);
+        }
+    }
+
+    /**
+     * Removes the key from the cache, notifying the removal listener with {@link RemovalCause#EXPLICIT}. The sketch
+     * keeps its frequency.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached.
+     */
+    @Override
+    public V remove(final K k) {
+        lock.lock();
+        try {
+            Node<K, V> node = cachedItemStore.remove(requireNonNull(k, "Null keys are not supported"));
+            if (node == null) {
+                return null;
+            }
+            queueOf(node).remove(node);
+            notifyRemoval(k, node.value, RemovalCause.EXPLICIT);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return cachedItemStore.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes current Cached Items storage.
+     *
+     * @return Map<K, V>
+     */
+    public Map<K, V> getCachedItemStorage() {
+        lock.lock();
+        try {
+            Map<K, V> mapToReturn = new HashMap<>(cachedItemStore.size());
+            cachedItemStore.forEach((k, node) -> mapToReturn.put(k, node.value));
+            return unmodifiableMap(mapToReturn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the estimated frequency (up to 15) of the cached items.
+     *
+     * @return Map<K, Integer>
+     */
+    public Map<K, Integer> getCachedItemStats() {
+        lock.lock();
+        try {
+            Map<K, Integer> mapToReturn = new HashMap<>(cachedItemStore.size());
+            cachedItemStore.forEach((k, node) -> mapToReturn.put(k, sketch.frequency(k)));
+            return unmodifiableMap(mapToReturn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes the number of misses.
+     *
+     * @return misses
+     */
+    public Integer getMisses() {
+        return (int) metrics.misses();
+    }
+
+    /**
+     * Exposes the number of hits.
+     *
+     * @return hits
+     */
+    public Integer getHits() {
+        return (int) metrics.hits();
+    }
+
+    /**
+     * Exposes the number of evictions.
+     *
+     * @return evictions
+     */
+    public Integer getEvictions() {
+        return (int) metrics.evictions();
+    }
+
+    /**
+     * Exposes the number of candidates rejected by the admission filter.
+     *
+     * @return rejections
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Exposes the total time used to insert elements.
+     *
+     * @return insertion time (ms)
+     */
+    public long getInsertionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metrics.snapshot().getPutLatency().getTotalNanos());
+    }
+
+    /**
+     * Exposes the number of attempted insertions.
+     *
+     * @return insertions
+     */
+    public long getInsertions() {
+        return metrics.snapshot().getPuts();
+    }
+
+    /**
+     * Returns the average time for insertions.
+     *
+     * @return avg insertion time (ms)
+     */
+    public double getAvgInsertionTime() {
+        return metrics.snapshot().getPutLatency().getMean() / 1_000_000d;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Exposes the number of removal notifications dropped because the listener fell behind.
+     *
+     * @return dropped notifications
+     */
+    public long getDroppedNotifications() {
+        return notifier == null ? 0L : notifier.getDropped();
+    }
+
+    /**
+     * Delivers the pending removal notifications and stops the notification thread, if any.
+     */
+    @Override
+    public void close() {
+        if (notifier != null) {
+            notifier.close();
+        }
+    }
+
+    private V getLocked(final K k) {
+        sketch.increment(requireNonNull(k, "Null keys are not supported"));
+        Node<K, V> node = cachedItemStore.get(k);
+        if (node == null) {
+            return null;
+        }
+        onAccess(node);
+        return node.value;
+    }
+
+    private void putLocked(final K k, final V v) {
+        sketch.increment(requireNonNull(k, "Null keys are not supported"));
+        Node<K, V> node = cachedItemStore.get(k);
+        if (node != null) {
+            V oldValue = node.value;
+            node.value = v;
+            onAccess(node);
+            notifyRemoval(k, oldValue, RemovalCause.REPLACED);
+        } else {
+            node = new Node<>(k, v);
+            cachedItemStore.put(k, node);
+            window.addLast(node);
+            evict();
+        }
+    }
+
+    private AccessOrderDeque<K, V> queueOf(final Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedQueue;
+        }
+    }
+
+    private void notifyRemoval(final K k, final V v, final RemovalCause cause) {
+        if (notifier != null) {
+            notifier.publish(k, v, cause);
+        }
+    }
+
+    private void onAccess(final Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > protectedMaximumSize) {
+                    probation.addLast(protectedQueue.pollFirst());
+                }
+                break;
+            default:
+                protectedQueue.moveToLast(node);
+                break;
+        }
+    }
+
+    private void evict() {
+        if (window.size <= windowMaximumSize) {
+            return;
+        }
+        Node<K, V> candidate = window.pollFirst();
+        probation.addLast(candidate);
+        if (cachedItemStore.size() <= maximumSize) {
+            return;
+        }
+        final long evictionStart = System.nanoTime();
+        Node<K, V> victim = probation.head;
+        if (victim == candidate) {
+            victim = protectedQueue.head;
+        }
+        if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            if (victim != null) {
+                rejections.increment();
+            }
+            victim = candidate;
+        }
+        queueOf(victim).remove(victim);
+        cachedItemStore.remove(victim.key);
+        metrics.recordEviction(System.nanoTime() - evictionStart);
+        notifyRemoval(victim.key, victim.value, RemovalCause.SIZE);
+    }
+
+    /**
+     * Queue an entry belongs to.
+     */
+    private enum Queue {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    /**
+     * Cached entry, linked into the queue of its region.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+        private Queue queue;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(final K key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes ordered from the least to the most recently accessed.
+     *
+     * @param <K> Key
+     * @param <V> Value
+     */
+    private static final class AccessOrderDeque<K, V> {
+        private final Queue queue;
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private int size;
+
+        private AccessOrderDeque(final Queue queue) {
+            this.queue = queue;
+        }
+
+        private void addLast(final Node<K, V> node) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        private Node<K, V> pollFirst() {
+            Node<K, V> first = head;
+            remove(first);
+            return first;
+        }
+
+        private void moveToLast(final Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void remove(final Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+    }
+}
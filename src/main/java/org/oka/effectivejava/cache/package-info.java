@@ -0,0 +1,4 @@
+/**
+ * Set of classes shared by the cache services.
+ */
+package org.oka.effectivejava.cache;
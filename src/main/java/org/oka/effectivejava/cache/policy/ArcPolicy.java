@@ -0,0 +1,138 @@
+package org.oka.effectivejava.cache.policy;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * ARC (adaptive replacement cache) eviction policy. Cached keys are split in two LRU lists: T1 for the keys seen once
+ * recently and T2 for the keys seen at least twice. Two ghost lists, B1 and B2, remember the keys recently evicted
+ * from each of them.
+ * <p>
+ * A miss on a ghost of B1 means T1 was too small, so the target size of T1 grows; a miss on a ghost of B2 shrinks it.
+ * The victim comes from T1 or T2 depending on that target, so the policy adapts between recency and frequency without
+ * tuning, and a scan of new keys can only flush T1.
+ *
+ * @param <K> Key
+ */
+public final class ArcPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * Max number of keys.
+     */
+    private final int capacity;
+    /**
+     * Keys seen once recently, least recently used first.
+     */
+    private final LinkedHashSet<K> t1 = new LinkedHashSet<>();
+    /**
+     * Keys seen at least twice recently, least recently used first.
+     */
+    private final LinkedHashSet<K> t2 = new LinkedHashSet<>();
+    /**
+     * Ghost keys evicted from T1, least recently used first.
+     */
+    private final LinkedHashSet<K> b1 = new LinkedHashSet<>();
+    /**
+     * Ghost keys evicted from T2, least recently used first.
+     */
+    private final LinkedHashSet<K> b2 = new LinkedHashSet<>();
+    /**
+     * Target size of T1.
+     */
+    private int target;
+
+    /**
+     * Creates an empty policy.
+     *
+     * @param capacity max number of keys.
+     */
+    public ArcPolicy(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void recordAccess(final K key) {
+        if (t1.remove(key) || t2.remove(key)) {
+            t2.add(key);
+        }
+    }
+
+    @Override
+    public K recordInsertion(final K key) {
+        K victim = null;
+        if (b1.contains(key)) {
+            target = Math.min(capacity, target + Math.max(b2.size() / b1.size(), 1));
+            victim = replace(false);
+            b1.remove(key);
+            t2.add(key);
+            return victim;
+        }
+        if (b2.contains(key)) {
+            target = Math.max(0, target - Math.max(b1.size() / b2.size(), 1));
+            victim = replace(true);
+            b2.remove(key);
+            t2.add(key);
+            return victim;
+        }
+        int recent = t1.size() + b1.size();
+        if (recent >= capacity) {
+            if (t1.size() < capacity) {
+                removeOldest(b1);
+                victim = replace(false);
+            } else {
+                victim = removeOldest(t1);
+            }
+        } else if (recent + t2.size() + b2.size() >= capacity) {
+            if (recent + t2.size() + b2.size() >= 2 * capacity) {
+                removeOldest(b2);
+            }
+            victim = replace(false);
+        }
+        t1.add(key);
+        return victim;
+    }
+
+    @Override
+    public void recordRemoval(final K key) {
+        if (!t1.remove(key)) {
+            t2.remove(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return t1.size() + t2.size();
+    }
+
+    /**
+     * Returns the target size of T1.
+     *
+     * @return target
+     */
+    int getTarget() {
+        return target;
+    }
+
+    private K replace(final boolean ghostOfFrequent) {
+        if (size() < capacity) {
+            return null;
+        }
+        if (!t1.isEmpty() && (t2.isEmpty() || t1.size() > target || ghostOfFrequent && t1.size() == target)) {
+            K victim = removeOldest(t1);
+            b1.add(victim);
+            return victim;
+        }
+        K victim = removeOldest(t2);
+        b2.add(victim);
+        return victim;
+    }
+
+    private static <K> K removeOldest(final LinkedHashSet<K> keys) {
+        Iterator<K> oldest = keys.iterator();
+        K key = oldest.next();
+        oldest.remove();
+        return key;
+    }
+}
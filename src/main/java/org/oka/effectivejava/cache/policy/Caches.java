@@ -0,0 +1,81 @@
+package org.oka.effectivejava.cache.policy;
+
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.guava.LRUCacheService;
+import org.oka.effectivejava.cache.java.LFUCacheService;
+import org.oka.effectivejava.cache.java.TinyLFUCacheService;
+
+/**
+ * Single entry point to build a {@link Cache} with any eviction policy, so the policy is a configuration value:
+ * <pre>
+ * Cache&lt;String, String&gt; cache = Caches.&lt;String, String&gt;builder()
+ *         .policy(Policy.S3_FIFO)
+ *         .maximumSize(10_000L)
+ *         .build();
+ * </pre>
+ * LRU, LFU and TinyLFU are the existing {@link LRUCacheService}, {@link LFUCacheService} and
+ * {@link TinyLFUCacheService}; CLOCK, S3-FIFO, ARC and custom {@link EvictionPolicy} implementations run on a
+ * {@link PolicyCache}.
+ */
+public final class Caches {
+    /**
+     * Max size of the cache storage.
+     */
+    private static final int MAX_SIZE = 100_000;
+
+    private Caches() {
+    }
+
+    /**
+     * Builds a cache.
+     *
+     * @param policy         eviction policy. Defaults to {@link Policy#LFU}.
+     * @param maximumSize    max number of entries. Defaults to 100.000.
+     * @param evictionPolicy custom eviction policy, bounded by itself. Excludes the policy and the max size.
+     * @param <K>            Key
+     * @param <V>            Value
+     * @return the cache.
+     */
+    @Builder(builderClassName = "CacheBuilder")
+    private static <K, V> Cache<K, V> newCache(final Policy policy, final Long maximumSize,
+                                               final EvictionPolicy<K> evictionPolicy) {
+        if (evictionPolicy != null) {
+            if (policy != null || maximumSize != null) {
+                throw new IllegalStateException("A custom eviction policy excludes the policy and the maximum size");
+            }
+            return new PolicyCache<>(evictionPolicy);
+        }
+        int size = maximumSize == null ? MAX_SIZE : toCapacity(maximumSize);
+        switch (policy == null ? Policy.LFU : policy) {
+            case LRU:
+                LRUCacheService<K, V> lru = LRUCacheService.<K, V>builder()
+                        .maximumSize((long) size)
+                        .build();
+                lru.buildCache();
+                return lru;
+            case CLOCK:
+                return new PolicyCache<>(new ClockPolicy<>(size));
+            case S3_FIFO:
+                return new PolicyCache<>(new S3FifoPolicy<>(size));
+            case ARC:
+                return new PolicyCache<>(new ArcPolicy<>(size));
+            case TINY_LFU:
+                return TinyLFUCacheService.<K, V>builder()
+                        .maximumSize((long) size)
+                        .build();
+            default:
+                return LFUCacheService.<K, V>builder()
+                        .maximumSize((long) size)
+                        .build();
+        }
+    }
+
+    private static int toCapacity(final long maximumSize) {
+        if (maximumSize <= 0 || maximumSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum size must be between 1 and " + Integer.MAX_VALUE + ": "
+                    + maximumSize);
+        }
+        return (int) maximumSize;
+    }
+}
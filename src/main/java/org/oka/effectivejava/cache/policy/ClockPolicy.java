@@ -0,0 +1,106 @@
+package org.oka.effectivejava.cache.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLOCK (second chance) eviction policy: keys sit in a circular array with a referenced bit, set on every hit. To make
+ * room, the hand sweeps the array clearing the bits, and evicts the first key found without it.
+ * <p>
+ * Hits only set a bit, so they are cheaper than moving an entry in an LRU list, at the price of approximating LRU.
+ *
+ * @param <K> Key
+ */
+public final class ClockPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * Key of every slot. Null when the slot is free.
+     */
+    private final Object[] keys;
+    /**
+     * Referenced bit of every slot.
+     */
+    private final boolean[] referenced;
+    /**
+     * Slot of every key.
+     */
+    private final Map<K, Integer> slots;
+    /**
+     * Stack of the slots freed by removals.
+     */
+    private final int[] freeSlots;
+    /**
+     * Number of freed slots.
+     */
+    private int freeSlotCount;
+    /**
+     * Number of slots ever used.
+     */
+    private int used;
+    /**
+     * Next slot to inspect when evicting.
+     */
+    private int hand;
+
+    /**
+     * Creates an empty policy.
+     *
+     * @param capacity max number of keys.
+     */
+    public ClockPolicy(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + capacity);
+        }
+        this.keys = new Object[capacity];
+        this.referenced = new boolean[capacity];
+        this.freeSlots = new int[capacity];
+        this.slots = new HashMap<>();
+    }
+
+    @Override
+    public void recordAccess(final K key) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            referenced[slot] = true;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K recordInsertion(final K key) {
+        K victim = null;
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else if (used < keys.length) {
+            slot = used++;
+        } else {
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % keys.length;
+            }
+            slot = hand;
+            hand = (hand + 1) % keys.length;
+            victim = (K) keys[slot];
+            slots.remove(victim);
+        }
+        keys[slot] = key;
+        referenced[slot] = false;
+        slots.put(key, slot);
+        return victim;
+    }
+
+    @Override
+    public void recordRemoval(final K key) {
+        Integer slot = slots.remove(key);
+        if (slot != null) {
+            keys[slot] = null;
+            referenced[slot] = false;
+            freeSlots[freeSlotCount++] = slot;
+        }
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,41 @@
+package org.oka.effectivejava.cache.policy;
+
+/**
+ * Service provider interface of the eviction policies of a {@link PolicyCache}.
+ * <p>
+ * A policy only sees keys: the cache stores the values and tells the policy about every hit, insertion and removal,
+ * and the policy decides which key leaves when an insertion exceeds its capacity. Policies may keep extra state, such
+ * as the ghost keys of recently evicted entries. They are not thread-safe: the cache calls them under its lock.
+ *
+ * @param <K> Key
+ */
+public interface EvictionPolicy<K> {
+    /**
+     * Records a hit on a cached key, or the replacement of its value.
+     *
+     * @param key cached key.
+     */
+    void recordAccess(K key);
+
+    /**
+     * Records the insertion of a key which is not cached, evicting another one if the policy is full.
+     *
+     * @param key new key.
+     * @return the evicted key, which the cache must drop. Null if nothing was evicted.
+     */
+    K recordInsertion(K key);
+
+    /**
+     * Records the removal of a cached key by the cache itself, not by the policy.
+     *
+     * @param key cached key.
+     */
+    void recordRemoval(K key);
+
+    /**
+     * Returns the number of keys cached by the policy.
+     *
+     * @return size
+     */
+    int size();
+}
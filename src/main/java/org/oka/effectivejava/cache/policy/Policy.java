@@ -0,0 +1,32 @@
+package org.oka.effectivejava.cache.policy;
+
+/**
+ * Eviction policies available through {@link Caches#builder()}.
+ */
+public enum Policy {
+    /**
+     * Least recently used, on top of guava: {@link org.oka.effectivejava.cache.guava.LRUCacheService}.
+     */
+    LRU,
+    /**
+     * Least frequently used, with O(1) frequency buckets: {@link org.oka.effectivejava.cache.java.LFUCacheService}.
+     */
+    LFU,
+    /**
+     * Second chance approximation of LRU: {@link ClockPolicy}.
+     */
+    CLOCK,
+    /**
+     * Small, main and ghost FIFO queues filtering one-hit wonders: {@link S3FifoPolicy}.
+     */
+    S3_FIFO,
+    /**
+     * Adaptive replacement balancing recency and frequency: {@link ArcPolicy}.
+     */
+    ARC,
+    /**
+     * LRU window in front of a segmented LRU, admitting by estimated frequency:
+     * {@link org.oka.effectivejava.cache.java.TinyLFUCacheService}.
+     */
+    TINY_LFU
+}
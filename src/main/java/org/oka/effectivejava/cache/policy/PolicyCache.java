@@ -0,0 +1,188 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Generic cache of key (K) / value (V) evicting through a pluggable {@link EvictionPolicy}.
+ * <p>
+ * Values live in a hash map and the policy only sees the keys: every hit, insertion and removal is reported to it, and
+ * the key it returns on an insertion is dropped from the map. Both are guarded by a single lock, taken once per call
+ * (or once per batch).
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public final class PolicyCache<K, V> implements Cache<K, V> {
+    /**
+     * Cached values.
+     */
+    private final Map<K, V> storage = new HashMap<>();
+    /**
+     * Decides which key leaves the cache.
+     */
+    private final EvictionPolicy<K> policy;
+    /**
+     * Guards the storage and the policy.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Records the hits, misses, evictions and the latencies of the cache.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param policy eviction policy, owned by the cache from now on.
+     */
+    public PolicyCache(final EvictionPolicy<K> policy) {
+        this.policy = requireNonNull(policy, "Eviction policy is required");
+    }
+
+    @Override
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        V value;
+        lock.lock();
+        try {
+            value = getLocked(k);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    @Override
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        lock.lock();
+        try {
+            putLocked(k, v);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        Map<K, V> found = new LinkedHashMap<>();
+        long[] latencies = new long[keys.size()];
+        boolean[] hits = new boolean[keys.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (K k : keys) {
+                final long timeBefore = System.nanoTime();
+                V value = getLocked(k);
+                if (value != null) {
+                    found.put(k, value);
+                }
+                hits[i] = value != null;
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordGet(hits[j], latencies[j]);
+        }
+        return found;
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        long[] latencies = new long[entries.size()];
+        int i = 0;
+        lock.lock();
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                final long timeBefore = System.nanoTime();
+                putLocked(entry.getKey(), entry.getValue());
+                latencies[i++] = System.nanoTime() - timeBefore;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int j = 0; j < i; j++) {
+            metrics.recordPut(latencies[j]);
+        }
+    }
+
+    @Override
+    public V remove(final K k) {
+        lock.lock();
+        try {
+            V value = storage.remove(k);
+            if (value != null) {
+                policy.recordRemoval(k);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return storage.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exposes current Cached Items storage as an unmodifiable point-in-time copy.
+     *
+     * @return Map<K, V>
+     */
+    public Map<K, V> getCachedItemStorage() {
+        lock.lock();
+        try {
+            return unmodifiableMap(new HashMap<>(storage));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    private V getLocked(final K k) {
+        V value = storage.get(k);
+        if (value != null) {
+            policy.recordAccess(k);
+        }
+        return value;
+    }
+
+    private void putLocked(final K k, final V v) {
+        requireNonNull(v, "Null values are not supported");
+        if (storage.put(k, v) != null) {
+            policy.recordAccess(k);
+            return;
+        }
+        final long evictionStart = System.nanoTime();
+        K victim = policy.recordInsertion(k);
+        if (victim != null) {
+            storage.remove(victim);
+            metrics.recordEviction(System.nanoTime() - evictionStart);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.oka.effectivejava.cache.policy;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * S3-FIFO eviction policy: a small FIFO queue (10% of the capacity) filters the keys used only once, a main FIFO queue
+ * holds the rest, and a ghost queue remembers the keys recently evicted from the small one.
+ * <p>
+ * New keys enter the small queue, unless they are ghosts, which go straight to the main one. Hits only bump a 2-bit
+ * counter. When evicting from the small queue, keys used more than once move to the main queue and the rest leave the
+ * cache as ghosts; when evicting from the main queue, keys with a positive counter are reinserted with the counter
+ * decremented. Every queue is a plain FIFO, so hits never reorder anything.
+ * <p>
+ * Removed keys are only marked in the queues, and dropped when eviction reaches them. Removals without evictions would
+ * grow the queues without bound, so they are purged of the removed entries once they hold twice the capacity: at least
+ * capacity removals between two purges, so the cost stays constant per removal.
+ *
+ * @param <K> Key
+ */
+public final class S3FifoPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * Max value of the usage counter.
+     */
+    private static final int MAX_FREQUENCY = 3;
+    /**
+     * Max number of keys.
+     */
+    private final int capacity;
+    /**
+     * Target size of the small queue.
+     */
+    private final int smallCapacity;
+    /**
+     * Max number of ghost keys.
+     */
+    private final int ghostCapacity;
+    /**
+     * Cached entries by key.
+     */
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    /**
+     * Small FIFO queue. Removed entries stay until they reach the head or the queues are purged.
+     */
+    private final ArrayDeque<Entry<K>> small = new ArrayDeque<>();
+    /**
+     * Main FIFO queue. Removed entries stay until they reach the head or the queues are purged.
+     */
+    private final ArrayDeque<Entry<K>> main = new ArrayDeque<>();
+    /**
+     * Keys recently evicted from the small queue, oldest first.
+     */
+    private final LinkedHashSet<K> ghosts = new LinkedHashSet<>();
+    /**
+     * Number of cached keys in the small queue.
+     */
+    private int smallSize;
+    /**
+     * Number of cached keys in the main queue.
+     */
+    private int mainSize;
+
+    /**
+     * Creates an empty policy.
+     *
+     * @param capacity max number of keys.
+     */
+    public S3FifoPolicy(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.smallCapacity = Math.max(1, capacity / 10);
+        this.ghostCapacity = Math.max(1, capacity - smallCapacity);
+    }
+
+    @Override
+    public void recordAccess(final K key) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null && entry.frequency < MAX_FREQUENCY) {
+            entry.frequency++;
+        }
+    }
+
+    @Override
+    public K recordInsertion(final K key) {
+        K victim = entries.size() >= capacity ? evict() : null;
+        Entry<K> entry = new Entry<>(key);
+        entries.put(key, entry);
+        if (ghosts.remove(key)) {
+            entry.main = true;
+            main.addLast(entry);
+            mainSize++;
+        } else {
+            small.addLast(entry);
+            smallSize++;
+        }
+        return victim;
+    }
+
+    @Override
+    public void recordRemoval(final K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry != null) {
+            entry.removed = true;
+            if (entry.main) {
+                mainSize--;
+            } else {
+                smallSize--;
+            }
+            if (small.size() + main.size() > 2 * capacity) {
+                small.removeIf(queued -> queued.removed);
+                main.removeIf(queued -> queued.removed);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of entries in the queues, removed ones included.
+     *
+     * @return queued entries
+     */
+    int getQueuedEntries() {
+        return small.size() + main.size();
+    }
+
+    private K evict() {
+        while (true) {
+            if (smallSize >= smallCapacity || mainSize == 0) {
+                Entry<K> entry = small.pollFirst();
+                if (entry.removed) {
+                    continue;
+                }
+                smallSize--;
+                if (entry.frequency > 1) {
+                    entry.frequency = 0;
+                    entry.main = true;
+                    main.addLast(entry);
+                    mainSize++;
+                } else {
+                    entries.remove(entry.key);
+                    addGhost(entry.key);
+                    return entry.key;
+                }
+            } else {
+                Entry<K> entry = main.pollFirst();
+                if (entry.removed) {
+                    continue;
+                }
+                if (entry.frequency > 0) {
+                    entry.frequency--;
+                    main.addLast(entry);
+                } else {
+                    mainSize--;
+                    entries.remove(entry.key);
+                    return entry.key;
+                }
+            }
+        }
+    }
+
+    private void addGhost(final K key) {
+        ghosts.add(key);
+        if (ghosts.size() > ghostCapacity) {
+            Iterator<K> oldest = ghosts.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Cached key with its usage counter.
+     *
+     * @param <K> Key
+     */
+    private static final class Entry<K> {
+        private final K key;
+        private int frequency;
+        private boolean main;
+        private boolean removed;
+
+        private Entry(final K key) {
+            this.key = key;
+        }
+    }
+}
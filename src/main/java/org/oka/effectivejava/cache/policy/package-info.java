@@ -0,0 +1,4 @@
+/**
+ * Set of eviction policies pluggable into a {@link org.oka.effectivejava.cache.Cache}, and the builder choosing them.
+ */
+package org.oka.effectivejava.cache.policy;
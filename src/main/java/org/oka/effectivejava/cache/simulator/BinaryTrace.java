@@ -0,0 +1,113 @@
+package org.oka.effectivejava.cache.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Trace stored as a magic number followed by 8 bytes per key, read through a reused direct buffer. It skips the text
+ * parsing, so replaying it is bound by the simulated cache rather than by the trace.
+ */
+public final class BinaryTrace implements Trace {
+    /**
+     * Identifies binary traces.
+     */
+    static final int MAGIC = 0x54524331;
+    /**
+     * Size of the buffer used to read and write the keys.
+     */
+    private static final int BUFFER_SIZE = 64 << 10;
+    /**
+     * Binary file.
+     */
+    private final Path path;
+
+    BinaryTrace(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public void forEach(final LongConsumer action) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            fill(channel, buffer, Integer.BYTES);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary trace: " + path);
+            }
+            while (true) {
+                while (buffer.remaining() >= Long.BYTES) {
+                    action.accept(buffer.getLong());
+                }
+                buffer.compact();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    if (buffer.hasRemaining()) {
+                        throw new IOException("Truncated binary trace: " + path);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the keys of a trace into a binary file, for example to convert a text trace once and replay it faster.
+     *
+     * @param path  binary file, replaced if it exists.
+     * @param trace keys to write.
+     * @throws IOException if the trace can not be read or the file can not be written.
+     */
+    public static void write(final Path path, final Trace trace) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            IOException[] failure = new IOException[1];
+            trace.forEach(key -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                if (buffer.remaining() < Long.BYTES) {
+                    try {
+                        flush(channel, buffer);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                        return;
+                    }
+                }
+                buffer.putLong(key);
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void fill(final FileChannel channel, final ByteBuffer buffer, final int bytes) throws IOException {
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < bytes) {
+            throw new IOException("Truncated binary trace");
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
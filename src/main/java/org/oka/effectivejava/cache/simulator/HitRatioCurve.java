@@ -0,0 +1,89 @@
+package org.oka.effectivejava.cache.simulator;
+
+import java.io.IOException;
+
+/**
+ * Hit ratio of an LRU cache for every capacity, computed from a single pass over a trace.
+ * <p>
+ * It follows the stack algorithm of Mattson et al.: the reuse (stack) distance of an access is the number of distinct
+ * keys accessed since the previous access to the same key, and an LRU cache of capacity c hits exactly the accesses
+ * with a distance lower than c. So a histogram of the distances gives the whole curve, with no simulation per size.
+ * The distances are counted with a Fenwick tree over the time of the last access of every key, in O(log n) per access.
+ */
+public final class HitRatioCurve {
+    /**
+     * Number of accesses with every reuse distance.
+     */
+    private final long[] distances;
+    /**
+     * Number of accesses.
+     */
+    private final long requests;
+    /**
+     * Number of distinct keys, which is also the number of cold misses.
+     */
+    private final long distinctKeys;
+
+    HitRatioCurve(final long[] distances, final long requests, final long distinctKeys) {
+        this.distances = new long[distances.length + 1];
+        for (int i = 0; i < distances.length; i++) {
+            this.distances[i + 1] = this.distances[i] + distances[i];
+        }
+        this.requests = requests;
+        this.distinctKeys = distinctKeys;
+    }
+
+    /**
+     * Computes the curve of a trace.
+     *
+     * @param trace accessed keys.
+     * @return hit ratio curve.
+     * @throws IOException if the trace can not be read.
+     */
+    public static HitRatioCurve of(final Trace trace) throws IOException {
+        StackDistanceAnalyzer analyzer = new StackDistanceAnalyzer();
+        trace.forEach(analyzer::record);
+        return analyzer.curve();
+    }
+
+    /**
+     * Returns the number of hits of an LRU cache of the given capacity.
+     *
+     * @param capacity max number of entries.
+     * @return hits
+     */
+    public long hits(final long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        return distances[(int) Math.min(capacity, distances.length - 1)];
+    }
+
+    /**
+     * Returns the hit ratio of an LRU cache of the given capacity.
+     *
+     * @param capacity max number of entries.
+     * @return hit ratio between 0 and 1. Zero for an empty trace.
+     */
+    public double hitRatio(final long capacity) {
+        return requests == 0L ? 0d : (double) hits(capacity) / requests;
+    }
+
+    /**
+     * Returns the number of accesses of the trace.
+     *
+     * @return requests
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of distinct keys, the capacity beyond which the hit ratio does not grow.
+     *
+     * @return distinct keys
+     */
+    public long getDistinctKeys() {
+        return distinctKeys;
+    }
+}
@@ -0,0 +1,68 @@
+package org.oka.effectivejava.cache.simulator;
+
+import lombok.Getter;
+
+/**
+ * Outcome of replaying a trace through one cache configuration.
+ */
+@Getter
+public final class SimulationResult {
+    /**
+     * Name of the cache configuration.
+     */
+    private final String name;
+    /**
+     * Max number of entries of the cache.
+     */
+    private final long capacity;
+    /**
+     * Number of accesses replayed.
+     */
+    private final long requests;
+    /**
+     * Number of accesses finding the key cached.
+     */
+    private final long hits;
+    /**
+     * Number of entries evicted.
+     */
+    private final long evictions;
+    /**
+     * Time spent replaying the trace (ns), including the trace reading.
+     */
+    private final long nanos;
+
+    SimulationResult(final String name, final long capacity, final long requests, final long hits,
+                     final long evictions, final long nanos) {
+        this.name = name;
+        this.capacity = capacity;
+        this.requests = requests;
+        this.hits = hits;
+        this.evictions = evictions;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the ratio of accesses finding the key cached.
+     *
+     * @return hit ratio between 0 and 1. Zero for an empty trace.
+     */
+    public double getHitRatio() {
+        return requests == 0L ? 0d : (double) hits / requests;
+    }
+
+    /**
+     * Returns the number of accesses replayed per second.
+     *
+     * @return ops/sec
+     */
+    public double getOpsPerSecond() {
+        return nanos == 0L ? 0d : requests * 1_000_000_000d / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s capacity=%-10d hitRatio=%.4f evictions=%-10d ops/sec=%.0f",
+                name, capacity, getHitRatio(), evictions, getOpsPerSecond());
+    }
+}
@@ -0,0 +1,174 @@
+package org.oka.effectivejava.cache.simulator;
+
+import lombok.Builder;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.policy.Caches;
+import org.oka.effectivejava.cache.policy.Policy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Replays an access trace through a set of cache configurations and a sweep of capacities, one simulation per
+ * configuration and capacity, running in parallel on a pool with one thread per core by default.
+ * <p>
+ * Every simulation streams the trace on its own: a miss (get returning null) is followed by a put of the key, as a
+ * read-through cache would do. Configurations are either a {@link Policy}, built through {@link Caches#builder()},
+ * or any named {@link CacheFactory}.
+ */
+public final class Simulator {
+    /**
+     * Accessed keys.
+     */
+    private final Trace trace;
+    /**
+     * Cache configurations by name.
+     */
+    private final Map<String, CacheFactory> configurations;
+    /**
+     * Capacities of the sweep.
+     */
+    private final List<Long> capacities;
+    /**
+     * Number of simulations running at the same time.
+     */
+    private final int threads;
+
+    /**
+     * Builds a cache of the given capacity.
+     */
+    @FunctionalInterface
+    public interface CacheFactory {
+        /**
+         * Builds an empty cache.
+         *
+         * @param capacity max number of entries.
+         * @return the cache.
+         */
+        Cache<Long, Long> create(long capacity);
+    }
+
+    /**
+     * Creates a simulator.
+     *
+     * @param trace          accessed keys.
+     * @param policies       policies to simulate.
+     * @param configurations other cache configurations to simulate, by name.
+     * @param capacities     capacities of the sweep.
+     * @param threads        number of simulations running at the same time. Defaults to the number of cores.
+     */
+    @Builder
+    private Simulator(final Trace trace, final List<Policy> policies, final Map<String, CacheFactory> configurations,
+                      final List<Long> capacities, final Integer threads) {
+        this.trace = requireNonNull(trace, "Trace is required");
+        this.configurations = new LinkedHashMap<>();
+        if (policies != null) {
+            for (Policy policy : policies) {
+                this.configurations.put(policy.name(), capacity -> Caches.<Long, Long>builder()
+                        .policy(policy)
+                        .maximumSize(capacity)
+                        .build());
+            }
+        }
+        if (configurations != null) {
+            this.configurations.putAll(configurations);
+        }
+        if (this.configurations.isEmpty()) {
+            throw new IllegalStateException("At least one policy or cache configuration is required");
+        }
+        if (capacities == null || capacities.isEmpty()) {
+            throw new IllegalStateException("At least one capacity is required");
+        }
+        this.capacities = List.copyOf(capacities);
+        this.threads = threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+        if (this.threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + this.threads);
+        }
+    }
+
+    /**
+     * Runs every simulation.
+     *
+     * @return results, grouped by configuration and in the order of the capacities.
+     * @throws IOException          if the trace can not be read.
+     * @throws InterruptedException if interrupted while waiting for the simulations.
+     */
+    public List<SimulationResult> run() throws IOException, InterruptedException {
+        List<Callable<SimulationResult>> simulations = new ArrayList<>();
+        configurations.forEach((name, factory) -> {
+            for (long capacity : capacities) {
+                simulations.add(() -> simulate(name, factory.create(capacity), capacity));
+            }
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cache-simulator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<SimulationResult> results = new ArrayList<>(simulations.size());
+            for (Future<SimulationResult> simulation : executor.invokeAll(simulations)) {
+                results.add(getResult(simulation));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SimulationResult simulate(final String name, final Cache<Long, Long> cache, final long capacity)
+            throws IOException {
+        long[] requests = new long[1];
+        long[] hits = new long[1];
+        final long timeBefore = System.nanoTime();
+        trace.forEach(key -> {
+            requests[0]++;
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            } else {
+                hits[0]++;
+            }
+        });
+        final long nanos = System.nanoTime() - timeBefore;
+        long evictions = cache.getMetrics().getEvictions();
+        if (cache instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) cache).close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Can not close the cache " + name, e);
+            }
+        }
+        return new SimulationResult(name, capacity, requests[0], hits[0], evictions, nanos);
+    }
+
+    private static SimulationResult getResult(final Future<SimulationResult> simulation)
+            throws IOException, InterruptedException {
+        try {
+            return simulation.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.oka.effectivejava.cache.simulator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the LRU stack distance of every access of a trace, for {@link HitRatioCurve}.
+ * <p>
+ * Every key holds a one in a Fenwick tree at the time (slot) of its last access, so the distance of an access is the
+ * number of ones after the previous slot of the key. Slots are renumbered densely when they run out, keeping their
+ * order, so the tree is bounded by twice the number of distinct keys instead of growing with the trace.
+ */
+final class StackDistanceAnalyzer {
+    /**
+     * Initial number of slots.
+     */
+    private static final int INITIAL_SLOTS = 1 << 10;
+    /**
+     * Slot of the last access of every key.
+     */
+    private final Map<Long, Integer> lastAccess = new HashMap<>();
+    /**
+     * Fenwick tree (1-based) of the slots holding the last access of a key.
+     */
+    private int[] tree;
+    /**
+     * Next free slot.
+     */
+    private int now;
+    /**
+     * Number of accesses with every distance.
+     */
+    private long[] distances = new long[INITIAL_SLOTS];
+    /**
+     * Number of accesses.
+     */
+    private long requests;
+
+    StackDistanceAnalyzer() {
+        this(INITIAL_SLOTS);
+    }
+
+    StackDistanceAnalyzer(final int slots) {
+        this.tree = new int[slots + 1];
+    }
+
+    /**
+     * Records an access.
+     *
+     * @param key accessed key.
+     */
+    void record(final long key) {
+        requests++;
+        if (now == tree.length - 1) {
+            compact();
+        }
+        Integer previous = lastAccess.get(key);
+        if (previous != null) {
+            int distance = prefix(now) - prefix(previous + 1);
+            if (distance >= distances.length) {
+                distances = Arrays.copyOf(distances, Math.max(distances.length * 2, distance + 1));
+            }
+            distances[distance]++;
+            add(previous, -1);
+        }
+        add(now, 1);
+        lastAccess.put(key, now++);
+    }
+
+    /**
+     * Returns the curve of the accesses recorded so far.
+     *
+     * @return hit ratio curve.
+     */
+    HitRatioCurve curve() {
+        return new HitRatioCurve(distances, requests, lastAccess.size());
+    }
+
+    private void compact() {
+        int keys = lastAccess.size();
+        Long[] byIndex = new Long[keys];
+        long[] order = new long[keys];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : lastAccess.entrySet()) {
+            byIndex[i] = entry.getKey();
+            order[i] = (long) entry.getValue() << 32 | i;
+            i++;
+        }
+        Arrays.sort(order);
+        for (int slot = 0; slot < keys; slot++) {
+            lastAccess.put(byIndex[(int) order[slot]], slot);
+        }
+        tree = new int[Math.max(tree.length - 1, 2 * keys) + 1];
+        for (int slot = 1; slot < tree.length; slot++) {
+            if (slot <= keys) {
+                tree[slot]++;
+            }
+            int parent = slot + (slot & -slot);
+            if (parent < tree.length) {
+                tree[parent] += tree[slot];
+            }
+        }
+        now = keys;
+    }
+
+    private void add(final int slot, final int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private int prefix(final int slots) {
+        int sum = 0;
+        for (int i = slots; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,72 @@
+package org.oka.effectivejava.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Trace read line by line from a text file with one key per line.
+ */
+final class TextTrace implements Trace {
+    /**
+     * Max number of digits of a key parsed as a number. Longer keys are hashed.
+     */
+    private static final int MAX_DIGITS = 18;
+    /**
+     * Offset basis of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    /**
+     * Prime of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_PRIME = 0x100000001B3L;
+    /**
+     * Text file.
+     */
+    private final Path path;
+
+    TextTrace(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public void forEach(final LongConsumer action) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String key = line.trim();
+                if (!key.isEmpty()) {
+                    action.accept(keyOf(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a key of the trace to a long: non negative numbers are kept as they are, anything else is hashed.
+     *
+     * @param key key of the trace.
+     * @return long key.
+     */
+    static long keyOf(final String key) {
+        if (key.length() <= MAX_DIGITS) {
+            long number = 0L;
+            int i = 0;
+            while (i < key.length() && key.charAt(i) >= '0' && key.charAt(i) <= '9') {
+                number = number * 10 + (key.charAt(i++) - '0');
+            }
+            if (i == key.length()) {
+                return number;
+            }
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return hash | Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,55 @@
+package org.oka.effectivejava.cache.simulator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+/**
+ * Sequence of accessed keys, streamed from its source every time it is replayed, so it can be far bigger than the
+ * heap. Keys are longs: numeric keys are kept as they are and any other key is hashed to 64 bits.
+ */
+@FunctionalInterface
+public interface Trace {
+    /**
+     * Streams the keys of the trace, in order.
+     *
+     * @param action receives every key.
+     * @throws IOException if the trace can not be read.
+     */
+    void forEach(LongConsumer action) throws IOException;
+
+    /**
+     * Returns a trace read from a text file with one key per line. Blank lines are skipped.
+     *
+     * @param path text file.
+     * @return text trace.
+     */
+    static Trace text(final Path path) {
+        return new TextTrace(path);
+    }
+
+    /**
+     * Returns a trace read from a binary file written by {@link BinaryTrace#write(Path, Trace)}.
+     *
+     * @param path binary file.
+     * @return binary trace.
+     */
+    static Trace binary(final Path path) {
+        return new BinaryTrace(path);
+    }
+
+    /**
+     * Returns an in-memory trace.
+     *
+     * @param keys accessed keys, in order.
+     * @return trace.
+     */
+    static Trace of(final long... keys) {
+        long[] copy = keys.clone();
+        return action -> {
+            for (long key : copy) {
+                action.accept(key);
+            }
+        };
+    }
+}
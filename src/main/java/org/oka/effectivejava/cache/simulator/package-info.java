@@ -0,0 +1,4 @@
+/**
+ * Set of classes to replay access traces through the caches, offline, to compare policies and capacities.
+ */
+package org.oka.effectivejava.cache.simulator;
@@ -0,0 +1,611 @@
+package org.oka.effectivejava.cache.tiered;
+
+import lombok.extern.slf4j.Slf4j;
+import org.oka.effectivejava.cache.CacheMetrics;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.Serializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Disk-backed store of key (K) / value (V) made of append-only, memory-mapped segment files, with the location of
+ * every key in an in-memory index.
+ * <p>
+ * Every put appends a record (length and bytes of the key, length and bytes of the value) to the active segment, and
+ * a new segment is started when it is full. Overwritten and removed records stay in their segment as garbage: once
+ * less than half of a full segment is alive, a background thread copies its live records to the active segment and
+ * deletes it. When the segments exceed the max disk size, the oldest one is dropped with all its entries, so the log
+ * evicts in FIFO order. Its entries are removed from the index by the same background thread, so they may still be
+ * read for a short while after the segment was dropped.
+ * <p>
+ * Writes are serialized by a lock. Reads never take it: the index points to the mapped buffer of the segment, which
+ * records are never rewritten in, and which stays mapped while a reader holds it, even after the segment is deleted.
+ * The lock is held for bounded work only: new segment files are created and mapped before taking it, and compactions
+ * read the keys of a segment without it, then take it once per batch of at most {@value #COMPACTION_BATCH} bytes to
+ * copy the records still live, so a compaction never stalls the writers for a whole segment. Drops only take the
+ * segment out of the list under the lock; its keys are read and evicted without it.
+ * Segment files are deleted on {@link #close()}, as the index does not survive the process.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@Slf4j
+public final class SegmentLog<K, V> implements CacheMetrics, AutoCloseable {
+    /**
+     * Size of the length prefixes of a record: key length and value length.
+     */
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Integer.BYTES;
+    /**
+     * Max number of bytes of live records copied by a compaction per acquisition of the lock.
+     */
+    private static final int COMPACTION_BATCH = 64 * 1024;
+    /**
+     * Directory of the segment files.
+     */
+    private final Path directory;
+    /**
+     * Size of every segment file.
+     */
+    private final int segmentSize;
+    /**
+     * Max number of segments on disk.
+     */
+    private final int maximumSegments;
+    /**
+     * Converts the keys from/to bytes.
+     */
+    private final Serializer<K> keySerializer;
+    /**
+     * Converts the values from/to bytes.
+     */
+    private final Serializer<V> valueSerializer;
+    /**
+     * Location of the live record of every key.
+     */
+    private final ConcurrentHashMap<K, Location> index = new ConcurrentHashMap<>();
+    /**
+     * Segments on disk, oldest first. Segments being compacted are not in it.
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    /**
+     * Serializes the writes: appends, removals and the batches of the compactions.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Thread compacting the segments with too much garbage and evicting the entries of the dropped ones.
+     */
+    private final ExecutorService compactor;
+    /**
+     * Records the hits, misses, appends and evictions of the log.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Holds the number of compacted segments.
+     */
+    private final LongAdder compactions = new LongAdder();
+    /**
+     * Id of the next segment file.
+     */
+    private final AtomicInteger nextSegmentId = new AtomicInteger();
+    /**
+     * Segment receiving the appends. Null until the first one. Volatile, as it is checked without the lock to map the
+     * next segment in advance.
+     */
+    private volatile Segment active;
+    /**
+     * Whether the log has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates an empty log in the directory, creating it if needed.
+     *
+     * @param directory       directory of the segment files.
+     * @param segmentSize     size of every segment file. Bounds the size of a record.
+     * @param maximumSize     max total size of the segment files. At least one segment.
+     * @param keySerializer   converts the keys from/to bytes.
+     * @param valueSerializer converts the values from/to bytes.
+     * @throws IOException if the directory can not be created.
+     */
+    public SegmentLog(final Path directory, final int segmentSize, final long maximumSize,
+                      final Serializer<K> keySerializer, final Serializer<V> valueSerializer) throws IOException {
+        if (segmentSize <= RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Segment size must be greater than " + RECORD_OVERHEAD + ": "
+                    + segmentSize);
+        }
+        if (maximumSize < segmentSize) {
+            throw new IllegalArgumentException("Maximum size must hold at least one segment: " + maximumSize);
+        }
+        this.directory = Files.createDirectories(requireNonNull(directory, "Directory is required"));
+        this.segmentSize = segmentSize;
+        this.maximumSegments = (int) Math.min(Integer.MAX_VALUE, maximumSize / segmentSize);
+        this.keySerializer = requireNonNull(keySerializer, "Key serializer is required");
+        this.valueSerializer = requireNonNull(valueSerializer, "Value serializer is required");
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the value of the key, without blocking.
+     *
+     * @param k Key to use in the lookup.
+     * @return V stored value. Null if it not exists.
+     */
+    public V get(final K k) {
+        Location location = lookup(k);
+        return location == null ? null : read(location);
+    }
+
+    /**
+     * Appends the key/value to the log, replacing the previous value of the key. Values bigger than a segment are not
+     * stored, and the previous value is removed.
+     *
+     * @param k K key.
+     * @param v V Value.
+     * @throws IOException if a new segment file can not be created.
+     */
+    public void put(final K k, final V v) throws IOException {
+        final long timeBefore = System.nanoTime();
+        byte[] keyBytes = keySerializer.serialize(k);
+        byte[] valueBytes = valueSerializer.serialize(v);
+        int length = RECORD_OVERHEAD + keyBytes.length + valueBytes.length;
+        Segment next = length <= segmentSize && !fits(length) ? newSegment() : null;
+        lock.lock();
+        try {
+            requireOpen();
+            if (length > segmentSize) {
+                removeLocked(k);
+                return;
+            }
+            if (!fits(length)) {
+                roll(next);
+                next = null;
+            }
+            int offset = active.written;
+            active.buffer.position(offset);
+            active.buffer.putInt(keyBytes.length).put(keyBytes).putInt(valueBytes.length).put(valueBytes);
+            append(k, new Location(active, offset, length, keyBytes.length, valueBytes.length));
+        } finally {
+            lock.unlock();
+            if (next != null) {
+                delete(next);
+            }
+        }
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Removes the key from the log.
+     *
+     * @param k K key.
+     * @return true if the key was stored.
+     */
+    public boolean remove(final K k) {
+        if (!index.containsKey(k)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return removeLocked(k);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of stored keys.
+     *
+     * @return size
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the total size of the segment files.
+     *
+     * @return size in bytes
+     */
+    public long getDiskSize() {
+        lock.lock();
+        try {
+            return (long) segments.size() * segmentSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of segments compacted so far.
+     *
+     * @return compactions
+     */
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Waits for the pending compactions, then deletes the segment files.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            index.clear();
+            for (Segment segment : segments) {
+                delete(segment);
+            }
+            segments.clear();
+            active = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the location of the live record of the key, counting the hit or miss.
+     *
+     * @param k Key to use in the lookup.
+     * @return location. Null if the key is not stored.
+     */
+    Location lookup(final K k) {
+        final long timeBefore = System.nanoTime();
+        Location location = locate(k);
+        metrics.recordGet(location != null, System.nanoTime() - timeBefore);
+        return location;
+    }
+
+    /**
+     * Returns the location of the live record of the key, without counting a hit or miss.
+     *
+     * @param k Key to use in the lookup.
+     * @return location. Null if the key is not stored.
+     */
+    Location locate(final K k) {
+        return closed ? null : index.get(k);
+    }
+
+    /**
+     * Reads the value of a record.
+     *
+     * @param location location of the record.
+     * @return V stored value.
+     */
+    V read(final Location location) {
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        int start = location.offset + RECORD_OVERHEAD + location.keyLength;
+        buffer.limit(start + location.valueLength).position(start);
+        return valueSerializer.deserialize(buffer);
+    }
+
+    /**
+     * Removes the key, only if its live record is still the given one.
+     *
+     * @param k        K key.
+     * @param location location of the record, as returned by {@link #lookup(Object)}.
+     * @return true if the key was removed.
+     */
+    boolean remove(final K k, final Location location) {
+        lock.lock();
+        try {
+            if (!index.remove(k, location)) {
+                return false;
+            }
+            discard(location);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the compactions and drops submitted so far have finished.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void awaitCompactions() throws InterruptedException {
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private boolean removeLocked(final K k) {
+        Location location = index.remove(k);
+        if (location == null) {
+            return false;
+        }
+        discard(location);
+        return true;
+    }
+
+    private void append(final K k, final Location location) {
+        location.segment.written += location.length;
+        location.segment.live += location.length;
+        Location previous = index.put(k, location);
+        if (previous != null) {
+            discard(previous);
+        }
+    }
+
+    private void discard(final Location location) {
+        Segment segment = location.segment;
+        segment.live -= location.length;
+        if (segment != active && !segment.compacting && segments.contains(segment)
+                && segment.live < segmentSize / 2) {
+            segment.compacting = true;
+            submit(() -> compact(segment));
+        }
+    }
+
+    /**
+     * Returns whether the active segment has room for a record. Reliable under the lock only; without it, the answer
+     * just tells whether mapping a new segment in advance is worth it.
+     */
+    private boolean fits(final int length) {
+        Segment current = active;
+        return current != null && current.written + length <= segmentSize;
+    }
+
+    private Segment newSegment() throws IOException {
+        Path file = directory.resolve("segment-" + nextSegmentId.getAndIncrement() + ".log");
+        try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    /**
+     * Starts a new active segment, the given one if it was mapped in advance, dropping the oldest ones beyond the max.
+     */
+    private void roll(final Segment next) throws IOException {
+        active = next == null ? newSegment() : next;
+        segments.addLast(active);
+        while (segments.size() > maximumSegments) {
+            Segment oldest = segments.pollFirst();
+            submit(() -> drop(oldest));
+        }
+    }
+
+    /**
+     * Evicts the keys whose live record is in the dropped segment, then deletes it. Runs without the lock: a key
+     * written again in the meantime points to another record, so it is not removed.
+     */
+    private void drop(final Segment segment) {
+        try {
+            forEachLiveRecord(segment, 0, segment.written, (k, location) -> {
+                final long evictionStart = System.nanoTime();
+                if (index.remove(k, location)) {
+                    metrics.recordEviction(System.nanoTime() - evictionStart);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Drop of " + segment.file + " failed", e);
+        } finally {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Runs a compaction or a drop on the background thread, or on the caller's when it has been shut down by
+     * {@link #close()}, so the segment file is still deleted.
+     */
+    private void submit(final Runnable task) {
+        try {
+            compactor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Copies the live records of the segment to the active one, then deletes it. The keys are read without the lock;
+     * every batch of live records is copied under it, after checking that the index still points to each record, as
+     * a writer may have replaced or removed the key in the meantime.
+     */
+    private void compact(final Segment segment) {
+        lock.lock();
+        try {
+            if (closed || !segments.remove(segment)) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<K> keys = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        try {
+            int offset = 0;
+            while (offset < segment.written) {
+                keys.clear();
+                locations.clear();
+                offset = forEachLiveRecord(segment, offset, COMPACTION_BATCH, (k, location) -> {
+                    keys.add(k);
+                    locations.add(location);
+                });
+                int length = locations.stream().mapToInt(location -> location.length).sum();
+                Segment next = length <= segmentSize && !fits(length) ? newSegment() : null;
+                lock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+                    for (int i = 0; i < keys.size(); i++) {
+                        if (index.get(keys.get(i)) == locations.get(i)) {
+                            next = move(segment, keys.get(i), locations.get(i), next);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                    if (next != null) {
+                        delete(next);
+                    }
+                }
+            }
+            compactions.increment();
+        } catch (IOException e) {
+            log.warn("Compaction of " + segment.file + " failed", e);
+        } finally {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Copies a live record to the active segment, rolling to the given segment if needed.
+     *
+     * @return the given segment, or null if it was used.
+     */
+    private Segment move(final Segment segment, final K k, final Location location, final Segment next)
+            throws IOException {
+        Segment unused = next;
+        if (!fits(location.length)) {
+            roll(next);
+            unused = null;
+        }
+        int offset = active.written;
+        ByteBuffer record = segment.buffer.duplicate();
+        record.limit(location.offset + location.length).position(location.offset);
+        active.buffer.position(offset);
+        active.buffer.put(record);
+        append(k, new Location(active, offset, location.length, location.keyLength, location.valueLength));
+        return unused;
+    }
+
+    /**
+     * Walks the records of the segment from an offset, calling the action on the live ones, until the given number
+     * of bytes has been walked.
+     *
+     * @return offset of the first record not walked.
+     */
+    private int forEachLiveRecord(final Segment segment, final int from, final int maxBytes,
+                                  final RecordAction<K> action) throws IOException {
+        int offset = from;
+        while (offset < segment.written && offset - from < maxBytes) {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset);
+            int keyLength = buffer.getInt();
+            buffer.limit(offset + Integer.BYTES + keyLength);
+            K k = keySerializer.deserialize(buffer.slice());
+            buffer.limit(buffer.capacity()).position(offset + Integer.BYTES + keyLength);
+            int valueLength = buffer.getInt();
+            int length = RECORD_OVERHEAD + keyLength + valueLength;
+            Location location = index.get(k);
+            if (location != null && location.segment == segment && location.offset == offset) {
+                action.accept(k, location);
+            }
+            offset += length;
+        }
+        return offset;
+    }
+
+    private static void delete(final Segment segment) {
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.warn("Segment " + segment.file + " could not be deleted", e);
+        }
+    }
+
+    private void requireOpen() {
+        if (closed) {
+            throw new IllegalStateException("Segment log already closed: " + directory);
+        }
+    }
+
+    /**
+     * Action on a live record while walking a segment.
+     *
+     * @param <K> Key
+     */
+    @FunctionalInterface
+    private interface RecordAction<K> {
+        void accept(K k, Location location) throws IOException;
+    }
+
+    /**
+     * Segment file, mapped as a whole.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int written;
+        private int live;
+        private boolean compacting;
+
+        private Segment(final Path file, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Location of a record, with the number of hits it got.
+     */
+    static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int keyLength;
+        private final int valueLength;
+        private final AtomicInteger hits = new AtomicInteger();
+
+        private Location(final Segment segment, final int offset, final int length, final int keyLength,
+                         final int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        /**
+         * Counts a hit on the record.
+         *
+         * @return number of hits so far.
+         */
+        int recordHit() {
+            return hits.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package org.oka.effectivejava.cache.tiered;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.MetricsRecorder;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.Serializer;
+import org.oka.effectivejava.cache.java.LFUCacheService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-tier cache of key (K) / value (V): an on-heap {@link LFUCacheService} (L1) in front of a memory-mapped
+ * {@link SegmentLog} on disk (L2), so the working set can be much bigger than the heap.
+ * <p>
+ * Entries evicted from L1 are not lost: the evicting thread queues them while it holds the L1 lock, and appends them
+ * to L2 once it has released it, so L2 file creation and I/O never stall the other L1 writers. Queued entries are
+ * still served. An L1 miss looks the key up in L2, and an entry hit there a number of times (the promotion threshold) is hot again: it moves back to L1, which
+ * may evict a colder entry to L2 in turn. A key lives in a single tier at a time, except for the old L2 copy of a key
+ * written again to L1, which L1 shadows until the write removes it.
+ * <p>
+ * Writes and promotions of the same key are serialized by a striped lock, so a promotion never brings back a value
+ * older than a concurrent write. Metrics are reported for the whole cache and for each tier.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+@Slf4j
+public final class TieredCache<K, V> implements Cache<K, V>, AutoCloseable {
+    /**
+     * Default max number of entries of L1.
+     */
+    private static final long MAX_SIZE = 100_000L;
+    /**
+     * Default size of a segment file of L2.
+     */
+    private static final int SEGMENT_SIZE = 64 << 20;
+    /**
+     * Default max size of L2 on disk.
+     */
+    private static final long MAX_DISK_SIZE = 1L << 30;
+    /**
+     * Default number of L2 hits promoting an entry to L1.
+     */
+    private static final int PROMOTION_THRESHOLD = 2;
+    /**
+     * Number of locks serializing the writes and promotions of the keys. A power of two.
+     */
+    private static final int STRIPES = 64;
+    /**
+     * On-heap tier.
+     */
+    private final LFUCacheService<K, V> l1;
+    /**
+     * On-disk tier.
+     */
+    private final SegmentLog<K, V> l2;
+    /**
+     * Entries evicted from L1 and not yet appended to L2. Filled under the L1 lock, drained by the writers after it.
+     */
+    private final ConcurrentHashMap<K, V> demotions = new ConcurrentHashMap<>();
+    /**
+     * Number of L2 hits promoting an entry to L1.
+     */
+    private final int promotionThreshold;
+    /**
+     * Serialize the writes and promotions of the keys hashed to each of them.
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    /**
+     * Records the hits, misses and latencies of the cache as a whole.
+     */
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    /**
+     * Holds the number of entries promoted from L2 to L1.
+     */
+    private final LongAdder promotions = new LongAdder();
+
+    /**
+     * Creates a two-tier cache.
+     *
+     * @param maximumSize        max number of entries of L1. Defaults to 100.000.
+     * @param directory          directory of the L2 segment files. Required.
+     * @param segmentSize        size of every L2 segment file. Defaults to 64 MB.
+     * @param maximumDiskSize    max size of L2 on disk. Defaults to 1 GB.
+     * @param promotionThreshold number of L2 hits moving an entry back to L1. Defaults to 2.
+     * @param keySerializer      converts the keys from/to bytes in L2. Required.
+     * @param valueSerializer    converts the values from/to bytes in L2. Required.
+     */
+    @Builder
+    private TieredCache(final Long maximumSize, final Path directory, final Integer segmentSize,
+                        final Long maximumDiskSize, final Integer promotionThreshold,
+                        final Serializer<K> keySerializer, final Serializer<V> valueSerializer) {
+        if (promotionThreshold != null && promotionThreshold < 1) {
+            throw new IllegalArgumentException("Promotion threshold must be positive: " + promotionThreshold);
+        }
+        this.promotionThreshold = promotionThreshold == null ? PROMOTION_THRESHOLD : promotionThreshold;
+        try {
+            this.l2 = new SegmentLog<>(directory, segmentSize == null ? SEGMENT_SIZE : segmentSize,
+                    maximumDiskSize == null ? MAX_DISK_SIZE : maximumDiskSize, keySerializer, valueSerializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.l1 = LFUCacheService.<K, V>builder()
+                .maximumSize(maximumSize == null ? MAX_SIZE : maximumSize)
+                .evictionListener((k, v, cause) -> demotions.put(k, v))
+                .build();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the cached value for the key, from L1 or else from L2, promoting it to L1 when it is hot again.
+     *
+     * @param k Key to use in the lookup.
+     * @return V cached value. Null if it not exists.
+     */
+    @Override
+    public V get(final K k) {
+        final long timeBefore = System.nanoTime();
+        V value = l1.get(k);
+        if (value == null) {
+            value = demotions.get(k);
+        }
+        if (value == null) {
+            value = getFromL2(k);
+        }
+        metrics.recordGet(value != null, System.nanoTime() - timeBefore);
+        return value;
+    }
+
+    /**
+     * Add a new key/value to L1, dropping the L2 copy of the key, if any.
+     *
+     * @param k K key.
+     * @param v V Value.
+     */
+    @Override
+    public void put(final K k, final V v) {
+        final long timeBefore = System.nanoTime();
+        ReentrantLock stripe = stripe(k);
+        stripe.lock();
+        try {
+            demotions.remove(k);
+            l2.remove(k);
+            l1.put(k, v);
+        } finally {
+            stripe.unlock();
+        }
+        demote();
+        metrics.recordPut(System.nanoTime() - timeBefore);
+    }
+
+    /**
+     * Removes the key from both tiers.
+     *
+     * @param k K key.
+     * @return V removed value. Null if it was not cached.
+     */
+    @Override
+    public V remove(final K k) {
+        ReentrantLock stripe = stripe(k);
+        stripe.lock();
+        try {
+            V value = l1.remove(k);
+            V demoted = demotions.remove(k);
+            if (value == null) {
+                value = demoted;
+            }
+            SegmentLog.Location location = l2.locate(k);
+            if (location != null) {
+                V stored = l2.read(location);
+                l2.remove(k, location);
+                return value == null ? stored : value;
+            }
+            return value;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Returns the cached values of the keys, looking every key up as {@link #get(Object)} does.
+     *
+     * @param keys Keys to use in the lookup.
+     * @return Map<K, V> cached values. Missing keys are absent.
+     */
+    @Override
+    public Map<K, V> getAll(final Collection<? extends K> keys) {
+        Map<K, V> found = new LinkedHashMap<>();
+        for (K k : keys) {
+            V value = get(k);
+            if (value != null) {
+                found.put(k, value);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds all the key/value pairs to L1, as {@link #put(Object, Object)} does.
+     *
+     * @param entries key/value pairs to add.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+        entries.forEach(this::put);
+    }
+
+    /**
+     * Returns the number of cached entries in both tiers, including the ones queued for L2. A key written again while
+     * its old copy is still in L2 counts twice until the write removes it.
+     *
+     * @return size
+     */
+    @Override
+    public int size() {
+        return l1.size() + demotions.size() + l2.size();
+    }
+
+    /**
+     * Returns the metrics of the cache as a whole: a hit is a hit in any tier.
+     *
+     * @return metrics snapshot
+     */
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Returns the metrics of L1. Its evictions are the entries moved to L2.
+     *
+     * @return metrics snapshot
+     */
+    public MetricsSnapshot getL1Metrics() {
+        return l1.getMetrics();
+    }
+
+    /**
+     * Returns the metrics of L2, which only sees the L1 misses. Its evictions are the entries lost for good.
+     *
+     * @return metrics snapshot
+     */
+    public MetricsSnapshot getL2Metrics() {
+        return l2.getMetrics();
+    }
+
+    /**
+     * Returns the number of entries in L1.
+     *
+     * @return size
+     */
+    public int getL1Size() {
+        return l1.size();
+    }
+
+    /**
+     * Returns the number of entries in L2.
+     *
+     * @return size
+     */
+    public int getL2Size() {
+        return l2.size();
+    }
+
+    /**
+     * Returns the size of L2 on disk.
+     *
+     * @return size in bytes
+     */
+    public long getDiskSize() {
+        return l2.getDiskSize();
+    }
+
+    /**
+     * Returns the number of entries promoted from L2 to L1.
+     *
+     * @return promotions
+     */
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    /**
+     * Returns the number of L2 segments compacted so far.
+     *
+     * @return compactions
+     */
+    public long getCompactions() {
+        return l2.getCompactions();
+    }
+
+    /**
+     * Closes L1, then L2, deleting its segment files. Entries still queued for L2 are discarded.
+     */
+    @Override
+    public void close() {
+        l1.close();
+        demotions.clear();
+        l2.close();
+    }
+
+    private V getFromL2(final K k) {
+        SegmentLog.Location location = l2.lookup(k);
+        if (location == null) {
+            return null;
+        }
+        V value = l2.read(location);
+        if (location.recordHit() >= promotionThreshold) {
+            ReentrantLock stripe = stripe(k);
+            stripe.lock();
+            try {
+                if (l2.remove(k, location)) {
+                    l1.put(k, value);
+                    promotions.increment();
+                }
+            } finally {
+                stripe.unlock();
+            }
+            demote();
+        }
+        return value;
+    }
+
+    /**
+     * Appends the queued L1 evictions to L2. Called without the L1 lock nor a stripe held. Every key is moved under its
+     * stripe, so a write of the key in the meantime wins over its evicted value, and stays queued (and served) until
+     * it is in L2. Keys whose stripe is busy are left to its holder, which drains the queue after releasing it.
+     */
+    private void demote() {
+        for (K k : demotions.keySet()) {
+            ReentrantLock stripe = stripe(k);
+            if (!stripe.tryLock()) {
+                continue;
+            }
+            try {
+                V v = demotions.get(k);
+                if (v != null) {
+                    try {
+                        l2.put(k, v);
+                    } catch (IOException | IllegalStateException e) {
+                        log.warn("Evicted entry " + k + " could not be moved to L2", e);
+                    } finally {
+                        demotions.remove(k, v);
+                    }
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripe(final K k) {
+        int hash = k.hashCode();
+        return stripes[(hash ^ hash >>> 16) & (STRIPES - 1)];
+    }
+}
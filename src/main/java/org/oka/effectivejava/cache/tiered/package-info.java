@@ -0,0 +1,4 @@
+/**
+ * Set of classes to extend a cache beyond the heap with a second, memory-mapped tier on disk.
+ */
+package org.oka.effectivejava.cache.tiered;
@@ -1,45 +1,107 @@
 package org.oka.effectivejava.sort;
 
-import static java.util.Arrays.copyOfRange;
-
 /**
  * Merge sort implementation.
+ * <p>
+ * Bottom-up and stable: runs of {@value #RUN} elements are first sorted in place by insertion, then merged in passes
+ * of doubling width, every pass from the array into a scratch buffer or back (ping-pong), so nothing else is allocated
+ * and no element is copied outside of a merge, except once at the end when the number of passes is odd. Only the
+ * first {@code size} elements are read or written.
  */
 public final class MergeSort implements Sort {
     /**
-     * {@inheritDoc}
+     * Length of the runs sorted by insertion before merging.
+     */
+    static final int RUN = 32;
+
+    /**
+     * Sorts the first {@code size} elements of the array, allocating a single scratch buffer of {@code size} elements.
+     *
+     * @param array Array to sort.
+     * @param size  Size of the array.
      */
     @Override
     public void sort(final int[] array, final int size) {
         if (size < 2) {
             return;
         }
-        int middlePoint = size / 2;
-        int[] firstHalf = copyOfRange(array, 0, middlePoint);
-        int[] secondHalf = copyOfRange(array, middlePoint, array.length);
-
-        sort(firstHalf, middlePoint);
-        sort(secondHalf, size - middlePoint);
+        sort(array, size, new int[size]);
+    }
 
-        merge(array, firstHalf, secondHalf, middlePoint, size - middlePoint);
+    /**
+     * Sorts the first {@code size} elements of the array without allocating, using the given workspace as scratch
+     * buffer. The workspace can be reused across calls; its contents are overwritten.
+     *
+     * @param array     Array to sort.
+     * @param size      Size of the array.
+     * @param workspace scratch buffer of at least {@code size} elements.
+     */
+    public void sort(final int[] array, final int size, final int[] workspace) {
+        if (size < 0 || size > array.length) {
+            throw new IllegalArgumentException("Size must be between 0 and " + array.length + ": " + size);
+        }
+        if (workspace.length < size) {
+            throw new IllegalArgumentException("Workspace must hold at least " + size + " elements: "
+                    + workspace.length);
+        }
+        sortRange(array, 0, size, workspace);
     }
 
-    private void merge(final int[] array, final int[] firstHalf, final int[] secondHalf, final int leftSize, final int rightSize) {
-        int i = 0;
-        int j = 0;
-        int k = 0;
-        while (i < leftSize && j < rightSize) {
-            if (firstHalf[i] < secondHalf[j]) {
-                array[k++] = firstHalf[i++];
-            } else {
-                array[k++] = secondHalf[j++];
+    /**
+     * Sorts the elements of the array between two indexes, using the same indexes of the workspace as scratch buffer.
+     *
+     * @param array     Array to sort.
+     * @param from      index of the first element to sort, inclusive.
+     * @param to        index of the last element to sort, exclusive.
+     * @param workspace scratch buffer of at least {@code to} elements.
+     */
+    static void sortRange(final int[] array, final int from, final int to, final int[] workspace) {
+        // Indexes are walked as longs: with more than 2^30 elements, the next start of a pass would overflow an int.
+        for (long start = from; start < to; start += RUN) {
+            insertionSort(array, (int) start, (int) Math.min(start + RUN, to));
+        }
+        int[] source = array;
+        int[] target = workspace;
+        for (long width = RUN; width < to - from; width <<= 1) {
+            for (long start = from; start < to; start += width << 1) {
+                int middle = (int) Math.min(start + width, to);
+                int end = (int) Math.min(start + (width << 1), to);
+                merge(source, target, (int) start, middle, end);
             }
+            int[] merged = target;
+            target = source;
+            source = merged;
         }
-        while (i < leftSize) {
-            array[k++] = firstHalf[i++];
+        if (source != array) {
+            System.arraycopy(source, from, array, from, to - from);
         }
-        while (j < rightSize) {
-            array[k++] = secondHalf[j++];
+    }
+
+    private static void insertionSort(final int[] array, final int from, final int to) {
+        for (int i = from + 1; i < to; i++) {
+            int j = i - 1;
+            int current = array[i];
+            while (j >= from && array[j] > current) {
+                array[j + 1] = array[j];
+                j--;
+            }
+            array[j + 1] = current;
+        }
+    }
+
+    private static void merge(final int[] source, final int[] target, final int from, final int middle,
+                              final int to) {
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            if (source[i] <= source[j]) {
+                target[k++] = source[i++];
+            } else {
+                target[k++] = source[j++];
+            }
         }
+        System.arraycopy(source, i, target, k, middle - i);
+        System.arraycopy(source, j, target, k + middle - i, to - j);
     }
 }
@@ -0,0 +1,267 @@
+package org.oka.effectivejava.sort;
+
+import lombok.Builder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel merge sort implementation, on a {@link ForkJoinPool}.
+ * <p>
+ * The range is split in halves by {@link RecursiveAction} tasks down to a sequential threshold, where {@link MergeSort}
+ * sorts it. Halves are sorted into the scratch buffer and merged back into the array, or the other way around, so
+ * every level moves the elements once between both (ping-pong). Merges are parallel too: the middle element of the
+ * larger run is placed at its final position by a binary search on the smaller one, and the elements on each side of
+ * it are merged by two new tasks, so the last merge of the whole array does not run on a single thread.
+ * <p>
+ * Tasks run on the common pool unless a pool or a parallelism is given. As {@link MergeSort}, a single scratch buffer of
+ * {@code size} elements is allocated, or none when a workspace is given.
+ */
+public final class ParallelMergeSort implements Sort, AutoCloseable {
+    /**
+     * Default number of elements sorted or merged sequentially.
+     */
+    private static final int THRESHOLD = 8_192;
+    /**
+     * Runs the tasks.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Whether the pool was created by the sorter, so it is shut down on close.
+     */
+    private final boolean ownedPool;
+    /**
+     * Number of elements sorted or merged sequentially.
+     */
+    private final int threshold;
+
+    /**
+     * Creates a sorter on the common pool, with the default threshold.
+     */
+    public ParallelMergeSort() {
+        this(null, null, null);
+    }
+
+    /**
+     * Creates a sorter.
+     *
+     * @param pool        runs the tasks. Defaults to the common pool.
+     * @param parallelism number of threads of a new pool owned by the sorter. Excludes the pool.
+     * @param threshold   number of elements sorted or merged sequentially. Defaults to 8.192.
+     */
+    @Builder
+    private ParallelMergeSort(final ForkJoinPool pool, final Integer parallelism, final Integer threshold) {
+        if (pool != null && parallelism != null) {
+            throw new IllegalStateException("A custom pool excludes the parallelism");
+        }
+        if (parallelism != null && parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (threshold != null && threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        }
+        this.ownedPool = parallelism != null;
+        if (ownedPool) {
+            this.pool = new ForkJoinPool(parallelism);
+        } else {
+            this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+        }
+        this.threshold = threshold == null ? THRESHOLD : threshold;
+    }
+
+    /**
+     * Sorts the first {@code size} elements of the array, allocating a single scratch buffer of {@code size} elements.
+     *
+     * @param array Array to sort.
+     * @param size  Size of the array.
+     */
+    @Override
+    public void sort(final int[] array, final int size) {
+        if (size < 2) {
+            return;
+        }
+        sort(array, size, new int[size]);
+    }
+
+    /**
+     * Sorts the first {@code size} elements of the array without allocating a buffer, using the given workspace as
+     * scratch buffer. The workspace must not be shared by concurrent sorts; its contents are overwritten.
+     *
+     * @param array     Array to sort.
+     * @param size      Size of the array.
+     * @param workspace scratch buffer of at least {@code size} elements.
+     */
+    public void sort(final int[] array, final int size, final int[] workspace) {
+        if (size < 0 || size > array.length) {
+            throw new IllegalArgumentException("Size must be between 0 and " + array.length + ": " + size);
+        }
+        if (workspace.length < size) {
+            throw new IllegalArgumentException("Workspace must hold at least " + size + " elements: "
+                    + workspace.length);
+        }
+        if (size <= threshold) {
+            MergeSort.sortRange(array, 0, size, workspace);
+            return;
+        }
+        pool.invoke(new SortTask(array, workspace, 0, size, true));
+    }
+
+    /**
+     * Returns the parallelism of the pool running the tasks.
+     *
+     * @return parallelism
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts down the pool created by the sorter, if any.
+     */
+    @Override
+    public void close() {
+        if (ownedPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sorts a range, leaving the result either in the array or in the same range of the workspace.
+     */
+    private final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] array;
+        private final int[] workspace;
+        private final int from;
+        private final int to;
+        private final boolean intoArray;
+
+        private SortTask(final int[] array, final int[] workspace, final int from, final int to,
+                         final boolean intoArray) {
+            this.array = array;
+            this.workspace = workspace;
+            this.from = from;
+            this.to = to;
+            this.intoArray = intoArray;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                MergeSort.sortRange(array, from, to, workspace);
+                if (!intoArray) {
+                    System.arraycopy(array, from, workspace, from, to - from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(array, workspace, from, middle, !intoArray),
+                    new SortTask(array, workspace, middle, to, !intoArray));
+            int[] source = intoArray ? workspace : array;
+            int[] target = intoArray ? array : workspace;
+            new MergeTask(source, target, from, middle, middle, to, from).compute();
+        }
+    }
+
+    /**
+     * Merges two sorted runs of the source into the target, from a given index.
+     */
+    private final class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] source;
+        private final int[] target;
+        private final int leftFrom;
+        private final int leftTo;
+        private final int rightFrom;
+        private final int rightTo;
+        private final int into;
+
+        private MergeTask(final int[] source, final int[] target, final int leftFrom, final int leftTo,
+                          final int rightFrom, final int rightTo, final int into) {
+            this.source = source;
+            this.target = target;
+            this.leftFrom = leftFrom;
+            this.leftTo = leftTo;
+            this.rightFrom = rightFrom;
+            this.rightTo = rightTo;
+            this.into = into;
+        }
+
+        @Override
+        protected void compute() {
+            int leftSize = leftTo - leftFrom;
+            int rightSize = rightTo - rightFrom;
+            if (leftSize + rightSize <= threshold) {
+                merge(source, target, leftFrom, leftTo, rightFrom, rightTo, into);
+                return;
+            }
+            int leftSplit;
+            int rightSplit;
+            MergeTask rest;
+            if (leftSize >= rightSize) {
+                leftSplit = (leftFrom + leftTo) >>> 1;
+                rightSplit = lowerBound(source, rightFrom, rightTo, source[leftSplit]);
+                int split = into + (leftSplit - leftFrom) + (rightSplit - rightFrom);
+                target[split] = source[leftSplit];
+                rest = new MergeTask(source, target, leftSplit + 1, leftTo, rightSplit, rightTo, split + 1);
+            } else {
+                rightSplit = (rightFrom + rightTo) >>> 1;
+                leftSplit = upperBound(source, leftFrom, leftTo, source[rightSplit]);
+                int split = into + (leftSplit - leftFrom) + (rightSplit - rightFrom);
+                target[split] = source[rightSplit];
+                rest = new MergeTask(source, target, leftSplit, leftTo, rightSplit + 1, rightTo, split + 1);
+            }
+            invokeAll(new MergeTask(source, target, leftFrom, leftSplit, rightFrom, rightSplit, into), rest);
+        }
+    }
+
+    private static void merge(final int[] source, final int[] target, final int leftFrom, final int leftTo,
+                              final int rightFrom, final int rightTo, final int into) {
+        int i = leftFrom;
+        int j = rightFrom;
+        int k = into;
+        while (i < leftTo && j < rightTo) {
+            if (source[i] <= source[j]) {
+                target[k++] = source[i++];
+            } else {
+                target[k++] = source[j++];
+            }
+        }
+        System.arraycopy(source, i, target, k, leftTo - i);
+        System.arraycopy(source, j, target, k + leftTo - i, rightTo - j);
+    }
+
+    /**
+     * Returns the index of the first element not lower than the value.
+     */
+    private static int lowerBound(final int[] array, final int from, final int to, final int value) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first element greater than the value.
+     */
+    private static int upperBound(final int[] array, final int from, final int to, final int value) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
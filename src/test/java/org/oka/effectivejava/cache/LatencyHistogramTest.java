@@ -0,0 +1,137 @@
+package org.oka.effectivejava.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldReturnZero_WhenNothingWasRecorded() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        // Then
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getMean()).isZero();
+        assertThat(snapshot.getP50()).isZero();
+        assertThat(snapshot.getMax()).isZero();
+    }
+
+    @Test
+    public void shouldReturnThePercentiles_WithinThePrecisionOfTheBuckets() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos * 1_000);
+        }
+
+        // Then
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(100_000);
+        assertThat(snapshot.getMean()).isEqualTo(50_000_500d);
+        assertThat((double) snapshot.getP50()).isCloseTo(50_000_000d, within(50_000_000d / 32));
+        assertThat((double) snapshot.getP99()).isCloseTo(99_000_000d, within(99_000_000d / 32));
+        assertThat((double) snapshot.getP999()).isCloseTo(99_900_000d, within(99_900_000d / 32));
+        assertThat((double) snapshot.getMax()).isCloseTo(100_000_000d, within(100_000_000d / 32));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 31, 32, 33, 1_000, 123_456_789, LatencyHistogram.MAX_VALUE})
+    public void shouldMapEveryLatencyToABucketContainingIt(final long nanos) {
+        // When
+        int index = LatencyHistogram.bucketIndex(nanos);
+
+        // Then
+        assertThat(index).isBetween(0, LatencyHistogram.BUCKETS - 1);
+        assertThat(LatencyHistogram.bucketUpperBound(index)).isGreaterThanOrEqualTo(nanos);
+        assertThat(index == 0 ? -1 : LatencyHistogram.bucketUpperBound(index - 1)).isLessThan(nanos);
+    }
+
+    @Test
+    public void shouldClampLatenciesOutOfRange() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        // Then
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getPercentile(0.5d)).isZero();
+        assertThat(snapshot.getMax()).isEqualTo(LatencyHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldNotChange_WhenRecordingAfterTheSnapshot() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        // When
+        histogram.record(20);
+
+        // Then
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(histogram.snapshot().getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldSumTheLatenciesRecordedByEveryThread() throws InterruptedException {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long latency = t + 1;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(latency);
+                }
+            });
+        }
+
+        // When
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        // Then
+        assertThat(snapshot.getCount()).isEqualTo(80_000);
+        assertThat(snapshot.getTotalNanos()).isEqualTo(360_000);
+        assertThat(snapshot.getPercentile(0.125d)).isEqualTo(1);
+        assertThat(snapshot.getMax()).isEqualTo(8);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 8, 12, 64, 200})
+    public void shouldUseAPowerOfTwoOfStripes_UpToTheMax(final int processors) {
+        // When
+        int stripes = LatencyHistogram.stripeCount(processors);
+
+        // Then
+        assertThat(Integer.bitCount(stripes)).isEqualTo(1);
+        assertThat(stripes).isBetween(Math.min(processors, 64), 64);
+    }
+
+    @Test
+    public void shouldRejectInvalidPercentiles() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getPercentile(1.5d));
+    }
+}
@@ -0,0 +1,56 @@
+package org.oka.effectivejava.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRecorderTest {
+
+    @Test
+    public void shouldCountAndTimeEveryOperation() {
+        // Given
+        MetricsRecorder recorder = new MetricsRecorder();
+
+        // When
+        recorder.recordGet(true, 100);
+        recorder.recordGet(true, 200);
+        recorder.recordGet(true, 300);
+        recorder.recordGet(false, 400);
+        recorder.recordPut(1_000);
+        recorder.recordEviction(5);
+
+        // Then
+        MetricsSnapshot snapshot = recorder.snapshot();
+        assertThat(snapshot.getHits()).isEqualTo(3);
+        assertThat(snapshot.getMisses()).isEqualTo(1);
+        assertThat(snapshot.getHitRatio()).isEqualTo(0.75d);
+        assertThat(snapshot.getPuts()).isEqualTo(1);
+        assertThat(snapshot.getEvictions()).isEqualTo(1);
+        assertThat(snapshot.getGetLatency().getCount()).isEqualTo(4);
+        assertThat(snapshot.getGetLatency().getMean()).isEqualTo(250d);
+        assertThat(snapshot.getPutLatency().getTotalNanos()).isEqualTo(1_000);
+        assertThat(snapshot.getEvictionLatency().getMax()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldCountTheExpirationsAndTheUntimedEvictions_WithoutALatency() {
+        // Given
+        MetricsRecorder recorder = new MetricsRecorder();
+
+        // When
+        recorder.recordEviction();
+        recorder.recordExpiration();
+        recorder.recordExpiration();
+
+        // Then
+        MetricsSnapshot snapshot = recorder.snapshot();
+        assertThat(snapshot.getEvictions()).isEqualTo(1);
+        assertThat(snapshot.getExpirations()).isEqualTo(2);
+        assertThat(snapshot.getEvictionLatency().getCount()).isZero();
+    }
+
+    @Test
+    public void shouldReturnAZeroHitRatio_WhenThereAreNoGets() {
+        assertThat(new MetricsRecorder().snapshot().getHitRatio()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+package org.oka.effectivejava.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RemovalNotifierTest {
+
+    @Test
+    public void shouldDeliverEveryNotificationInOrder_OnTheNotificationThread() {
+        // Given
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        RemovalNotifier<String, String> notifier = new RemovalNotifier<>((k, v, cause) -> {
+            delivered.add(k + "=" + v + ":" + cause);
+            threads.add(Thread.currentThread().getName());
+        }, 16, RemovalNotifier.OverflowPolicy.BLOCK, "test-removal");
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            notifier.publish("key" + i, "value" + i, RemovalCause.SIZE);
+        }
+        notifier.close();
+
+        // Then
+        assertThat(delivered).hasSize(100).startsWith("key0=value0:SIZE").endsWith("key99=value99:SIZE");
+        assertThat(threads).containsOnly("test-removal");
+        assertThat(notifier.getDropped()).isZero();
+    }
+
+    @Test
+    public void shouldDropAndCountTheNotifications_WhenTheQueueIsFull() {
+        // Given
+        CountDownLatch listenerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        RemovalNotifier<String, String> notifier = new RemovalNotifier<>((k, v, cause) -> {
+            listenerBlocked.countDown();
+            awaitUninterruptibly(release);
+            delivered.add(k);
+        }, 2, RemovalNotifier.OverflowPolicy.DROP, "test-removal");
+        notifier.publish("key0", "value", RemovalCause.SIZE);
+        awaitUninterruptibly(listenerBlocked);
+
+        // When
+        for (int i = 1; i <= 5; i++) {
+            notifier.publish("key" + i, "value", RemovalCause.SIZE);
+        }
+        release.countDown();
+        notifier.close();
+
+        // Then
+        assertThat(delivered).containsExactly("key0", "key1", "key2");
+        assertThat(notifier.getDropped()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldKeepDelivering_WhenTheListenerFails() {
+        // Given
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        RemovalNotifier<String, String> notifier = new RemovalNotifier<>((k, v, cause) -> {
+            if (k.equals("bad")) {
+                throw new IllegalStateException("Listener failure");
+            }
+            delivered.add(k);
+        }, 16, RemovalNotifier.OverflowPolicy.DROP, "test-removal");
+
+        // When
+        notifier.publish("bad", "value", RemovalCause.EXPIRED);
+        notifier.publish("good", "value", RemovalCause.EXPIRED);
+        notifier.close();
+
+        // Then
+        assertThat(delivered).containsExactly("good");
+    }
+
+    @Test
+    public void shouldDropTheNotifications_WhenClosed() {
+        // Given
+        RemovalNotifier<String, String> notifier = new RemovalNotifier<>((k, v, cause) -> {
+        }, 16, RemovalNotifier.OverflowPolicy.BLOCK, "test-removal");
+        notifier.close();
+
+        // When
+        notifier.publish("key", "value", RemovalCause.SIZE);
+
+        // Then
+        assertThat(notifier.getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectAnInvalidQueueSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RemovalNotifier<String, String>((k, v, cause) -> {
+        }, 0, RemovalNotifier.OverflowPolicy.DROP, "test-removal"));
+    }
+}
@@ -0,0 +1,69 @@
+package org.oka.effectivejava.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SnapshotReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReadAnEmptySnapshot() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.snapshot");
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8())) {
+            writer.commit();
+        }
+
+        // When
+        try (SnapshotReader<String, String> reader = new SnapshotReader<>(file, Serializer.utf8(), Serializer.utf8())) {
+
+            // Then
+            assertThat(reader.getCount()).isZero();
+            reader.forEach((key, value, frequency) -> {
+                throw new AssertionError("Unexpected entry " + key);
+            });
+        }
+    }
+
+    @Test
+    public void shouldRejectAFileWhichIsNotASnapshot() throws IOException {
+        // Given
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[64]);
+
+        // When / Then
+        assertThrows(IOException.class, () -> new SnapshotReader<>(file, Serializer.utf8(), Serializer.utf8()));
+    }
+
+    @Test
+    public void shouldRejectATruncatedSnapshot() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.snapshot");
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8())) {
+            writer.write("key1", "value1", 1);
+            writer.write("key2", "value2", 1);
+            writer.commit();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // When
+        try (SnapshotReader<String, String> reader = new SnapshotReader<>(file, Serializer.utf8(), Serializer.utf8())) {
+
+            // Then
+            assertThrows(IOException.class, () -> reader.forEach((key, value, frequency) -> { }));
+        }
+    }
+}
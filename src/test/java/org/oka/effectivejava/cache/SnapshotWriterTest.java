@@ -0,0 +1,82 @@
+package org.oka.effectivejava.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SnapshotWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldWriteEntriesReadBackInOrder_WhenTheyCrossTheMappedWindows() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.snapshot");
+        List<String> written = new ArrayList<>();
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8(),
+                64)) {
+            for (int i = 0; i < 50; i++) {
+                String value = "v".repeat(i * 7);
+                writer.write("key" + i, value, i);
+                written.add("key" + i + "=" + value + "@" + i);
+            }
+
+            // When
+            writer.commit();
+        }
+
+        // Then
+        List<String> read = new ArrayList<>();
+        try (SnapshotReader<String, String> reader = new SnapshotReader<>(file, Serializer.utf8(), Serializer.utf8(),
+                64)) {
+            assertThat(reader.getCount()).isEqualTo(50);
+            reader.forEach((key, value, frequency) -> read.add(key + "=" + value + "@" + frequency));
+        }
+        assertThat(read).isEqualTo(written);
+        assertThat(Files.list(directory)).containsExactly(file);
+    }
+
+    @Test
+    public void shouldKeepThePreviousSnapshot_WhenClosedWithoutCommit() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.snapshot");
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8())) {
+            writer.write("key", "value", 1);
+            writer.commit();
+        }
+
+        // When
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8())) {
+            writer.write("key", "other", 2);
+        }
+
+        // Then
+        List<String> read = new ArrayList<>();
+        try (SnapshotReader<String, String> reader = new SnapshotReader<>(file, Serializer.utf8(), Serializer.utf8())) {
+            reader.forEach((key, value, frequency) -> read.add(key + "=" + value));
+        }
+        assertThat(read).containsExactly("key=value");
+        assertThat(Files.list(directory)).containsExactly(file);
+    }
+
+    @Test
+    public void shouldRejectWrites_AfterTheCommit() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.snapshot");
+        try (SnapshotWriter<String, String> writer = new SnapshotWriter<>(file, Serializer.utf8(), Serializer.utf8())) {
+            writer.commit();
+
+            // When / Then
+            assertThrows(IllegalStateException.class, () -> writer.write("key", "value", 1));
+        }
+    }
+}
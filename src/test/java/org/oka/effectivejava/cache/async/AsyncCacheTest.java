@@ -0,0 +1,307 @@
+package org.oka.effectivejava.cache.async;
+
+import org.junit.jupiter.api.Test;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.policy.ClockPolicy;
+import org.oka.effectivejava.cache.policy.EvictionPolicy;
+import org.oka.effectivejava.cache.policy.Policy;
+import org.oka.effectivejava.cache.policy.PolicyCache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncCacheTest {
+
+    @Test
+    public void shouldLoadTheValueOnTheExecutor_OnAMiss() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "loader"));
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().executor(executor).build();
+
+        // When
+        CompletableFuture<String> future = cache.get("1", k -> Thread.currentThread().getName() + "-" + k);
+
+        // Then
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo("loader-1");
+        assertThat(cache.getIfPresent("1")).isSameAs(future);
+        assertThat(cache.size()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldRunTheLoaderOnce_WhenTheKeyIsMissedWhileLoading() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().build();
+        CompletableFuture<String> first = cache.get("1", k -> {
+            loads.incrementAndGet();
+            await(release);
+            return "one";
+        });
+
+        // When
+        CompletableFuture<String> second = cache.get("1", k -> {
+            loads.incrementAndGet();
+            return "uno";
+        });
+        release.countDown();
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo("one");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictTheFuture_WhenTheLoaderFails() throws Exception {
+        // Given
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().executor(Runnable::run).build();
+        CompletableFuture<String> failed = cache.get("1", k -> {
+            throw new IllegalStateException("Unavailable");
+        });
+
+        // When
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+
+        // Then
+        assertThat(exception).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(cache.getIfPresent("1")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getFailures()).isEqualTo(1);
+        assertThat(cache.get("1", k -> "one").get(1, TimeUnit.SECONDS)).isEqualTo("one");
+    }
+
+    @Test
+    public void shouldEvictTheFuture_WhenItIsCancelled() {
+        // Given
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().build();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        cache.put("1", future);
+
+        // When
+        future.cancel(false);
+
+        // Then
+        assertThat(cache.getIfPresent("1")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getFailures()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictTheFuture_WhenItCompletesWithNull() throws Exception {
+        // Given
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().executor(Runnable::run).build();
+
+        // When
+        String value = cache.get("1", k -> null).get(1, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(value).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getFailures()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepTheNewFuture_WhenAReplacedOneFails() {
+        // Given
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().build();
+        CompletableFuture<String> replaced = new CompletableFuture<>();
+        CompletableFuture<String> current = CompletableFuture.completedFuture("two");
+        cache.put("1", replaced);
+        cache.put("1", current);
+
+        // When
+        replaced.completeExceptionally(new IllegalStateException("Unavailable"));
+
+        // Then
+        assertThat(cache.getIfPresent("1")).isSameAs(current);
+        assertThat(cache.getFailures()).isZero();
+    }
+
+    @Test
+    public void shouldNotCacheTheResultOfALoad_WhenTheKeyIsRemovedWhileLoading() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().build();
+        CompletableFuture<String> future = cache.get("1", k -> {
+            await(release);
+            return "one";
+        });
+
+        // When
+        CompletableFuture<String> removed = cache.remove("1");
+        release.countDown();
+
+        // Then
+        assertThat(removed).isSameAs(future);
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo("one");
+        assertThat(cache.getIfPresent("1")).isNull();
+    }
+
+    @Test
+    public void shouldFailTheFuture_WhenTheExecutorRejectsTheLoad() {
+        // Given
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder().executor(executor).build();
+
+        // When
+        CompletableFuture<String> future = cache.get("1", k -> "one");
+
+        // Then
+        assertThat(future).isCompletedExceptionally();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void shouldEvictThroughTheUnderlyingCache() throws Exception {
+        // Given
+        AsyncCache<String, String> cache = AsyncCache.<String, String>builder()
+                .policy(Policy.LRU)
+                .maximumSize(2L)
+                .build();
+
+        // When
+        for (int i = 1; i <= 3; i++) {
+            cache.get(String.valueOf(i), k -> "value-" + k).get(1, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getIfPresent("1")).isNull();
+        assertThat(cache.getMetrics().getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRunTheLoadersOnVirtualThreads_WhenTheRuntimeSupportsThem() throws Exception {
+        // Given
+        boolean supported = Runtime.version().feature() >= 21;
+
+        // When
+        try (AsyncCache<String, Boolean> cache = AsyncCache.<String, Boolean>builder().virtualThreads(true).build()) {
+            boolean virtual = cache.get("1", k -> isVirtual(Thread.currentThread())).get(1, TimeUnit.SECONDS);
+
+            // Then
+            assertThat(virtual).isEqualTo(supported);
+            if (!supported) {
+                assertThat(cache.getExecutor()).isSameAs(ForkJoinPool.commonPool());
+            }
+        }
+        Optional<ExecutorService> executor = AsyncCache.newVirtualThreadPerTaskExecutor();
+        assertThat(executor.isPresent()).isEqualTo(supported);
+        executor.ifPresent(ExecutorService::shutdown);
+    }
+
+    @Test
+    public void shouldRejectConflictingConfiguration() {
+        assertThrows(IllegalStateException.class, () -> AsyncCache.<String, String>builder()
+                .cache(new PolicyCache<>(new ClockPolicy<>(10)))
+                .policy(Policy.LFU)
+                .build());
+        assertThrows(IllegalStateException.class, () -> AsyncCache.<String, String>builder()
+                .executor(ForkJoinPool.commonPool())
+                .virtualThreads(true)
+                .build());
+        assertThrows(NullPointerException.class, () -> AsyncCache.<String, String>builder().build()
+                .get("1", null));
+    }
+
+    @Test
+    public void shouldOnlyCloseTheUnderlyingCache_WhenTheFacadeCreatedIt() {
+        // Given
+        ClosingCache<String, CompletableFuture<String>> custom = new ClosingCache<>(new ClockPolicy<>(10));
+        AsyncCache<String, String> withCustomCache = AsyncCache.<String, String>builder().cache(custom).build();
+        AsyncCache<String, String> withOwnedCache = AsyncCache.<String, String>builder().policy(Policy.LRU).build();
+        withOwnedCache.put("1", CompletableFuture.completedFuture("one"));
+
+        // When
+        withCustomCache.close();
+        withOwnedCache.close();
+
+        // Then
+        assertThat(custom.closes.get()).isZero();
+        assertThat(withOwnedCache.getIfPresent("1")).isCompletedWithValue("one");
+    }
+
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cache delegating to a policy cache, counting the times it is closed.
+     */
+    private static final class ClosingCache<K, V> implements Cache<K, V>, AutoCloseable {
+        private final PolicyCache<K, V> delegate;
+        private final AtomicInteger closes = new AtomicInteger();
+
+        private ClosingCache(final EvictionPolicy<K> policy) {
+            this.delegate = new PolicyCache<>(policy);
+        }
+
+        @Override
+        public V get(final K k) {
+            return delegate.get(k);
+        }
+
+        @Override
+        public void put(final K k, final V v) {
+            delegate.put(k, v);
+        }
+
+        @Override
+        public Map<K, V> getAll(final Collection<? extends K> keys) {
+            return delegate.getAll(keys);
+        }
+
+        @Override
+        public void putAll(final Map<? extends K, ? extends V> entries) {
+            delegate.putAll(entries);
+        }
+
+        @Override
+        public V remove(final K k) {
+            return delegate.remove(k);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public MetricsSnapshot getMetrics() {
+            return delegate.getMetrics();
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package org.oka.effectivejava.cache.guava;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.Serializer;
 import org.oka.effectivejava.cache.guava.LRUCacheService;
 import org.oka.effectivejava.cache.java.LFUCacheService;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class LRUCacheServiceTest {
 
@@ -71,6 +82,24 @@ public class LRUCacheServiceTest {
         assertThat(value2).isEqualTo("value");
     }
 
+    @Test
+    public void shouldRemoveTheCachedItem() {
+        // Given
+        LRUCacheService<String, String> lruCacheService = LRUCacheService
+                .<String, String>builder()
+                .build();
+        lruCacheService.buildCache();
+        lruCacheService.put("key", "value");
+
+        // When
+        String removed = lruCacheService.remove("key");
+
+        // Then
+        assertThat(removed).isEqualTo("value");
+        assertThat(lruCacheService.remove("key")).isNull();
+        assertThat(lruCacheService.get("key")).isNull();
+    }
+
     @Test
     public void shouldEvictAfter5Seconds() throws InterruptedException {
         // Given
@@ -157,4 +186,317 @@ public class LRUCacheServiceTest {
         // Then
         assertThat(cacheService.getAvgInsertionTime()).isGreaterThan(0L).isLessThan(1L);
     }
+
+    @Test
+    public void shouldEvict_WhenTheConfiguredMaximumSizeIsReached() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .maximumSize(2L)
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "value");
+        cacheService.put("key2", "value");
+        cacheService.get("key");
+
+        // When
+        cacheService.put("key3", "value");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key", "key3");
+    }
+
+    @Test
+    public void shouldExposeTheMetrics() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .maximumSize(2L)
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "value");
+        cacheService.put("key2", "value");
+        cacheService.get("key");
+        cacheService.get("key4");
+
+        // When
+        cacheService.put("key3", "value");
+
+        // Then
+        MetricsSnapshot metrics = cacheService.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(1);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getPuts()).isEqualTo(3);
+        assertThat(metrics.getEvictions()).isEqualTo(1);
+        assertThat(metrics.getGetLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getPutLatency().getP999()).isPositive();
+        assertThat(metrics.getExpirations()).isZero();
+        assertThat(metrics.getEvictionLatency().getCount()).isZero();
+        assertThat(cacheService.getInsertions()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldCountTheExpirations_ApartFromTheEvictions() throws InterruptedException {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.ofMillis(1))
+                .maximumSize(2L)
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "value");
+        Thread.sleep(20);
+
+        // When
+        cacheService.put("key2", "value");
+
+        // Then
+        assertThat(cacheService.getExpirations()).isEqualTo(1);
+        assertThat(cacheService.getEvictions()).isZero();
+        assertThat(cacheService.getMetrics().getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotifyTheRemovedEntries_ToTheRemovalListener() {
+        // Given
+        List<String> removals = new CopyOnWriteArrayList<>();
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .maximumSize(1L)
+                .removalListener((k, v, cause) -> removals.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "value1");
+        cacheService.put("key", "value2");
+
+        // When
+        cacheService.put("key2", "value");
+        cacheService.close();
+
+        // Then
+        assertThat(removals).containsExactly("key=value1:REPLACED", "key=value2:SIZE");
+        assertThat(cacheService.getDroppedNotifications()).isZero();
+    }
+
+    @Test
+    public void shouldEvictByWeight_WhenBoundedByWeight() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .maximumWeight(10L)
+                .weigher((k, v) -> v.length())
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "aaaa");
+        cacheService.put("key2", "bbbb");
+
+        // When
+        cacheService.put("key3", "cccc");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key2", "key3");
+    }
+
+    @Test
+    public void shouldRejectWeigherWithoutMaximumWeight() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .weigher((k, v) -> v.length())
+                .build();
+
+        // When / Then
+        assertThrows(IllegalStateException.class, cacheService::buildCache);
+    }
+
+    @Test
+    public void shouldReturnTheStaleValueAndReloadInBackground_WhenOlderThanRefreshInterval() throws InterruptedException {
+        // Given
+        CountDownLatch reloadAllowed = new CountDownLatch(1);
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .refreshAfter(Duration.ofMillis(500))
+                .loader(k -> {
+                    awaitUninterruptibly(reloadAllowed);
+                    return "fresh";
+                })
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "stale");
+        Thread.sleep(600);
+
+        // When
+        String value = cacheService.get("key");
+        reloadAllowed.countDown();
+
+        // Then
+        assertThat(value).isEqualTo("stale");
+        assertThat(waitUntilReloaded(cacheService, "key")).isEqualTo("fresh");
+        assertThat(cacheService.getReloads()).isEqualTo(1);
+        assertThat(cacheService.getAvgReloadTime()).isGreaterThanOrEqualTo(0d);
+    }
+
+    @Test
+    public void shouldKeepTheOldValue_WhenTheReloadFails() throws InterruptedException {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .refreshAfter(Duration.ofMillis(500))
+                .loader(k -> {
+                    throw new IllegalStateException("Backing store down");
+                })
+                .refreshExecutor(Runnable::run)
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "value");
+        Thread.sleep(600);
+
+        // When
+        String value = cacheService.get("key");
+
+        // Then
+        assertThat(value).isEqualTo("value");
+        assertThat(cacheService.get("key")).isEqualTo("value");
+        assertThat(cacheService.getReloadFailures()).isPositive();
+        assertThat(cacheService.getReloads()).isZero();
+    }
+
+    @Test
+    public void shouldSkipTheReloadAndKeepTheStaleValue_WhenTheExecutorRejectsIt() throws InterruptedException {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .refreshAfter(Duration.ofMillis(100))
+                .loader(k -> "fresh")
+                .refreshExecutor(runnable -> {
+                    throw new RejectedExecutionException("Saturated");
+                })
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key", "stale");
+        Thread.sleep(200);
+
+        // When
+        String value = cacheService.get("key");
+
+        // Then
+        assertThat(value).isEqualTo("stale");
+        assertThat(cacheService.get("key")).isEqualTo("stale");
+        assertThat(cacheService.getSkippedReloads()).isEqualTo(1);
+        assertThat(cacheService.getReloads()).isZero();
+        assertThat(cacheService.getReloadFailures()).isZero();
+    }
+
+    @Test
+    public void shouldRejectRefreshIntervalWithoutLoader() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .refreshAfter(Duration.ofMillis(500))
+                .build();
+
+        // When / Then
+        assertThrows(IllegalStateException.class, cacheService::buildCache);
+    }
+
+    @Test
+    public void shouldReturnTheCachedValuesOfABatch() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .build();
+        cacheService.buildCache();
+        cacheService.putAll(Map.of("key1", "value1", "key2", "value2"));
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key2", "missing", "key1"));
+
+        // Then
+        assertThat(values).containsOnly(Map.entry("key1", "value1"), Map.entry("key2", "value2"));
+        assertThat(cacheService.getHits()).isEqualTo(2);
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+        assertThat(cacheService.getInsertions()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldLoadTheMissingKeysOfABatch_WithASingleBulkLoad() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key1", "value1");
+        List<Set<String>> bulkLoads = new ArrayList<>();
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key1", "key2", "key3"), keys -> {
+            bulkLoads.add(Set.copyOf(keys));
+            return Map.of("key2", "loaded2");
+        });
+
+        // Then
+        assertThat(bulkLoads).containsExactly(Set.of("key2", "key3"));
+        assertThat(values).containsExactly(Map.entry("key1", "value1"), Map.entry("key2", "loaded2"));
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key1", "key2");
+    }
+
+    @Test
+    public void shouldRestoreTheEntries_FromASnapshot(@TempDir final Path directory) throws IOException {
+        // Given
+        Path file = directory.resolve("lru.snapshot");
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+        cacheService.buildCache();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+        cacheService.snapshot(file);
+        LRUCacheService<String, String> restored = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+        restored.buildCache();
+
+        // When
+        restored.restore(file);
+
+        // Then
+        assertThat(restored.getCachedItemStorage()).isEqualTo(Map.of("key1", "value1", "key2", "value2"));
+    }
+
+    @Test
+    public void shouldRejectASingleSerializer() {
+        // Given
+        LRUCacheService<String, String> cacheService = LRUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.of(5, SECONDS))
+                .keySerializer(Serializer.utf8())
+                .build();
+
+        // When / Then
+        assertThrows(IllegalStateException.class, cacheService::buildCache);
+    }
+
+    private static String waitUntilReloaded(final LRUCacheService<String, String> cacheService, final String key)
+            throws InterruptedException {
+        for (int i = 0; i < 100 && "stale".equals(cacheService.getCachedItemStorage().get(key)); i++) {
+            Thread.sleep(20);
+        }
+        return cacheService.getCachedItemStorage().get(key);
+    }
 }
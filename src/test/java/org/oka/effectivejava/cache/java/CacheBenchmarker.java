@@ -0,0 +1,42 @@
+package org.oka.effectivejava.cache.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Runs a read-mostly workload (90% get / 10% put) on several threads and returns the throughput.
+ */
+public class CacheBenchmarker {
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+    private static final int KEYS = 10_000;
+
+    double run(final Consumer<Integer> get, final Consumer<Integer> put, final int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    int key = random.nextInt(KEYS);
+                    if (random.nextInt(10) == 0) {
+                        put.accept(key);
+                    } else {
+                        get.accept(key);
+                    }
+                }
+                return null;
+            });
+        }
+        long ping = System.nanoTime();
+        executor.invokeAll(tasks);
+        long pong = System.nanoTime();
+        executor.shutdown();
+
+        return (double) OPERATIONS_PER_THREAD * threads / ((pong - ping) / 1_000_000d);
+    }
+}
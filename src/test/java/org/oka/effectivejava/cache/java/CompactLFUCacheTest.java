@@ -0,0 +1,194 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.oka.effectivejava.cache.Cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompactLFUCacheTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        CompactLFUCache<String, String> cache = new CompactLFUCache<>();
+
+        // When
+        String cachedValue = cache.get("key");
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cache.getMetrics().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnTheValueAndCountAUse_WhenTheItemExists() {
+        // Given
+        CompactLFUCache<String, String> cache = new CompactLFUCache<>();
+        cache.put("key", "value");
+
+        // When
+        String cachedValue = cache.get("key");
+        cache.put("key", "value2");
+
+        // Then
+        assertThat(cachedValue).isEqualTo("value");
+        assertThat(cache.get("key")).isEqualTo("value2");
+        assertThat(cache.getFrequency("key")).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getMetrics().getHits()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldEvictTheLeastFrequentlyUsed_WhenFull() {
+        // Given
+        CompactLFUCache<String, String> cache = new CompactLFUCache<>(2);
+        cache.put("1", "one");
+        cache.put("2", "two");
+        cache.get("1");
+
+        // When
+        cache.put("3", "three");
+
+        // Then
+        assertThat(cache.getAll(List.of("1", "2", "3"))).containsOnlyKeys("1", "3");
+        assertThat(cache.getMetrics().getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFindTheKeys_WhenTheirHashesCollideAndSomeAreRemoved() {
+        // Given
+        CompactLFUCache<Collision, Integer> cache = new CompactLFUCache<>(8);
+        for (int key = 0; key < 8; key++) {
+            cache.put(new Collision(key), key);
+        }
+
+        // When
+        Integer removed = cache.remove(new Collision(3));
+        cache.remove(new Collision(5));
+        cache.put(new Collision(8), 8);
+
+        // Then
+        assertThat(removed).isEqualTo(3);
+        assertThat(cache.remove(new Collision(3))).isNull();
+        assertThat(cache.size()).isEqualTo(7);
+        for (int key = 0; key <= 8; key++) {
+            boolean removedKey = key == 3 || key == 5;
+            assertThat(cache.get(new Collision(key))).isEqualTo(removedKey ? null : key);
+        }
+    }
+
+    @Test
+    public void shouldBehaveAsTheLFUEngine() {
+        // Given
+        CompactLFUCache<Integer, Integer> cache = new CompactLFUCache<>(64);
+        LFUEngine<Integer, Integer> engine = new LFUEngine<>(64);
+        Random random = new Random(7);
+
+        // When
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(256) - 128;
+            if (random.nextBoolean()) {
+                cache.put(key, i);
+                engine.put(key, i);
+            } else {
+                cache.get(key);
+                LFUEngine.Node<Integer, Integer> node = engine.getNode(key);
+                if (node != null) {
+                    engine.touch(node);
+                }
+            }
+        }
+
+        // Then
+        Map<Integer, Integer> stats = new HashMap<>();
+        engine.stats().keySet().forEach(key -> stats.put(key, cache.getFrequency(key)));
+        Map<Integer, Integer> storage = cache.getAll(engine.storage().keySet());
+        assertThat(cache.size()).isEqualTo(engine.size());
+        assertThat(storage).isEqualTo(engine.storage());
+        assertThat(stats).isEqualTo(engine.stats());
+    }
+
+    @Test
+    public void shouldRejectNullKeysAndValues() {
+        // Given
+        CompactLFUCache<String, String> cache = new CompactLFUCache<>();
+
+        // When / Then
+        assertThrows(NullPointerException.class, () -> cache.put(null, "value"));
+        assertThrows(NullPointerException.class, () -> cache.put("key", null));
+        assertThrows(IllegalArgumentException.class, () -> new CompactLFUCache<>(0));
+    }
+
+    @Test
+    public void shouldHaveLessThanHalfTheOverheadOfTheLFUCacheService_With100kEntries() {
+        // Given
+        int entries = 100_000;
+        Integer[] keys = new Integer[entries];
+        String[] values = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = i;
+            values[i] = "value-" + i;
+        }
+        CompactLFUCache<Integer, String> compact = new CompactLFUCache<>(entries);
+        LFUCacheService<Integer, String> service = LFUCacheService.<Integer, String>builder()
+                .maximumSize((long) entries)
+                .build();
+
+        // When
+        long compactOverhead = overhead(fill(compact, keys, values), keys, values);
+        long serviceOverhead = overhead(fill(service, keys, values), keys, values);
+
+        // Then
+        assertThat(compact.size()).isEqualTo(entries);
+        assertThat(service.size()).isEqualTo(entries);
+        assertThat(compactOverhead / entries).isLessThan(64L);
+        assertThat(serviceOverhead).isGreaterThanOrEqualTo(2 * compactOverhead);
+    }
+
+    private static <C extends Cache<Integer, String>> C fill(final C cache, final Integer[] keys,
+                                                            final String[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], values[i]);
+            cache.get(keys[i]);
+        }
+        return cache;
+    }
+
+    private static long overhead(final Object cache, final Integer[] keys, final String[] values) {
+        Object[] payload = Arrays.copyOf(keys, keys.length + values.length, Object[].class);
+        System.arraycopy(values, 0, payload, keys.length, values.length);
+        long payloadSize = GraphLayout.parseInstance((Object) payload).totalSize()
+                - ClassLayout.parseInstance(payload).instanceSize();
+        return GraphLayout.parseInstance(cache).totalSize() - payloadSize;
+    }
+
+    /**
+     * Key whose hash code is the same for every instance.
+     */
+    private static final class Collision {
+        private final int id;
+
+        private Collision(final int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Collision && ((Collision) other).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ConcurrentLFUCacheServiceBenchmarkingTest {
+    private final CacheBenchmarker cacheBenchmarker = new CacheBenchmarker();
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8, 16, 32})
+    public void shouldProduceBenchmarking(final int threads) throws InterruptedException {
+        // Given
+        LFUCacheService<Integer, String> lfuCacheService = new LFUCacheService<>();
+        ConcurrentLFUCacheService<Integer, String> concurrentCacheService = ConcurrentLFUCacheService
+                .<Integer, String>builder()
+                .concurrencyLevel(threads)
+                .build();
+
+        // When
+        double lfuThroughput = cacheBenchmarker.run(lfuCacheService::get, k -> lfuCacheService.put(k, "value"), threads);
+        double concurrentThroughput = cacheBenchmarker
+                .run(concurrentCacheService::get, k -> concurrentCacheService.put(k, "value"), threads);
+
+        // Then
+        System.out.println("LFUCacheService throughput (" + threads + " threads): " + lfuThroughput + " ops/ms.");
+        System.out.println("ConcurrentLFUCacheService throughput (" + threads + " threads): "
+                + concurrentThroughput + " ops/ms.");
+    }
+}
@@ -0,0 +1,221 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import org.oka.effectivejava.cache.MetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConcurrentLFUCacheServiceTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = new ConcurrentLFUCacheService<>();
+
+        // When
+        String cachedValue = cacheService.get("random_key");
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnCachedValueAndIncreaseHits() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = new ConcurrentLFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        String value = cacheService.get("key");
+
+        // Then
+        assertThat(value).isEqualTo("value");
+        assertThat(cacheService.getHits()).isEqualTo(1);
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key", 2);
+    }
+
+    @Test
+    public void shouldMergeFrequenciesOfAllSegments() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = ConcurrentLFUCacheService
+                .<String, String>builder()
+                .concurrencyLevel(4)
+                .build();
+        cacheService.put("key", "value");
+        cacheService.put("key2", "value");
+        cacheService.put("key3", "value");
+
+        // When
+        cacheService.get("key");
+
+        // Then
+        assertThat(cacheService.getCachedItemFreq().get(1)).containsExactlyInAnyOrder("key2", "key3");
+        assertThat(cacheService.getCachedItemFreq()).containsEntry(2, List.of("key"));
+    }
+
+    @Test
+    public void shouldReturnImmutableViews() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = new ConcurrentLFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        Map<String, String> storage = cacheService.getCachedItemStorage();
+        Map<String, Integer> stats = cacheService.getCachedItemStats();
+        Map<Integer, List<String>> freq = cacheService.getCachedItemFreq();
+
+        // Then
+        assertThrows(UnsupportedOperationException.class, storage::clear);
+        assertThrows(UnsupportedOperationException.class, stats::clear);
+        assertThrows(UnsupportedOperationException.class, freq::clear);
+    }
+
+    @Test
+    public void shouldEvictWithinTheSegment_WhenTheCapacityIsReached() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = ConcurrentLFUCacheService
+                .<String, String>builder()
+                .concurrencyLevel(1)
+                .build();
+        cacheService.put("first_key", "value");
+        cacheService.get("first_key");
+        for (int i = 0; i < 100_000; i++) {
+            cacheService.put("key" + i, "value");
+        }
+
+        // When
+        Integer evictions = cacheService.getEvictions();
+
+        // Then
+        assertThat(evictions).isEqualTo(1);
+        assertThat(cacheService.get("first_key")).isEqualTo("value");
+        assertThat(cacheService.get("key0")).isNull();
+    }
+
+    @Test
+    public void shouldRejectNonPositiveConcurrencyLevel() {
+        assertThrows(IllegalArgumentException.class, () -> ConcurrentLFUCacheService
+                .<String, String>builder()
+                .concurrencyLevel(0)
+                .build());
+    }
+
+    @Test
+    public void shouldNeverExceedTheMaximumSize_WhenItIsSmallerThanTheConcurrencyLevel() {
+        // Given
+        ConcurrentLFUCacheService<Integer, String> cacheService = ConcurrentLFUCacheService
+                .<Integer, String>builder()
+                .maximumSize(4L)
+                .concurrencyLevel(16)
+                .build();
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            cacheService.put(i, "value");
+        }
+
+        // Then
+        assertThat(cacheService.size()).isLessThanOrEqualTo(4);
+        assertThat(cacheService.getEvictions()).isEqualTo(100 - cacheService.size());
+    }
+
+    @Test
+    public void shouldExposeTheMetrics() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = ConcurrentLFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        cacheService.get("key2");
+
+        // When
+        cacheService.put("key2", "value2");
+
+        // Then
+        MetricsSnapshot metrics = cacheService.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(1);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getPuts()).isEqualTo(2);
+        assertThat(metrics.getEvictions()).isEqualTo(1);
+        assertThat(metrics.getGetLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getPutLatency().getP50()).isPositive();
+        assertThat(metrics.getEvictionLatency().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotifyTheRemovedEntries_ToTheRemovalListener() {
+        // Given
+        List<String> removals = new CopyOnWriteArrayList<>();
+        ConcurrentLFUCacheService<String, String> cacheService = ConcurrentLFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .removalListener((k, v, cause) -> removals.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key1", "value2");
+        cacheService.put("key2", "value2");
+
+        // When
+        String removed = cacheService.remove("key2");
+        String missing = cacheService.remove("key3");
+        cacheService.close();
+
+        // Then
+        assertThat(removed).isEqualTo("value2");
+        assertThat(missing).isNull();
+        assertThat(cacheService.size()).isZero();
+        assertThat(removals).containsExactly("key1=value1:REPLACED", "key1=value2:SIZE", "key2=value2:EXPLICIT");
+        assertThat(cacheService.getDroppedNotifications()).isZero();
+    }
+
+    @Test
+    public void shouldRejectNullKeys() {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = new ConcurrentLFUCacheService<>();
+
+        // When / Then
+        NullPointerException exception = assertThrows(NullPointerException.class, () -> cacheService.get(null));
+        assertThat(exception).hasMessage("Null keys are not supported");
+    }
+
+    @Test
+    public void shouldAddCacheItemStatsInRepeatedMultithreadedEnvironment() throws InterruptedException {
+        // Given
+        ConcurrentLFUCacheService<String, String> cacheService = new ConcurrentLFUCacheService<>();
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int counter = i;
+            tasks.add(() -> {
+                cacheService.put("key" + counter % 100, "value");
+                cacheService.get("key" + counter % 100);
+                return null;
+            });
+        }
+
+        // When
+        executor.invokeAll(tasks);
+
+        // Then
+        Map<String, Integer> stats = cacheService.getCachedItemStats();
+        for (int i = 0; i < 100; i++) {
+            assertThat(stats).containsEntry("key" + i, 2_000);
+        }
+        assertThat(cacheService.getHits()).isEqualTo(100_000);
+        assertThat(cacheService.getInsertions()).isEqualTo(100_000);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,66 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void shouldReturnZero_WhenTheElementWasNeverRecorded() {
+        // Given
+        FrequencySketch sketch = new FrequencySketch(512);
+
+        // When
+        int frequency = sketch.frequency("key");
+
+        // Then
+        assertThat(frequency).isZero();
+    }
+
+    @Test
+    public void shouldEstimateTheFrequency() {
+        // Given
+        FrequencySketch sketch = new FrequencySketch(512);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("key");
+        }
+
+        // Then
+        assertThat(sketch.frequency("key")).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldSaturateAtFifteen() {
+        // Given
+        FrequencySketch sketch = new FrequencySketch(512);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key");
+        }
+
+        // Then
+        assertThat(sketch.frequency("key")).isEqualTo(15);
+    }
+
+    @Test
+    public void shouldHalveTheCounters_WhenTheSampleSizeIsReached() {
+        // Given
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+
+        // When
+        for (int i = 0; i < 640; i++) {
+            sketch.increment(i);
+        }
+
+        // Then
+        assertThat(sketch.frequency("hot")).isLessThanOrEqualTo(8);
+        assertThat(sketch.sampleCount()).isLessThan(640);
+    }
+}
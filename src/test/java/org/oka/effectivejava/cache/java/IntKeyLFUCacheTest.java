@@ -0,0 +1,156 @@
+package org.oka.effectivejava.cache.java;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntKeyLFUCacheTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        IntKeyLFUCache<String> cache = new IntKeyLFUCache<>();
+
+        // When
+        String cachedValue = cache.get(42);
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnTheValue_WhenTheItemExists() {
+        // Given
+        IntKeyLFUCache<String> cache = new IntKeyLFUCache<>();
+        cache.put(42, "value");
+
+        // When
+        String cachedValue = cache.get(42);
+
+        // Then
+        assertThat(cachedValue).isEqualTo("value");
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getFrequency(42)).isEqualTo(2);
+        assertThat(cache.getCachedItemStats()).containsEntry(42, 2);
+    }
+
+    @Test
+    public void shouldReplaceTheValueAndCountAUse_WhenKeyExists() {
+        // Given
+        IntKeyLFUCache<String> cache = new IntKeyLFUCache<>();
+        cache.put(42, "value");
+
+        // When
+        cache.put(42, "value2");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnly(entry(42, "value2"));
+        assertThat(cache.getFrequency(42)).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictTheLeastFrequentlyUsed_WhenFull() {
+        // Given
+        IntKeyLFUCache<String> cache = new IntKeyLFUCache<>(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+
+        // When
+        cache.put(3, "three");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnlyKeys(1, 3);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFindTheKeys_WhenTheyCollideAndSomeAreDeleted() {
+        // Given
+        IntKeyLFUCache<Integer> cache = new IntKeyLFUCache<>(8);
+        for (int key = 0; key < 8; key++) {
+            cache.put(key << 16, key);
+            cache.get(key << 16);
+        }
+
+        // When
+        for (int key = 8; key < 16; key += 2) {
+            cache.put(key << 16, key);
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(8);
+        assertThat(cache.getEvictions()).isEqualTo(4);
+        for (int key = 0; key < 16; key++) {
+            boolean evicted = key == 0 || key >= 8 && key != 14;
+            assertThat(cache.get(key << 16)).isEqualTo(evicted ? null : key);
+        }
+    }
+
+    @Test
+    public void shouldBehaveAsTheLFUEngine() {
+        // Given
+        IntKeyLFUCache<Integer> cache = new IntKeyLFUCache<>(64);
+        LFUEngine<Integer, Integer> engine = new LFUEngine<>(64);
+        Random random = new Random(7);
+
+        // When
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(256) - 128;
+            if (random.nextBoolean()) {
+                cache.put(key, i);
+                engine.put(key, i);
+            } else {
+                cache.get(key);
+                LFUEngine.Node<Integer, Integer> node = engine.getNode(key);
+                if (node != null) {
+                    engine.touch(node);
+                }
+            }
+        }
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).isEqualTo(engine.storage());
+        assertThat(cache.getCachedItemStats()).isEqualTo(engine.stats());
+    }
+
+    @Test
+    public void shouldNotAllocate_OnGetsAndUpdates() {
+        // Given
+        IntKeyLFUCache<String> cache = new IntKeyLFUCache<>(1_000);
+        String value = "value";
+        for (int key = 0; key < 1_000; key++) {
+            cache.put(key, value);
+        }
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        runGetsAndUpdates(cache, value);
+
+        // When
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        runGetsAndUpdates(cache, value);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Then
+        assertThat(allocated).isLessThan(1_024);
+    }
+
+    private static void runGetsAndUpdates(final IntKeyLFUCache<String> cache, final String value) {
+        for (int i = 0; i < 100_000; i++) {
+            cache.get(i % 1_000);
+            cache.put(i % 1_000, value);
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> entry(final K key, final V value) {
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+}
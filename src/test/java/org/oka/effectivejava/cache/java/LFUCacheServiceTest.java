@@ -1,16 +1,35 @@
 package org.oka.effectivejava.cache.java;
 
+import com.google.common.base.Ticker;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalNotifier;
+import org.oka.effectivejava.cache.Serializer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class LFUCacheServiceTest {
@@ -27,6 +46,25 @@ public class LFUCacheServiceTest {
         assertThat(cachedValue).isNull();
     }
 
+    @Test
+    public void shouldRejectNullKeys() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        Map<String, String> entries = new HashMap<>();
+        entries.put(null, "value");
+
+        // When
+        NullPointerException exception = assertThrows(NullPointerException.class, () -> cacheService.get(null));
+
+        // Then
+        assertThat(exception).hasMessage("Null keys are not supported");
+        assertThrows(NullPointerException.class, () -> cacheService.put(null, "value"));
+        assertThrows(NullPointerException.class, () -> cacheService.putAll(entries));
+        assertThrows(NullPointerException.class, () -> cacheService.getAll(Collections.singletonList(null)));
+        assertThrows(NullPointerException.class, () -> cacheService.remove(null));
+        assertThat(cacheService.size()).isZero();
+    }
+
     @Test
     public void shouldIncreaseAndReturnMissesByTwo_WhenTheItemDoesNotExist() {
         // Given
@@ -490,4 +528,1000 @@ public class LFUCacheServiceTest {
         assertThat(stats).containsEntry("key", 100_000);
         executor.shutdown();
     }
+
+    @Test
+    public void shouldEvict_WhenTheConfiguredMaximumSizeIsReached() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(2L)
+                .build();
+        cacheService.put("key", "value");
+        cacheService.get("key");
+        cacheService.put("key2", "value");
+
+        // When
+        cacheService.put("key3", "value");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key", "key3");
+        assertThat(cacheService.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictUntilTheWeightFits_WhenBoundedByWeight() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumWeight(10L)
+                .weigher((k, v) -> v.length())
+                .build();
+        cacheService.put("hot", "aaaa");
+        cacheService.get("hot");
+        cacheService.put("key", "bbb");
+        cacheService.put("key2", "cc");
+
+        // When
+        cacheService.put("key3", "dddddd");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("hot", "key3");
+        assertThat(cacheService.getWeightedSize()).isEqualTo(10);
+        assertThat(cacheService.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldUpdateTheWeight_WhenKeyExists() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumWeight(10L)
+                .weigher((k, v) -> v.length())
+                .build();
+        cacheService.put("key", "aaaa");
+        cacheService.put("key2", "bb");
+
+        // When
+        cacheService.put("key", "aaaaaaaaa");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key");
+        assertThat(cacheService.getWeightedSize()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldNotStoreAnEntryHeavierThanTheMaximumWeight() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumWeight(10L)
+                .weigher((k, v) -> v.length())
+                .build();
+        cacheService.put("key", "value");
+
+        // When
+        cacheService.put("key", "value_too_heavy");
+
+        // Then
+        assertThat(cacheService.get("key")).isNull();
+        assertThat(cacheService.getWeightedSize()).isZero();
+    }
+
+    @Test
+    public void shouldRejectInvalidBounds() {
+        assertThrows(IllegalStateException.class, () -> LFUCacheService.<String, String>builder()
+                .maximumSize(10L)
+                .maximumWeight(10L)
+                .weigher((k, v) -> 1)
+                .build());
+        assertThrows(IllegalStateException.class, () -> LFUCacheService.<String, String>builder()
+                .maximumWeight(10L)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> LFUCacheService.<String, String>builder()
+                .maximumSize(0L)
+                .build());
+    }
+
+    @Test
+    public void shouldLoadAndCacheTheValue_WhenTheItemDoesNotExist() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When
+        String value = cacheService.get("key", k -> k + "_value");
+
+        // Then
+        assertThat(value).isEqualTo("key_value");
+        assertThat(cacheService.getCachedItemStorage()).containsEntry("key", "key_value");
+        assertThat(cacheService.getLoads()).isEqualTo(1);
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCallTheLoader_WhenTheItemExists() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        String value = cacheService.get("key", k -> {
+            throw new IllegalStateException("Should not be called");
+        });
+
+        // Then
+        assertThat(value).isEqualTo("value");
+        assertThat(cacheService.getLoads()).isZero();
+        assertThat(cacheService.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldShareASingleLoad_WhenConcurrentMissesOnTheSameKey() throws Exception {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        AtomicInteger loaderCalls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> cacheService.get("key", k -> {
+                loaderCalls.incrementAndGet();
+                sleep(200);
+                return "value";
+            }));
+        }
+
+        // When
+        List<Future<String>> results = executor.invokeAll(tasks);
+
+        // Then
+        for (Future<String> result : results) {
+            assertThat(result.get()).isEqualTo("value");
+        }
+        assertThat(loaderCalls).hasValue(1);
+        assertThat(cacheService.getLoads()).isEqualTo(1);
+        assertThat(cacheService.getAvgLoadTime()).isGreaterThanOrEqualTo(200d);
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldPropagateTheLoaderException_AndNotCacheTheKey() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When
+        assertThrows(IllegalStateException.class, () -> cacheService.get("key", k -> {
+            throw new IllegalStateException("Backing store down");
+        }));
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).doesNotContainKey("key");
+        assertThat(cacheService.getLoadFailures()).isEqualTo(1);
+        assertThat(cacheService.get("key", k -> "value")).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldFailARecursiveLoadOfTheSameKey_InsteadOfWaitingForItself() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> cacheService.get("key",
+                k -> cacheService.get(k, same -> "value")));
+
+        // Then
+        assertThat(exception).hasMessage("Recursive load of key");
+        assertThat(cacheService.getCachedItemStorage()).doesNotContainKey("key");
+        assertThat(cacheService.get("key", k -> cacheService.get("other", other -> "value"))).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldNotCacheANullLoadedValue() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When
+        String value = cacheService.get("key", k -> null);
+
+        // Then
+        assertThat(value).isNull();
+        assertThat(cacheService.getCachedItemStorage()).isEmpty();
+    }
+
+    @Test
+    public void shouldRecordEveryRead_WhenReadsOverflowTheReadBuffer() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        for (int i = 0; i < 10 * ReadBuffer.STRIPE_SIZE; i++) {
+            cacheService.get("key");
+        }
+
+        // Then
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key", 1 + 10 * ReadBuffer.STRIPE_SIZE);
+        assertThat(cacheService.getHits()).isEqualTo(10 * ReadBuffer.STRIPE_SIZE);
+    }
+
+    @Test
+    public void shouldApplyTheBufferedReadsBeforeEvicting() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(2L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+        cacheService.get("key1");
+
+        // When
+        cacheService.put("key3", "value3");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key1", "key3");
+    }
+
+    @Test
+    public void shouldServeConcurrentReadsAndWrites() throws Exception {
+        // Given
+        LFUCacheService<Integer, String> cacheService = LFUCacheService
+                .<Integer, String>builder()
+                .maximumSize(100L)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(() -> {
+                int wrongValues = 0;
+                for (int i = 0; i < 20_000; i++) {
+                    if (i % 10 == 0) {
+                        int key = i / 10 % 200;
+                        cacheService.put(key, "value" + key);
+                    } else {
+                        int key = i % 200;
+                        String value = cacheService.get(key);
+                        if (value != null && !value.equals("value" + key)) {
+                            wrongValues++;
+                        }
+                    }
+                }
+                return wrongValues;
+            });
+        }
+
+        // When
+        List<Future<Integer>> results = executor.invokeAll(tasks);
+
+        // Then
+        for (Future<Integer> result : results) {
+            assertThat(result.get()).isZero();
+        }
+        assertThat(cacheService.getWeightedSize()).isEqualTo(100);
+        assertThat(cacheService.getCachedItemStats().values().stream().mapToInt(Integer::intValue).sum())
+                .isLessThanOrEqualTo(8 * 20_000);
+        assertThat(cacheService.getHits() + cacheService.getMisses()).isEqualTo(8 * 18_000);
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldExposeTheMetrics() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        cacheService.get("key2");
+
+        // When
+        cacheService.put("key2", "value2");
+
+        // Then
+        MetricsSnapshot metrics = cacheService.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(1);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getHitRatio()).isEqualTo(0.5d);
+        assertThat(metrics.getPuts()).isEqualTo(2);
+        assertThat(metrics.getEvictions()).isEqualTo(1);
+        assertThat(metrics.getGetLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getPutLatency().getP50()).isPositive();
+        assertThat(metrics.getEvictionLatency().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotifyTheRemovedEntries_ToTheRemovalListener() {
+        // Given
+        List<String> removals = new CopyOnWriteArrayList<>();
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(2L)
+                .ticker(ticker(nanos))
+                .removalListener((k, v, cause) -> removals.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        cacheService.put("key1", "value2");
+        cacheService.put("key2", "value2", Duration.ofMillis(100));
+        nanos.addAndGet(Duration.ofMillis(100).toNanos());
+        cacheService.get("key2");
+        cacheService.put("key3", "value3");
+
+        // When
+        cacheService.put("key4", "value4");
+        cacheService.close();
+
+        // Then
+        assertThat(removals).containsExactly("key1=value1:REPLACED", "key2=value2:EXPIRED", "key3=value3:SIZE");
+        assertThat(cacheService.getDroppedNotifications()).isZero();
+        assertThat(cacheService.getMetrics().getEvictions()).isEqualTo(1);
+        assertThat(cacheService.getMetrics().getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveTheKey_AndNotifyTheRemovalListener() {
+        // Given
+        List<String> removals = new CopyOnWriteArrayList<>();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(2L)
+                .removalListener((k, v, cause) -> removals.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+
+        // When
+        String removed = cacheService.remove("key1");
+        String missing = cacheService.remove("key3");
+        cacheService.close();
+
+        // Then
+        assertThat(removed).isEqualTo("value1");
+        assertThat(missing).isNull();
+        assertThat(cacheService.get("key1")).isNull();
+        assertThat(cacheService.size()).isEqualTo(1);
+        assertThat(removals).containsExactly("key1=value1:EXPLICIT");
+    }
+
+    @Test
+    public void shouldHandTheEvictedEntries_ToTheEvictionListener_BeforeThePutReturns() {
+        // Given
+        List<String> evictions = new ArrayList<>();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .evictionListener((k, v, cause) -> evictions.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key1", "value2");
+
+        // When
+        cacheService.put("key2", "value2");
+
+        // Then
+        assertThat(evictions).containsExactly("key1=value2:SIZE");
+    }
+
+    @Test
+    public void shouldRejectTheNotificationSettings_WithoutARemovalListener() {
+        assertThrows(IllegalStateException.class, () -> LFUCacheService
+                .<String, String>builder()
+                .overflowPolicy(RemovalNotifier.OverflowPolicy.BLOCK)
+                .build());
+    }
+
+    @Test
+    public void shouldNotReturnAnExpiredEntry() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key", "value", Duration.ofMillis(100));
+
+        // When
+        nanos.addAndGet(Duration.ofMillis(100).toNanos());
+
+        // Then
+        assertThat(cacheService.get("key")).isNull();
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+        assertThat(cacheService.getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldUseTheDefaultTimeToLive() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .expireAfter(Duration.ofSeconds(5))
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key", "value");
+        cacheService.put("key2", "value", Duration.ofMinutes(5));
+
+        // When
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key2");
+        assertThat(cacheService.get("key2")).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldRestartTheTimeToLive_WhenTheKeyIsReplaced() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key", "value", Duration.ofSeconds(5));
+        nanos.addAndGet(Duration.ofSeconds(4).toNanos());
+
+        // When
+        cacheService.put("key", "value2", Duration.ofSeconds(5));
+        nanos.addAndGet(Duration.ofSeconds(4).toNanos());
+
+        // Then
+        assertThat(cacheService.get("key")).isEqualTo("value2");
+    }
+
+    @Test
+    public void shouldNotExpire_WhenReplacedWithoutTimeToLive() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key", "value", Duration.ofSeconds(5));
+
+        // When
+        cacheService.put("key", "value2");
+        nanos.addAndGet(Duration.ofDays(1).toNanos());
+
+        // Then
+        assertThat(cacheService.get("key")).isEqualTo("value2");
+    }
+
+    @Test
+    public void shouldRemoveExpiredEntries_WithTheMaintenanceThread() throws InterruptedException {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        try (LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .cleanupInterval(Duration.ofMillis(10))
+                .build()) {
+            cacheService.put("key", "value", Duration.ofSeconds(1));
+
+            // When
+            nanos.addAndGet(Duration.ofSeconds(3).toNanos());
+            Thread.sleep(200);
+
+            // Then
+            assertThat(cacheService.getExpirations()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldRejectNonPositiveTimeToLive() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> cacheService.put("key", "value", Duration.ZERO));
+    }
+
+    @Test
+    public void shouldReturnTheCachedValuesOfABatch_AndCountTheirUse() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key2", "missing", "key1"));
+
+        // Then
+        assertThat(values).containsExactly(Map.entry("key2", "value2"), Map.entry("key1", "value1"));
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key1", 2).containsEntry("key2", 2);
+        assertThat(cacheService.getHits()).isEqualTo(2);
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLoadTheMissingKeysOfABatch_WithASingleBulkLoad() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key1", "value1");
+        List<Set<String>> bulkLoads = new ArrayList<>();
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key1", "key2", "key3", "key4"), keys -> {
+            bulkLoads.add(Set.copyOf(keys));
+            return Map.of("key2", "loaded2", "key3", "loaded3", "other", "loadedOther");
+        });
+
+        // Then
+        assertThat(bulkLoads).containsExactly(Set.of("key2", "key3", "key4"));
+        assertThat(values).containsExactly(
+                Map.entry("key1", "value1"), Map.entry("key2", "loaded2"), Map.entry("key3", "loaded3"));
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key1", "key2", "key3", "other");
+        assertThat(cacheService.getLoads()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCallTheBulkLoader_WhenEveryKeyIsCached() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key1", "value1");
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key1"), keys -> {
+            throw new IllegalStateException("Unexpected load of " + keys);
+        });
+
+        // Then
+        assertThat(values).containsExactly(Map.entry("key1", "value1"));
+        assertThat(cacheService.getLoads()).isZero();
+    }
+
+    @Test
+    public void shouldAddABatch_EvictingTheLeastFrequentlyUsed() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(3L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        Map<String, String> batch = new LinkedHashMap<>();
+        batch.put("key2", "value2");
+        batch.put("key3", "value3");
+        batch.put("key4", "value4");
+
+        // When
+        cacheService.putAll(batch);
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key1", "key3", "key4");
+        assertThat(cacheService.getEvictions()).isEqualTo(1);
+        assertThat(cacheService.getInsertions()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldNotReturnExpiredEntriesOfABatch() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key1", "value1", Duration.ofSeconds(1));
+        cacheService.put("key2", "value2");
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        // When
+        Map<String, String> values = cacheService.getAll(List.of("key1", "key2"));
+
+        // Then
+        assertThat(values).containsOnlyKeys("key2");
+        assertThat(cacheService.getExpirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRestoreTheEntriesAndFrequencies_FromASnapshot(@TempDir final Path directory) throws IOException {
+        // Given
+        Path file = directory.resolve("lfu.snapshot");
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+        cacheService.put("key3", "value3");
+        cacheService.get("key1");
+        cacheService.get("key1");
+        cacheService.get("key3");
+        cacheService.snapshot(file);
+        LFUCacheService<String, String> restored = LFUCacheService
+                .<String, String>builder()
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+
+        // When
+        restored.restore(file);
+
+        // Then
+        assertThat(restored.getCachedItemStorage()).isEqualTo(cacheService.getCachedItemStorage());
+        assertThat(restored.getCachedItemFreq()).isEqualTo(cacheService.getCachedItemFreq());
+    }
+
+    @Test
+    public void shouldKeepTheMostFrequentlyUsed_WhenTheSnapshotDoesNotFit(@TempDir final Path directory)
+            throws IOException {
+        // Given
+        Path file = directory.resolve("lfu.snapshot");
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+        for (int i = 0; i < 10; i++) {
+            cacheService.put("key" + i, "value" + i);
+            for (int j = 0; j < i; j++) {
+                cacheService.get("key" + i);
+            }
+        }
+        cacheService.snapshot(file);
+        LFUCacheService<String, String> restored = LFUCacheService
+                .<String, String>builder()
+                .maximumSize(3L)
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+
+        // When
+        restored.restore(file);
+
+        // Then
+        assertThat(restored.getCachedItemStats()).containsOnly(
+                entry("key7", 8), entry("key8", 9), entry("key9", 10));
+    }
+
+    @Test
+    public void shouldNotSnapshotExpiredEntries(@TempDir final Path directory) throws IOException {
+        // Given
+        Path file = directory.resolve("lfu.snapshot");
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+        cacheService.put("key1", "value1", Duration.ofSeconds(1));
+        cacheService.put("key2", "value2");
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        LFUCacheService<String, String> restored = LFUCacheService
+                .<String, String>builder()
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+
+        // When
+        cacheService.snapshot(file);
+        restored.restore(file);
+
+        // Then
+        assertThat(restored.getCachedItemStorage()).containsOnlyKeys("key2");
+    }
+
+    @Test
+    public void shouldRejectSnapshots_WithoutSerializers(@TempDir final Path directory) {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> cacheService.snapshot(directory.resolve("lfu.snapshot")));
+    }
+
+    @Test
+    public void shouldReflectLaterWrites_InTheLiveView() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        Map<String, String> view = cacheService.asMap();
+
+        // When
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+
+        // Then
+        assertThat(view).containsOnly(entry("key1", "value1"), entry("key2", "value2"));
+        assertThat(view.get("key1")).isEqualTo("value1");
+        assertThat(cacheService.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCountReadsOfTheLiveView_AsUses() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        cacheService.asMap().get("key");
+        cacheService.asMap().forEach((k, v) -> { });
+
+        // Then
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key", 1);
+        assertThat(cacheService.getHits()).isZero();
+    }
+
+    @Test
+    public void shouldRejectWrites_ThroughTheLiveView() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key", "value");
+        Map<String, String> view = cacheService.asMap();
+
+        // When / Then
+        assertThrows(UnsupportedOperationException.class, () -> view.put("key2", "value2"));
+        assertThrows(UnsupportedOperationException.class, () -> view.remove("key"));
+        assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Map.Entry<String, String>> iterator = view.entrySet().iterator();
+            iterator.next();
+            iterator.remove();
+        });
+    }
+
+    @Test
+    public void shouldHideExpiredEntries_FromTheLiveView() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .build();
+        cacheService.put("key1", "value1", Duration.ofSeconds(1));
+        cacheService.put("key2", "value2");
+
+        // When
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        // Then
+        List<String> visited = new ArrayList<>();
+        cacheService.forEach((k, v) -> visited.add(k));
+        assertThat(visited).containsExactly("key2");
+        assertThat(cacheService.asMap()).containsOnlyKeys("key2");
+        assertThat(cacheService.asMap().get("key1")).isNull();
+    }
+
+    @Test
+    public void shouldVisitTheFrequencies_WithoutCopying() {
+        // Given
+        LFUCacheService<String, String> cacheService = new LFUCacheService<>();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+        cacheService.put("key2", "value2");
+
+        // When
+        Map<String, Integer> frequencies = new HashMap<>();
+        cacheService.forEachFrequency(frequencies::put);
+
+        // Then
+        assertThat(frequencies).containsOnly(entry("key1", 1), entry("key2", 2));
+    }
+
+    @Test
+    public void shouldIterateTheLiveView_WhileWritersChangeTheCache() throws Exception {
+        // Given
+        LFUCacheService<Integer, Integer> cacheService = LFUCacheService
+                .<Integer, Integer>builder()
+                .maximumSize(100L)
+                .build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                cacheService.put(i % 300, i);
+            }
+        });
+
+        // When
+        long iterated = 0;
+        while (!writer.isDone()) {
+            for (Map.Entry<Integer, Integer> entry : cacheService.asMap().entrySet()) {
+                iterated += entry.getKey() >= 0 ? 1 : 0;
+            }
+        }
+        writer.get();
+        executor.shutdown();
+
+        // Then
+        assertThat(iterated).isPositive();
+        assertThat(cacheService.asMap()).hasSize(100);
+    }
+
+    @Test
+    public void shouldHalveTheFrequencies_AfterTheConfiguredNumberOfOperations() {
+        // Given
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ageAfterOperations(10L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key2", "value2");
+
+        // When
+        for (int i = 0; i < 8; i++) {
+            cacheService.put("key1", "value1");
+        }
+        cacheService.cleanUp();
+
+        // Then
+        assertThat(cacheService.getAgings()).isEqualTo(1);
+        assertThat(cacheService.getCachedItemStats()).containsOnly(entry("key1", 4), entry("key2", 1));
+    }
+
+    @Test
+    public void shouldHalveTheFrequencies_AfterTheConfiguredTime() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .ageAfter(Duration.ofMinutes(1))
+                .build();
+        cacheService.put("key1", "value1");
+        for (int i = 0; i < 5; i++) {
+            cacheService.put("key1", "value1");
+        }
+
+        // When
+        nanos.addAndGet(Duration.ofMinutes(1).toNanos());
+        cacheService.cleanUp();
+
+        // Then
+        assertThat(cacheService.getAgings()).isEqualTo(1);
+        assertThat(cacheService.getCachedItemStats()).containsOnly(entry("key1", 3));
+    }
+
+    @Test
+    public void shouldRejectANonPositiveAgingPeriod() {
+        assertThrows(IllegalArgumentException.class, () -> LFUCacheService
+                .<String, String>builder()
+                .ageAfterOperations(0L)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> LFUCacheService
+                .<String, String>builder()
+                .ageAfter(Duration.ZERO)
+                .build());
+    }
+
+    @Test
+    public void shouldRecoverTheHitRatio_AfterTheWorkloadShifts_OnlyWhenFrequenciesAge() {
+        // Given
+        LFUCacheService<Integer, Integer> aging = LFUCacheService
+                .<Integer, Integer>builder()
+                .maximumSize(100L)
+                .ageAfterOperations(1_000L)
+                .build();
+        LFUCacheService<Integer, Integer> notAging = LFUCacheService
+                .<Integer, Integer>builder()
+                .maximumSize(100L)
+                .build();
+        simulateWorkload(aging, 0, 200_000);
+        simulateWorkload(notAging, 0, 200_000);
+
+        // When
+        double agingHitRatio = simulateWorkload(aging, 10_000, 200_000);
+        double notAgingHitRatio = simulateWorkload(notAging, 10_000, 200_000);
+
+        // Then
+        assertThat(agingHitRatio).isGreaterThan(0.95d);
+        assertThat(notAgingHitRatio).isLessThan(0.5d);
+        assertThat(aging.getAgings()).isGreaterThan(300);
+    }
+
+    /**
+     * Requests uniformly random keys of a hot set of 80 keys starting at firstKey, loading the misses.
+     *
+     * @return hit ratio of the last quarter of the requests.
+     */
+    private static double simulateWorkload(final LFUCacheService<Integer, Integer> cacheService, final int firstKey,
+                                           final int requests) {
+        Random random = new Random(firstKey);
+        int hits = 0;
+        for (int i = 0; i < requests; i++) {
+            int key = firstKey + random.nextInt(80);
+            if (cacheService.get(key) != null) {
+                hits += i >= requests * 3 / 4 ? 1 : 0;
+            } else {
+                cacheService.put(key, key);
+            }
+        }
+        return hits / (requests / 4d);
+    }
+
+    @Test
+    public void shouldServeTheHotKeys_FromTheNearCache() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .hotKeys(2)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            cacheService.put("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            cacheService.get("hot");
+            cacheService.get("key0");
+            cacheService.get("key" + i % 100);
+        }
+        cacheService.put("hot", "value");
+        for (int i = 0; i < 1_000; i++) {
+            cacheService.get("hot");
+        }
+        nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+        cacheService.cleanUp();
+        int frequencyBefore = cacheService.getCachedItemStats().get("hot");
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            assertThat(cacheService.get("hot")).isEqualTo("value");
+        }
+        cacheService.put("hot", "new value");
+
+        // Then
+        assertThat(cacheService.get("hot")).isEqualTo("new value");
+        assertThat(cacheService.getNearCacheHits()).isEqualTo(501);
+        List<HotKey<String>> hotKeys = cacheService.getHotKeys();
+        assertThat(hotKeys).extracting(HotKey::getKey).containsExactlyInAnyOrder("hot", "key0");
+        assertThat(hotKeys).extracting(HotKey::isNearCached).containsExactly(true, true);
+        nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+        cacheService.cleanUp();
+        assertThat(cacheService.getCachedItemStats().get("hot")).isGreaterThanOrEqualTo(frequencyBefore + 501);
+    }
+
+    @Test
+    public void shouldNotServeAnExpiredHotKey_FromTheNearCache() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        LFUCacheService<String, String> cacheService = LFUCacheService
+                .<String, String>builder()
+                .ticker(ticker(nanos))
+                .hotKeys(1)
+                .hotKeyRefreshInterval(Duration.ofMillis(10))
+                .build();
+        cacheService.put("hot", "value", Duration.ofMillis(100));
+        for (int i = 0; i < 100; i++) {
+            cacheService.get("hot");
+        }
+        nanos.addAndGet(Duration.ofMillis(10).toNanos());
+        cacheService.cleanUp();
+        assertThat(cacheService.getHotKeys()).extracting(HotKey::isNearCached).containsExactly(true);
+
+        // When
+        nanos.addAndGet(Duration.ofMillis(100).toNanos());
+
+        // Then
+        assertThat(cacheService.get("hot")).isNull();
+        cacheService.cleanUp();
+        assertThat(cacheService.getHotKeys()).extracting(HotKey::isNearCached).containsExactly(false);
+    }
+
+    @Test
+    public void shouldRejectTheHotKeySettings_WithoutHotKeys() {
+        assertThrows(IllegalStateException.class, () -> LFUCacheService
+                .<String, String>builder()
+                .hotKeyRefreshInterval(Duration.ofSeconds(1))
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> LFUCacheService
+                .<String, String>builder()
+                .hotKeys(0)
+                .build());
+    }
+
+    private static Ticker ticker(final AtomicLong nanos) {
+        return new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
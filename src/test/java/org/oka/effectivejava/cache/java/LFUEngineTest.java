@@ -0,0 +1,221 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LFUEngineTest {
+
+    @Test
+    public void shouldEvictOldestEntryOfTheLowestFrequency() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(3);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+        engine.touch(engine.getNode("a"));
+
+        // When
+        List<LFUEngine.Node<String, String>> evicted = engine.put("d", "value");
+
+        // Then
+        assertThat(evicted).extracting(LFUEngine.Node::getKey).containsExactly("b");
+        assertThat(engine.getNode("b")).isNull();
+        assertThat(engine.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldKeepFrequencyBucketsInAscendingOrder() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+
+        // When
+        engine.touch(engine.getNode("c"));
+        engine.touch(engine.getNode("c"));
+        engine.touch(engine.getNode("a"));
+
+        // Then
+        assertThat(engine.frequencies()).containsExactly(
+                entry(1, List.of("b")),
+                entry(2, List.of("a")),
+                entry(3, List.of("c")));
+    }
+
+    @Test
+    public void shouldReuseTheNextBucket_WhenFrequencyAlreadyExists() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.touch(engine.getNode("a"));
+
+        // When
+        engine.touch(engine.getNode("b"));
+
+        // Then
+        assertThat(engine.frequencies()).containsExactly(entry(2, List.of("a", "b")));
+        assertThat(engine.getNode("b").getFrequency()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReplaceValueAndIncreaseFrequency_WhenKeyExists() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+
+        // When
+        List<LFUEngine.Node<String, String>> evicted = engine.put("a", "value2");
+
+        // Then
+        assertThat(evicted).isEmpty();
+        assertThat(engine.storage()).containsEntry("a", "value2");
+        assertThat(engine.stats()).containsEntry("a", 2);
+    }
+
+    @Test
+    public void shouldReturnNull_WhenEvictingAnEmptyEngine() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+
+        // When
+        LFUEngine.Node<String, String> evicted = engine.evict();
+
+        // Then
+        assertThat(evicted).isNull();
+    }
+
+    @Test
+    public void shouldEvictAcrossBuckets_UntilTheWeightFits() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10L, (k, v) -> v.length());
+        engine.put("a", "aaa");
+        engine.put("b", "bbb");
+        engine.put("c", "ccc");
+        engine.touch(engine.getNode("a"));
+
+        // When
+        List<LFUEngine.Node<String, String>> evicted = engine.put("d", "ddddddd");
+
+        // Then
+        assertThat(evicted).extracting(LFUEngine.Node::getKey).containsExactly("b", "c");
+        assertThat(engine.weightedSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldRejectNegativeWeights() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10L, (k, v) -> -1);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> engine.put("a", "value"));
+    }
+
+    @Test
+    public void shouldMoveTheNodeToTheBucketOfTheGivenFrequency() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+        engine.put("d", "value");
+
+        // When
+        engine.setFrequency(engine.getNode("a"), 3);
+        engine.setFrequency(engine.getNode("b"), 5);
+        engine.setFrequency(engine.getNode("c"), 3);
+        engine.setFrequency(engine.getNode("d"), 4);
+
+        // Then
+        assertThat(engine.frequencies()).containsExactly(
+                entry(3, List.of("a", "c")),
+                entry(4, List.of("d")),
+                entry(5, List.of("b")));
+    }
+
+    @Test
+    public void shouldRejectANonPositiveFrequency() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> engine.setFrequency(engine.getNode("a"), 0));
+    }
+
+    @Test
+    public void shouldHalveEveryFrequency_WhenAged() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+        engine.setFrequency(engine.getNode("b"), 4);
+        engine.setFrequency(engine.getNode("c"), 9);
+
+        // When
+        engine.age();
+
+        // Then
+        assertThat(engine.frequencies()).containsExactly(
+                entry(1, List.of("a")),
+                entry(2, List.of("b")),
+                entry(4, List.of("c")));
+        assertThat(engine.getNode("c").getFrequency()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldMergeTheBucketsLeftWithTheSameFrequency_WithinTheBudget() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+        engine.put("d", "value");
+        engine.setFrequency(engine.getNode("b"), 2);
+        engine.setFrequency(engine.getNode("c"), 3);
+        engine.setFrequency(engine.getNode("d"), 3);
+        engine.age();
+
+        // When
+        boolean pendingAfterOneNode = engine.mergeBuckets(1);
+        boolean pendingAfterTheRest = engine.mergeBuckets(10);
+
+        // Then
+        assertThat(pendingAfterOneNode).isTrue();
+        assertThat(pendingAfterTheRest).isFalse();
+        assertThat(engine.frequencies()).containsExactly(entry(1, List.of("a", "b", "c", "d")));
+        assertThat(engine.evict().getKey()).isEqualTo("a");
+    }
+
+    @Test
+    public void shouldPromoteANodePastTheBucketsWithTheSameFrequency_BeforeTheyAreMerged() {
+        // Given
+        LFUEngine<String, String> engine = new LFUEngine<>(10);
+        engine.put("a", "value");
+        engine.put("b", "value");
+        engine.put("c", "value");
+        engine.setFrequency(engine.getNode("b"), 4);
+        engine.setFrequency(engine.getNode("c"), 5);
+        engine.age();
+
+        // When
+        engine.touch(engine.getNode("b"));
+        engine.put("d", "value");
+
+        // Then
+        assertThat(engine.frequencies()).containsExactly(
+                entry(1, List.of("a", "d")),
+                entry(2, List.of("c")),
+                entry(3, List.of("b")));
+        assertThat(engine.evict().getKey()).isEqualTo("a");
+        assertThat(engine.evict().getKey()).isEqualTo("d");
+        assertThat(engine.evict().getKey()).isEqualTo("c");
+    }
+}
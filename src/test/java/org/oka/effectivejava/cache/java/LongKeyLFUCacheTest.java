@@ -0,0 +1,156 @@
+package org.oka.effectivejava.cache.java;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongKeyLFUCacheTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        LongKeyLFUCache<String> cache = new LongKeyLFUCache<>();
+
+        // When
+        String cachedValue = cache.get(42L);
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnTheValue_WhenTheItemExists() {
+        // Given
+        LongKeyLFUCache<String> cache = new LongKeyLFUCache<>();
+        cache.put(42L, "value");
+
+        // When
+        String cachedValue = cache.get(42L);
+
+        // Then
+        assertThat(cachedValue).isEqualTo("value");
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getFrequency(42L)).isEqualTo(2);
+        assertThat(cache.getCachedItemStats()).containsEntry(42L, 2);
+    }
+
+    @Test
+    public void shouldReplaceTheValueAndCountAUse_WhenKeyExists() {
+        // Given
+        LongKeyLFUCache<String> cache = new LongKeyLFUCache<>();
+        cache.put(42L, "value");
+
+        // When
+        cache.put(42L, "value2");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnly(entry(42L, "value2"));
+        assertThat(cache.getFrequency(42L)).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictTheLeastFrequentlyUsed_WhenFull() {
+        // Given
+        LongKeyLFUCache<String> cache = new LongKeyLFUCache<>(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+
+        // When
+        cache.put(3L, "three");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnlyKeys(1L, 3L);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFindTheKeys_WhenTheyCollideAndSomeAreDeleted() {
+        // Given
+        LongKeyLFUCache<Integer> cache = new LongKeyLFUCache<>(8);
+        for (int key = 0; key < 8; key++) {
+            cache.put((long) key << 32, key);
+            cache.get((long) key << 32);
+        }
+
+        // When
+        for (int key = 8; key < 16; key += 2) {
+            cache.put((long) key << 32, key);
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(8);
+        assertThat(cache.getEvictions()).isEqualTo(4);
+        for (int key = 0; key < 16; key++) {
+            boolean evicted = key == 0 || key >= 8 && key != 14;
+            assertThat(cache.get((long) key << 32)).isEqualTo(evicted ? null : key);
+        }
+    }
+
+    @Test
+    public void shouldBehaveAsTheLFUEngine() {
+        // Given
+        LongKeyLFUCache<Integer> cache = new LongKeyLFUCache<>(64);
+        LFUEngine<Long, Integer> engine = new LFUEngine<>(64);
+        Random random = new Random(7);
+
+        // When
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(256) - 128L;
+            if (random.nextBoolean()) {
+                cache.put(key, i);
+                engine.put(key, i);
+            } else {
+                cache.get(key);
+                LFUEngine.Node<Long, Integer> node = engine.getNode(key);
+                if (node != null) {
+                    engine.touch(node);
+                }
+            }
+        }
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).isEqualTo(engine.storage());
+        assertThat(cache.getCachedItemStats()).isEqualTo(engine.stats());
+    }
+
+    @Test
+    public void shouldNotAllocate_OnGetsAndUpdates() {
+        // Given
+        LongKeyLFUCache<String> cache = new LongKeyLFUCache<>(1_000);
+        String value = "value";
+        for (int key = 0; key < 1_000; key++) {
+            cache.put(key, value);
+        }
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        runGetsAndUpdates(cache, value);
+
+        // When
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        runGetsAndUpdates(cache, value);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Then
+        assertThat(allocated).isLessThan(1_024);
+    }
+
+    private static void runGetsAndUpdates(final LongKeyLFUCache<String> cache, final String value) {
+        for (int i = 0; i < 100_000; i++) {
+            cache.get(i % 1_000L);
+            cache.put(i % 1_000L, value);
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> entry(final K key, final V value) {
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+}
@@ -0,0 +1,95 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapArenaTest {
+
+    @Test
+    public void shouldReadTheStoredPayload() {
+        // Given
+        OffHeapArena arena = new OffHeapArena(1024, 2);
+
+        // When
+        long address = arena.allocate("value".getBytes(UTF_8));
+
+        // Then
+        assertThat(asString(arena.read(address))).isEqualTo("value");
+        assertThat(arena.payloadBytes()).isEqualTo(5);
+        assertThat(arena.usedBytes()).isEqualTo(16);
+        assertThat(arena.reservedBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    public void shouldReuseAFreedChunkOfTheSameSizeClass() {
+        // Given
+        OffHeapArena arena = new OffHeapArena(1024, 1);
+        long address = arena.allocate("value".getBytes(UTF_8));
+        arena.allocate("value2".getBytes(UTF_8));
+        arena.free(address);
+
+        // When
+        long reused = arena.allocate("other".getBytes(UTF_8));
+
+        // Then
+        assertThat(reused).isEqualTo(address);
+        assertThat(asString(arena.read(reused))).isEqualTo("other");
+    }
+
+    @Test
+    public void shouldReturnNoRoom_WhenTheArenaIsFull() {
+        // Given
+        OffHeapArena arena = new OffHeapArena(64, 1);
+        for (int i = 0; i < 4; i++) {
+            arena.allocate(new byte[12]);
+        }
+
+        // When
+        long address = arena.allocate(new byte[12]);
+
+        // Then
+        assertThat(address).isEqualTo(OffHeapArena.NO_ROOM);
+        assertThat(arena.fits(60)).isTrue();
+        assertThat(arena.fits(61)).isFalse();
+    }
+
+    @Test
+    public void shouldCompactLiveChunksAndReleaseEmptySlabs() {
+        // Given
+        OffHeapArena arena = new OffHeapArena(64, 4);
+        long[] addresses = new long[16];
+        for (int i = 0; i < 16; i++) {
+            addresses[i] = arena.allocate(new byte[]{(byte) i});
+        }
+        for (int i = 0; i < 16; i++) {
+            if (i % 4 != 0) {
+                arena.free(addresses[i]);
+            }
+        }
+        double fragmentationBefore = arena.fragmentation();
+
+        // When
+        arena.beginCompaction();
+        long[] moved = new long[4];
+        for (int i = 0; i < 4; i++) {
+            moved[i] = arena.move(addresses[i * 4]);
+        }
+        arena.endCompaction();
+
+        // Then
+        assertThat(fragmentationBefore).isEqualTo(0.75d);
+        assertThat(arena.fragmentation()).isZero();
+        assertThat(arena.reservedBytes()).isEqualTo(64);
+        for (int i = 0; i < 4; i++) {
+            assertThat(arena.read(moved[i]).get()).isEqualTo((byte) (i * 4));
+        }
+    }
+
+    private static String asString(final ByteBuffer buffer) {
+        return UTF_8.decode(buffer).toString();
+    }
+}
@@ -0,0 +1,173 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.Serializer;
+
+import static org.apache.commons.lang3.StringUtils.repeat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OffHeapLFUCacheServiceTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = cacheService(1L << 20);
+
+        // When
+        String cachedValue = cacheService.get("random_key");
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStoreTheValueOffHeap() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = cacheService(1L << 20);
+
+        // When
+        cacheService.put("key", "value");
+
+        // Then
+        assertThat(cacheService.get("key")).isEqualTo("value");
+        assertThat(cacheService.getHits()).isEqualTo(1);
+        assertThat(cacheService.getOffHeapPayloadBytes()).isEqualTo(5);
+        assertThat(cacheService.getCachedItemStorage()).containsEntry("key", "value");
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key", 2);
+    }
+
+    @Test
+    public void shouldReplaceTheValueAndFreeTheOldChunk_WhenKeyExists() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = cacheService(1L << 20);
+        cacheService.put("key", "value");
+
+        // When
+        cacheService.put("key", "value2");
+
+        // Then
+        assertThat(cacheService.get("key")).isEqualTo("value2");
+        assertThat(cacheService.getOffHeapPayloadBytes()).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldEvictTheLeastFrequentlyUsed_WhenTheArenaIsFull() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = OffHeapLFUCacheService
+                .<String, String>builder()
+                .valueSerializer(Serializer.utf8())
+                .maximumOffHeapSize(1024L)
+                .slabSize(256)
+                .build();
+        for (int i = 0; i < 4; i++) {
+            cacheService.put("key" + i, repeat('a', 200));
+            cacheService.get("key" + i);
+        }
+
+        // When
+        cacheService.put("key4", repeat('b', 200));
+
+        // Then
+        assertThat(cacheService.getEvictions()).isEqualTo(1);
+        assertThat(cacheService.get("key0")).isNull();
+        assertThat(cacheService.get("key4")).isEqualTo(repeat('b', 200));
+        assertThat(cacheService.getOffHeapBytesReserved()).isEqualTo(1024);
+    }
+
+    @Test
+    public void shouldCompactTheArena_WhenFragmentedBeforeEvicting() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = OffHeapLFUCacheService
+                .<String, String>builder()
+                .valueSerializer(Serializer.utf8())
+                .maximumSize(4L)
+                .maximumOffHeapSize(128L)
+                .slabSize(64)
+                .build();
+        for (int i = 0; i < 4; i++) {
+            cacheService.put("key" + i, repeat('a', 20));
+        }
+        cacheService.put("key4", "b");
+
+        // When
+        cacheService.put("key5", repeat('c', 40));
+
+        // Then
+        assertThat(cacheService.getCompactions()).isEqualTo(2);
+        assertThat(cacheService.getEvictions()).isEqualTo(2);
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key2", "key3", "key4", "key5");
+        assertThat(cacheService.get("key5")).isEqualTo(repeat('c', 40));
+        assertThat(cacheService.get("key4")).isEqualTo("b");
+        assertThat(cacheService.getOffHeapBytesReserved()).isEqualTo(128);
+    }
+
+    @Test
+    public void shouldNotStoreAValueBiggerThanASlab() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = cacheService(1L << 20);
+        cacheService.put("key", "value");
+
+        // When
+        cacheService.put("key", repeat('a', 1 << 20));
+
+        // Then
+        assertThat(cacheService.get("key")).isNull();
+        assertThat(cacheService.getOffHeapBytesUsed()).isZero();
+    }
+
+    @Test
+    public void shouldReleaseTheMemory_WhenClosed() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = cacheService(1L << 20);
+        cacheService.put("key", "value");
+
+        // When
+        cacheService.close();
+
+        // Then
+        assertThat(cacheService.getOffHeapBytesReserved()).isZero();
+        assertThat(cacheService.get("key")).isNull();
+    }
+
+    @Test
+    public void shouldExposeTheMetrics() {
+        // Given
+        OffHeapLFUCacheService<String, String> cacheService = OffHeapLFUCacheService
+                .<String, String>builder()
+                .valueSerializer(Serializer.utf8())
+                .maximumSize(1L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        cacheService.get("key2");
+
+        // When
+        cacheService.put("key2", "value2");
+
+        // Then
+        MetricsSnapshot metrics = cacheService.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(1);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getPuts()).isEqualTo(2);
+        assertThat(metrics.getEvictions()).isEqualTo(1);
+        assertThat(metrics.getEvictionLatency().getCount()).isEqualTo(1);
+        assertThat(cacheService.getCachedItemStorage()).containsOnlyKeys("key2");
+        assertThat(cacheService.getOffHeapPayloadBytes()).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldRequireAValueSerializer() {
+        assertThrows(NullPointerException.class, () -> OffHeapLFUCacheService.<String, String>builder().build());
+    }
+
+    private static OffHeapLFUCacheService<String, String> cacheService(final long maximumOffHeapSize) {
+        return OffHeapLFUCacheService
+                .<String, String>builder()
+                .valueSerializer(Serializer.utf8())
+                .maximumOffHeapSize(maximumOffHeapSize)
+                .build();
+    }
+}
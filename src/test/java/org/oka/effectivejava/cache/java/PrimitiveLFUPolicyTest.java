@@ -0,0 +1,115 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PrimitiveLFUPolicyTest {
+
+    @Test
+    public void shouldEvictTheLeastFrequentlyUsed_AndTheOldestOnTies() {
+        // Given
+        PrimitiveLFUPolicy policy = new PrimitiveLFUPolicy(3);
+        int first = policy.add();
+        int second = policy.add();
+        int third = policy.add();
+        policy.touch(first);
+
+        // When
+        int victim = policy.evict();
+
+        // Then
+        assertThat(victim).isEqualTo(second);
+        assertThat(policy.evict()).isEqualTo(third);
+        assertThat(policy.evict()).isEqualTo(first);
+        assertThat(policy.evict()).isEqualTo(PrimitiveLFUPolicy.NIL);
+    }
+
+    @Test
+    public void shouldEvictTheNextLeastFrequentlyUsed_WhenTheVictimMustBeKept() {
+        // Given
+        PrimitiveLFUPolicy policy = new PrimitiveLFUPolicy(3);
+        int first = policy.add();
+        int second = policy.add();
+        policy.touch(second);
+
+        // When
+        int victim = policy.evictExcept(first);
+
+        // Then
+        assertThat(victim).isEqualTo(second);
+        assertThat(policy.evictExcept(first)).isEqualTo(PrimitiveLFUPolicy.NIL);
+        assertThat(policy.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldVisitTheEntriesInAscendingFrequency() {
+        // Given
+        PrimitiveLFUPolicy policy = new PrimitiveLFUPolicy(3);
+        int first = policy.add();
+        int second = policy.add();
+        int third = policy.add();
+        policy.touch(first);
+        policy.touch(first);
+        policy.touch(third);
+        List<Integer> visited = new ArrayList<>();
+
+        // When
+        policy.forEach(visited::add);
+
+        // Then
+        assertThat(visited).containsExactly(second, third, first);
+        assertThat(policy.frequency(first)).isEqualTo(3);
+        assertThat(policy.frequency(second)).isEqualTo(1);
+        assertThat(policy.frequency(third)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReuseTheIndexOfTheEvictedEntry() {
+        // Given
+        PrimitiveLFUPolicy policy = new PrimitiveLFUPolicy(2);
+        policy.add();
+        policy.add();
+        int victim = policy.evict();
+
+        // When
+        int entry = policy.add();
+
+        // Then
+        assertThat(entry).isEqualTo(victim);
+        assertThat(policy.isFull()).isTrue();
+        assertThat(policy.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldGrowTheBuckets_WhenThereAreManyDistinctFrequencies() {
+        // Given
+        PrimitiveLFUPolicy policy = new PrimitiveLFUPolicy(100);
+        int[] entries = new int[100];
+        for (int i = 0; i < 100; i++) {
+            entries[i] = policy.add();
+        }
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < i; j++) {
+                policy.touch(entries[i]);
+            }
+        }
+
+        // Then
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.frequency(entries[i])).isEqualTo(i + 1);
+            assertThat(policy.evict()).isEqualTo(entries[i]);
+        }
+    }
+
+    @Test
+    public void shouldRejectANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new PrimitiveLFUPolicy(0));
+    }
+}
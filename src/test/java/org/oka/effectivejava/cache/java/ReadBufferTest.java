@@ -0,0 +1,94 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadBufferTest {
+
+    @Test
+    public void shouldDrainTheEventsInRecordingOrder() {
+        // Given
+        ReadBuffer<Integer> readBuffer = new ReadBuffer<>(1);
+        for (int i = 0; i < 5; i++) {
+            readBuffer.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+
+        // When
+        readBuffer.drain(drained::add);
+
+        // Then
+        assertThat(drained).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void shouldReturnFull_WhenTheStripeIsFull() {
+        // Given
+        ReadBuffer<Integer> readBuffer = new ReadBuffer<>(1);
+        for (int i = 0; i < ReadBuffer.STRIPE_SIZE; i++) {
+            assertThat(readBuffer.offer(i)).isEqualTo(ReadBuffer.SUCCESS);
+        }
+
+        // When
+        int result = readBuffer.offer(ReadBuffer.STRIPE_SIZE);
+
+        // Then
+        assertThat(result).isEqualTo(ReadBuffer.FULL);
+    }
+
+    @Test
+    public void shouldAcceptEventsAgain_WhenDrained() {
+        // Given
+        ReadBuffer<Integer> readBuffer = new ReadBuffer<>(1);
+        for (int i = 0; i < ReadBuffer.STRIPE_SIZE; i++) {
+            readBuffer.offer(i);
+        }
+        readBuffer.drain(e -> {
+        });
+
+        // When
+        int result = readBuffer.offer(0);
+
+        // Then
+        assertThat(result).isEqualTo(ReadBuffer.SUCCESS);
+        List<Integer> drained = new ArrayList<>();
+        readBuffer.drain(drained::add);
+        assertThat(drained).containsExactly(0);
+    }
+
+    @Test
+    public void shouldNeverDrainMoreEventsThanRecorded_WhenReadConcurrently() throws InterruptedException {
+        // Given
+        ReadBuffer<Integer> readBuffer = new ReadBuffer<>(4);
+        AtomicInteger recorded = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (readBuffer.offer(i) == ReadBuffer.SUCCESS) {
+                        recorded.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        // When
+        readers.forEach(Thread::start);
+        for (Thread reader : readers) {
+            while (reader.isAlive()) {
+                readBuffer.drain(e -> drained.incrementAndGet());
+            }
+            reader.join();
+        }
+        readBuffer.drain(e -> drained.incrementAndGet());
+
+        // Then
+        assertThat(drained.get()).isEqualTo(recorded.get());
+    }
+}
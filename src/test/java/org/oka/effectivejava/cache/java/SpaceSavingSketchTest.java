@@ -0,0 +1,80 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SpaceSavingSketchTest {
+
+    @Test
+    public void shouldCountExactly_WhileThereAreFreeCounters() {
+        // Given
+        SpaceSavingSketch<String> sketch = new SpaceSavingSketch<>(4);
+
+        // When
+        sketch.offer("a", 1);
+        sketch.offer("b", 5);
+        sketch.offer("a", 2);
+        sketch.offer("c", 1);
+
+        // Then
+        List<SpaceSavingSketch.Counter<String>> top = sketch.top(2);
+        assertThat(top).extracting(SpaceSavingSketch.Counter::getKey).containsExactly("b", "a");
+        assertThat(top).extracting(SpaceSavingSketch.Counter::getCount).containsExactly(5L, 3L);
+        assertThat(top).extracting(SpaceSavingSketch.Counter::getError).containsOnly(0L);
+        assertThat(sketch.total()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldFindTheHeavyHitters_WithFewerCountersThanKeys() {
+        // Given
+        SpaceSavingSketch<Integer> sketch = new SpaceSavingSketch<>(16);
+        Map<Integer, Long> counts = new HashMap<>();
+        Random random = new Random(5);
+
+        // When
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(10) < 4 ? random.nextInt(3) : 3 + random.nextInt(10_000);
+            counts.merge(key, 1L, Long::sum);
+            sketch.offer(key, 1);
+        }
+
+        // Then
+        List<SpaceSavingSketch.Counter<Integer>> top = sketch.top(3);
+        assertThat(top).extracting(SpaceSavingSketch.Counter::getKey).containsExactlyInAnyOrder(0, 1, 2);
+        for (SpaceSavingSketch.Counter<Integer> counter : sketch.top(16)) {
+            long real = counts.getOrDefault(counter.getKey(), 0L);
+            assertThat(counter.getCount()).isGreaterThanOrEqualTo(real);
+            assertThat(counter.getCount() - counter.getError()).isLessThanOrEqualTo(real);
+        }
+    }
+
+    @Test
+    public void shouldHalveTheCounts_WhenDecayed() {
+        // Given
+        SpaceSavingSketch<String> sketch = new SpaceSavingSketch<>(1);
+        sketch.offer("a", 4);
+        sketch.offer("b", 6);
+
+        // When
+        sketch.decay();
+
+        // Then
+        SpaceSavingSketch.Counter<String> counter = sketch.top(1).get(0);
+        assertThat(counter.getKey()).isEqualTo("b");
+        assertThat(counter.getCount()).isEqualTo(5);
+        assertThat(counter.getError()).isEqualTo(2);
+        assertThat(sketch.total()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldRejectANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSavingSketch<>(0));
+    }
+}
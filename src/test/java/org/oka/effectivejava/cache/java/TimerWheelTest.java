@@ -0,0 +1,91 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelTest {
+
+    @Test
+    public void shouldNotExpire_BeforeTheExpirationTime() {
+        // Given
+        TimerWheel<String, String> timerWheel = new TimerWheel<>(0L);
+        List<String> expired = new ArrayList<>();
+        timerWheel.schedule(node("key", SECONDS.toNanos(10)));
+
+        // When
+        timerWheel.advance(SECONDS.toNanos(5), n -> expired.add(n.getKey()));
+
+        // Then
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    public void shouldExpireEveryLevel_WhenTheTimeElapses() {
+        // Given
+        TimerWheel<String, String> timerWheel = new TimerWheel<>(0L);
+        List<String> expired = new ArrayList<>();
+        timerWheel.schedule(node("seconds", SECONDS.toNanos(10)));
+        timerWheel.schedule(node("minutes", MINUTES.toNanos(10)));
+        timerWheel.schedule(node("hours", HOURS.toNanos(10)));
+        timerWheel.schedule(node("days", DAYS.toNanos(10)));
+        timerWheel.schedule(node("weeks", DAYS.toNanos(100)));
+
+        // When
+        timerWheel.advance(SECONDS.toNanos(12), n -> expired.add(n.getKey()));
+        timerWheel.advance(MINUTES.toNanos(12), n -> expired.add(n.getKey()));
+        timerWheel.advance(HOURS.toNanos(12), n -> expired.add(n.getKey()));
+        timerWheel.advance(DAYS.toNanos(12), n -> expired.add(n.getKey()));
+        timerWheel.advance(DAYS.toNanos(101), n -> expired.add(n.getKey()));
+
+        // Then
+        assertThat(expired).containsExactly("seconds", "minutes", "hours", "days", "weeks");
+    }
+
+    @Test
+    public void shouldCascadeToALowerLevel_WhenTheCoarseBucketElapsesEarly() {
+        // Given
+        TimerWheel<String, String> timerWheel = new TimerWheel<>(0L);
+        List<String> expired = new ArrayList<>();
+        timerWheel.schedule(node("key", MINUTES.toNanos(2) + SECONDS.toNanos(30)));
+
+        // When
+        timerWheel.advance(MINUTES.toNanos(2) + SECONDS.toNanos(20), n -> expired.add(n.getKey()));
+        List<String> expiredEarly = new ArrayList<>(expired);
+        timerWheel.advance(MINUTES.toNanos(2) + SECONDS.toNanos(40), n -> expired.add(n.getKey()));
+
+        // Then
+        assertThat(expiredEarly).isEmpty();
+        assertThat(expired).containsExactly("key");
+    }
+
+    @Test
+    public void shouldNotExpire_WhenDescheduled() {
+        // Given
+        TimerWheel<String, String> timerWheel = new TimerWheel<>(0L);
+        List<String> expired = new ArrayList<>();
+        LFUEngine.Node<String, String> node = node("key", SECONDS.toNanos(10));
+        timerWheel.schedule(node);
+
+        // When
+        timerWheel.deschedule(node);
+        timerWheel.deschedule(node);
+        timerWheel.advance(MINUTES.toNanos(1), n -> expired.add(n.getKey()));
+
+        // Then
+        assertThat(expired).isEmpty();
+    }
+
+    private static LFUEngine.Node<String, String> node(final String key, final long expiration) {
+        LFUEngine.Node<String, String> node = new LFUEngine.Node<>(key, "value");
+        node.expiration = expiration;
+        return node;
+    }
+}
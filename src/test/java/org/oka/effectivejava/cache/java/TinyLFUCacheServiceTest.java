@@ -0,0 +1,227 @@
+package org.oka.effectivejava.cache.java;
+
+import org.junit.jupiter.api.Test;
+
+import org.oka.effectivejava.cache.MetricsSnapshot;
+import org.oka.effectivejava.cache.RemovalNotifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TinyLFUCacheServiceTest {
+
+    @Test
+    public void shouldReturnNull_WhenTheItemDoesNotExist() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = new TinyLFUCacheService<>();
+
+        // When
+        String cachedValue = cacheService.get("random_key");
+
+        // Then
+        assertThat(cachedValue).isNull();
+        assertThat(cacheService.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnCachedValueAndIncreaseHits() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = new TinyLFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        String value = cacheService.get("key");
+
+        // Then
+        assertThat(value).isEqualTo("value");
+        assertThat(cacheService.getHits()).isEqualTo(1);
+        assertThat(cacheService.getCachedItemStats()).containsEntry("key", 2);
+    }
+
+    @Test
+    public void shouldReplaceTheValue_WhenKeyExists() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = new TinyLFUCacheService<>();
+
+        // When
+        cacheService.put("key", "value");
+        cacheService.put("key", "value2");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).containsEntry("key", "value2").hasSize(1);
+    }
+
+    @Test
+    public void shouldReturnImmutableCachedItemStorage() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = new TinyLFUCacheService<>();
+        cacheService.put("key", "value");
+
+        // When
+        Map<String, String> map = cacheService.getCachedItemStorage();
+
+        // Then
+        assertThrows(UnsupportedOperationException.class, map::clear);
+    }
+
+    @Test
+    public void shouldNeverExceedTheMaximumSize() {
+        // Given
+        TinyLFUCacheService<Integer, String> cacheService = TinyLFUCacheService
+                .<Integer, String>builder()
+                .maximumSize(100L)
+                .build();
+
+        // When
+        for (int i = 0; i < 1_000; i++) {
+            cacheService.put(i, "value");
+        }
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).hasSize(100);
+        assertThat(cacheService.getEvictions()).isEqualTo(900);
+    }
+
+    @Test
+    public void shouldKeepTheHotEntries_WhenFloodedWithOneHitWonders() {
+        // Given
+        TinyLFUCacheService<Integer, String> cacheService = TinyLFUCacheService
+                .<Integer, String>builder()
+                .maximumSize(100L)
+                .build();
+        for (int hot = 0; hot < 50; hot++) {
+            cacheService.put(hot, "value");
+        }
+
+        // When
+        int hotHits = 0;
+        for (int oneHit = 1_000; oneHit < 11_000; oneHit++) {
+            cacheService.put(oneHit, "value");
+            if (cacheService.get(oneHit % 50) != null) {
+                hotHits++;
+            }
+        }
+
+        // Then
+        assertThat(hotHits).isGreaterThan(9_500);
+        assertThat(cacheService.getRejections()).isPositive();
+    }
+
+    @Test
+    public void shouldAdmitACandidate_WhenItIsMoreFrequentThanTheVictim() {
+        // Given
+        TinyLFUCacheService<Integer, String> cacheService = TinyLFUCacheService
+                .<Integer, String>builder()
+                .maximumSize(100L)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            cacheService.put(i, "value");
+        }
+        for (int i = 0; i < 5; i++) {
+            cacheService.get(1_000);
+        }
+
+        // When
+        cacheService.put(1_000, "value");
+        cacheService.put(1_001, "value");
+
+        // Then
+        assertThat(cacheService.get(1_000)).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldWorkWithASingleEntry() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = TinyLFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .build();
+
+        // When
+        cacheService.put("key", "value");
+        cacheService.put("key2", "value");
+
+        // Then
+        assertThat(cacheService.getCachedItemStorage()).hasSize(1);
+    }
+
+    @Test
+    public void shouldRejectNonPositiveMaximumSize() {
+        assertThrows(IllegalArgumentException.class, () -> TinyLFUCacheService.<String, String>builder()
+                .maximumSize(0L)
+                .build());
+    }
+
+    @Test
+    public void shouldExposeTheMetrics() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = TinyLFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.get("key1");
+        cacheService.get("key2");
+
+        // When
+        cacheService.put("key2", "value2");
+
+        // Then
+        MetricsSnapshot metrics = cacheService.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(1);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getPuts()).isEqualTo(2);
+        assertThat(metrics.getEvictions()).isEqualTo(1);
+        assertThat(metrics.getGetLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getPutLatency().getP50()).isPositive();
+        assertThat(metrics.getEvictionLatency().getCount()).isEqualTo(1);
+        assertThat(cacheService.getInsertions()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotifyTheRemovedEntries_ToTheRemovalListener() {
+        // Given
+        List<String> removals = new CopyOnWriteArrayList<>();
+        TinyLFUCacheService<String, String> cacheService = TinyLFUCacheService
+                .<String, String>builder()
+                .maximumSize(1L)
+                .removalListener((k, v, cause) -> removals.add(k + "=" + v + ":" + cause))
+                .build();
+        cacheService.put("key1", "value1");
+        cacheService.put("key1", "value2");
+        cacheService.put("key2", "value2");
+
+        // When
+        String removed = cacheService.remove("key2");
+        String missing = cacheService.remove("key3");
+        cacheService.close();
+
+        // Then
+        assertThat(removed).isEqualTo("value2");
+        assertThat(missing).isNull();
+        assertThat(cacheService.size()).isZero();
+        assertThat(removals).containsExactly("key1=value1:REPLACED", "key1=value2:SIZE", "key2=value2:EXPLICIT");
+        assertThat(cacheService.getDroppedNotifications()).isZero();
+    }
+
+    @Test
+    public void shouldRejectTheRemovalQueueSettings_WithoutARemovalListener() {
+        assertThrows(IllegalStateException.class, () -> TinyLFUCacheService.<String, String>builder()
+                .overflowPolicy(RemovalNotifier.OverflowPolicy.BLOCK)
+                .build());
+    }
+
+    @Test
+    public void shouldRejectNullKeys() {
+        // Given
+        TinyLFUCacheService<String, String> cacheService = new TinyLFUCacheService<>();
+
+        // When / Then
+        assertThrows(NullPointerException.class, () -> cacheService.put(null, "value"));
+        assertThrows(NullPointerException.class, () -> cacheService.get(null));
+    }
+}
@@ -0,0 +1,74 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ArcPolicyTest {
+
+    @Test
+    public void shouldKeepTheFrequentKeys_DuringAScan() {
+        // Given
+        ArcPolicy<String> policy = new ArcPolicy<>(4);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordAccess("a");
+        policy.recordAccess("b");
+        List<String> victims = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            victims.add(policy.recordInsertion("scan" + i));
+        }
+
+        // Then
+        assertThat(victims).doesNotContain("a", "b");
+        assertThat(victims.subList(2, 20)).doesNotContainNull();
+        assertThat(policy.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldGrowTheRecencyTarget_OnAGhostHit() {
+        // Given
+        ArcPolicy<String> policy = new ArcPolicy<>(4);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordAccess("a");
+        policy.recordAccess("b");
+        for (int i = 0; i < 5; i++) {
+            policy.recordInsertion("scan" + i);
+        }
+
+        // When
+        String victim = policy.recordInsertion("scan2");
+
+        // Then
+        assertThat(policy.getTarget()).isEqualTo(1);
+        assertThat(victim).isEqualTo("scan3");
+    }
+
+    @Test
+    public void shouldMakeRoom_WhenAKeyIsRemoved() {
+        // Given
+        ArcPolicy<String> policy = new ArcPolicy<>(2);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordRemoval("a");
+
+        // When
+        String victim = policy.recordInsertion("c");
+
+        // Then
+        assertThat(victim).isNull();
+        assertThat(policy.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ArcPolicy<String>(0));
+    }
+}
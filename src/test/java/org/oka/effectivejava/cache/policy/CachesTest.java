@@ -0,0 +1,70 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.junit.jupiter.api.Test;
+import org.oka.effectivejava.cache.Cache;
+import org.oka.effectivejava.cache.guava.LRUCacheService;
+import org.oka.effectivejava.cache.java.LFUCacheService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CachesTest {
+
+    @Test
+    public void shouldBuildABoundedCache_ForEveryPolicy() {
+        for (Policy policy : Policy.values()) {
+            // Given
+            Cache<Integer, Integer> cache = Caches.<Integer, Integer>builder()
+                    .policy(policy)
+                    .maximumSize(100L)
+                    .build();
+
+            // When
+            for (int i = 0; i < 1_000; i++) {
+                cache.put(i % 300, i);
+                cache.get(i % 7);
+            }
+
+            // Then
+            assertThat(cache.size()).as(policy.name()).isBetween(1, 100);
+            assertThat(cache.get(999 % 300)).as(policy.name()).isEqualTo(999);
+            assertThat(cache.getMetrics().getPuts()).as(policy.name()).isEqualTo(1_000);
+        }
+    }
+
+    @Test
+    public void shouldUseTheExistingServices_ForLruAndLfu() {
+        assertThat(Caches.builder().policy(Policy.LRU).build()).isInstanceOf(LRUCacheService.class);
+        assertThat(Caches.builder().build()).isInstanceOf(LFUCacheService.class);
+        assertThat(Caches.builder().policy(Policy.ARC).build()).isInstanceOf(PolicyCache.class);
+    }
+
+    @Test
+    public void shouldPlugACustomEvictionPolicy() {
+        // Given
+        Cache<String, String> cache = Caches.<String, String>builder()
+                .evictionPolicy(new ClockPolicy<>(1))
+                .build();
+
+        // When
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("key2")).isEqualTo("value2");
+    }
+
+    @Test
+    public void shouldRejectACustomEvictionPolicy_WithAMaximumSize() {
+        assertThrows(IllegalStateException.class, () -> Caches.<String, String>builder()
+                .evictionPolicy(new ClockPolicy<>(1))
+                .maximumSize(10L)
+                .build());
+    }
+
+    @Test
+    public void shouldRejectANonPositiveMaximumSize() {
+        assertThrows(IllegalArgumentException.class, () -> Caches.builder().maximumSize(0L).build());
+    }
+}
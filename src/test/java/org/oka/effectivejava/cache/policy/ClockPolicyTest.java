@@ -0,0 +1,61 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClockPolicyTest {
+
+    @Test
+    public void shouldGiveASecondChance_ToTheReferencedKeys() {
+        // Given
+        ClockPolicy<String> policy = new ClockPolicy<>(3);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordInsertion("c");
+        policy.recordAccess("a");
+
+        // When
+        String first = policy.recordInsertion("d");
+        String second = policy.recordInsertion("e");
+
+        // Then
+        assertThat(first).isEqualTo("b");
+        assertThat(second).isEqualTo("c");
+        assertThat(policy.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotEvict_WhenTheInsertionFits() {
+        // Given
+        ClockPolicy<String> policy = new ClockPolicy<>(2);
+
+        // When
+        String victim = policy.recordInsertion("a");
+
+        // Then
+        assertThat(victim).isNull();
+    }
+
+    @Test
+    public void shouldReuseTheSlotOfARemovedKey() {
+        // Given
+        ClockPolicy<String> policy = new ClockPolicy<>(2);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordRemoval("a");
+
+        // When
+        String victim = policy.recordInsertion("c");
+
+        // Then
+        assertThat(victim).isNull();
+        assertThat(policy.recordInsertion("d")).isEqualTo("c");
+    }
+
+    @Test
+    public void shouldRejectANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ClockPolicy<String>(0));
+    }
+}
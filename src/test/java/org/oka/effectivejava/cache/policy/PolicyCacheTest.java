@@ -0,0 +1,118 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.junit.jupiter.api.Test;
+import org.oka.effectivejava.cache.MetricsSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PolicyCacheTest {
+
+    @Test
+    public void shouldReturnTheCachedValue() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new ClockPolicy<>(10));
+        cache.put("key", "value");
+
+        // When
+        String value = cache.get("key");
+
+        // Then
+        assertThat(value).isEqualTo("value");
+        assertThat(cache.get("missing")).isNull();
+    }
+
+    @Test
+    public void shouldDropTheVictimOfThePolicy() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new ClockPolicy<>(2));
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.get("key1");
+
+        // When
+        cache.put("key3", "value3");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnlyKeys("key1", "key3");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getMetrics().getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReplaceTheValue_WithoutEvicting() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new ArcPolicy<>(1));
+        cache.put("key", "value");
+
+        // When
+        cache.put("key", "value2");
+
+        // Then
+        assertThat(cache.getCachedItemStorage()).containsOnly(entry("key", "value2"));
+        assertThat(cache.getMetrics().getEvictions()).isZero();
+    }
+
+    @Test
+    public void shouldReturnAnImmutableStorage() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new ClockPolicy<>(1));
+        cache.put("key", "value");
+
+        // When
+        Map<String, String> storage = cache.getCachedItemStorage();
+
+        // Then
+        assertThrows(UnsupportedOperationException.class, storage::clear);
+    }
+
+    @Test
+    public void shouldRemoveTheKey_FromTheStorageAndThePolicy() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new S3FifoPolicy<>(1));
+        cache.put("key", "value");
+
+        // When
+        String removed = cache.remove("key");
+        cache.put("key2", "value2");
+
+        // Then
+        assertThat(removed).isEqualTo("value");
+        assertThat(cache.getCachedItemStorage()).containsOnlyKeys("key2");
+        assertThat(cache.getMetrics().getEvictions()).isZero();
+    }
+
+    @Test
+    public void shouldGetAndPutBatches() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new S3FifoPolicy<>(10));
+        Map<String, String> batch = new LinkedHashMap<>();
+        batch.put("key1", "value1");
+        batch.put("key2", "value2");
+
+        // When
+        cache.putAll(batch);
+        Map<String, String> values = cache.getAll(List.of("key2", "missing", "key1"));
+
+        // Then
+        assertThat(values).containsExactly(entry("key2", "value2"), entry("key1", "value1"));
+        MetricsSnapshot metrics = cache.getMetrics();
+        assertThat(metrics.getHits()).isEqualTo(2);
+        assertThat(metrics.getMisses()).isEqualTo(1);
+        assertThat(metrics.getPuts()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectNullValues() {
+        // Given
+        PolicyCache<String, String> cache = new PolicyCache<>(new ClockPolicy<>(10));
+
+        // When / Then
+        assertThrows(NullPointerException.class, () -> cache.put("key", null));
+    }
+}
@@ -0,0 +1,98 @@
+package org.oka.effectivejava.cache.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class S3FifoPolicyTest {
+
+    @Test
+    public void shouldEvictTheKeysUsedOnce_AndPromoteTheReusedOnes() {
+        // Given
+        S3FifoPolicy<String> policy = new S3FifoPolicy<>(10);
+        for (int i = 0; i < 10; i++) {
+            policy.recordInsertion("key" + i);
+        }
+        policy.recordAccess("key0");
+        policy.recordAccess("key0");
+
+        // When
+        String victim = policy.recordInsertion("key10");
+
+        // Then
+        assertThat(victim).isEqualTo("key1");
+        assertThat(policy.size()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldKeepTheMainQueue_WhileOneHitWondersScanTheCache() {
+        // Given
+        S3FifoPolicy<String> policy = new S3FifoPolicy<>(10);
+        for (int i = 0; i < 10; i++) {
+            policy.recordInsertion("key" + i);
+        }
+        policy.recordAccess("key0");
+        policy.recordAccess("key0");
+        policy.recordInsertion("key10");
+        policy.recordInsertion("key1");
+        List<String> victims = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            victims.add(policy.recordInsertion("scan" + i));
+        }
+
+        // Then
+        assertThat(victims).doesNotContain("key0", "key1").doesNotContainNull();
+    }
+
+    @Test
+    public void shouldSkipTheRemovedKeys_WhenEvicting() {
+        // Given
+        S3FifoPolicy<String> policy = new S3FifoPolicy<>(2);
+        policy.recordInsertion("a");
+        policy.recordInsertion("b");
+        policy.recordRemoval("a");
+
+        // When
+        String fits = policy.recordInsertion("c");
+        String victim = policy.recordInsertion("d");
+
+        // Then
+        assertThat(fits).isNull();
+        assertThat(victim).isEqualTo("b");
+    }
+
+    @Test
+    public void shouldRejectANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new S3FifoPolicy<String>(0));
+    }
+
+    @Test
+    public void shouldKeepTheQueuesBounded_WhenKeysAreInsertedAndRemovedWithoutEvictions() {
+        // Given
+        S3FifoPolicy<Integer> policy = new S3FifoPolicy<>(100);
+        policy.recordInsertion(-1);
+        policy.recordAccess(-1);
+        policy.recordAccess(-1);
+
+        // When
+        for (int i = 0; i < 1_000_000; i++) {
+            policy.recordInsertion(i);
+            policy.recordRemoval(i);
+        }
+
+        // Then
+        assertThat(policy.size()).isEqualTo(1);
+        assertThat(policy.getQueuedEntries()).isLessThanOrEqualTo(2 * 100);
+        for (int i = 0; i < 99; i++) {
+            assertThat(policy.recordInsertion(1_000_000 + i)).isNull();
+        }
+        assertThat(policy.recordInsertion(2_000_000)).isEqualTo(1_000_000);
+        assertThat(policy.size()).isEqualTo(100);
+    }
+}
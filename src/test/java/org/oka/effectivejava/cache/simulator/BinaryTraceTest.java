@@ -0,0 +1,61 @@
+package org.oka.effectivejava.cache.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryTraceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReadBackTheWrittenKeys_AcrossSeveralBuffers() throws IOException {
+        // Given
+        Path file = directory.resolve("trace.bin");
+        long[] written = LongStream.range(0, 20_000).map(i -> i * 31 - 5_000).toArray();
+        List<Long> read = new ArrayList<>();
+
+        // When
+        BinaryTrace.write(file, Trace.of(written));
+        Trace.binary(file).forEach(read::add);
+
+        // Then
+        assertThat(read).containsExactly(LongStream.of(written).boxed().toArray(Long[]::new));
+        assertThat(Files.size(file)).isEqualTo(Integer.BYTES + 20_000L * Long.BYTES);
+    }
+
+    @Test
+    public void shouldRejectAFileWhichIsNotABinaryTrace() throws IOException {
+        // Given
+        Path file = directory.resolve("trace.txt");
+        Files.write(file, List.of("1", "2", "3"));
+
+        // When / Then
+        assertThrows(IOException.class, () -> Trace.binary(file).forEach(key -> { }));
+    }
+
+    @Test
+    public void shouldRejectATruncatedTrace() throws IOException {
+        // Given
+        Path file = directory.resolve("trace.bin");
+        BinaryTrace.write(file, Trace.of(1L, 2L, 3L));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        // When / Then
+        assertThrows(IOException.class, () -> Trace.binary(file).forEach(key -> { }));
+    }
+}
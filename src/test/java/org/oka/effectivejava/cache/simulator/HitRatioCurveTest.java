@@ -0,0 +1,71 @@
+package org.oka.effectivejava.cache.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HitRatioCurveTest {
+
+    @Test
+    public void shouldMatchTheHitsOfAnLruCache_ForEveryCapacity() throws IOException {
+        // Given
+        Random random = new Random(11);
+        long[] keys = new long[20_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) Math.pow(random.nextDouble(), 3) * 200;
+        }
+
+        // When
+        HitRatioCurve curve = HitRatioCurve.of(Trace.of(keys));
+
+        // Then
+        for (int capacity = 1; capacity <= 210; capacity += 7) {
+            assertThat(curve.hits(capacity)).as("capacity %d", capacity).isEqualTo(lruHits(keys, capacity));
+        }
+        assertThat(curve.getRequests()).isEqualTo(20_000);
+    }
+
+    @Test
+    public void shouldReachTheMaxHitRatio_WhenEveryKeyFits() throws IOException {
+        // When
+        HitRatioCurve curve = HitRatioCurve.of(Trace.of(1, 2, 1, 2, 3, 3));
+
+        // Then
+        assertThat(curve.hitRatio(3)).isEqualTo(0.5d);
+        assertThat(curve.hitRatio(Long.MAX_VALUE)).isEqualTo(0.5d);
+        assertThat(curve.hitRatio(0)).isZero();
+    }
+
+    @Test
+    public void shouldRejectANegativeCapacity() throws IOException {
+        // Given
+        HitRatioCurve curve = HitRatioCurve.of(Trace.of(1));
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> curve.hits(-1));
+    }
+
+    private static long lruHits(final long[] keys, final int capacity) {
+        Map<Long, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+        long hits = 0;
+        for (long key : keys) {
+            if (lru.get(key) != null) {
+                hits++;
+            } else {
+                lru.put(key, Boolean.TRUE);
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,70 @@
+package org.oka.effectivejava.cache.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.oka.effectivejava.cache.policy.ArcPolicy;
+import org.oka.effectivejava.cache.policy.Policy;
+import org.oka.effectivejava.cache.policy.PolicyCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SimulatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReportEveryConfigurationAndCapacity() throws IOException, InterruptedException {
+        // Given
+        Path file = directory.resolve("trace.bin");
+        Random random = new Random(3);
+        long[] keys = new long[10_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) (Math.pow(random.nextDouble(), 2) * 500);
+        }
+        BinaryTrace.write(file, Trace.of(keys));
+        long distinct = LongStream.of(keys).distinct().count();
+        Simulator simulator = Simulator.builder()
+                .trace(Trace.binary(file))
+                .policies(List.of(Policy.values()))
+                .configurations(Map.of("ARC-custom", capacity -> new PolicyCache<>(new ArcPolicy<>((int) capacity))))
+                .capacities(List.of(50L, 100L, 1_000L))
+                .threads(2)
+                .build();
+
+        // When
+        List<SimulationResult> results = simulator.run();
+
+        // Then
+        assertThat(results).hasSize(21);
+        assertThat(results.stream().map(SimulationResult::getName).distinct().collect(Collectors.toList()))
+                .containsExactly("LRU", "LFU", "CLOCK", "S3_FIFO", "ARC", "TINY_LFU", "ARC-custom");
+        for (SimulationResult result : results) {
+            assertThat(result.getRequests()).isEqualTo(10_000);
+            assertThat(result.getOpsPerSecond()).isPositive();
+            if (result.getCapacity() == 1_000L) {
+                assertThat(result.getHits()).as(result.getName()).isEqualTo(10_000 - distinct);
+                assertThat(result.getEvictions()).as(result.getName()).isZero();
+            } else {
+                assertThat(result.getHitRatio()).as(result.getName()).isBetween(0d, 1d);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRequireAConfiguration() {
+        assertThrows(IllegalStateException.class, () -> Simulator.builder()
+                .trace(Trace.of(1))
+                .capacities(List.of(10L))
+                .build());
+    }
+}
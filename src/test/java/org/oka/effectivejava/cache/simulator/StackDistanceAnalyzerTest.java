@@ -0,0 +1,46 @@
+package org.oka.effectivejava.cache.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StackDistanceAnalyzerTest {
+
+    @Test
+    public void shouldCountTheDistinctKeysBetweenTwoAccesses() {
+        // Given
+        StackDistanceAnalyzer analyzer = new StackDistanceAnalyzer();
+
+        // When
+        for (long key : new long[]{1, 2, 3, 2, 2, 1}) {
+            analyzer.record(key);
+        }
+
+        // Then
+        HitRatioCurve curve = analyzer.curve();
+        assertThat(curve.hits(0)).isZero();
+        assertThat(curve.hits(1)).isEqualTo(1);
+        assertThat(curve.hits(2)).isEqualTo(2);
+        assertThat(curve.hits(3)).isEqualTo(3);
+        assertThat(curve.getDistinctKeys()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldKeepTheDistances_WhenTheSlotsAreRenumbered() {
+        // Given
+        StackDistanceAnalyzer compacting = new StackDistanceAnalyzer(4);
+        StackDistanceAnalyzer large = new StackDistanceAnalyzer(1_000);
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            long key = i * 7 % 11;
+            compacting.record(key);
+            large.record(key);
+        }
+
+        // Then
+        for (int capacity = 0; capacity <= 12; capacity++) {
+            assertThat(compacting.curve().hits(capacity)).isEqualTo(large.curve().hits(capacity));
+        }
+    }
+}
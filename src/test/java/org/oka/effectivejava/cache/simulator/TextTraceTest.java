@@ -0,0 +1,45 @@
+package org.oka.effectivejava.cache.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextTraceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldStreamOneKeyPerLine_SkippingBlankLines() throws IOException {
+        // Given
+        Path file = directory.resolve("trace.txt");
+        Files.write(file, List.of("42", "", "  7 ", "user:1", "42"));
+        List<Long> keys = new ArrayList<>();
+
+        // When
+        Trace.text(file).forEach(keys::add);
+
+        // Then
+        assertThat(keys).containsExactly(42L, 7L, TextTrace.keyOf("user:1"), 42L);
+    }
+
+    @Test
+    public void shouldHashTheKeysWhichAreNotNumbers_ApartFromTheNumbers() {
+        // When
+        long hashed = TextTrace.keyOf("user:1");
+
+        // Then
+        assertThat(hashed).isNegative();
+        assertThat(TextTrace.keyOf("user:2")).isNotEqualTo(hashed);
+        assertThat(TextTrace.keyOf("123456789012345678")).isEqualTo(123_456_789_012_345_678L);
+        assertThat(TextTrace.keyOf("-1")).isNegative();
+        assertThat(TextTrace.keyOf("1234567890123456789")).isNegative();
+    }
+}
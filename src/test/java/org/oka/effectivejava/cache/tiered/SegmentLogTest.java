@@ -0,0 +1,210 @@
+package org.oka.effectivejava.cache.tiered;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.oka.effectivejava.cache.Serializer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SegmentLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReturnTheLastValueOfEveryKey() throws IOException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(1024, 4096)) {
+
+            // When
+            log.put("1", "one");
+            log.put("2", "two");
+            log.put("1", "uno");
+
+            // Then
+            assertThat(log.get("1")).isEqualTo("uno");
+            assertThat(log.get("2")).isEqualTo("two");
+            assertThat(log.get("3")).isNull();
+            assertThat(log.size()).isEqualTo(2);
+            assertThat(log.getMetrics().getHits()).isEqualTo(2);
+            assertThat(log.getMetrics().getMisses()).isEqualTo(1);
+            assertThat(log.getMetrics().getPuts()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void shouldForgetTheRemovedKeys() throws IOException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(1024, 4096)) {
+            log.put("1", "one");
+
+            // When
+            boolean removed = log.remove("1");
+
+            // Then
+            assertThat(removed).isTrue();
+            assertThat(log.remove("1")).isFalse();
+            assertThat(log.get("1")).isNull();
+            assertThat(log.size()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldStartANewSegment_WhenTheActiveOneIsFull() throws IOException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(64, 4096)) {
+
+            // When
+            for (int i = 0; i < 10; i++) {
+                log.put("key-" + i, "value-" + i);
+            }
+
+            // Then
+            assertThat(segmentFiles()).hasSize(4);
+            assertThat(log.getDiskSize()).isEqualTo(4 * 64);
+            for (int i = 0; i < 10; i++) {
+                assertThat(log.get("key-" + i)).isEqualTo("value-" + i);
+            }
+        }
+    }
+
+    @Test
+    public void shouldDropTheOldestSegment_WhenTheMaximumSizeIsExceeded() throws IOException, InterruptedException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(64, 128)) {
+
+            // When
+            for (int i = 0; i < 10; i++) {
+                log.put("key-" + i, "value-" + i);
+            }
+            log.awaitCompactions();
+
+            // Then
+            assertThat(log.getDiskSize()).isEqualTo(128);
+            assertThat(segmentFiles()).hasSize(2);
+            assertThat(log.size()).isEqualTo(4);
+            assertThat(log.getMetrics().getEvictions()).isEqualTo(6);
+            assertThat(log.get("key-5")).isNull();
+            assertThat(log.get("key-6")).isEqualTo("value-6");
+            assertThat(log.get("key-9")).isEqualTo("value-9");
+        }
+    }
+
+    @Test
+    public void shouldCompactASegment_WhenMostOfItIsGarbage() throws IOException, InterruptedException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(64, 4096)) {
+            log.put("key-0", "value-0");
+            log.put("key-1", "value-1");
+            log.put("key-2", "value-2");
+
+            // When
+            log.put("key-0", "value-00");
+            log.put("key-1", "value-11");
+            log.awaitCompactions();
+
+            // Then
+            assertThat(log.getCompactions()).isEqualTo(1);
+            assertThat(segmentFiles()).doesNotContain("segment-0.log");
+            assertThat(log.get("key-0")).isEqualTo("value-00");
+            assertThat(log.get("key-1")).isEqualTo("value-11");
+            assertThat(log.get("key-2")).isEqualTo("value-2");
+            assertThat(log.size()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void shouldNotStoreAValueBiggerThanASegment_DroppingThePreviousOne() throws IOException {
+        // Given
+        try (SegmentLog<String, String> log = newLog(64, 4096)) {
+            log.put("1", "one");
+
+            // When
+            log.put("1", "x".repeat(64));
+
+            // Then
+            assertThat(log.get("1")).isNull();
+            assertThat(log.size()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldReadConsistentValues_WhileTheLogIsWrittenAndCompacted() throws Exception {
+        // Given
+        try (SegmentLog<String, String> log = newLog(256, 64 * 256)) {
+            for (int i = 0; i < 20; i++) {
+                log.put("key-" + i, "0:key-" + i);
+            }
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<String> errors = new ArrayList<>();
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    for (int i = 0; i < 20; i++) {
+                        String value = log.get("key-" + i);
+                        if (value == null || !value.endsWith(":key-" + i)) {
+                            errors.add("key-" + i + " -> " + value);
+                        }
+                    }
+                }
+            });
+            reader.start();
+
+            // When
+            for (int round = 1; round < 500; round++) {
+                for (int i = 0; i < 20; i++) {
+                    log.put("key-" + i, round + ":key-" + i);
+                }
+            }
+            running.set(false);
+            reader.join();
+            log.awaitCompactions();
+
+            // Then
+            assertThat(errors).isEmpty();
+            assertThat(log.getCompactions()).isPositive();
+            assertThat(log.get("key-7")).isEqualTo("499:key-7");
+            assertThat(log.getMetrics().getEvictions()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldDeleteTheSegments_WhenClosed() throws IOException {
+        // Given
+        SegmentLog<String, String> log = newLog(64, 4096);
+        log.put("1", "one");
+
+        // When
+        log.close();
+
+        // Then
+        assertThat(segmentFiles()).isEmpty();
+        assertThat(log.get("1")).isNull();
+        assertThrows(IllegalStateException.class, () -> log.put("1", "one"));
+    }
+
+    @Test
+    public void shouldRejectAMaximumSizeSmallerThanASegment() {
+        assertThrows(IllegalArgumentException.class, () -> newLog(64, 63));
+        assertThrows(IllegalArgumentException.class, () -> newLog(8, 4096));
+    }
+
+    private SegmentLog<String, String> newLog(final int segmentSize, final long maximumSize) throws IOException {
+        return new SegmentLog<>(directory, segmentSize, maximumSize, Serializer.utf8(), Serializer.utf8());
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}
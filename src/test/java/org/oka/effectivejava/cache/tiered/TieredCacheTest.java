@@ -0,0 +1,336 @@
+package org.oka.effectivejava.cache.tiered;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.oka.effectivejava.cache.Serializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TieredCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldServeTheEntriesEvictedFromL1_FromL2() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(2, 5)) {
+
+            // When
+            for (int i = 1; i <= 5; i++) {
+                cache.put(String.valueOf(i), "value-" + i);
+            }
+
+            // Then
+            assertThat(cache.getL1Size()).isEqualTo(2);
+            assertThat(cache.getL2Size()).isEqualTo(3);
+            assertThat(cache.size()).isEqualTo(5);
+            for (int i = 1; i <= 5; i++) {
+                assertThat(cache.get(String.valueOf(i))).isEqualTo("value-" + i);
+            }
+            assertThat(cache.getL1Metrics().getEvictions()).isEqualTo(3);
+            assertThat(cache.getMetrics().getHits()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void shouldPromoteAnEntry_WhenItIsHitEnoughTimesInL2() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(2, 2)) {
+            cache.put("1", "one");
+            cache.put("2", "two");
+            cache.put("3", "three");
+
+            // When
+            cache.get("1");
+            int l2SizeBeforePromotion = cache.getL2Size();
+            cache.get("1");
+
+            // Then
+            assertThat(l2SizeBeforePromotion).isEqualTo(1);
+            assertThat(cache.getPromotions()).isEqualTo(1);
+            assertThat(cache.getL2Metrics().getHits()).isEqualTo(2);
+            assertThat(cache.getL1Size()).isEqualTo(2);
+            assertThat(cache.getL2Size()).isEqualTo(1);
+            assertThat(cache.get("1")).isEqualTo("one");
+            assertThat(cache.getL2Metrics().getHits()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void shouldDropTheL2Copy_WhenAKeyIsWrittenAgain() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(1, 5)) {
+            cache.put("1", "one");
+            cache.put("2", "two");
+
+            // When
+            cache.put("1", "uno");
+
+            // Then
+            assertThat(cache.get("1")).isEqualTo("uno");
+            assertThat(cache.get("2")).isEqualTo("two");
+            assertThat(cache.getL2Size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldReportTheMissesOfBothTiers() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(1, 5)) {
+            cache.put("1", "one");
+            cache.put("2", "two");
+
+            // When
+            Map<String, String> found = cache.getAll(List.of("1", "2", "3"));
+
+            // Then
+            assertThat(found).containsExactly(Map.entry("1", "one"), Map.entry("2", "two"));
+            assertThat(cache.getMetrics().getHits()).isEqualTo(2);
+            assertThat(cache.getMetrics().getMisses()).isEqualTo(1);
+            assertThat(cache.getL1Metrics().getMisses()).isEqualTo(2);
+            assertThat(cache.getL2Metrics().getHits()).isEqualTo(1);
+            assertThat(cache.getL2Metrics().getMisses()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldKeepEveryEntryOfAWorkingSetBiggerThanL1() {
+        // Given
+        try (TieredCache<String, String> cache = TieredCache.<String, String>builder()
+                .maximumSize(100L)
+                .directory(directory)
+                .segmentSize(4096)
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build()) {
+
+            // When
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 1_000; i++) {
+                    cache.put("key-" + i, round + "-" + i);
+                }
+            }
+
+            // Then
+            for (int i = 0; i < 1_000; i++) {
+                assertThat(cache.get("key-" + i)).isEqualTo("2-" + i);
+            }
+            assertThat(cache.getCompactions()).isPositive();
+            assertThat(cache.getL2Metrics().getEvictions()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldDeleteTheL2Files_WhenClosed() throws IOException {
+        // Given
+        TieredCache<String, String> cache = newCache(1, 2);
+        cache.put("1", "one");
+        cache.put("2", "two");
+
+        // When
+        cache.close();
+
+        // Then
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldRequireADirectoryAndSerializers() {
+        assertThrows(NullPointerException.class, () -> TieredCache.<String, String>builder()
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build());
+        assertThrows(NullPointerException.class, () -> TieredCache.<String, String>builder()
+                .directory(directory)
+                .build());
+    }
+
+    @Test
+    public void shouldRejectANonPositivePromotionThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> TieredCache.<String, String>builder()
+                .directory(directory)
+                .promotionThreshold(0)
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build());
+    }
+
+    @Test
+    public void shouldRemoveTheKey_FromBothTiers() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(1, 5)) {
+            cache.put("1", "one");
+            cache.put("2", "two");
+
+            // When
+            String demoted = cache.remove("1");
+            String cached = cache.remove("2");
+
+            // Then
+            assertThat(demoted).isEqualTo("one");
+            assertThat(cached).isEqualTo("two");
+            assertThat(cache.size()).isZero();
+            assertThat(cache.get("1")).isNull();
+            assertThat(cache.remove("1")).isNull();
+        }
+    }
+
+    @Test
+    public void shouldNotCountTheL2LookupsOfARemoval() {
+        // Given
+        try (TieredCache<String, String> cache = newCache(1, 5)) {
+            cache.put("1", "one");
+            cache.put("2", "two");
+
+            // When
+            cache.remove("1");
+            cache.remove("3");
+
+            // Then
+            assertThat(cache.getL2Metrics().getHits()).isZero();
+            assertThat(cache.getL2Metrics().getMisses()).isZero();
+            assertThat(cache.getL2Size()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldDemoteAnEvictedEntry_WhileASegmentIsBeingCompacted() throws Exception {
+        // Given
+        CountDownLatch compacting = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        TieredCache<String, String> cache = TieredCache.<String, String>builder()
+                .maximumSize(1L)
+                .directory(directory)
+                .segmentSize(64)
+                .keySerializer(new PausingSerializer(compacting, resume, false))
+                .valueSerializer(Serializer.utf8())
+                .build();
+        String value = "x".repeat(20);
+        try {
+            for (int i = 1; i <= 5; i++) {
+                cache.put(String.valueOf(i), value);
+            }
+            cache.put("1", value);
+            assertThat(compacting.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // When
+            CompletableFuture<Void> evictingPut = CompletableFuture.runAsync(() -> cache.put("6", value));
+
+            // Then
+            evictingPut.get(10, TimeUnit.SECONDS);
+            assertThat(cache.getL1Metrics().getEvictions()).isEqualTo(6);
+            assertThat(cache.getL2Size()).isEqualTo(5);
+        } finally {
+            resume.countDown();
+            cache.close();
+        }
+        assertThat(cache.getCompactions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictFromL1_WhileAnotherEvictedEntryIsBeingWrittenToL2() throws Exception {
+        // Given
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        TieredCache<String, String> cache = TieredCache.<String, String>builder()
+                .maximumSize(1L)
+                .directory(directory)
+                .segmentSize(1024)
+                .keySerializer(new PausingSerializer(writing, resume, true))
+                .valueSerializer(Serializer.utf8())
+                .build();
+        try {
+            cache.put("1", "one");
+            CompletableFuture<Void> demotingPut = CompletableFuture.runAsync(() -> cache.put("2", "two"));
+            assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // When
+            CompletableFuture<Void> evictingPut = CompletableFuture.runAsync(() -> cache.put("3", "three"));
+
+            // Then
+            evictingPut.get(10, TimeUnit.SECONDS);
+            assertThat(cache.get("1")).isEqualTo("one");
+            assertThat(cache.get("2")).isEqualTo("two");
+            resume.countDown();
+            demotingPut.get(10, TimeUnit.SECONDS);
+            assertThat(cache.getL2Size()).isEqualTo(2);
+            assertThat(cache.size()).isEqualTo(3);
+        } finally {
+            resume.countDown();
+            cache.close();
+        }
+    }
+
+    private TieredCache<String, String> newCache(final long maximumSize, final int promotionThreshold) {
+        return TieredCache.<String, String>builder()
+                .maximumSize(maximumSize)
+                .directory(directory)
+                .segmentSize(1024)
+                .promotionThreshold(promotionThreshold)
+                .keySerializer(Serializer.utf8())
+                .valueSerializer(Serializer.utf8())
+                .build();
+    }
+
+    /**
+     * UTF-8 serializer pausing until resumed, once: on the first key written to L2, or on the first key read by the
+     * compaction thread.
+     */
+    private static final class PausingSerializer implements Serializer<String> {
+        private final Serializer<String> utf8 = Serializer.utf8();
+        private final CountDownLatch paused;
+        private final CountDownLatch resume;
+        private final boolean onWrite;
+
+        private PausingSerializer(final CountDownLatch paused, final CountDownLatch resume, final boolean onWrite) {
+            this.paused = paused;
+            this.resume = resume;
+            this.onWrite = onWrite;
+        }
+
+        @Override
+        public byte[] serialize(final String value) {
+            if (onWrite) {
+                pause();
+            }
+            return utf8.serialize(value);
+        }
+
+        @Override
+        public String deserialize(final ByteBuffer buffer) {
+            if (!onWrite && Thread.currentThread().getName().equals("segment-log-compaction")) {
+                pause();
+            }
+            return utf8.deserialize(buffer);
+        }
+
+        private void pause() {
+            synchronized (this) {
+                if (paused.getCount() == 0) {
+                    return;
+                }
+                paused.countDown();
+            }
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package org.oka.effectivejava.sort;
 
+import com.sun.management.ThreadMXBean;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.oka.effectivejava.RandomGenerator.generateUnsortedArray;
 
 public class MergeSortTest {
@@ -18,4 +24,71 @@ public class MergeSortTest {
         // Then
         assertThat(array).isSorted();
     }
+
+    @Test
+    public void shouldSortAsArraysSort_ForEverySizeAroundTheRunsAndPasses() {
+        // Given
+        MergeSort sorter = new MergeSort();
+        Random random = new Random(7);
+
+        for (int size = 0; size <= 4 * MergeSort.RUN + 1; size++) {
+            int[] array = random.ints(size, -10, 10).toArray();
+            int[] expected = array.clone();
+            Arrays.sort(expected);
+
+            // When
+            sorter.sort(array, size);
+
+            // Then
+            assertThat(array).containsExactly(expected);
+        }
+    }
+
+    @Test
+    public void shouldOnlySortThePrefix_WhenTheSizeIsSmallerThanTheArray() {
+        // Given
+        MergeSort sorter = new MergeSort();
+        int[] array = generateUnsortedArray(1_000);
+        int[] tail = Arrays.copyOfRange(array, 600, 1_000);
+
+        // When
+        sorter.sort(array, 600);
+
+        // Then
+        assertThat(Arrays.copyOfRange(array, 0, 600)).isSorted();
+        assertThat(Arrays.copyOfRange(array, 600, 1_000)).containsExactly(tail);
+    }
+
+    @Test
+    public void shouldNotAllocate_WhenAWorkspaceIsGiven() {
+        // Given
+        MergeSort sorter = new MergeSort();
+        int[] array = generateUnsortedArray(100_000);
+        int[] copy = array.clone();
+        int[] workspace = new int[array.length];
+        sorter.sort(copy, copy.length, workspace);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // When
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        sorter.sort(array, array.length, workspace);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Then
+        assertThat(array).isSorted();
+        assertThat(allocated).isLessThan(1_024);
+    }
+
+    @Test
+    public void shouldRejectASizeOutOfTheArray_OrASmallerWorkspace() {
+        // Given
+        MergeSort sorter = new MergeSort();
+        int[] array = new int[10];
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> sorter.sort(array, 11, new int[11]));
+        assertThrows(IllegalArgumentException.class, () -> sorter.sort(array, -1, new int[10]));
+        assertThrows(IllegalArgumentException.class, () -> sorter.sort(array, 10, new int[9]));
+    }
 }
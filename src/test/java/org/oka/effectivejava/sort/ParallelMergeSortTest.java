@@ -0,0 +1,121 @@
+package org.oka.effectivejava.sort;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.oka.effectivejava.RandomGenerator.generateUnsortedArray;
+
+public class ParallelMergeSortTest {
+    @Test
+    public void shouldSort() {
+        // Given
+        Sort sorter = new ParallelMergeSort();
+        int[] array = generateUnsortedArray(100_000);
+
+        // When
+        sorter.sort(array, array.length);
+
+        // Then
+        assertThat(array).isSorted();
+    }
+
+    @Test
+    public void shouldSortAsArraysSort_ForEveryThresholdAndSize() {
+        // Given
+        Random random = new Random(7);
+
+        for (int threshold : new int[]{1, 2, 3, 16, 100}) {
+            try (ParallelMergeSort sorter = ParallelMergeSort.builder()
+                    .parallelism(4)
+                    .threshold(threshold)
+                    .build()) {
+                for (int size = 0; size <= 300; size += 7) {
+                    int[] array = random.ints(size, -20, 20).toArray();
+                    int[] expected = array.clone();
+                    Arrays.sort(expected);
+
+                    // When
+                    sorter.sort(array, size);
+
+                    // Then
+                    assertThat(array).containsExactly(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldMergeInParallel_WhenTheRunsAreUnbalanced() {
+        // Given
+        int[] array = new int[10_000];
+        Arrays.fill(array, 0, 9_000, 5);
+        for (int i = 9_000; i < array.length; i++) {
+            array[i] = i % 11;
+        }
+        int[] expected = array.clone();
+        Arrays.sort(expected);
+
+        // When
+        try (ParallelMergeSort sorter = ParallelMergeSort.builder().parallelism(8).threshold(64).build()) {
+            sorter.sort(array, array.length);
+        }
+
+        // Then
+        assertThat(array).containsExactly(expected);
+    }
+
+    @Test
+    public void shouldOnlySortThePrefix_WhenTheSizeIsSmallerThanTheArray() {
+        // Given
+        ParallelMergeSort sorter = ParallelMergeSort.builder().threshold(16).build();
+        int[] array = generateUnsortedArray(1_000);
+        int[] tail = Arrays.copyOfRange(array, 600, 1_000);
+        int[] workspace = new int[600];
+
+        // When
+        sorter.sort(array, 600, workspace);
+
+        // Then
+        assertThat(Arrays.copyOfRange(array, 0, 600)).isSorted();
+        assertThat(Arrays.copyOfRange(array, 600, 1_000)).containsExactly(tail);
+    }
+
+    @Test
+    public void shouldRunOnTheConfiguredPool() {
+        // Given
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        // When
+        ParallelMergeSort custom = ParallelMergeSort.builder().pool(pool).build();
+        ParallelMergeSort owned = ParallelMergeSort.builder().parallelism(5).build();
+        owned.close();
+
+        // Then
+        assertThat(custom.getParallelism()).isEqualTo(3);
+        assertThat(owned.getParallelism()).isEqualTo(5);
+        assertThat(new ParallelMergeSort().getParallelism()).isEqualTo(ForkJoinPool.getCommonPoolParallelism());
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldRejectInvalidConfiguration_AndArguments() {
+        // Given
+        ParallelMergeSort sorter = new ParallelMergeSort();
+        int[] array = new int[10];
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> ParallelMergeSort.builder()
+                .pool(ForkJoinPool.commonPool())
+                .parallelism(2)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> ParallelMergeSort.builder().parallelism(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ParallelMergeSort.builder().threshold(0).build());
+        assertThrows(IllegalArgumentException.class, () -> sorter.sort(array, 11, new int[11]));
+        assertThrows(IllegalArgumentException.class, () -> sorter.sort(array, 10, new int[9]));
+    }
+}